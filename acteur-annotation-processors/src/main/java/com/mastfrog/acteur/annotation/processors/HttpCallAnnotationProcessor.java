@@ -54,9 +54,20 @@ import javax.lang.model.SourceVersion;
 import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.AnnotationValue;
 import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
 import javax.lang.model.element.PackageElement;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.Types;
 import javax.tools.Diagnostic;
 import javax.tools.JavaFileObject;
 import static com.mastfrog.acteur.annotation.processors.HttpCallAnnotationProcessor.INJECT_BODY_AS_ANNOTATION;
@@ -95,6 +106,18 @@ public class HttpCallAnnotationProcessor extends IndexGeneratingProcessor<Line>
 
     private static final String ACTEUR_FQN = "com.mastfrog.acteur.Acteur";
     private static final String PAGE_FQN = "com.mastfrog.acteur.Page";
+    private static final String INSTANTIATOR_FQN = "com.mastfrog.acteurbase.Instantiator";
+    private static final String INJECT_FQN = "javax.inject.Inject";
+    private static final String GUICE_INJECT_FQN = "com.google.inject.Inject";
+    private static final String PROVIDER_FQN = "javax.inject.Provider";
+    private static final String GUICE_PROVIDER_FQN = "com.google.inject.Provider";
+    private static final String SINGLETON_FQN = "javax.inject.Singleton";
+    private static final String QUALIFIER_FQN = "javax.inject.Qualifier";
+    private static final String BINDING_ANNOTATION_FQN = "com.google.inject.BindingAnnotation";
+    private static final String SCOPE_FQN = "javax.inject.Scope";
+    private static final String SCOPE_ANNOTATION_FQN = "com.google.inject.ScopeAnnotation";
+    private static final String FACTORY_PREFIX = "Factory";
+    private static final String FACTORY_NAME_PLACEHOLDER = "__FACTORY__";
 
     public HttpCallAnnotationProcessor() {
         super(true, AnnotationIndexFactory.lines());
@@ -246,6 +269,248 @@ public class HttpCallAnnotationProcessor extends IndexGeneratingProcessor<Line>
         return (PackageElement) el;
     }
 
+    private void addStep(String acteurType, String comment, PackageElement pkg, List<String> steps,
+            List<String> comments, List<String> factories, AtomicBoolean error) {
+        TypeElement te = processingEnv.getElementUtils().getTypeElement(acteurType);
+        String factory = te == null ? null : instantiatorSource(te, pkg, error);
+        if (factory != null) {
+            steps.add("f" + factories.size());
+            factories.add(factory);
+        } else {
+            steps.add(acteurType + ".class");
+        }
+        comments.add(comment);
+    }
+
+    /**
+     * Generate the source of an Instantiator for an acteur type, which calls
+     * its constructor directly with arguments obtained from Providers, or
+     * return null if the type cannot be constructed that way and must be left
+     * to Guice - it has members injection, a scope annotation, no usable
+     * constructor, is not accessible from the generated page's package, or
+     * takes arguments of types that are not, and so forth.
+     * <p>
+     * Since the constructor is called directly, a module's binding of the
+     * acteur type itself, and any interceptors on it, do not apply to
+     * acteurs created this way.
+     */
+    private String instantiatorSource(TypeElement type, PackageElement pkg, AtomicBoolean error) {
+        boolean samePackage = pkg.equals(findPackage(type));
+        if (!isAccessible(type, pkg)) {
+            return null;
+        }
+        for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            if (e != type && e.getKind().isClass() && !e.getModifiers().contains(Modifier.STATIC)
+                    && ((TypeElement) e).getNestingKind() != NestingKind.TOP_LEVEL) {
+                return null;
+            }
+        }
+        if (hasScopeAnnotation(type)) {
+            // Guice would hand back the scoped instance; calling the
+            // constructor would not
+            return null;
+        }
+        if (type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.ABSTRACT)
+                || !type.getTypeParameters().isEmpty()
+                || (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC))
+                || (type.getNestingKind() != NestingKind.TOP_LEVEL && type.getNestingKind() != NestingKind.MEMBER)) {
+            return null;
+        }
+        if (hasInjectedMembers(type)) {
+            return null;
+        }
+        ExecutableElement constructor = null;
+        ExecutableElement noArg = null;
+        for (Element e : type.getEnclosedElements()) {
+            if (e.getKind() != ElementKind.CONSTRUCTOR) {
+                continue;
+            }
+            ExecutableElement ctor = (ExecutableElement) e;
+            if (isInjectAnnotated(ctor)) {
+                if (constructor != null) {
+                    return null;
+                }
+                constructor = ctor;
+            } else if (ctor.getParameters().isEmpty()) {
+                noArg = ctor;
+            }
+        }
+        if (constructor == null) {
+            constructor = noArg;
+        }
+        if (constructor == null || constructor.getModifiers().contains(Modifier.PRIVATE)
+                || (!samePackage && !constructor.getModifiers().contains(Modifier.PUBLIC))
+                || !constructor.getThrownTypes().isEmpty() || !constructor.getTypeParameters().isEmpty()) {
+            return null;
+        }
+        String typeName = type.getQualifiedName().toString();
+        StringBuilder fields = new StringBuilder();
+        StringBuilder params = new StringBuilder();
+        StringBuilder assignments = new StringBuilder();
+        StringBuilder args = new StringBuilder();
+        Types types = processingEnv.getTypeUtils();
+        List<? extends VariableElement> parameters = constructor.getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            VariableElement param = parameters.get(i);
+            TypeMirror paramType = param.asType();
+            if (paramType.getKind() == TypeKind.ERROR) {
+                // Probably a type which will be generated in a later round
+                error.set(true);
+                return null;
+            }
+            if (paramType.getKind() == TypeKind.TYPEVAR || paramType.getKind() == TypeKind.WILDCARD
+                    || !isAccessible(paramType, pkg)) {
+                return null;
+            }
+            String qualifiers = qualifiers(param, pkg);
+            if (qualifiers == null) {
+                return null;
+            }
+            String providerType;
+            String arg;
+            if (isProvider(paramType)) {
+                // Inject the provider the acteur asked for directly
+                providerType = paramType.toString();
+                arg = "p" + i;
+            } else {
+                TypeMirror boxed = paramType.getKind().isPrimitive()
+                        ? types.boxedClass((PrimitiveType) paramType).asType() : paramType;
+                providerType = PROVIDER_FQN + "<" + boxed + ">";
+                arg = "p" + i + ".get()";
+            }
+            fields.append("        private final ").append(providerType).append(" p").append(i).append(";\n");
+            if (i > 0) {
+                params.append(", ");
+                args.append(", ");
+            }
+            params.append(qualifiers).append(providerType).append(" p").append(i);
+            assignments.append("            this.p").append(i).append(" = p").append(i).append(";\n");
+            args.append(arg);
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("    @").append(SINGLETON_FQN).append('\n');
+        sb.append("    static final class ").append(FACTORY_NAME_PLACEHOLDER)
+                .append(" implements ").append(INSTANTIATOR_FQN).append('<').append(typeName).append("> {\n\n");
+        if (fields.length() > 0) {
+            sb.append(fields).append('\n');
+        }
+        sb.append("        @").append(INJECT_FQN).append('\n');
+        sb.append("        ").append(FACTORY_NAME_PLACEHOLDER).append('(').append(params).append(") {\n");
+        sb.append(assignments);
+        sb.append("        }\n\n");
+        sb.append("        @Override\n");
+        sb.append("        public Class<").append(typeName).append("> type() {\n");
+        sb.append("            return ").append(typeName).append(".class;\n");
+        sb.append("        }\n\n");
+        sb.append("        @Override\n");
+        sb.append("        public ").append(typeName).append(" get() {\n");
+        sb.append("            return new ").append(typeName).append('(').append(args).append(");\n");
+        sb.append("        }\n");
+        sb.append("    }\n");
+        return sb.toString();
+    }
+
+    /**
+     * Determine if a type can be named in source code in the passed package.
+     */
+    private boolean isAccessible(TypeMirror type, PackageElement pkg) {
+        switch (type.getKind()) {
+            case ARRAY:
+                return isAccessible(((ArrayType) type).getComponentType(), pkg);
+            case DECLARED:
+                DeclaredType dt = (DeclaredType) type;
+                if (!isAccessible((TypeElement) dt.asElement(), pkg)) {
+                    return false;
+                }
+                for (TypeMirror arg : dt.getTypeArguments()) {
+                    if (!isAccessible(arg, pkg)) {
+                        return false;
+                    }
+                }
+                return true;
+            case WILDCARD:
+                WildcardType wild = (WildcardType) type;
+                return (wild.getExtendsBound() == null || isAccessible(wild.getExtendsBound(), pkg))
+                        && (wild.getSuperBound() == null || isAccessible(wild.getSuperBound(), pkg));
+            case TYPEVAR:
+                return false;
+            default:
+                return type.getKind().isPrimitive();
+        }
+    }
+
+    private boolean isAccessible(TypeElement type, PackageElement pkg) {
+        boolean samePackage = pkg.equals(findPackage(type));
+        for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            Set<Modifier> mods = e.getModifiers();
+            if (mods.contains(Modifier.PRIVATE) || (!samePackage && !mods.contains(Modifier.PUBLIC))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean hasScopeAnnotation(TypeElement type) {
+        for (AnnotationMirror am : type.getAnnotationMirrors()) {
+            for (AnnotationMirror meta : am.getAnnotationType().asElement().getAnnotationMirrors()) {
+                String name = meta.getAnnotationType().toString();
+                if (SCOPE_FQN.equals(name) || SCOPE_ANNOTATION_FQN.equals(name)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean isProvider(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return false;
+        }
+        String raw = ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+        return PROVIDER_FQN.equals(raw) || GUICE_PROVIDER_FQN.equals(raw);
+    }
+
+    private boolean isInjectAnnotated(Element el) {
+        for (AnnotationMirror am : el.getAnnotationMirrors()) {
+            String name = am.getAnnotationType().toString();
+            if (INJECT_FQN.equals(name) || GUICE_INJECT_FQN.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasInjectedMembers(TypeElement type) {
+        TypeElement curr = type;
+        while (curr != null && !ACTEUR_FQN.equals(curr.getQualifiedName().toString())) {
+            for (Element e : curr.getEnclosedElements()) {
+                if ((e.getKind() == ElementKind.FIELD || e.getKind() == ElementKind.METHOD) && isInjectAnnotated(e)) {
+                    return true;
+                }
+            }
+            TypeMirror sup = curr.getSuperclass();
+            curr = sup.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) sup).asElement() : null;
+        }
+        return false;
+    }
+
+    private String qualifiers(VariableElement param, PackageElement pkg) {
+        StringBuilder sb = new StringBuilder();
+        for (AnnotationMirror am : param.getAnnotationMirrors()) {
+            for (AnnotationMirror meta : am.getAnnotationType().asElement().getAnnotationMirrors()) {
+                String name = meta.getAnnotationType().toString();
+                if (QUALIFIER_FQN.equals(name) || BINDING_ANNOTATION_FQN.equals(name)) {
+                    if (!isAccessible(am.getAnnotationType(), pkg)) {
+                        return null;
+                    }
+                    sb.append(am).append(' ');
+                    break;
+                }
+            }
+        }
+        return sb.toString();
+    }
+
     @SuppressWarnings("unchecked")
     private String generatePageSource(TypeElement typeElement, AtomicBoolean error, AnnotationUtils utils) throws IOException {
         PackageElement pkg = findPackage(typeElement);
@@ -316,15 +581,40 @@ public class HttpCallAnnotationProcessor extends IndexGeneratingProcessor<Line>
             }
             ps.println("@" + GENERATED_FROM_ANNOTATION + "(" + typeElement.asType().toString() + ".class)");
             ps.println("\npublic final class " + className + " extends " + PAGE_FQN + " {\n");
-            ps.println("    " + className + "(){");
+            // Where we can, generate an instantiator for each acteur, so the
+            // page does not need Guice to reflectively construct them on
+            // every request
+            List<String> steps = new ArrayList<>();
+            List<String> comments = new ArrayList<>();
+            List<String> factories = new ArrayList<>();
             for (String p : precursorClassNames) {
-                ps.println("        add(" + p + ".class); // precursor");
+                addStep(p, "precursor", pkg, steps, comments, factories, error);
             }
-            ps.println("        add(" + typeElement.getQualifiedName() + ".class); // generator");
+            addStep(typeElement.getQualifiedName().toString(), "generator", pkg, steps, comments, factories, error);
             for (String p : denoumentClassNames) {
-                ps.println("        add(" + p + ".class); // concluder");
+                addStep(p, "concluder", pkg, steps, comments, factories, error);
+            }
+            if (factories.isEmpty()) {
+                ps.println("    " + className + "(){");
+            } else {
+                ps.println("    @" + INJECT_FQN);
+                ps.print("    " + className + "(");
+                for (int i = 0; i < factories.size(); i++) {
+                    if (i > 0) {
+                        ps.print(", ");
+                    }
+                    ps.print(FACTORY_PREFIX + i + " f" + i);
+                }
+                ps.println("){");
+            }
+            for (int i = 0; i < steps.size(); i++) {
+                ps.println("        add(" + steps.get(i) + "); // " + comments.get(i));
             }
             ps.println("    }");
+            for (int i = 0; i < factories.size(); i++) {
+                ps.println();
+                ps.print(factories.get(i).replace(FACTORY_NAME_PLACEHOLDER, FACTORY_PREFIX + i));
+            }
             ps.println("}");
             ps.flush();
         }
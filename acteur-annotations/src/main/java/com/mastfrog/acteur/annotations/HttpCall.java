@@ -13,6 +13,15 @@ import java.lang.annotation.Target;
  * constructor. If this annotation is supplied to subtypes of Acteur, then a
  * Page subtype is generated by the annotation processor, and that is what will
  * be looked up.
+ * <p>
+ * Where it can, the generated page constructs its acteurs (precursors and
+ * concluders included) by calling their constructors directly, with arguments
+ * obtained from Providers, rather than asking Guice for an instance of the
+ * class on each request. That means a binding of the acteur type itself in a
+ * module (<code>bind(MyActeur.class).to(...)</code>) and method interceptors
+ * on it are <i>not</i> honored. Acteurs which have injected fields or
+ * methods, carry a scope annotation, or whose constructor arguments are not
+ * visible from the page's package are still created by Guice.
  *
  * @author Tim Boudreau
  */
@@ -29,7 +29,6 @@ import com.mastfrog.util.preconditions.ConfigurationError;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
@@ -43,10 +42,18 @@ import java.util.function.Supplier;
  */
 public class ArrayChain<T, C extends ArrayChain<T, C>> implements Chain<T, C> {
 
-    protected final List<Object> types = new LinkedList<>();
+    // Indexed by position on every step, so an ArrayList, not a LinkedList
+    protected final List<Object> types = new ArrayList<>();
     protected final Dependencies deps;
     protected final Class<? super T> type;
     protected AtomicInteger chainPosition;
+    private ExecutionPolicy executionPolicy = ExecutionPolicy.POOLED;
+    private static final ClassValue<Boolean> BLOCKING = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return type.getAnnotation(Blocking.class) != null;
+        }
+    };
 
     @SuppressWarnings("unchecked")
     public ArrayChain(Dependencies deps, Class<? super T> type, List<Object> objs) {
@@ -61,6 +68,8 @@ public class ArrayChain<T, C extends ArrayChain<T, C>> implements Chain<T, C> {
                     throw new ConfigurationError(c.getName() + " is not a subtype of " + type.getName());
                 }
                 this.add((Class<? extends T>) o);
+            } else if (o instanceof Instantiator<?>) {
+                this.add((Instantiator<? extends T>) o);
             } else {
                 T t = (T) type.cast(o);
                 this.add(t);
@@ -84,9 +93,10 @@ public class ArrayChain<T, C extends ArrayChain<T, C>> implements Chain<T, C> {
         for (int i = pos; i < types.size(); i++) {
             rem.add(types.get(i));
         }
+        ExecutionPolicy policy = executionPolicy;
         return () -> {
             List<Object> l = new ArrayList<>(rem);
-            return (C) new ArrayChain<T, C>(deps, type, l);
+            return (C) new ArrayChain<T, C>(deps, type, l).setExecutionPolicy(policy);
         };
     }
 
@@ -112,6 +122,23 @@ public class ArrayChain<T, C extends ArrayChain<T, C>> implements Chain<T, C> {
         return (C) this;
     }
 
+    /**
+     * Add an instantiator, which will be called to create the element when
+     * the chain reaches it.
+     *
+     * @param factory The instantiator
+     * @return this
+     */
+    @SuppressWarnings("unchecked")
+    public final C add(Instantiator<? extends T> factory) {
+        Checks.notNull("factory", factory);
+        if (!this.type.isAssignableFrom(factory.type())) {
+            throw new ConfigurationError(factory.type().getName() + " is not a " + this.type.getName());
+        }
+        types.add(factory);
+        return (C) this;
+    }
+
     private boolean validElement (Object obj) {
         if (type.isInstance(obj)) {
             return true;
@@ -146,6 +173,31 @@ public class ArrayChain<T, C extends ArrayChain<T, C>> implements Chain<T, C> {
         return (C) this;
     }
 
+    @SuppressWarnings("unchecked")
+    public final C setExecutionPolicy(ExecutionPolicy policy) {
+        Checks.notNull("policy", policy);
+        this.executionPolicy = policy;
+        return (C) this;
+    }
+
+    @Override
+    public ExecutionPolicy executionPolicy() {
+        return executionPolicy;
+    }
+
+    @Override
+    public boolean isNextBlocking() {
+        int pos = chainPosition == null ? 0 : chainPosition.get();
+        if (pos >= types.size()) {
+            return false;
+        }
+        Object next = types.get(pos);
+        Class<?> c = next instanceof Class<?> ? (Class<?>) next
+                : next instanceof Instantiator<?> ? ((Instantiator<?>) next).type()
+                : next.getClass();
+        return BLOCKING.get(c);
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public Iterator<T> iterator() {
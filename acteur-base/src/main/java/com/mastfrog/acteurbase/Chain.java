@@ -72,5 +72,26 @@ public interface Chain<T, C extends Chain<T, C>> extends Iterable<T> {
      */
     C insert(T obj);
 
+    /**
+     * Get the policy which determines whether the acteurs in this chain are
+     * each run as a separate task in a thread pool, or inline on the calling
+     * thread.
+     *
+     * @return The execution policy
+     */
+    default ExecutionPolicy executionPolicy() {
+        return ExecutionPolicy.POOLED;
+    }
+
+    /**
+     * Determine if the next element the iterator will return is of a type
+     * annotated with {@link Blocking}, and so should not be run inline.
+     *
+     * @return true if the next acteur blocks
+     */
+    default boolean isNextBlocking() {
+        return false;
+    }
+
     Supplier<C> remnantSupplier(Object... scopeTypes);
 }
@@ -81,6 +81,26 @@ public interface ChainCallback<A extends AbstractActeur<T, R, S>, S extends Acte
      */
     void onAfterRunOne(P chain, A acteur);
 
+    /**
+     * Called when an AbstractActeur has paused the chain using a
+     * {@link Deferral}; nothing more will be run until it is resumed.
+     *
+     * @param chain The chain
+     */
+    default void onDeferred(P chain) {
+        // do nothing
+    }
+
+    /**
+     * Called when a deferred chain is resumed, before the next AbstractActeur
+     * is submitted for execution.
+     *
+     * @param chain The chain
+     */
+    default void onResumed(P chain) {
+        // do nothing
+    }
+
     /**
      * Called if an exception is thrown during processing. Execution of the
      * chain is aborted if this is called.
@@ -91,7 +91,9 @@ public final class ChainRunner {
             // the headers, *if* the first acteur in the first chain fully processes the request
             // - useful for some applications that use @Early, and may provide
             // a slight performance boost
-            if (firstSync) {
+            // Chains with an inline execution policy also start on the calling
+            // thread, unless the first acteur is known to block
+            if (firstSync || cc.runInline()) {
                 try {
                     cc.call();
                 } catch (Exception ex) {
@@ -183,93 +185,116 @@ public final class ChainRunner {
             }
         }
 
+        boolean runInline() {
+            return chain.executionPolicy() == ExecutionPolicy.INLINE
+                    && !chain.isNextBlocking();
+        }
+
         @Override
         public Void call() throws Exception {
             if (cancelled.get()) {
                 return null;
             }
             try (AutoCloseable ctx = scope.enter(chain.getContextContribution())) {
-                AutoCloseable ac = null;
-                // Optimization - only reenter the scope if we have some state
-                // from previous acteurs to incorporate into it
-                synchronized (this) {
-                    if (this.state.length > 0) {
-                        ac = scope.enter(this.state);
+                // Under the inline policy, keep going on this thread until an
+                // acteur finishes the chain, defers it, or is marked @Blocking
+                while (runOne()) {
+                    if (cancelled.get()) {
+                        break;
                     }
                 }
-                S newState = null;
-                try {
-                    A a2 = null;
-                    onDone.onBeforeRunOne(chain);
-                    onDone.onBeforeRunOne(chain, responses);
-                    // Instantiate the next acteur, most likely causing its
-                    // constructor to set its state
-                    a2 = iter.next();
-                    // Get the state, which may compute the state if it is lazy
-                    newState = a2.getState();
-                    onDone.onAfterRunOne(chain, a2, newState);
-                    // Add any objects it provided into the scope for the next
-                    // invocation
-                    addToContext(newState);
-                    if (newState.isRejected()) {
-                        onDone.onRejected(newState);
-                        return null;
-                    }
-                } catch (Exception | Error e) {
-                    Throwable t = e;
-                    if (e instanceof ProvisionException && e.getCause() != null) {
-                        t = e.getCause();
-                    }
-                    onDone.onFailure(t);
-                    return null;
-                } finally {
-                    if (ac != null) {
-                        ac.close();
-                    }
+                return null;
+            } catch (Exception | Error e) {
+                onDone.onFailure(e);
+                return null;
+            }
+        }
+
+        /**
+         * Run the next acteur in the chain.
+         *
+         * @return true if the caller should run the next acteur on the
+         * current thread
+         */
+        private boolean runOne() throws Exception {
+            AutoCloseable ac = null;
+            // Optimization - only reenter the scope if we have some state
+            // from previous acteurs to incorporate into it
+            synchronized (this) {
+                if (this.state.length > 0) {
+                    ac = scope.enter(this.state);
                 }
-                if (cancelled.get()) {
-                    return null;
+            }
+            S newState = null;
+            try {
+                A a2 = null;
+                onDone.onBeforeRunOne(chain);
+                onDone.onBeforeRunOne(chain, responses);
+                // Instantiate the next acteur, most likely causing its
+                // constructor to set its state
+                a2 = iter.next();
+                // Get the state, which may compute the state if it is lazy
+                newState = a2.getState();
+                onDone.onAfterRunOne(chain, a2, newState);
+                // Add any objects it provided into the scope for the next
+                // invocation
+                addToContext(newState);
+                if (newState.isRejected()) {
+                    onDone.onRejected(newState);
+                    return false;
                 }
-                // Get the response, which may be null if it was untouched by the
-                // acteurs execution
-                R resp = newState.response();
-                if (resp != null) {
-                    // Add it into the set of response objects the OnDone will
-                    // coalesce
-                    synchronized (this) {
-                        responses.add(resp);
-                    }
+            } catch (Exception | Error e) {
+                Throwable t = e;
+                if (e instanceof ProvisionException && e.getCause() != null) {
+                    t = e.getCause();
+                }
+                onDone.onFailure(t);
+                return false;
+            } finally {
+                if (ac != null) {
+                    ac.close();
+                }
+            }
+            if (cancelled.get()) {
+                return false;
+            }
+            // Get the response, which may be null if it was untouched by the
+            // acteurs execution
+            R resp = newState.response();
+            if (resp != null) {
+                // Add it into the set of response objects the OnDone will
+                // coalesce
+                synchronized (this) {
+                    responses.add(resp);
                 }
-                // See if we're done
-                if (!newState.isFinished()) {
-                    // If no more Acteurs, tell the callback we give up
-                    if (!iter.hasNext()) {
-                        onDone.onNoResponse();
-                    } else if (deferred.get()) {
-                        Deferral.DeferredCode code = deferredCode.getAndSet(null);
-                        next = scope.wrap(this);
-                        if (code != null) {
-                            code.run(this);
-                        }
-                    } else if (!cancelled.get()) {
-                        if (allSync) {
-                            this.call();
-                        } else {
-                            svc.submit(scope.wrap(this));
-                        }
+            }
+            // See if we're done
+            if (!newState.isFinished()) {
+                // If no more Acteurs, tell the callback we give up
+                if (!iter.hasNext()) {
+                    onDone.onNoResponse();
+                } else if (deferred.get()) {
+                    Deferral.DeferredCode code = deferredCode.getAndSet(null);
+                    next = scope.wrap(this);
+                    onDone.onDeferred(chain);
+                    if (code != null) {
+                        code.run(this);
                     }
-                } else {
-                    // Ensure any ResponseDecorators are run with full
-                    // scope contents
-                    try (QuietAutoCloseable cl = scope.enter(state)) {
-                        onDone.onDone(newState, responses);
+                } else if (!cancelled.get()) {
+                    if (allSync || runInline()) {
+                        return true;
+                    } else {
+                        svc.submit(scope.wrap(this));
                     }
                 }
-                return null;
-            } catch (Exception | Error e) {
-                onDone.onFailure(e);
-                return null;
+            } else {
+                // Ensure any ResponseDecorators are run with full
+                // scope contents
+                try (QuietAutoCloseable cl = scope.enter(state)) {
+                    onDone.onDone(newState, responses);
+                }
             }
+            return false;
         }
 
         @Override
@@ -279,6 +304,7 @@ public final class ChainRunner {
             }
             if (deferred.compareAndSet(true, false)) {
                 addToContext(addToContext);
+                onDone.onResumed(chain);
                 Callable<?> next = this.next;
                 if (next != null) {
                     svc.submit(next);
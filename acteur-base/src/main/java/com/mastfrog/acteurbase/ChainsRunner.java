@@ -24,11 +24,13 @@
 package com.mastfrog.acteurbase;
 
 import com.mastfrog.giulius.scope.ReentrantScope;
+import com.mastfrog.util.preconditions.Checks;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Runs multiple chains, calling the callback when one has finished the work.
@@ -40,6 +42,7 @@ public class ChainsRunner {
     private final ExecutorService svc;
     private final ReentrantScope scope;
     private final ChainRunner chainRunner;
+    private final ExecutionPolicy dispatchPolicy;
 
     /**
      * Create a ChainsRunner
@@ -50,9 +53,27 @@ public class ChainsRunner {
      * @param chainRunner A runner which will run individual chains
      */
     public ChainsRunner(ExecutorService svc, ReentrantScope scope, ChainRunner chainRunner) {
+        this(svc, scope, chainRunner, ExecutionPolicy.POOLED);
+    }
+
+    /**
+     * Create a ChainsRunner
+     *
+     * @param svc The ExecutorService which will provide threads to run the work
+     * @param scope The scope types AbstractActeurs pass between them will be
+     * bound in
+     * @param chainRunner A runner which will run individual chains
+     * @param dispatchPolicy Whether selecting the next chain to run should be
+     * done in a task submitted to the executor, or on the calling thread; each
+     * chain's own {@link Chain#executionPolicy()} still determines how its
+     * acteurs are run
+     */
+    public ChainsRunner(ExecutorService svc, ReentrantScope scope, ChainRunner chainRunner, ExecutionPolicy dispatchPolicy) {
+        Checks.notNull("dispatchPolicy", dispatchPolicy);
         this.svc = svc;
         this.scope = scope;
         this.chainRunner = chainRunner;
+        this.dispatchPolicy = dispatchPolicy;
     }
 
     /**
@@ -86,7 +107,16 @@ public class ChainsRunner {
      */
     public <A extends AbstractActeur<T, R, S>, S extends ActeurState<T, R>, P extends Chain<? extends A, ?>, T, R extends T>
             void submit(Iterable<P> chains, ChainCallback<A, S, P, T, R> onDone, AtomicBoolean cancelled, Object... initialContext) {
-        svc.submit(scope.wrap(new OneChainRun<>(svc, onDone, chains.iterator(), cancelled), initialContext));
+        Callable<Void> run = scope.wrap(new OneChainRun<>(svc, onDone, chains.iterator(), cancelled), initialContext);
+        if (dispatchPolicy == ExecutionPolicy.INLINE) {
+            try {
+                run.call();
+            } catch (Exception ex) {
+                onDone.onFailure(ex);
+            }
+        } else {
+            svc.submit(run);
+        }
     }
 
     class OneChainRun<A extends AbstractActeur<T, R, S>, S extends ActeurState<T, R>, P extends Chain<? extends A,?>, T, R extends T> implements ChainCallback<A, S, P, T, R>, Callable<Void> {
@@ -96,6 +126,11 @@ public class ChainsRunner {
         private final ChainCallback<A, S, P, T, R> onDone;
         private final Iterator<P> iter;
         private final AtomicBoolean cancelled;
+        // Under the inline policy, the number of requests to advance to the
+        // next chain which have not been handled yet; only the caller which
+        // raises it from zero runs chains, so a chain rejected on the same
+        // stack does not recurse into call()
+        private final AtomicInteger pendingAdvances = new AtomicInteger();
 
         public OneChainRun(ExecutorService svc, ChainCallback<A, S, P, T, R> onDone, Iterator<P> iter, AtomicBoolean cancelled) {
             this.svc = svc;
@@ -109,6 +144,12 @@ public class ChainsRunner {
             boolean hasNext = iter.hasNext();
             if (!hasNext) {
                 this.onDone.onNoResponse();
+            } else if (dispatchPolicy == ExecutionPolicy.INLINE) {
+                try {
+                    call();
+                } catch (Exception ex) {
+                    onFailure(ex);
+                }
             } else {
                 svc.submit(this);
             }
@@ -116,8 +157,19 @@ public class ChainsRunner {
 
         @Override
         public Void call() throws Exception {
+            if (dispatchPolicy != ExecutionPolicy.INLINE) {
+                runNextChain();
+            } else if (pendingAdvances.getAndIncrement() == 0) {
+                do {
+                    runNextChain();
+                } while (pendingAdvances.decrementAndGet() != 0);
+            }
+            return null;
+        }
+
+        private void runNextChain() {
             if (cancelled.get()) {
-                return null;
+                return;
             }
             try {
                 boolean hasNext = iter.hasNext();
@@ -130,7 +182,6 @@ public class ChainsRunner {
             } catch (Exception e) {
                 e.printStackTrace();
             }
-            return null;
         }
 
         @Override
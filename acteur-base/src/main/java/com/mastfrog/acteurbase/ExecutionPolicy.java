@@ -0,0 +1,64 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteurbase;
+
+/**
+ * Determines how a {@link ChainRunner} moves from one acteur in a chain to the
+ * next.
+ *
+ * @author Tim Boudreau
+ */
+public enum ExecutionPolicy {
+    /**
+     * Each acteur is run in a new task submitted to the runner's
+     * ExecutorService (the historical behavior).
+     */
+    POOLED,
+    /**
+     * Acteurs are run one after another on whatever thread invoked the chain,
+     * which may be the event loop. The chain only moves to the thread pool
+     * when it is resumed after a {@link Deferral}, or when the next acteur's
+     * type is annotated with {@link Blocking}.
+     */
+    INLINE;
+
+    /**
+     * Parse a policy name from settings, case-insensitively, falling back to
+     * the passed default if null or unrecognized.
+     *
+     * @param name A name, such as <code>inline</code>
+     * @param defaultValue The fallback
+     * @return A policy
+     */
+    public static ExecutionPolicy parse(String name, ExecutionPolicy defaultValue) {
+        if (name != null) {
+            for (ExecutionPolicy p : values()) {
+                if (p.name().equalsIgnoreCase(name.trim())) {
+                    return p;
+                }
+            }
+        }
+        return defaultValue;
+    }
+}
@@ -35,7 +35,8 @@ import javax.inject.Inject;
 /**
  * Creates a typed iterator over a List&lt;Object&gt; which may contain either
  * objects of the given type, or class objects of subtypes of the type, in which
- * case they should be instantiated using Guice and the instance returned.
+ * case they should be instantiated using Guice and the instance returned, or
+ * {@link Instantiator}s, which are called to create the instance.
  *
  * @author Tim Boudreau
  */
@@ -72,6 +73,8 @@ public final class InstantiatingIterators {
             public T convert(Object t) {
                 if (t instanceof Class<?>) {
                     return type.cast(deps.getInstance((Class<?>) t));
+                } else if (t instanceof Instantiator<?>) {
+                    return type.cast(((Instantiator<?>) t).get());
                 } else {
                     return type.cast(t);
                 }
@@ -38,15 +38,19 @@ import java.io.IOException;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
 import org.junit.After;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import org.junit.Before;
 import org.junit.Test;
@@ -117,6 +121,101 @@ public class ChainRunnerTest {
         callback.throwIfError().assertNoResponse();
     }
 
+    @Test(timeout = 10000)
+    public void testInlineExecutionPolicy() throws Throwable {
+        ranOn.clear();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        ChainRunner cr = new ChainRunner(svc, scope);
+        ArrayChain<AbstractActeur<Response, ResponseImpl, ActeurState<Response, ResponseImpl>>, ?> inline = new NamedChain("Inline", deps, AbstractActeur.class)
+                .add(InlineA1.class).add(InlineA2.class).add(BlockingA.class).add(InlineEndA.class)
+                .setExecutionPolicy(ExecutionPolicy.INLINE);
+        TestCallback callback = new TestCallback();
+        Thread caller = Thread.currentThread();
+        try (AutoCloseable cl = scope.enter()) {
+            cr.submit(inline, callback, cancelled);
+        }
+        callback.throwIfError().assertGotResponse().assertActeurClass(InlineEndA.class);
+        assertSame(caller, ranOn.get(InlineA1.class));
+        assertSame(caller, ranOn.get(InlineA2.class));
+        assertNotSame("@Blocking acteur should be run in the pool", caller, ranOn.get(BlockingA.class));
+        assertSame("Chain should continue inline on the pool thread",
+                ranOn.get(BlockingA.class), ranOn.get(InlineEndA.class));
+    }
+
+    @Test(timeout = 20000)
+    public void testInlineDispatchDoesNotRecursePerRejectedChain() throws Throwable {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        List<ArrayChain<AbstractActeur<Response, ResponseImpl, ActeurState<Response, ResponseImpl>>, ?>> l = new LinkedList<>();
+        for (int i = 0; i < 2000; i++) {
+            l.add(new NamedChain("Reject " + i, deps, AbstractActeur.class)
+                    .add(DepthRecordingRejecter.class).setExecutionPolicy(ExecutionPolicy.INLINE));
+        }
+        l.add(new NamedChain("End", deps, AbstractActeur.class)
+                .add(EndA.class).setExecutionPolicy(ExecutionPolicy.INLINE));
+        ChainsRunner cr = new ChainsRunner(svc, scope, new ChainRunner(svc, scope), ExecutionPolicy.INLINE);
+        TestCallback callback = new TestCallback();
+        DepthRecordingRejecter.minDepth = Integer.MAX_VALUE;
+        DepthRecordingRejecter.maxDepth = 0;
+        cr.submit(l, callback, cancelled);
+        callback.throwIfError().assertGotResponse().assertActeurClass(EndA.class);
+        assertTrue("Stack grew from " + DepthRecordingRejecter.minDepth + " to "
+                + DepthRecordingRejecter.maxDepth + " frames over rejected chains",
+                DepthRecordingRejecter.maxDepth - DepthRecordingRejecter.minDepth < 20);
+    }
+
+    static class DepthRecordingRejecter extends A2 {
+
+        // Only touched on the submitting thread
+        static int minDepth;
+        static int maxDepth;
+
+        DepthRecordingRejecter() {
+            int depth = Thread.currentThread().getStackTrace().length;
+            minDepth = Math.min(minDepth, depth);
+            maxDepth = Math.max(maxDepth, depth);
+            super.reject();
+        }
+    }
+
+    static final Map<Class<?>, Thread> ranOn = new ConcurrentHashMap<>();
+
+    static class InlineA1 extends A2 {
+
+        InlineA1() {
+            ranOn.put(InlineA1.class, Thread.currentThread());
+            setState(new ActeurState<Response, ResponseImpl>("hello"));
+        }
+    }
+
+    static class InlineA2 extends A2 {
+
+        @Inject
+        InlineA2(String msg) {
+            ranOn.put(InlineA2.class, Thread.currentThread());
+            setState(new ActeurState<Response, ResponseImpl>(false));
+        }
+    }
+
+    @Blocking
+    static class BlockingA extends A2 {
+
+        @Inject
+        BlockingA(String msg) {
+            ranOn.put(BlockingA.class, Thread.currentThread());
+            setState(new ActeurState<Response, ResponseImpl>(false));
+        }
+    }
+
+    static class InlineEndA extends A2 {
+
+        @Inject
+        InlineEndA(String msg) {
+            ranOn.put(InlineEndA.class, Thread.currentThread());
+            response().setStatus(HttpResponseStatus.OK);
+            setState(new ActeurState<Response, ResponseImpl>(false));
+        }
+    }
+
     static class NamedChain extends ArrayChain<AbstractActeur<Response, ResponseImpl, ActeurState<Response, ResponseImpl>>, NamedChain> {
 
         private final String name;
@@ -0,0 +1,113 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.google.common.net.MediaType;
+import com.mastfrog.acteur.server.BenchmarkApplication;
+import com.mastfrog.giulius.Dependencies;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Request body conversion with ContentConverter.toObject(), as configured in a
+ * real server, for a concrete class, an interface (which goes through a map
+ * and a proxy) and a plain string.
+ *
+ * @author Tim Boudreau
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContentConverterBenchmark {
+
+    private static final ByteBuf JSON = Unpooled.unreleasableBuffer(Unpooled.copiedBuffer(
+            "{\"name\":\"thing\",\"count\":23,\"tags\":[\"a\",\"b\",\"c\"]}", UTF_8));
+    private Dependencies deps;
+    private ContentConverter converter;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        deps = BenchmarkApplication.dependencies();
+        converter = deps.getInstance(ContentConverter.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        deps.shutdown();
+    }
+
+    @Benchmark
+    public Thing toConcreteType() throws Exception {
+        return converter.toObject(JSON.duplicate(), MediaType.JSON_UTF_8, Thing.class);
+    }
+
+    @Benchmark
+    public ThingInterface toInterfaceType() throws Exception {
+        return converter.toObject(JSON.duplicate(), MediaType.JSON_UTF_8, ThingInterface.class);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> toMap() throws Exception {
+        return converter.toObject(JSON.duplicate(), MediaType.JSON_UTF_8, Map.class);
+    }
+
+    @Benchmark
+    public String toText() throws Exception {
+        return converter.toObject(JSON.duplicate(), MediaType.PLAIN_TEXT_UTF_8, String.class);
+    }
+
+    public static final class Thing {
+
+        public String name;
+        public int count;
+        public List<String> tags;
+    }
+
+    public interface ThingInterface {
+
+        String name();
+
+        int count();
+    }
+}
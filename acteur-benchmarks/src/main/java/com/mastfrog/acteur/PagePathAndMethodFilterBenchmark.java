@@ -0,0 +1,158 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import static com.mastfrog.acteur.headers.Method.GET;
+import static com.mastfrog.acteur.headers.Method.POST;
+import static com.mastfrog.acteur.headers.Method.PUT;
+import com.mastfrog.acteur.preconditions.Methods;
+import com.mastfrog.acteur.preconditions.Path;
+import com.mastfrog.acteur.preconditions.PathRegex;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpVersion;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Route matching: PagePathAndMethodFilter.listFor() and match() for exact,
+ * glob and regex routes, with warm caches and with a zero-sized cache which
+ * forces every lookup down the slow path.
+ *
+ * @author Tim Boudreau
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PagePathAndMethodFilterBenchmark {
+
+    private PagePathAndMethodFilter cached;
+    private PagePathAndMethodFilter uncached;
+    private final HttpRequest exact = request(HttpMethod.GET, "/api/status");
+    private final HttpRequest glob = request(HttpMethod.GET, "/api/users/joe/profile?verbose=true");
+    private final HttpRequest regex = request(HttpMethod.PUT, "/api/items/12345");
+    private final HttpRequest miss = request(HttpMethod.GET, "/no/such/thing");
+
+    @Setup
+    public void setup() {
+        cached = populate(new PagePathAndMethodFilter("/", 2048));
+        uncached = populate(new PagePathAndMethodFilter("/", 0));
+        // Warm the caches
+        for (HttpRequest req : new HttpRequest[]{exact, glob, regex, miss}) {
+            cached.match(req);
+        }
+    }
+
+    private static PagePathAndMethodFilter populate(PagePathAndMethodFilter filter) {
+        filter.add(StatusPage.class);
+        filter.add(ProfilePage.class);
+        filter.add(ItemPage.class);
+        filter.add(CreatePage.class);
+        filter.add(AssetsPage.class);
+        return filter;
+    }
+
+    @Benchmark
+    public List<Object> listForExact() {
+        return cached.listFor(exact);
+    }
+
+    @Benchmark
+    public List<Object> listForGlob() {
+        return cached.listFor(glob);
+    }
+
+    @Benchmark
+    public List<Object> listForRegex() {
+        return cached.listFor(regex);
+    }
+
+    @Benchmark
+    public List<Object> listForMiss() {
+        return cached.listFor(miss);
+    }
+
+    @Benchmark
+    public boolean matchCached() {
+        return cached.match(glob);
+    }
+
+    @Benchmark
+    public boolean matchUncached() {
+        return uncached.match(glob);
+    }
+
+    @Benchmark
+    public boolean matchUncachedMiss() {
+        return uncached.match(miss);
+    }
+
+    private static HttpRequest request(HttpMethod method, String uri) {
+        return new DefaultHttpRequest(HttpVersion.HTTP_1_1, method, uri);
+    }
+
+    @Path("/api/status")
+    @Methods(GET)
+    static final class StatusPage extends Page {
+
+    }
+
+    @Path("/api/users/*/profile")
+    @Methods(GET)
+    static final class ProfilePage extends Page {
+
+    }
+
+    @PathRegex("^api\\/items\\/\\d+$")
+    @Methods({GET, PUT})
+    static final class ItemPage extends Page {
+
+    }
+
+    @Path("/api/items")
+    @Methods(POST)
+    static final class CreatePage extends Page {
+
+    }
+
+    @Path("/static/*")
+    @Methods(GET)
+    static final class AssetsPage extends Page {
+
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.google.common.net.MediaType;
+import com.mastfrog.acteur.headers.Headers;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.HttpResponse;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Response assembly: several acteurs each contributing headers, coalescing
+ * their responses, and converting the result into a Netty HttpResponse with
+ * toResponse().
+ *
+ * @author Tim Boudreau
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseImplBenchmark {
+
+    private static final ByteBuf BODY = Unpooled.unreleasableBuffer(
+            Unpooled.copiedBuffer("{\"hello\":\"world\"}", UTF_8));
+    private static final ZonedDateTime MODIFIED = ZonedDateTime.of(2019, 3, 1, 12, 0, 0, 0, ZoneId.of("GMT"));
+
+    @Benchmark
+    public HttpResponse singleResponseToResponse() throws Exception {
+        ResponseImpl resp = new ResponseImpl();
+        resp.add(Headers.CONTENT_TYPE, MediaType.JSON_UTF_8);
+        resp.add(Headers.ETAG, "abcdef");
+        resp.add(Headers.LAST_MODIFIED, MODIFIED);
+        resp.status(OK);
+        resp.content(BODY.duplicate());
+        // With a ByteBuf body, toResponse() does not need the event
+        return resp.toResponse(null, UTF_8);
+    }
+
+    @Benchmark
+    public HttpResponse chainOfResponsesToResponse() throws Exception {
+        List<ResponseImpl> chain = new ArrayList<>(4);
+        ResponseImpl first = new ResponseImpl();
+        first.add(Headers.ETAG, "abcdef");
+        first.add(Headers.LAST_MODIFIED, MODIFIED);
+        chain.add(first);
+        ResponseImpl.shadowResponses.set(chain);
+        ResponseImpl second = new ResponseImpl();
+        second.add(Headers.SERVER, "acteur");
+        chain.add(second);
+        ResponseImpl.shadowResponses.set(chain);
+        ResponseImpl third = new ResponseImpl();
+        third.add(Headers.CONTENT_TYPE, MediaType.JSON_UTF_8);
+        third.status(OK);
+        third.content(BODY.duplicate());
+        chain.add(third);
+        return ResponseImpl.coalesce(chain).toResponse(null, UTF_8);
+    }
+}
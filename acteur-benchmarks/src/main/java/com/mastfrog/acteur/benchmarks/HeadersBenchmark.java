@@ -0,0 +1,85 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.benchmarks;
+
+import com.google.common.net.MediaType;
+import com.mastfrog.acteur.headers.Headers;
+import com.mastfrog.acteur.util.CacheControl;
+import io.netty.handler.codec.http.cookie.Cookie;
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing and formatting of the typed headers most requests touch.
+ *
+ * @author Tim Boudreau
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeadersBenchmark {
+
+    private final String date = "Fri, 01 Mar 2019 12:00:00 GMT";
+    private final String contentType = "application/json; charset=UTF-8";
+    private final String cacheControl = "public, max-age=3600, must-revalidate";
+    private final String cookies = "session=abc123def456; theme=dark; lang=en-US";
+    private final ZonedDateTime when = Headers.DATE.toValue(date);
+
+    @Benchmark
+    public ZonedDateTime parseDate() {
+        return Headers.IF_MODIFIED_SINCE.toValue(date);
+    }
+
+    @Benchmark
+    public CharSequence formatDate() {
+        return Headers.LAST_MODIFIED.toCharSequence(when);
+    }
+
+    @Benchmark
+    public MediaType parseContentType() {
+        return Headers.CONTENT_TYPE.toValue(contentType);
+    }
+
+    @Benchmark
+    public CacheControl parseCacheControl() {
+        return Headers.CACHE_CONTROL.toValue(cacheControl);
+    }
+
+    @Benchmark
+    public Cookie[] parseCookies() {
+        return Headers.COOKIE_B.toValue(cookies);
+    }
+}
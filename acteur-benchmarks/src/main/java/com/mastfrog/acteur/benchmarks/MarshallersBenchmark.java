@@ -0,0 +1,111 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mastfrog.marshallers.netty.NettyContentMarshallers;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing response bodies with NettyContentMarshallers.write() - strings, raw
+ * bytes and JSON - into pooled buffers.
+ *
+ * @author Tim Boudreau
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MarshallersBenchmark {
+
+    private NettyContentMarshallers marshallers;
+    private final Map<String, Object> map = new LinkedHashMap<>();
+    private final Thing thing = new Thing();
+    private final String text = "Hello world, this is a response body of moderate length.";
+    private final byte[] bytes = text.getBytes(UTF_8);
+    private final PooledByteBufAllocator alloc = PooledByteBufAllocator.DEFAULT;
+
+    @Setup
+    public void setup() {
+        marshallers = NettyContentMarshallers.getDefault(new ObjectMapper());
+        map.put("name", "thing");
+        map.put("count", 23);
+        map.put("tags", Arrays.asList("a", "b", "c"));
+    }
+
+    @Benchmark
+    public int writeString() throws Exception {
+        return write(text);
+    }
+
+    @Benchmark
+    public int writeBytes() throws Exception {
+        return write(bytes);
+    }
+
+    @Benchmark
+    public int writeJsonMap() throws Exception {
+        return write(map);
+    }
+
+    @Benchmark
+    public int writeJsonObject() throws Exception {
+        return write(thing);
+    }
+
+    private int write(Object o) throws Exception {
+        ByteBuf buf = alloc.ioBuffer();
+        try {
+            marshallers.write(o, buf, UTF_8);
+            return buf.readableBytes();
+        } finally {
+            buf.release();
+        }
+    }
+
+    public static final class Thing {
+
+        public String name = "thing";
+        public int count = 23;
+        public String[] tags = {"a", "b", "c"};
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.server;
+
+import com.mastfrog.acteur.Acteur;
+import com.mastfrog.acteur.Application;
+import com.mastfrog.acteur.HttpEvent;
+import com.mastfrog.acteur.Page;
+import static com.mastfrog.acteur.headers.Method.GET;
+import static com.mastfrog.acteur.headers.Method.POST;
+import com.mastfrog.acteur.preconditions.Methods;
+import com.mastfrog.acteur.preconditions.Path;
+import com.mastfrog.giulius.Dependencies;
+import com.mastfrog.settings.SettingsBuilder;
+import java.io.IOException;
+import java.util.Map;
+import javax.inject.Inject;
+
+/**
+ * A small application with a handful of routes, used by benchmarks which need
+ * a fully configured server (routing tables, codecs, marshallers) without
+ * binding a socket.
+ *
+ * @author Tim Boudreau
+ */
+public final class BenchmarkApplication extends Application {
+
+    BenchmarkApplication() {
+        // Enough routes that matching is not trivially the first one
+        add(ItemsPage.class);
+        add(UsersPage.class);
+        add(EchoPage.class);
+        add(HelloPage.class);
+    }
+
+    /**
+     * Create the dependencies for a server running this application.
+     *
+     * @return The dependencies
+     * @throws IOException If settings cannot be loaded
+     */
+    public static Dependencies dependencies() throws IOException {
+        return new ServerBuilder()
+                .applicationClass(BenchmarkApplication.class)
+                .disableHelp()
+                .disableCORS()
+                .add(new SettingsBuilder()
+                        .add(ServerModule.SETTINGS_KEY_ROUTE_MATCH_CACHE_SIZE, 1024)
+                        .build())
+                .toDependenciesBuilder()
+                .build();
+    }
+
+    @Path("/items/*")
+    @Methods(GET)
+    static final class ItemsPage extends Page {
+
+        ItemsPage() {
+            add(HelloActeur.class);
+        }
+    }
+
+    @Path("/users/*/profile")
+    @Methods(GET)
+    static final class UsersPage extends Page {
+
+        UsersPage() {
+            add(HelloActeur.class);
+        }
+    }
+
+    @Path("/echo")
+    @Methods(POST)
+    static final class EchoPage extends Page {
+
+        EchoPage() {
+            add(EchoActeur.class);
+        }
+    }
+
+    @Path("/hello")
+    @Methods(GET)
+    static final class HelloPage extends Page {
+
+        HelloPage() {
+            add(HelloActeur.class);
+        }
+    }
+
+    static final class HelloActeur extends Acteur {
+
+        HelloActeur() {
+            ok("Hello world");
+        }
+    }
+
+    static final class EchoActeur extends Acteur {
+
+        @Inject
+        EchoActeur(HttpEvent evt) throws Exception {
+            ok(evt.jsonContent(Map.class));
+        }
+    }
+}
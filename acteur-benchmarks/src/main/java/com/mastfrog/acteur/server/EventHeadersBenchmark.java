@@ -0,0 +1,106 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.server;
+
+import com.mastfrog.acteur.headers.HeaderValueType;
+import com.mastfrog.acteur.headers.Headers;
+import com.mastfrog.settings.SettingsBuilder;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpVersion;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The typed-header lookups a typical request makes over its lifetime - the
+ * same few headers asked for by several acteurs, decorators and the response
+ * code - through EventImpl's per-request memoization, compared with parsing
+ * on every lookup as it used to. Run with the GC profiler to see the
+ * allocation difference per request.
+ *
+ * @author Tim Boudreau
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventHeadersBenchmark {
+
+    private static final HeaderValueType<?>[] LOOKUPS = {
+        Headers.CONTENT_TYPE, Headers.IF_NONE_MATCH, Headers.ACCEPT_ENCODING,
+        Headers.IF_MODIFIED_SINCE, Headers.COOKIE_B, Headers.CONTENT_TYPE,
+        Headers.ACCEPT_ENCODING, Headers.IF_NONE_MATCH, Headers.IF_MODIFIED_SINCE,
+        Headers.CONTENT_TYPE, Headers.COOKIE_B, Headers.ACCEPT_ENCODING
+    };
+    private final InetSocketAddress address = InetSocketAddress.createUnresolved("localhost", 8080);
+    private PathFactory paths;
+    private HttpRequest request;
+
+    @Setup
+    public void setup() throws Exception {
+        paths = new DefaultPathFactory(new SettingsBuilder().build());
+        request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/api/things/1");
+        request.headers().set("Content-Type", "application/json; charset=UTF-8");
+        request.headers().set("If-None-Match", "\"abcdef0123\"");
+        request.headers().set("Accept-Encoding", "gzip, deflate, br");
+        request.headers().set("If-Modified-Since", "Fri, 01 Mar 2019 12:00:00 GMT");
+        request.headers().set("Cookie", "session=abc123def456; theme=dark; lang=en-US");
+    }
+
+    @Benchmark
+    public int memoized() {
+        EventImpl evt = new EventImpl(request, address, null, paths, null, false);
+        int result = 0;
+        for (HeaderValueType<?> type : LOOKUPS) {
+            Object o = evt.header(type);
+            result += o == null ? 0 : 1;
+        }
+        return result;
+    }
+
+    @Benchmark
+    public int reparsed() {
+        EventImpl evt = new EventImpl(request, address, null, paths, null, false);
+        int result = 0;
+        for (HeaderValueType<?> type : LOOKUPS) {
+            String raw = evt.header(type.name());
+            Object o = raw == null ? null : type.toValue(raw);
+            result += o == null ? 0 : 1;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.server;
+
+import com.mastfrog.settings.SettingsBuilder;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A search-style request with two dozen query parameters, of which an
+ * endpoint reads a handful, compared with decoding the whole query string
+ * up front with QueryStringDecoder as EventImpl used to.
+ *
+ * @author Tim Boudreau
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryParametersBenchmark {
+
+    private final InetSocketAddress address = InetSocketAddress.createUnresolved("localhost", 8080);
+    private PathFactory paths;
+    private HttpRequest request;
+
+    @Setup
+    public void setup() throws Exception {
+        paths = new DefaultPathFactory(new SettingsBuilder().build());
+        StringBuilder uri = new StringBuilder("/api/search?q=red+shoes&offset=40&limit=20");
+        for (int i = 0; i < 18; i++) {
+            uri.append("&filter").append(i).append("=value%20").append(i);
+        }
+        uri.append("&tag=a&tag=b&tag=c");
+        request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri.toString());
+    }
+
+    @Benchmark
+    public long indexed() {
+        EventImpl evt = new EventImpl(request, address, null, paths, null, false);
+        long result = evt.longUrlParameter("offset").get() + evt.intUrlParameter("limit").get();
+        result += evt.urlParameter("q").length();
+        result += evt.urlParameters("tag").size();
+        return result;
+    }
+
+    @Benchmark
+    public long decodedUpFront() {
+        QueryStringDecoder dec = new QueryStringDecoder(request.uri());
+        Map<String, List<String>> params = dec.parameters();
+        long result = Long.parseLong(params.get("offset").get(0)) + Integer.parseInt(params.get("limit").get(0));
+        result += params.get("q").get(0).length();
+        result += params.get("tag").size();
+        return result;
+    }
+}
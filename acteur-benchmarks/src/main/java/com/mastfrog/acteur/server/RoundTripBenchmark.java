@@ -0,0 +1,185 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.server;
+
+import com.mastfrog.giulius.Dependencies;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpVersion;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full request round trips through the pipeline PipelineFactoryImpl builds -
+ * decoding, aggregation, routing, the acteur chain, response assembly and
+ * encoding - over an in-VM local channel, so no time is spent in the kernel.
+ * <p>
+ * A local channel is used rather than an EmbeddedChannel because acteurs run
+ * on the worker pool and write from there, and EmbeddedChannel's event loop
+ * is not thread-safe.
+ *
+ * @author Tim Boudreau
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoundTripBenchmark {
+
+    private static final byte[] ECHO_BODY = "{\"name\":\"thing\",\"count\":23,\"tags\":[\"a\",\"b\"]}".getBytes(UTF_8);
+    private Dependencies deps;
+    private EventLoopGroup group;
+    private Channel server;
+    private Channel client;
+    private ResponseCollector collector;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        deps = BenchmarkApplication.dependencies();
+        PipelineFactoryImpl pipelineFactory = deps.getInstance(PipelineFactoryImpl.class);
+        group = new DefaultEventLoopGroup(2);
+        LocalAddress address = new LocalAddress("acteur-benchmark-" + System.nanoTime());
+        server = new ServerBootstrap()
+                .group(group)
+                .channel(LocalServerChannel.class)
+                .childHandler(new ChannelInitializer<LocalChannel>() {
+                    @Override
+                    protected void initChannel(LocalChannel ch) throws Exception {
+                        pipelineFactory.initPipeline(ch);
+                    }
+                }).bind(address).sync().channel();
+        collector = new ResponseCollector();
+        client = new Bootstrap()
+                .group(group)
+                .channel(LocalChannel.class)
+                .handler(new ChannelInitializer<LocalChannel>() {
+                    @Override
+                    protected void initChannel(LocalChannel ch) throws Exception {
+                        ch.pipeline().addLast(new HttpClientCodec(),
+                                new HttpObjectAggregator(1024 * 1024), collector);
+                    }
+                }).connect(address).sync().channel();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        client.close().sync();
+        server.close().sync();
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+        deps.shutdown();
+    }
+
+    @Benchmark
+    public int getHello() throws Exception {
+        return collector.send(client, request(HttpMethod.GET, "/hello", null));
+    }
+
+    @Benchmark
+    public int getWithGlobRoute() throws Exception {
+        return collector.send(client, request(HttpMethod.GET, "/users/joe/profile", null));
+    }
+
+    @Benchmark
+    public int postJson() throws Exception {
+        return collector.send(client, request(HttpMethod.POST, "/echo", ECHO_BODY));
+    }
+
+    @Benchmark
+    public int notFound() throws Exception {
+        return collector.send(client, request(HttpMethod.GET, "/nothing/here", null));
+    }
+
+    private static FullHttpRequest request(HttpMethod method, String uri, byte[] body) {
+        FullHttpRequest req = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, method, uri,
+                body == null ? Unpooled.EMPTY_BUFFER : Unpooled.wrappedBuffer(body));
+        req.headers().set(HttpHeaderNames.HOST, "localhost");
+        req.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+        req.headers().set(HttpHeaderNames.CONTENT_LENGTH, body == null ? 0 : body.length);
+        if (body != null) {
+            req.headers().set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON);
+        }
+        return req;
+    }
+
+    static final class ResponseCollector extends SimpleChannelInboundHandler<FullHttpResponse> {
+
+        private volatile CompletableFuture<Integer> pending;
+
+        int send(Channel channel, FullHttpRequest req) throws Exception {
+            CompletableFuture<Integer> result = new CompletableFuture<>();
+            pending = result;
+            channel.writeAndFlush(req);
+            return result.get(10, TimeUnit.SECONDS);
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, FullHttpResponse msg) throws Exception {
+            CompletableFuture<Integer> p = pending;
+            if (p != null) {
+                p.complete(msg.status().code() + msg.content().readableBytes());
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+            CompletableFuture<Integer> p = pending;
+            if (p != null) {
+                p.completeExceptionally(cause);
+            }
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteurbase;
+
+import com.google.inject.AbstractModule;
+import com.mastfrog.giulius.Dependencies;
+import com.mastfrog.giulius.scope.ReentrantScope;
+import com.mastfrog.util.thread.QuietAutoCloseable;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import javax.inject.Inject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The overhead of running a chain of N trivial acteurs - instantiation through
+ * Guice, scope entry, state handling and the callback - with both execution
+ * policies. The pooled variant includes a thread hop per acteur, which is the
+ * point of comparing them.
+ *
+ * @author Tim Boudreau
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChainRunnerBenchmark {
+
+    @Param({"1", "5", "10"})
+    public int acteurs;
+
+    @Param({"INLINE", "POOLED"})
+    public ExecutionPolicy policy;
+
+    private ReentrantScope scope;
+    private ExecutorService svc;
+    private Dependencies deps;
+    private ChainRunner runner;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        scope = new ReentrantScope();
+        svc = Executors.newFixedThreadPool(4);
+        deps = new Dependencies(new AbstractModule() {
+            @Override
+            protected void configure() {
+                scope.bindTypes(binder(), Deferral.class, Chain.class, Integer.class);
+                bind(ExecutorService.class).toInstance(svc);
+                bind(ReentrantScope.class).toInstance(scope);
+            }
+        });
+        runner = new ChainRunner(svc, scope);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        deps.shutdown();
+        svc.shutdownNow();
+    }
+
+    @Benchmark
+    public Object runChain() throws Exception {
+        BenchChain chain = new BenchChain(deps);
+        for (int i = 0; i < acteurs - 1; i++) {
+            chain.add(ContinueActeur.class);
+        }
+        chain.add(RespondActeur.class).setExecutionPolicy(policy);
+        Callback callback = new Callback();
+        try (QuietAutoCloseable cl = scope.enter()) {
+            runner.submit(chain, callback, new AtomicBoolean());
+        }
+        return callback.await();
+    }
+
+    static final class BenchChain extends ArrayChain<BenchActeur, BenchChain> {
+
+        BenchChain(Dependencies deps) {
+            super(deps, BenchActeur.class);
+        }
+    }
+
+    static final class BenchResponse {
+
+        Object body;
+    }
+
+    static final class ResponseFactory extends ActeurResponseFactory<BenchResponse, BenchResponse> {
+
+        static final ResponseFactory INSTANCE = new ResponseFactory();
+
+        @Override
+        protected BenchResponse create() {
+            return new BenchResponse();
+        }
+
+        @Override
+        protected boolean isFinished(BenchResponse obj) {
+            return obj != null && obj.body != null;
+        }
+
+        @Override
+        protected boolean isModified(BenchResponse obj) {
+            return obj != null && obj.body != null;
+        }
+    }
+
+    static class BenchActeur extends AbstractActeur<BenchResponse, BenchResponse, ActeurState<BenchResponse, BenchResponse>> {
+
+        BenchActeur() {
+            super(ResponseFactory.INSTANCE);
+        }
+    }
+
+    static final class ContinueActeur extends BenchActeur {
+
+        ContinueActeur() {
+            setState(new ActeurState<BenchResponse, BenchResponse>(false));
+        }
+    }
+
+    static final class RespondActeur extends BenchActeur {
+
+        @Inject
+        RespondActeur(Chain chain) {
+            response().body = chain;
+            setState(new ActeurState<BenchResponse, BenchResponse>(false));
+        }
+    }
+
+    static final class Callback implements ChainCallback<BenchActeur, ActeurState<BenchResponse, BenchResponse>, BenchChain, BenchResponse, BenchResponse> {
+
+        private volatile Object result;
+        private volatile Throwable failure;
+        private final Thread waiter = Thread.currentThread();
+
+        Object await() throws Exception {
+            while (result == null && failure == null) {
+                LockSupport.parkNanos(this, 1000);
+            }
+            if (failure != null) {
+                throw new IllegalStateException(failure);
+            }
+            return result;
+        }
+
+        private void done(Object o) {
+            result = o;
+            LockSupport.unpark(waiter);
+        }
+
+        @Override
+        public void onDone(ActeurState<BenchResponse, BenchResponse> state, List<BenchResponse> responses) {
+            done(responses);
+        }
+
+        @Override
+        public void onRejected(ActeurState<BenchResponse, BenchResponse> state) {
+            done(state);
+        }
+
+        @Override
+        public void onNoResponse() {
+            done(Boolean.FALSE);
+        }
+
+        @Override
+        public void onBeforeRunOne(BenchChain chain) {
+            // do nothing
+        }
+
+        @Override
+        public void onAfterRunOne(BenchChain chain, BenchActeur acteur) {
+            // do nothing
+        }
+
+        @Override
+        public void onFailure(Throwable ex) {
+            failure = ex;
+            LockSupport.unpark(waiter);
+        }
+    }
+}
@@ -23,32 +23,49 @@
  */
 package com.mastfrog.acteur.jdbc;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
+import static com.mastfrog.acteur.jdbc.ResultSetWriterFactory.DEFAULT_BATCH_BYTES;
+import static com.mastfrog.acteur.jdbc.ResultSetWriterFactory.DEFAULT_BATCH_ROWS;
+import com.mastfrog.acteur.spi.ApplicationControl;
 import com.mastfrog.util.preconditions.Exceptions;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.handler.codec.http.DefaultHttpContent;
 import io.netty.handler.codec.http.DefaultLastHttpContent;
-import io.netty.util.CharsetUtil;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.sql.Statement;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * Writes out a result set as JSON, calling itself back one row at a time so
- * threads are maximally available to serve other requests.
+ * Writes out a result set as a JSON array of objects, one per row.
  * <p/>
- * Contains a workaround for 
- * <a href="https://github.com/netty/netty/issues/2415">this Netty issue</a>
- * for the time being, ensuring writes happen in the expected sequence.
+ * All JDBC calls happen on an executor, never on the event loop. Rows are
+ * encoded with a streaming JsonGenerator straight into pooled buffers, and a
+ * buffer is written and flushed once it holds a batch of rows or bytes. While
+ * the channel is not writable, no further rows are read; reading resumes when
+ * Netty reports the channel writable again, so a slow client does not cause
+ * the whole result set to be buffered in memory.
+ * <p/>
+ * The response headers have already been sent when rows are read, so if
+ * reading or encoding a row fails, the error is passed to
+ * <code>ApplicationControl.internalOnError()</code> and the connection is
+ * closed without terminating the chunked response, which tells the client
+ * that the body is incomplete. The result set and its statement are closed
+ * either way.
  * <p/>
  * For ease of construction, ask for a <a href="ResultSetWriterFactory.html">ResultSetWriterFactory</a>
  * to be injected, or use <a href="ResultSetWriterActeur.html">ResultSetWriterActeur</a>.
@@ -57,92 +74,234 @@ import java.util.concurrent.ExecutorService;
  */
 public class ResultSetWriter implements ChannelFutureListener {
 
+    private static final SerializedString ROW_SEPARATOR = new SerializedString(",\n");
     private final ResultSet resultSet;
-    private volatile boolean first = true;
     private final ObjectMapper mapper;
     private final ByteBufAllocator alloc;
     private final ExecutorService svc;
+    private final int batchRows;
+    private final int batchBytes;
+    private final boolean keepAlive;
+    private final ApplicationControl ctrl;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final BufferOutput out = new BufferOutput();
+    private final Runnable pump = this::pump;
+    private Channel channel;
+    private JsonGenerator gen;
+    private SerializedString[] columns;
 
+    /**
+     * Create a writer with the default batch sizes, which closes the
+     * connection when the result set has been written.
+     *
+     * @param resultSet The result set
+     * @param mapper The mapper to encode column values with
+     * @param alloc An allocator
+     * @param svc The executor JDBC calls are made on
+     * @param ctrl Errors reading the result set are reported to it
+     */
     @Inject
-    public ResultSetWriter(ResultSet resultSet, ObjectMapper mapper, ByteBufAllocator alloc, @Named(/*ServerModule.BACKGROUND_THREAD_POOL_NAME*/ "background") ExecutorService svc) {
+    public ResultSetWriter(ResultSet resultSet, ObjectMapper mapper, ByteBufAllocator alloc, @Named(/*ServerModule.BACKGROUND_THREAD_POOL_NAME*/ "background") ExecutorService svc, ApplicationControl ctrl) {
+        this(resultSet, mapper, alloc, svc, DEFAULT_BATCH_ROWS, DEFAULT_BATCH_BYTES, false, ctrl);
+    }
+
+    ResultSetWriter(ResultSet resultSet, ObjectMapper mapper, ByteBufAllocator alloc, ExecutorService svc, int batchRows, int batchBytes, boolean keepAlive, ApplicationControl ctrl) {
         this.resultSet = resultSet;
         this.mapper = mapper;
         this.alloc = alloc;
         this.svc = svc;
+        this.batchRows = Math.max(1, batchRows);
+        this.batchBytes = Math.max(1, batchBytes);
+        this.keepAlive = keepAlive;
+        this.ctrl = ctrl;
     }
 
-    private volatile int entryCount;
-
     @Override
-    public synchronized void operationComplete(ChannelFuture f) {
-        if (entryCount > 0) {
-            // See https://github.com/netty/netty/issues/2415 for why this is needed
-            final ChannelFuture ff = f;
-            svc.submit(new Runnable() {
-
-                @Override
-                public void run() {
-                    ResultSetWriter.this.operationComplete(ff);
-                }
-            });
+    public void operationComplete(ChannelFuture f) {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        if (!f.isSuccess()) {
+            Throwable cause = f.cause();
+            closeResultSet(cause);
+            ctrl.internalOnError(cause);
             return;
         }
+        channel = f.channel();
+        svc.execute(pump);
+    }
+
+    private void pump() {
+        ByteBuf buf = null;
         try {
-            entryCount++;
-            StringBuilder sb = new StringBuilder();
-            boolean done = false;
-            if (resultSet.isClosed()) {
-                f.channel().close();
-                return;
-            }
-            boolean wasFirst = first;
-            if (first) {
-                sb.append("[");
-                first = false;
-            }
-            if (resultSet.next()) {
-                if (!wasFirst) {
-                    sb.append(",\n");
+            while (channel.isActive()) {
+                if (!channel.isWritable()) {
+                    channel.eventLoop().execute(this::awaitWritable);
+                    return;
                 }
-                ResultSetMetaData md = resultSet.getMetaData();
-                Map<String, Object> data = new LinkedHashMap<>();
-                int count = md.getColumnCount();
-                for (int i = 0; i < count; i++) {
-                    String name = md.getColumnName(i + 1);
-                    Object value = resultSet.getObject(i + 1);
-                    data.put(name, value);
+                buf = alloc.ioBuffer(Math.min(batchBytes + 256, 8192));
+                out.target = buf;
+                if (writeBatch()) {
+                    gen.close();
+                    buf.writeByte(']').writeByte('\n');
+                    ChannelFuture f = channel.writeAndFlush(new DefaultLastHttpContent(buf));
+                    buf = null;
+                    f.addListener(keepAlive ? CLOSE_ON_FAILURE : CLOSE);
+                    closeResultSet(null);
+                    return;
                 }
-                sb.append(mapper.writeValueAsString(data));
-            } else {
-                done = true;
-                sb.append("]\n");
+                channel.writeAndFlush(new DefaultHttpContent(buf)).addListener(CLOSE_ON_FAILURE);
+                buf = null;
+            }
+            closeResultSet(null);
+        } catch (Exception e) {
+            // Let the generator drop whatever it still buffers into the
+            // buffer being discarded, never one already written
+            out.target = buf;
+            closeGenerator(e);
+            if (buf != null) {
+                buf.release();
+            }
+            try {
+                channel.close();
+            } finally {
+                closeResultSet(e);
+                ctrl.internalOnError(e);
+            }
+        } finally {
+            out.target = null;
+        }
+    }
+
+    /**
+     * Encode rows into the current buffer until the batch is full or the
+     * result set is exhausted.
+     *
+     * @return true if the result set is exhausted
+     */
+    private boolean writeBatch() throws SQLException, IOException {
+        if (gen == null) {
+            out.target.writeByte('[');
+            ResultSetMetaData md = resultSet.getMetaData();
+            columns = new SerializedString[md.getColumnCount()];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = new SerializedString(md.getColumnName(i + 1));
             }
-            if (sb.length() > 0) {
-                // inserting this sleep cures the problem
-                // Thread.sleep(200);
-                ByteBuf buf = alloc.buffer().writeBytes(sb.toString().getBytes(CharsetUtil.UTF_8));
-                f = f.channel().writeAndFlush(new DefaultHttpContent(buf));
+            gen = mapper.getFactory().createGenerator(out);
+            gen.setRootValueSeparator(ROW_SEPARATOR);
+        }
+        int rows = 0;
+        boolean more;
+        while ((more = resultSet.next())) {
+            writeRow();
+            if (++rows >= batchRows || out.target.readableBytes() + Math.max(0, gen.getOutputBuffered()) >= batchBytes) {
+                break;
             }
-            if (done) {
-                f = f.channel().writeAndFlush(new DefaultLastHttpContent()).addListener(CLOSE);
+        }
+        gen.flush();
+        return !more;
+    }
+
+    private void writeRow() throws SQLException, IOException {
+        gen.writeStartObject();
+        for (int i = 0; i < columns.length; i++) {
+            gen.writeFieldName(columns[i]);
+            Object value = resultSet.getObject(i + 1);
+            if (value == null) {
+                gen.writeNull();
+            } else if (value instanceof String) {
+                gen.writeString((String) value);
+            } else if (value instanceof Integer || value instanceof Long) {
+                gen.writeNumber(((Number) value).longValue());
+            } else if (value instanceof Boolean) {
+                gen.writeBoolean((Boolean) value);
             } else {
-                f.addListener(this);
+                mapper.writeValue(gen, value);
             }
-        } catch (SQLException | JsonProcessingException e) {
+        }
+        gen.writeEndObject();
+    }
+
+    private void awaitWritable() {
+        // On the event loop, so writability cannot change between the test
+        // and adding the handler
+        if (!channel.isActive() || channel.isWritable()) {
+            svc.execute(pump);
+        } else {
+            channel.pipeline().addFirst(new WritabilityWaiter());
+        }
+    }
+
+    private void closeGenerator(Throwable cause) {
+        if (gen != null && !gen.isClosed()) {
+            try {
+                gen.close();
+            } catch (IOException | RuntimeException ex) {
+                cause.addSuppressed(ex);
+            }
+        }
+    }
+
+    private void closeResultSet(Throwable cause) {
+        try {
+            Statement statement = resultSet.getStatement();
             try {
-                f.channel().close();
+                resultSet.close();
             } finally {
-                try {
-                    resultSet.close();
-                } catch (SQLException ex) {
-                    e.addSuppressed(ex);
+                if (statement != null) {
+                    statement.close();
                 }
             }
-            Exceptions.chuck(e);
-        } finally {
-            first = false;
-            entryCount--;
+        } catch (SQLException ex) {
+            if (cause != null) {
+                cause.addSuppressed(ex);
+            } else {
+                Exceptions.chuck(ex);
+            }
         }
     }
 
+    private final class WritabilityWaiter extends ChannelInboundHandlerAdapter {
+
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+            if (ctx.channel().isWritable()) {
+                ctx.pipeline().remove(this);
+                svc.execute(pump);
+            }
+            super.channelWritabilityChanged(ctx);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            ctx.pipeline().remove(this);
+            svc.execute(pump);
+            super.channelInactive(ctx);
+        }
+    }
+
+    /**
+     * Lets one generator, whose row separators and buffers persist for the
+     * whole result set, write into a fresh buffer for each batch.
+     */
+    private static final class BufferOutput extends OutputStream {
+
+        ByteBuf target;
+
+        @Override
+        public void write(int b) {
+            // Null between batches, when only a generator being discarded
+            // after a failure can write
+            if (target != null) {
+                target.writeByte(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (target != null) {
+                target.writeBytes(b, off, len);
+            }
+        }
+    }
 }
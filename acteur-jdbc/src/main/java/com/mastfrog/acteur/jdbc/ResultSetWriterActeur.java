@@ -24,6 +24,7 @@
 package com.mastfrog.acteur.jdbc;
 
 import com.mastfrog.acteur.Acteur;
+import com.mastfrog.acteur.HttpEvent;
 import java.sql.ResultSet;
 
 /**
@@ -35,8 +36,11 @@ import java.sql.ResultSet;
  */
 public class ResultSetWriterActeur extends Acteur {
 
-    ResultSetWriterActeur(ResultSet rs, ResultSetWriterFactory fact) {
+    ResultSetWriterActeur(ResultSet rs, ResultSetWriterFactory fact, HttpEvent evt) {
         ok();
-        setResponseBodyWriter(fact.create(rs));
+        // Chunked, so the end of the result set need not be marked by closing
+        // the connection
+        setChunked(true);
+        setResponseBodyWriter(fact.create(rs, evt));
     }
 }
@@ -26,32 +26,99 @@ package com.mastfrog.acteur.jdbc;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
-import com.google.inject.name.Named;
+import com.mastfrog.acteur.HttpEvent;
+import com.mastfrog.acteur.spi.ApplicationControl;
+import com.mastfrog.giulius.ShutdownHookRegistry;
+import com.mastfrog.settings.Settings;
 import io.netty.buffer.ByteBufAllocator;
 import java.sql.ResultSet;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Factory for ResultSetWriters so you don't have to ask for all of its
- * dependencies to be injected.
+ * dependencies to be injected. Owns the bounded thread pool that all JDBC
+ * calls made by the writers it creates run on, so that large result sets can
+ * neither block the event loop nor starve the application's background
+ * threads.
  *
  * @author Tim Boudreau
  */
 @Singleton
 public class ResultSetWriterFactory {
 
+    /**
+     * Settings key for the number of threads result sets are read on.
+     */
+    public static final String SETTINGS_KEY_JDBC_THREADS = "acteur.jdbc.threads";
+    /**
+     * Default value for {@link #SETTINGS_KEY_JDBC_THREADS}.
+     */
+    public static final int DEFAULT_JDBC_THREADS = 8;
+    /**
+     * Settings key for the maximum number of rows encoded before they are
+     * written and flushed to the client.
+     */
+    public static final String SETTINGS_KEY_BATCH_ROWS = "acteur.jdbc.batch.rows";
+    /**
+     * Default value for {@link #SETTINGS_KEY_BATCH_ROWS}.
+     */
+    public static final int DEFAULT_BATCH_ROWS = 256;
+    /**
+     * Settings key for the number of encoded bytes after which a batch of rows
+     * is written and flushed to the client, even if it has fewer rows than
+     * {@link #SETTINGS_KEY_BATCH_ROWS}.
+     */
+    public static final String SETTINGS_KEY_BATCH_BYTES = "acteur.jdbc.batch.bytes";
+    /**
+     * Default value for {@link #SETTINGS_KEY_BATCH_BYTES}.
+     */
+    public static final int DEFAULT_BATCH_BYTES = 65536;
+
     private final ObjectMapper mapper;
     private final ByteBufAllocator alloc;
     private final ExecutorService svc;
+    private final int batchRows;
+    private final int batchBytes;
+    private final ApplicationControl ctrl;
 
     @Inject
-    ResultSetWriterFactory(ObjectMapper mapper, ByteBufAllocator alloc, @Named(value = "background") ExecutorService svc) {
+    ResultSetWriterFactory(ObjectMapper mapper, ByteBufAllocator alloc, Settings settings, ShutdownHookRegistry reg, ApplicationControl ctrl) {
         this.mapper = mapper;
         this.alloc = alloc;
-        this.svc = svc;
+        this.ctrl = ctrl;
+        this.batchRows = settings.getInt(SETTINGS_KEY_BATCH_ROWS, DEFAULT_BATCH_ROWS);
+        this.batchBytes = settings.getInt(SETTINGS_KEY_BATCH_BYTES, DEFAULT_BATCH_BYTES);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.svc = Executors.newFixedThreadPool(Math.max(1, settings.getInt(SETTINGS_KEY_JDBC_THREADS, DEFAULT_JDBC_THREADS)), r -> {
+            Thread t = new Thread(r, "acteur-jdbc-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        reg.add(svc);
     }
 
+    /**
+     * Create a writer which closes the connection once the result set has
+     * been written.
+     *
+     * @param rs A result set
+     * @return A writer
+     */
     public ResultSetWriter create(ResultSet rs) {
-        return new ResultSetWriter(rs, mapper, alloc, svc);
+        return new ResultSetWriter(rs, mapper, alloc, svc, batchRows, batchBytes, false, ctrl);
+    }
+
+    /**
+     * Create a writer which leaves the connection open once the result set
+     * has been written, if the request asked for keep-alive.
+     *
+     * @param rs A result set
+     * @param evt The request
+     * @return A writer
+     */
+    public ResultSetWriter create(ResultSet rs, HttpEvent evt) {
+        return new ResultSetWriter(rs, mapper, alloc, svc, batchRows, batchBytes, evt.requestsConnectionStayOpen(), ctrl);
     }
 }
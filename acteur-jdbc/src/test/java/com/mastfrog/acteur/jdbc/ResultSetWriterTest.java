@@ -0,0 +1,293 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.jdbc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mastfrog.acteur.spi.ApplicationControl;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.CharsetUtil;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class ResultSetWriterTest {
+
+    @Test
+    public void testRowsAreStreamedInBatches() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        FakeResultSet rs = new FakeResultSet(-1, row(1, "a"), row(2, "b"), row(3, null));
+        Errors errors = new Errors();
+        Buffers buffers = new Buffers();
+        ResultSetWriter writer = new ResultSetWriter(rs.proxy(), new ObjectMapper(), buffers.proxy(),
+                new DirectExecutor(), 2, 65536, false, errors.proxy());
+        writer.operationComplete(channel.newSucceededFuture());
+
+        assertEquals("[{\"id\":1,\"name\":\"a\"},\n{\"id\":2,\"name\":\"b\"}", readContent(channel, false));
+        assertEquals(",\n{\"id\":3,\"name\":null}]\n", readContent(channel, true));
+        assertNull(channel.readOutbound());
+        assertTrue(errors.errors.toString(), errors.errors.isEmpty());
+        assertTrue(rs.closed);
+        assertTrue(rs.statementClosed);
+        assertFalse(channel.isOpen());
+        buffers.assertAllReleased();
+    }
+
+    @Test
+    public void testFailureReadingARowAbortsTheResponse() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        FakeResultSet rs = new FakeResultSet(3, row(1, "a"), row(2, "b"), row(3, "c"), row(4, "d"));
+        Errors errors = new Errors();
+        Buffers buffers = new Buffers();
+        ResultSetWriter writer = new ResultSetWriter(rs.proxy(), new ObjectMapper(), buffers.proxy(),
+                new DirectExecutor(), 2, 65536, true, errors.proxy());
+        writer.operationComplete(channel.newSucceededFuture());
+
+        assertEquals("[{\"id\":1,\"name\":\"a\"},\n{\"id\":2,\"name\":\"b\"}", readContent(channel, false));
+        // No last chunk, so the client can tell the body is incomplete
+        assertNull(channel.readOutbound());
+        assertFalse(channel.isOpen());
+        assertEquals(1, errors.errors.size());
+        assertTrue(errors.errors.get(0) instanceof IllegalStateException);
+        assertTrue(rs.closed);
+        assertTrue(rs.statementClosed);
+        buffers.assertAllReleased();
+    }
+
+    @Test
+    public void testFailedHeaderWriteClosesResultSet() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        FakeResultSet rs = new FakeResultSet(-1, row(1, "a"));
+        Errors errors = new Errors();
+        Exception ex = new Exception("boom");
+        ResultSetWriter writer = new ResultSetWriter(rs.proxy(), new ObjectMapper(), new Buffers().proxy(),
+                new DirectExecutor(), 2, 65536, false, errors.proxy());
+        writer.operationComplete(channel.newFailedFuture(ex));
+        assertNull(channel.readOutbound());
+        assertEquals(Collections.singletonList(ex), errors.errors);
+        assertTrue(rs.closed);
+        assertTrue(rs.statementClosed);
+        assertEquals(0, rs.nextCalls);
+    }
+
+    private static String readContent(EmbeddedChannel channel, boolean last) {
+        Object o = channel.readOutbound();
+        assertNotNull("Nothing written", o);
+        assertTrue(o + "", o instanceof HttpContent);
+        assertEquals(o + "", last, o instanceof LastHttpContent);
+        HttpContent content = (HttpContent) o;
+        try {
+            return content.content().toString(CharsetUtil.UTF_8);
+        } finally {
+            content.release();
+        }
+    }
+
+    private static Object[] row(Object... values) {
+        return values;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(ResultSetWriterTest.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "toString":
+                            return type.getSimpleName();
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return handler.invoke(proxy, method, args);
+                    }
+                });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    static final class Errors {
+
+        final List<Throwable> errors = new ArrayList<>();
+
+        ApplicationControl proxy() {
+            return stub(ApplicationControl.class, (proxy, method, args) -> {
+                if ("internalOnError".equals(method.getName())) {
+                    errors.add((Throwable) args[0]);
+                }
+                return defaultValue(method.getReturnType());
+            });
+        }
+    }
+
+    /**
+     * Records every buffer handed out, to check that none leak.
+     */
+    static final class Buffers {
+
+        final List<ByteBuf> allocated = new ArrayList<>();
+
+        ByteBufAllocator proxy() {
+            ByteBufAllocator real = UnpooledByteBufAllocator.DEFAULT;
+            return stub(ByteBufAllocator.class, (proxy, method, args) -> {
+                Object result;
+                try {
+                    result = method.invoke(real, args);
+                } catch (InvocationTargetException ex) {
+                    throw ex.getCause();
+                }
+                if (result instanceof ByteBuf) {
+                    allocated.add((ByteBuf) result);
+                }
+                return result;
+            });
+        }
+
+        void assertAllReleased() {
+            assertFalse(allocated.isEmpty());
+            for (ByteBuf buf : allocated) {
+                assertEquals(buf.toString(), 0, buf.refCnt());
+            }
+        }
+    }
+
+    static final class FakeResultSet {
+
+        private final List<Object[]> rows;
+        private final int failAtRow;
+        private int cursor = -1;
+        int nextCalls;
+        boolean closed;
+        boolean statementClosed;
+
+        FakeResultSet(int failAtRow, Object[]... rows) {
+            this.failAtRow = failAtRow;
+            this.rows = Arrays.asList(rows);
+        }
+
+        ResultSet proxy() {
+            Statement statement = stub(Statement.class, (proxy, method, args) -> {
+                if ("close".equals(method.getName())) {
+                    statementClosed = true;
+                }
+                return defaultValue(method.getReturnType());
+            });
+            ResultSetMetaData md = stub(ResultSetMetaData.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getColumnCount":
+                        return 2;
+                    case "getColumnName":
+                        return ((Integer) args[0]) == 1 ? "id" : "name";
+                    default:
+                        return defaultValue(method.getReturnType());
+                }
+            });
+            return stub(ResultSet.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "next":
+                        nextCalls++;
+                        return ++cursor < rows.size();
+                    case "getObject":
+                        if (cursor == failAtRow - 1) {
+                            throw new IllegalStateException("Cannot read row " + failAtRow);
+                        }
+                        return rows.get(cursor)[((Integer) args[0]) - 1];
+                    case "getMetaData":
+                        return md;
+                    case "getStatement":
+                        return statement;
+                    case "close":
+                        closed = true;
+                        return null;
+                    default:
+                        return defaultValue(method.getReturnType());
+                }
+            });
+        }
+    }
+
+    static final class DirectExecutor extends AbstractExecutorService {
+
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+}
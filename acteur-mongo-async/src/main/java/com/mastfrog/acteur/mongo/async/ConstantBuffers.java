@@ -40,9 +40,15 @@ class ConstantBuffers {
     private final ByteBuf open;
     private final ByteBuf comma;
     private final ByteBuf close;
+    private final int chunkBytes;
+    private final int maxBatchSize;
 
     @Inject
     ConstantBuffers(ByteBufAllocator alloc, Settings settings) {
+        chunkBytes = Math.max(256, settings.getInt(CursorWriterFactory.SETTINGS_KEY_CHUNK_BYTES,
+                CursorWriterFactory.DEFAULT_CHUNK_BYTES));
+        maxBatchSize = Math.max(1, settings.getInt(CursorWriterFactory.SETTINGS_KEY_MAX_BATCH_SIZE,
+                CursorWriterFactory.DEFAULT_MAX_BATCH_SIZE));
         boolean useNewlines = settings.getBoolean("cursorwriter.newlines", false);
         open = alloc.buffer(2).writeBytes( (useNewlines ? "[\n" : "[").getBytes(CharsetUtil.US_ASCII));
         comma = alloc.buffer(2).writeBytes((useNewlines ? ",\n" : ",").getBytes(CharsetUtil.US_ASCII));
@@ -61,4 +67,24 @@ class ConstantBuffers {
         return close.duplicate();
     }
 
+    ByteBuf writeOpen(ByteBuf into) {
+        return into.writeBytes(open, open.readerIndex(), open.readableBytes());
+    }
+
+    ByteBuf writeComma(ByteBuf into) {
+        return into.writeBytes(comma, comma.readerIndex(), comma.readableBytes());
+    }
+
+    ByteBuf writeClose(ByteBuf into) {
+        return into.writeBytes(close, close.readerIndex(), close.readableBytes());
+    }
+
+    int chunkBytes() {
+        return chunkBytes;
+    }
+
+    int maxBatchSize() {
+        return maxBatchSize;
+    }
+
 }
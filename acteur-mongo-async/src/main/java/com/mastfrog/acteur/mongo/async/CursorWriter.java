@@ -30,20 +30,29 @@ import com.mastfrog.util.codec.Codec;
 import com.mongodb.async.AsyncBatchCursor;
 import com.mongodb.async.SingleResultCallback;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.CompositeByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.handler.codec.http.DefaultHttpContent;
 import io.netty.handler.codec.http.DefaultLastHttpContent;
-import io.netty.handler.codec.http.LastHttpContent;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
 
 /**
+ * Writes the contents of a cursor as a JSON array. Documents are copied into
+ * chunks of at most roughly {@link CursorWriterFactory#SETTINGS_KEY_CHUNK_BYTES}
+ * bytes, and each batch is written and flushed as soon as it arrives, however
+ * small it is (so results from a tailable cursor are not held back). As soon
+ * as a batch has been handed to the channel, the next one is requested, so
+ * the database and the network work in parallel - unless the channel is not
+ * writable, in which case fetching pauses until it is. The cursor's batch
+ * size is adjusted to the observed document size, so that a batch fills
+ * about one chunk.
+ * <p>
+ * Cursor callbacks are strictly sequential (there is only ever one outstanding
+ * request for a batch), so the encoding state needs no locking.
  *
  * @author Tim Boudreau
  */
@@ -51,14 +60,17 @@ final class CursorWriter<T> implements ChannelFutureListener, SingleResultCallba
 
     private final AsyncBatchCursor<T> cursor;
     private final boolean closeConnection;
-    private final List<Object> collectedResults = new LinkedList<>();
     private final ApplicationControl ctrl;
-    private final AtomicBoolean first = new AtomicBoolean();
+    private final AtomicBoolean started = new AtomicBoolean();
     private final ConstantBuffers constant;
-    private AtomicReference<ChannelFuture> future = new AtomicReference<>();
-    private volatile boolean done;
-    private volatile boolean resultWritten;
     private final Codec codec;
+    private final int minBatchSize;
+    private Channel channel;
+    private ByteBuf chunk;
+    private boolean opened;
+    private boolean resultWritten;
+    private long documentBytes;
+    private long documentCount;
 
     @Inject
     public CursorWriter(final AsyncBatchCursor<T> cursor, HttpEvent evt, ApplicationControl ctrl, ConstantBuffers constant, Codec codec) {
@@ -67,18 +79,17 @@ final class CursorWriter<T> implements ChannelFutureListener, SingleResultCallba
         this.ctrl = ctrl;
         this.constant = constant;
         this.codec = codec;
-        System.out.println("Cursor writer finish headers");
+        this.minBatchSize = Math.max(1, cursor.getBatchSize());
     }
 
-    ChannelFuture future(ChannelFuture channel) {
-        future.set(channel);
-        return channel;
-    }
-
-    private void addBuf(CompositeByteBuf buf, ByteBuf toAdd) {
-        int writerIndex = buf.writerIndex();
-        buf.addComponent(toAdd.retain());
-        buf.writerIndex(writerIndex + toAdd.readableBytes());
+    @Override
+    public void operationComplete(ChannelFuture f) throws Exception {
+        // Called once the headers have been flushed
+        if (!started.compareAndSet(false, true) || checkFailure(f)) {
+            return;
+        }
+        channel = f.channel();
+        cursor.next(this);
     }
 
     private boolean checkFailure(ChannelFuture f) {
@@ -87,141 +98,194 @@ final class CursorWriter<T> implements ChannelFutureListener, SingleResultCallba
         // first chunk is sent
         if (f.isDone() && !f.isSuccess()) {
             try {
-                cursor.close();
-                f.channel().close();
-                return true;
+                abort();
             } finally {
                 if (f.cause() != null) {
-                    System.out.println("Cursor writer failure ");
                     ctrl.internalOnError(f.cause());
                 }
             }
+            return true;
         }
         return false;
     }
 
+    private final ChannelFutureListener onWritten = this::checkFailure;
+
     @Override
-    @SuppressWarnings("unchecked")
-    public void operationComplete(ChannelFuture f) throws Exception {
-        boolean done = this.done;
-        if (checkFailure(f)) {
+    public void onResult(List<T> results, Throwable thrwbl) {
+        if (thrwbl != null) {
+            releaseAll(results, 0);
+            ctrl.internalOnError(thrwbl);
+            discard();
             return;
         }
-        List<Object> results = new LinkedList<>();
-        synchronized (this) {
-            results.addAll(collectedResults);
-            collectedResults.clear();
-        }
-        System.out.println("Collected results: " + results.size());
-        // Buffer count will be size + a comma for each, plus potential open and close marks and a leading comma
-        int maxComponents = (results.size() * 2) + 5;
-        // Use a composite byte buf for zero copy if using ByteBufCodec (which shares the
-        // allocator with the application, so they are drawn from the same pool)
-        CompositeByteBuf buf = f.channel().alloc().compositeBuffer(maxComponents);
-        boolean first = this.first.compareAndSet(false, true);
-        if (first) {
-            addBuf(buf, constant.open());
-        }
-        if (!results.isEmpty()) {
+        if (!channel.isActive()) {
+            releaseAll(results, 0);
+            discard();
+            return;
+        }
+        try {
+            boolean done = results == null || (results.isEmpty() && cursor.isClosed());
+            if (results != null) {
+                append(results);
+            }
+            if (done) {
+                finish();
+                return;
+            }
+            adjustBatchSize();
+            if (channel.isWritable()) {
+                // Fetch the next batch while this one is on its way out
+                cursor.next(this);
+            } else {
+                channel.eventLoop().execute(this::awaitWritable);
+            }
+        } catch (Exception ex) {
+            ctrl.internalOnError(ex);
+            discard();
+        }
+    }
+
+    private void append(List<T> results) throws Exception {
+        int chunkBytes = constant.chunkBytes();
+        for (int i = 0; i < results.size(); i++) {
+            if (chunk == null) {
+                chunk = channel.alloc().ioBuffer(chunkBytes + 64);
+            }
+            if (!opened) {
+                opened = true;
+                constant.writeOpen(chunk);
+            }
             if (resultWritten) {
-                addBuf(buf, constant.comma());
+                constant.writeComma(chunk);
             }
-            for (Iterator<Object> it = results.iterator(); it.hasNext();) {
-                resultWritten = true;
-                Object next = it.next();
-                if (next instanceof ByteBuf) {
-                    addBuf(buf, (ByteBuf) next);
-                } else {
-                    addBuf(buf, f.channel().alloc().buffer().writeBytes(codec.writeValueAsBytes(next)));
+            resultWritten = true;
+            int before = chunk.writerIndex();
+            Object next = results.get(i);
+            if (next instanceof ByteBuf) {
+                ByteBuf doc = (ByteBuf) next;
+                try {
+                    chunk.writeBytes(doc, doc.readerIndex(), doc.readableBytes());
+                } finally {
+                    doc.release();
                 }
-                if (it.hasNext()) {
-                    addBuf(buf, constant.comma());
+            } else {
+                try {
+                    chunk.writeBytes(codec.writeValueAsBytes(next));
+                } catch (Exception | Error e) {
+                    releaseAll(results, i + 1);
+                    throw e;
                 }
             }
+            documentBytes += chunk.writerIndex() - before;
+            documentCount++;
+            if (chunk.readableBytes() >= chunkBytes) {
+                writeChunk();
+            }
         }
-        if (results.isEmpty() && done) {
-            addBuf(buf, constant.close());
+        // One flush per batch, including whatever did not fill a chunk
+        if (chunk != null && chunk.isReadable()) {
+            writeChunk();
         }
-        if (buf.writerIndex() > 0) {
-            System.out.println("FLUSH ONE BUFFER: " + buf.readableBytes());
-            f = future(f.channel().writeAndFlush(new DefaultHttpContent(buf)));
-        } else {
-            System.out.println("Nothing to flush");
-            f = future(f);
+        channel.flush();
+    }
+
+    private void writeChunk() {
+        ByteBuf full = chunk;
+        chunk = null;
+        channel.write(new DefaultHttpContent(full)).addListener(onWritten);
+    }
+
+    private void adjustBatchSize() {
+        // Aim for each batch to fill about one chunk
+        if (documentCount > 0) {
+            long average = Math.max(1, documentBytes / documentCount);
+            int batch = (int) Math.max(minBatchSize, Math.min(constant.maxBatchSize(), constant.chunkBytes() / average));
+            if (batch != cursor.getBatchSize()) {
+                cursor.setBatchSize(batch);
+            }
         }
-        if (done) {
-            f.addListener((ChannelFutureListener) (ChannelFuture future1) -> {
-                if (checkFailure(future1)) {
-                    return;
-                }
-                future1 = future(future1.channel().writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT));
-                if (closeConnection) {
-                    System.out.println("CLOSING CONNECTION");
-                    future(future1.addListener(CLOSE));
-                }
-            });
+    }
+
+    private void finish() {
+        ByteBuf last = chunk == null ? channel.alloc().ioBuffer(4) : chunk;
+        chunk = null;
+        if (!opened) {
+            constant.writeOpen(last);
         }
-        if (!done) {
-            f.addListener(fetchNext);
+        constant.writeClose(last);
+        ChannelFuture f = channel.writeAndFlush(new DefaultLastHttpContent(last));
+        f.addListener(onWritten);
+        if (closeConnection) {
+            f.addListener(CLOSE);
         }
+        cursor.close();
     }
 
-    @Override
-    public void onResult(List<T> t, Throwable thrwbl) {
-        if (thrwbl != null) {
-            this.ctrl.internalOnError(thrwbl);
-        }
-        if (t != null && t.size() == 0) {
-            ChannelFuture f = future.get();
-            Channel ch = f.channel();
-            System.out.println("SEND NO RESULTS");
-            if (ch.isOpen()) {
-                ByteBuf buf = f.channel().alloc().buffer(2);
-                buf.writeByte('[');
-                buf.writeByte(']');
-                DefaultHttpContent ct = new DefaultHttpContent(buf);
-                ch.write(ct);
-                ChannelFuture fut2 = ch.writeAndFlush(DefaultLastHttpContent.EMPTY_LAST_CONTENT);
-                fut2.addListener((ChannelFuture f2) -> {
-                    if (f2.cause() != null) {
-                        ctrl.internalOnError(thrwbl);
-                    }
-                });
-            }
-            return;
-        }
-        if (t == null) {
-            done = true;
+    private void awaitWritable() {
+        // On the event loop, so writability cannot change between the test
+        // and adding the handler
+        if (!channel.isActive()) {
+            discard();
+        } else if (channel.isWritable()) {
+            cursor.next(this);
         } else {
-            synchronized (this) {
-                collectedResults.addAll(t);
-            }
+            channel.pipeline().addFirst(new WritabilityWaiter());
         }
-        System.out.println("onRESULT with " + (t == null ? "done" : t.size() + " results"));
-        ChannelFuture f = future.get();
-        if (thrwbl != null) {
-            ctrl.internalOnError(thrwbl);
+    }
+
+    private void abort() {
+        try {
             cursor.close();
-            if (f != null) {
-                System.out.println("Close channel for error");
-                f.channel().close();
+        } finally {
+            if (channel != null) {
+                channel.close();
             }
-        } else if (f != null) {
-            try {
-                operationComplete(f);
-            } catch (Exception ex) {
-                ctrl.internalOnError(ex);
+        }
+    }
+
+    /**
+     * Abort, and release the partly filled chunk - only called when no batch
+     * is being fetched, or from the callback that delivered one.
+     */
+    private void discard() {
+        try {
+            abort();
+        } finally {
+            if (chunk != null) {
+                chunk.release();
+                chunk = null;
             }
         }
     }
 
-    private final ChannelFutureListener fetchNext = new ChannelFutureListener() {
+    private void releaseAll(List<T> results, int from) {
+        if (results != null) {
+            for (int i = from; i < results.size(); i++) {
+                T t = results.get(i);
+                if (t instanceof ByteBuf) {
+                    ((ByteBuf) t).release();
+                }
+            }
+        }
+    }
+
+    private final class WritabilityWaiter extends ChannelInboundHandlerAdapter {
+
         @Override
-        @SuppressWarnings("unchecked")
-        public void operationComplete(ChannelFuture f) throws Exception {
-            if (!checkFailure(f)) {
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+            if (ctx.channel().isWritable()) {
+                ctx.pipeline().remove(this);
                 cursor.next(CursorWriter.this);
             }
+            super.channelWritabilityChanged(ctx);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            ctx.pipeline().remove(this);
+            discard();
+            super.channelInactive(ctx);
         }
-    };
+    }
 }
@@ -32,12 +32,32 @@ import io.netty.channel.ChannelFutureListener;
 
 /**
  * Create a ChannelFutureListener that will write out the contents of a cursor
- * as the response, in small batches.
+ * as the response, in batches sized to the documents being written.
  *
  * @author Tim Boudreau
  */
 public final class CursorWriterFactory {
 
+    /**
+     * Settings key for the size in bytes that documents are coalesced into
+     * before being written to the response as one chunk.
+     */
+    public static final String SETTINGS_KEY_CHUNK_BYTES = "cursorwriter.chunk.bytes";
+    /**
+     * Default value for {@link #SETTINGS_KEY_CHUNK_BYTES}.
+     */
+    public static final int DEFAULT_CHUNK_BYTES = 32768;
+    /**
+     * Settings key for the largest batch size a cursor may be adjusted to
+     * when its documents are small. The batch size set with CursorControl is
+     * used for the first batch, and is the smallest it will be adjusted to.
+     */
+    public static final String SETTINGS_KEY_MAX_BATCH_SIZE = "cursorwriter.max.batch.size";
+    /**
+     * Default value for {@link #SETTINGS_KEY_MAX_BATCH_SIZE}.
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+
     private final HttpEvent evt;
     private final ApplicationControl ctrl;
     private final ConstantBuffers constant;
@@ -0,0 +1,222 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.mongo.async;
+
+import com.mastfrog.acteur.HttpEvent;
+import com.mastfrog.acteur.spi.ApplicationControl;
+import com.mastfrog.settings.SettingsBuilder;
+import com.mastfrog.util.codec.Codec;
+import com.mongodb.async.AsyncBatchCursor;
+import com.mongodb.async.SingleResultCallback;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.CharsetUtil;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class CursorWriterTest {
+
+    @Test
+    public void testEachBatchIsFlushedEvenIfSmallerThanAChunk() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        FakeCursor cursor = new FakeCursor();
+        CursorWriter<ByteBuf> writer = writer(cursor, new Errors());
+        writer.operationComplete(channel.newSucceededFuture());
+        assertSame(writer, cursor.callback);
+
+        writer.onResult(docs("{\"a\":1}"), null);
+        assertEquals("[{\"a\":1}", readContent(channel, false));
+        assertEquals(2, cursor.nextCalls);
+
+        writer.onResult(docs("{\"b\":2}", "{\"c\":3}"), null);
+        assertEquals(",{\"b\":2},{\"c\":3}", readContent(channel, false));
+
+        cursor.closed = true;
+        writer.onResult(Collections.emptyList(), null);
+        assertEquals("]", readContent(channel, true));
+        assertNull(channel.readOutbound());
+        assertTrue(cursor.closed);
+    }
+
+    @Test
+    public void testLargeBatchesAreSplitIntoChunks() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        FakeCursor cursor = new FakeCursor();
+        CursorWriter<ByteBuf> writer = writer(cursor, new Errors());
+        writer.operationComplete(channel.newSucceededFuture());
+        char[] filler = new char[200];
+        Arrays.fill(filler, 'x');
+        String doc = "{\"x\":\"" + new String(filler) + "\"}";
+        writer.onResult(docs(doc, doc, doc), null);
+        // 256 byte chunks: the first two documents fill one, the last
+        // is written on its own at the end of the batch
+        String first = readContent(channel, false);
+        String second = readContent(channel, false);
+        assertNull(channel.readOutbound());
+        assertEquals("[" + doc + "," + doc + "," + doc, first + second);
+        assertTrue(first.length() >= 256);
+        assertEquals("," + doc, second);
+    }
+
+    @Test
+    public void testCursorFailureClosesChannelAndCursor() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        FakeCursor cursor = new FakeCursor();
+        Errors errors = new Errors();
+        CursorWriter<ByteBuf> writer = writer(cursor, errors);
+        writer.operationComplete(channel.newSucceededFuture());
+        writer.onResult(docs("{\"a\":1}"), null);
+        readContent(channel, false);
+        Exception ex = new Exception("boom");
+        writer.onResult(null, ex);
+        assertEquals(Collections.singletonList(ex), errors.errors);
+        assertTrue(cursor.closed);
+        assertFalse(channel.isOpen());
+    }
+
+    private static String readContent(EmbeddedChannel channel, boolean last) {
+        Object o = channel.readOutbound();
+        assertNotNull("Nothing written", o);
+        assertTrue(o + "", o instanceof HttpContent);
+        assertEquals(o + "", last, o instanceof LastHttpContent);
+        HttpContent content = (HttpContent) o;
+        try {
+            return content.content().toString(CharsetUtil.UTF_8);
+        } finally {
+            content.release();
+        }
+    }
+
+    private static List<ByteBuf> docs(String... docs) {
+        List<ByteBuf> result = new ArrayList<>(docs.length);
+        for (String d : docs) {
+            result.add(Unpooled.copiedBuffer(d, CharsetUtil.UTF_8));
+        }
+        return result;
+    }
+
+    private static CursorWriter<ByteBuf> writer(FakeCursor cursor, Errors errors) {
+        ConstantBuffers constant = new ConstantBuffers(ByteBufAllocator.DEFAULT, new SettingsBuilder()
+                .add(CursorWriterFactory.SETTINGS_KEY_CHUNK_BYTES, "256").build());
+        return new CursorWriter<>(cursor.proxy(), stub(HttpEvent.class, null), errors.proxy(),
+                constant, stub(Codec.class, null));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, java.lang.reflect.InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(CursorWriterTest.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "requestsConnectionStayOpen":
+                            return true;
+                        case "toString":
+                            return type.getSimpleName();
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            if (handler != null) {
+                                return handler.invoke(proxy, method, args);
+                            }
+                            return defaultValue(method.getReturnType());
+                    }
+                });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    static final class Errors {
+
+        final List<Throwable> errors = new ArrayList<>();
+
+        ApplicationControl proxy() {
+            return stub(ApplicationControl.class, (proxy, method, args) -> {
+                if ("internalOnError".equals(method.getName())) {
+                    errors.add((Throwable) args[0]);
+                }
+                return defaultValue(method.getReturnType());
+            });
+        }
+    }
+
+    static final class FakeCursor {
+
+        SingleResultCallback<List<ByteBuf>> callback;
+        int nextCalls;
+        int batchSize = 10;
+        boolean closed;
+
+        @SuppressWarnings("unchecked")
+        AsyncBatchCursor<ByteBuf> proxy() {
+            return stub(AsyncBatchCursor.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "next":
+                        nextCalls++;
+                        callback = (SingleResultCallback<List<ByteBuf>>) args[0];
+                        return null;
+                    case "getBatchSize":
+                        return batchSize;
+                    case "setBatchSize":
+                        batchSize = (Integer) args[0];
+                        return null;
+                    case "isClosed":
+                        return closed;
+                    case "close":
+                        closed = true;
+                        return null;
+                    default:
+                        return defaultValue(method.getReturnType());
+                }
+            });
+        }
+    }
+}
@@ -51,31 +51,23 @@ import com.mastfrog.util.strings.Strings;
 import com.mastfrog.util.streams.HashingOutputStream;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
-import io.netty.buffer.ByteBufInputStream;
 import io.netty.buffer.ByteBufOutputStream;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
-import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.compression.JZlibDecoder;
-import io.netty.handler.codec.compression.ZlibWrapper;
 import io.netty.handler.codec.http.DefaultHttpContent;
 import io.netty.handler.codec.http.HttpHeaderValues;
 import io.netty.handler.codec.http.LastHttpContent;
 import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoField;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.zip.GZIPOutputStream;
 
 /**
  *
@@ -136,36 +128,11 @@ public final class ClasspathResources implements StaticResources {
         return patterns;
     }
 
-    static void gzip(ByteBuf in, ByteBuf out) throws IOException {
-        try (GZIPOutputStream outStream = new GZIPOutputStream(new ByteBufOutputStream(out), 9)) {
-            try (ByteBufInputStream inStream = new ByteBufInputStream(in)) {
-                Streams.copy(inStream, outStream, 512);
-            }
-        }
-    }
-
-    private static class Y extends JZlibDecoder {
-
-        Y() {
-            super(ZlibWrapper.GZIP);
-            super.setSingleDecode(true);
-        }
-
-        @Override
-        protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
-            while (in.readableBytes() > 0) {
-                super.decode(ctx, in, out);
-            }
-        }
-    }
-
     private class ClasspathResource implements Resource {
 
-        final ByteBuf bytes;
-        final ByteBuf compressed;
+        private final CompressedAsset asset;
         private final String hash;
         final String name;
-        private final int length;
 
         ClasspathResource(String name) throws Exception {
             Checks.notNull("name", name);
@@ -182,42 +149,11 @@ public final class ClasspathResources implements StaticResources {
                     }
                 }
             }
-            bytes.retain();
-            this.bytes = Unpooled.unreleasableBuffer(bytes);
+            asset = new CompressedAsset(Unpooled.unreleasableBuffer(bytes),
+                    CompressedAsset.siblings(relativeTo, name));
             if (internalGzip) {
-                int sizeEstimate = (int) Math.ceil(bytes.readableBytes() * 1.001) + 12;
-                ByteBuf compressed = allocator.directBuffer(sizeEstimate);
-                gzip(bytes, compressed);
-                bytes.resetReaderIndex();
-                this.compressed = Unpooled.unreleasableBuffer(compressed);
-                assert check();
-
-            } else {
-                compressed = null;
-            }
-            bytes.resetReaderIndex();
-            length = bytes.readableBytes();
-        }
-
-        private boolean check() throws Exception {
-            Y y = new Y();
-            ByteBuf test = allocator.buffer(bytes.readableBytes());
-            try {
-                y.decode(null, compressed, Collections.<Object>singletonList(test));
-                compressed.resetReaderIndex();
-                byte[] a = new byte[bytes.readableBytes()];
-                bytes.readBytes(a);
-                byte[] b = new byte[test.readableBytes()];
-                test.readBytes(b);
-                if (!Arrays.equals(a, b)) {
-                    throw new IllegalStateException("Compressed data differs. Orig length " + a.length
-                            + " result length " + b.length + "\n.  ORIG:\n" + new String(a) + "\n\nNEW:\n" + new String(b));
-                }
-                bytes.resetReaderIndex();
-            } finally {
-                test.release();
+                asset.compressInBackground();
             }
-            return true;
         }
 
         @Override
@@ -237,34 +173,33 @@ public final class ClasspathResources implements StaticResources {
             if (type != null) {
                 response.add(CONTENT_TYPE, type);
             }
-            if (internalGzip) {
-                // Flag it so the standard compressor ignores us
-                response.add(INTERNAL_COMPRESS_HEADER, "true");
-            }
             if (chunked) {
                 response.add(Headers.TRANSFER_ENCODING, HttpHeaderValues.CHUNKED);
             }
-            if (isGzip(evt)) {
-                response.add(Headers.CONTENT_ENCODING, HttpHeaderValues.GZIP.toString());
-                if (!chunked) {
-                    response.add(Headers.CONTENT_LENGTH, (long) compressed.readableBytes());
-                }
-            } else {
-                if (!chunked) {
-                    response.add(Headers.CONTENT_LENGTH, (long) bytes.readableBytes());
-                }
-            }
+            encode(asset.negotiate(evt.header(ACCEPT_ENCODING)), response, chunked);
             response.chunked(chunked);
         }
 
         @Override
         public void attachBytes(HttpEvent evt, Response response, boolean chunked) {
-            if (isGzip(evt)) {
-                CompressedBytesSender sender = new CompressedBytesSender(compressed, !evt.requestsConnectionStayOpen(), chunked);
-                response.contentWriter(sender);
-            } else {
-                CompressedBytesSender c = new CompressedBytesSender(bytes, !evt.requestsConnectionStayOpen(), chunked);
-                response.contentWriter(c);
+            // Negotiate again, so headers match the bytes even if the
+            // compressed variants were completed since decorateResponse()
+            String encoding = asset.negotiate(evt.header(ACCEPT_ENCODING));
+            encode(encoding, response, chunked);
+            response.contentWriter(new CompressedBytesSender(asset.content(encoding),
+                    !evt.requestsConnectionStayOpen(), chunked));
+        }
+
+        private void encode(String encoding, Response response, boolean chunked) {
+            if (internalGzip || !CompressedAsset.IDENTITY.equals(encoding)) {
+                // Flag it so the standard compressor ignores us
+                response.add(INTERNAL_COMPRESS_HEADER, "true");
+            }
+            if (!CompressedAsset.IDENTITY.equals(encoding)) {
+                response.add(Headers.CONTENT_ENCODING, encoding);
+            }
+            if (!chunked) {
+                response.add(Headers.CONTENT_LENGTH, asset.length(encoding));
             }
         }
 
@@ -275,15 +210,6 @@ public final class ClasspathResources implements StaticResources {
         }
     }
 
-    boolean isGzip(HttpEvent evt) {
-        if (!internalGzip) {
-            return false;
-        }
-        CharSequence acceptEncoding = evt.header(Headers.ACCEPT_ENCODING);
-        return acceptEncoding != null && 
-                Strings.charSequenceContains(acceptEncoding, "gzip", true);
-    }
-
     static final class BytesSender extends ResponseWriter {
 
         private final ByteBuf bytes;
@@ -0,0 +1,301 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.resources;
+
+import com.mastfrog.util.streams.Streams;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The bytes of a static asset, plus compressed variants of it - either
+ * precompressed siblings found next to it (<code>foo.js.br</code>,
+ * <code>foo.js.gz</code>), or gzip and deflate variants computed once on a
+ * background thread. Which variant is sent is negotiated from the request's
+ * <code>Accept-Encoding</code> header, honoring q-values.
+ *
+ * @author Tim Boudreau
+ */
+final class CompressedAsset {
+
+    static final String BROTLI = "br";
+    static final String GZIP = "gzip";
+    static final String DEFLATE = "deflate";
+    static final String IDENTITY = "identity";
+    // Order of preference when the client weights encodings equally
+    private static final String[] PREFERENCE = {BROTLI, GZIP, DEFLATE};
+    private static final ExecutorService COMPRESSION_THREAD = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "acteur-asset-compression");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    private static final String[][] SIBLING_EXTENSIONS = {{".br", BROTLI}, {".gz", GZIP}};
+    private final ByteBuf identity;
+    private volatile Map<String, ByteBuf> variants;
+
+    /**
+     * Create an asset.
+     *
+     * @param identity The uncompressed bytes, which should be unreleasable
+     * @param precompressed Map of encoding name to bytes for any variants
+     * that already exist
+     */
+    CompressedAsset(ByteBuf identity, Map<String, byte[]> precompressed) {
+        this.identity = identity;
+        Map<String, ByteBuf> initial = new LinkedHashMap<>(4);
+        for (Map.Entry<String, byte[]> e : precompressed.entrySet()) {
+            initial.put(e.getKey(), toBuffer(e.getValue()));
+        }
+        variants = Collections.unmodifiableMap(initial);
+    }
+
+    /**
+     * Find precompressed siblings of a file - <code>foo.js.br</code> and
+     * <code>foo.js.gz</code> for <code>foo.js</code> - which are at least as
+     * new as it.
+     *
+     * @param file A file
+     * @return A map of encoding to bytes
+     * @throws IOException If reading fails
+     */
+    static Map<String, byte[]> siblings(File file) throws IOException {
+        Map<String, byte[]> result = new LinkedHashMap<>(2);
+        for (String[] ext : SIBLING_EXTENSIONS) {
+            File sib = new File(file.getParentFile(), file.getName() + ext[0]);
+            if (sib.isFile() && sib.canRead() && sib.lastModified() >= file.lastModified()) {
+                result.put(ext[1], Files.readAllBytes(sib.toPath()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find precompressed siblings of a classpath resource.
+     *
+     * @param relativeTo The class the resource name is relative to
+     * @param name The resource name
+     * @return A map of encoding to bytes
+     * @throws IOException If reading fails
+     */
+    static Map<String, byte[]> siblings(Class<?> relativeTo, String name) throws IOException {
+        Map<String, byte[]> result = new LinkedHashMap<>(2);
+        for (String[] ext : SIBLING_EXTENSIONS) {
+            try (InputStream in = relativeTo.getResourceAsStream(name + ext[0])) {
+                if (in != null) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    Streams.copy(in, out, 8192);
+                    result.put(ext[1], out.toByteArray());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compute any of the gzip and deflate variants that were not supplied as
+     * precompressed files, on a low priority background thread. Until that
+     * completes, requests get whatever variants are already available.
+     *
+     * @return this
+     */
+    CompressedAsset compressInBackground() {
+        if (!variants.containsKey(GZIP) || !variants.containsKey(DEFLATE)) {
+            COMPRESSION_THREAD.submit(this::compressMissing);
+        }
+        return this;
+    }
+
+    void compressMissing() {
+        byte[] bytes = new byte[identity.readableBytes()];
+        identity.getBytes(identity.readerIndex(), bytes);
+        Map<String, ByteBuf> result = new LinkedHashMap<>(variants);
+        try {
+            for (String enc : new String[]{GZIP, DEFLATE}) {
+                if (!result.containsKey(enc)) {
+                    byte[] compressed = compress(enc, bytes);
+                    // Not worth sending if compression didn't help
+                    if (compressed.length < bytes.length) {
+                        result.put(enc, toBuffer(compressed));
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(CompressedAsset.class.getName()).log(Level.WARNING,
+                    "Compressing static asset", ex);
+        }
+        variants = Collections.unmodifiableMap(result);
+    }
+
+    static byte[] compress(String encoding, byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + 32);
+        if (GZIP.equals(encoding)) {
+            try (LevelGzipOutputStream compressor = new LevelGzipOutputStream(out)) {
+                compressor.write(bytes);
+            }
+        } else {
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            try (DeflaterOutputStream compressor = new DeflaterOutputStream(out, deflater)) {
+                compressor.write(bytes);
+            } finally {
+                deflater.end();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static ByteBuf toBuffer(byte[] bytes) {
+        // A JDK direct buffer is freed when garbage collected, so variants
+        // of assets which are reloaded do not leak
+        ByteBuffer buf = ByteBuffer.allocateDirect(bytes.length);
+        buf.put(bytes);
+        buf.flip();
+        return Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(buf));
+    }
+
+    /**
+     * Choose the encoding to send, given an Accept-Encoding header.
+     *
+     * @param acceptEncoding The header, or null
+     * @return An encoding name, or {@link #IDENTITY}
+     */
+    String negotiate(CharSequence acceptEncoding) {
+        Map<String, ByteBuf> available = variants;
+        if (acceptEncoding == null || available.isEmpty()) {
+            return IDENTITY;
+        }
+        Map<String, Float> weights = parseAcceptEncoding(acceptEncoding);
+        Float star = weights.get("*");
+        String best = IDENTITY;
+        float bestQ = 0;
+        int bestSize = identity.readableBytes();
+        for (String enc : PREFERENCE) {
+            ByteBuf buf = available.get(enc);
+            if (buf == null) {
+                continue;
+            }
+            Float q = weights.get(enc);
+            if (q == null) {
+                q = star;
+            }
+            if (q == null || q <= 0) {
+                continue;
+            }
+            if (q > bestQ || (q == bestQ && buf.readableBytes() < bestSize)) {
+                best = enc;
+                bestQ = q;
+                bestSize = buf.readableBytes();
+            }
+        }
+        if (!IDENTITY.equals(best)) {
+            // Identity only wins if the client explicitly prefers it
+            Float identityQ = weights.get(IDENTITY);
+            if (identityQ != null && identityQ > bestQ) {
+                return IDENTITY;
+            }
+        }
+        return best;
+    }
+
+    static Map<String, Float> parseAcceptEncoding(CharSequence header) {
+        Map<String, Float> result = new LinkedHashMap<>(6);
+        for (String part : header.toString().split(",")) {
+            String coding = part;
+            float q = 1;
+            int semi = part.indexOf(';');
+            if (semi >= 0) {
+                coding = part.substring(0, semi);
+                String params = part.substring(semi + 1).trim();
+                if (params.startsWith("q=") || params.startsWith("Q=")) {
+                    try {
+                        q = Float.parseFloat(params.substring(2).trim());
+                    } catch (NumberFormatException ex) {
+                        q = 0;
+                    }
+                }
+            }
+            coding = coding.trim().toLowerCase();
+            if ("x-gzip".equals(coding)) {
+                coding = GZIP;
+            }
+            if (!coding.isEmpty()) {
+                result.put(coding, q);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the bytes for an encoding as a slice which can be written to a
+     * channel without affecting the original.
+     *
+     * @param encoding An encoding returned by negotiate()
+     * @return A buffer
+     */
+    ByteBuf content(String encoding) {
+        ByteBuf result = IDENTITY.equals(encoding) ? null : variants.get(encoding);
+        return (result == null ? identity : result).retainedSlice();
+    }
+
+    /**
+     * Get the content length for an encoding.
+     *
+     * @param encoding An encoding returned by negotiate()
+     * @return The number of bytes
+     */
+    long length(String encoding) {
+        ByteBuf result = IDENTITY.equals(encoding) ? null : variants.get(encoding);
+        return (result == null ? identity : result).readableBytes();
+    }
+
+    boolean hasVariants() {
+        return !variants.isEmpty();
+    }
+
+    private static final class LevelGzipOutputStream extends GZIPOutputStream {
+
+        LevelGzipOutputStream(OutputStream out) throws IOException {
+            super(out);
+            // GZIPOutputStream has no constructor that takes a compression level
+            def.setLevel(Deflater.BEST_COMPRESSION);
+        }
+    }
+}
@@ -25,6 +25,7 @@ package com.mastfrog.acteur.resources;
 
 import com.google.inject.Inject;
 import com.mastfrog.giulius.DeploymentMode;
+import com.mastfrog.giulius.ShutdownHookRegistry;
 import com.mastfrog.settings.Settings;
 import com.mastfrog.util.preconditions.ConfigurationError;
 import com.mastfrog.util.preconditions.Exceptions;
@@ -42,12 +43,12 @@ class DefaultStaticResources extends MergedResources {
     private final ExpiresPolicy policy;
 
     @Inject
-    DefaultStaticResources(Settings s, DeploymentMode mode, MimeTypes types, ByteBufAllocator allocator, ExpiresPolicy policy) {
-        super(find(s, mode, types, allocator, policy));
+    DefaultStaticResources(Settings s, DeploymentMode mode, MimeTypes types, ByteBufAllocator allocator, ExpiresPolicy policy, ShutdownHookRegistry onShutdown) {
+        super(find(s, mode, types, allocator, policy, onShutdown));
         this.policy = policy;
     }
 
-    private static List<StaticResources> find(Settings settings, DeploymentMode mode, MimeTypes types, ByteBufAllocator allocator, ExpiresPolicy policy) {
+    private static List<StaticResources> find(Settings settings, DeploymentMode mode, MimeTypes types, ByteBufAllocator allocator, ExpiresPolicy policy, ShutdownHookRegistry onShutdown) {
         List<StaticResources> result = new ArrayList<>();
 
         for (String name : splitAndTrim(settings.getString(RESOURCE_FOLDERS_KEY))) {
@@ -61,7 +62,7 @@ class DefaultStaticResources extends MergedResources {
                         + RESOURCE_FOLDERS_KEY + " - " + f);
             }
             try {
-                result.add(new FileResources(f, types, mode, allocator, settings, policy));
+                result.add(new FileResources(f, types, mode, allocator, settings, policy, onShutdown));
             } catch (Exception ex) {
                 Exceptions.chuck(ex);
             }
@@ -49,45 +49,35 @@ import static com.mastfrog.acteur.headers.Headers.VARY;
 import com.mastfrog.acteur.headers.Method;
 import static com.mastfrog.acteur.headers.Method.HEAD;
 import com.mastfrog.acteur.headers.Range;
+import com.mastfrog.acteur.resources.FileIndex.FileInfo;
 import com.mastfrog.acteur.spi.ApplicationControl;
 import com.mastfrog.acteur.util.CacheControl;
 import com.mastfrog.acteur.util.CacheControlTypes;
+import com.mastfrog.giulius.ShutdownHookRegistry;
 import com.mastfrog.settings.Settings;
 import com.mastfrog.util.preconditions.Exceptions;
 import com.mastfrog.util.streams.Streams;
 import com.mastfrog.util.strings.Strings;
 import com.mastfrog.util.streams.HashingOutputStream;
 import com.mastfrog.util.time.TimeUtil;
-import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
-import io.netty.buffer.Unpooled;
-import io.netty.channel.ChannelFuture;
-import io.netty.channel.ChannelFutureListener;
-import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.compression.JZlibEncoder;
-import io.netty.handler.codec.compression.ZlibWrapper;
-import io.netty.handler.codec.http.DefaultHttpContent;
-import io.netty.handler.codec.http.DefaultLastHttpContent;
 import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpHeaderValues;
 import static io.netty.handler.codec.http.HttpHeaderValues.IDENTITY;
 import static io.netty.handler.codec.http.HttpResponseStatus.BAD_REQUEST;
-import static io.netty.handler.codec.http.HttpResponseStatus.NOT_IMPLEMENTED;
 import static io.netty.handler.codec.http.HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE;
+import io.netty.handler.ssl.SslHandler;
 import io.netty.util.AsciiString;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.channels.ClosedByInterruptException;
-import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
-import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Duration;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -95,7 +85,9 @@ import javax.inject.Provider;
 
 /**
  * Version of FileResources that does not cache bytes in-memory, just uses
- * Netty's FileRegion, and inode numbers for etags.
+ * Netty's FileRegion, and inode numbers for etags. File metadata comes from a
+ * {@link FileIndex} kept current by watching the directory, unless
+ * {@link FileResources#SETTINGS_KEY_WATCH_FILES} is false.
  *
  * @author Tim Boudreau
  */
@@ -126,12 +118,23 @@ public class DynamicFileResources implements StaticResources {
     private final boolean hashEtags;
     private final LoadingCache<File, EtagCacheEntry> etagCache;
     private final boolean neverKeepAlive;
+    /**
+     * Number of bytes read from a file at a time when it cannot be sent using
+     * zero-copy file regions - i.e. when the response is compressed or the
+     * connection uses SSL. Memory used per download is bounded by this size.
+     */
+    public static final String SETTINGS_KEY_FILE_WINDOW_SIZE = "dyn.resources.window.size";
+    private static final int DEFAULT_FILE_WINDOW_SIZE = 64 * 1024;
+    private static final MediaType MULTIPART_BYTERANGES = MediaType.create("multipart", "byteranges");
+    private final int windowSize;
+    private final FileIndex index;
 
     @Inject
     public DynamicFileResources(File dir, MimeTypes types, ExpiresPolicy policy, ApplicationControl ctrl, ByteBufAllocator alloc, Settings settings,
-            Provider<Closables> onChannelClose) {
+            Provider<Closables> onChannelClose, ShutdownHookRegistry onShutdown) {
         this.hashEtags = settings.getBoolean(SETTINGS_KEY_USE_HASH_ETAG, false);
         neverKeepAlive = settings.getBoolean("neverKeepAlive", false);
+        windowSize = Math.max(1024, settings.getInt(SETTINGS_KEY_FILE_WINDOW_SIZE, DEFAULT_FILE_WINDOW_SIZE));
         this.dir = dir;
         this.policy = policy;
         this.types = types;
@@ -148,13 +151,32 @@ public class DynamicFileResources implements StaticResources {
         } else {
             etagCache = null;
         }
+        index = FileResources.watch(dir, types, settings, onShutdown, this::onFileChanged);
+    }
+
+    private void onFileChanged(String path, FileInfo info) {
+        FileIndex ix = index;
+        if (etagCache != null && ix != null) {
+            etagCache.invalidate(info == null ? ix.file(path) : info.file);
+        }
     }
 
     @Override
     public Resource get(String path) {
+        if (index != null) {
+            FileInfo info = index.get(path);
+            return info == null ? null : new DynFileResource(info);
+        }
         File f = new File(dir, path);
-        if (f.exists() && f.isFile() && f.canRead()) {
-            return new DynFileResource(f);
+        if (f.isFile() && f.canRead()) {
+            try {
+                return new DynFileResource(new FileInfo(f,
+                        Files.readAttributes(f.toPath(), BasicFileAttributes.class),
+                        types.get(f.getName())));
+            } catch (IOException ex) {
+                // deleted out from under us
+                return null;
+            }
         }
         return null;
     }
@@ -167,11 +189,13 @@ public class DynamicFileResources implements StaticResources {
     private class DynFileResource implements Resource {
 
         final File file;
+        final FileInfo info;
         final MediaType contentType;
 
-        DynFileResource(File file) {
-            this.file = file;
-            contentType = types.get(file.getName());
+        DynFileResource(FileInfo info) {
+            this.info = info;
+            this.file = info.file;
+            contentType = info.contentType;
         }
 
         @Override
@@ -187,7 +211,7 @@ public class DynamicFileResources implements StaticResources {
             CacheControl cc = new CacheControl(CacheControlTypes.Public, CacheControlTypes.must_revalidate)
                     .add(CacheControlTypes.max_age, maxAge);
             response.add(CACHE_CONTROL, cc)
-                    .add(LAST_MODIFIED, TimeUtil.fromUnixTimestamp(file.lastModified()).withNano(0))
+                    .add(LAST_MODIFIED, TimeUtil.fromUnixTimestamp(info.lastModified).withNano(0))
                     .add(ETAG, etag())
                     .add(ACCEPT_RANGES, HttpHeaderValues.BYTES);
 
@@ -203,7 +227,7 @@ public class DynamicFileResources implements StaticResources {
             if (evt.method() == HEAD) {
                 return;
             }
-            long length = file.length();
+            long length = info.length;
             ByteRanges ranges = evt.header(RANGE);
             boolean hasGzip = acceptEncoding != null && Strings.charSequenceContains(acceptEncoding, HttpHeaderValues.GZIP, true);
             boolean hasDeflate = acceptEncoding != null && Strings.charSequenceContains(acceptEncoding, HttpHeaderValues.DEFLATE, true);
@@ -216,27 +240,22 @@ public class DynamicFileResources implements StaticResources {
                     response.content("Invalid range " + ranges);
                     return;
                 }
-                if (ranges.size() > 1 /* && willCompress*/) { // PENDING: We do it correctly, need multiple range Content-Range header to be written
-                    response.status(NOT_IMPLEMENTED);
-                    response.content("Multiple ranges not supported in compressed responses, but requested " + ranges);
-                    return;
+                for (Range range : ranges) {
+                    if (range.toBoundedRange(length).isRangeNotSatisfiable() || range.end(length) < 0) {
+                        response.status(REQUESTED_RANGE_NOT_SATISFIABLE);
+                        response.content("Unsatisfiable range in file of length " + length + ": " + range);
+                        return;
+                    }
                 }
-                Range first = ranges.first();
-                if (first.toBoundedRange(length).isRangeNotSatisfiable()) {
-                    response.status(REQUESTED_RANGE_NOT_SATISFIABLE);
-                    response.content("Unsatisfiable range in file of length " + length + ": " + ranges.first());
-                    return;
+                if (ranges.size() == 1) {
+                    response.add(CONTENT_RANGE, ranges.first().toBoundedRange(length));
+                } else {
+                    response.add(CONTENT_TYPE, multipartType());
                 }
-                if (first.end(length) < 0) {
-                    response.status(REQUESTED_RANGE_NOT_SATISFIABLE);
-                    response.content("Requested past end of file at " + length);
-                    return;
-                }
-                response.add(CONTENT_RANGE, first.toBoundedRange(length));
             }
             if (!willCompress) {
                 if (evt.method() != Method.HEAD && !chunked) {
-                    response.add(CONTENT_LENGTH, length);
+                    response.add(CONTENT_LENGTH, FileContentWriter.contentLength(parts(ranges, length)));
                 }
             } else {
                 if (evt.method() != Method.HEAD) {
@@ -246,9 +265,31 @@ public class DynamicFileResources implements StaticResources {
             response.chunked(chunked);
         }
 
+        private List<Object> parts(ByteRanges ranges, long length) {
+            List<Range> rangeList = null;
+            if (ranges != null) {
+                rangeList = new ArrayList<>(ranges.size());
+                for (Range r : ranges) {
+                    rangeList.add(r);
+                }
+            }
+            return FileContentWriter.parts(rangeList, length, contentType, boundary());
+        }
+
+        private String boundary() {
+            // Needs to be the same in decorateResponse() and attachBytes()
+            return "acteur-" + Long.toString(info.lastModified, 36)
+                    + Long.toString(info.length, 36)
+                    + Integer.toString(file.getPath().hashCode() & Integer.MAX_VALUE, 36);
+        }
+
+        private MediaType multipartType() {
+            return MULTIPART_BYTERANGES.withParameter("boundary", boundary());
+        }
+
         private String etag() {
             try {
-                return hashEtags ? hashEtag() : inodeEtag();
+                return hashEtags ? hashEtag() : info.inode;
             } catch (ExecutionException ex) {
                 return Exceptions.chuck(ex);
             }
@@ -256,37 +297,13 @@ public class DynamicFileResources implements StaticResources {
 
         private String hashEtag() throws ExecutionException {
             EtagCacheEntry etg = etagCache.get(file);
-            if (!etg.stillValid(file)) {
+            if (etg.lastModified != info.lastModified) {
                 etagCache.refresh(file);
                 etg = etagCache.get(file);
             }
             return etg.hash;
         }
 
-        private String inodeEtag() {
-            try {
-                java.nio.file.Path path = file.toPath();
-                BasicFileAttributes attr = Files.readAttributes(path, BasicFileAttributes.class);
-                Object fileKey = attr.fileKey();
-                if (fileKey != null) {
-                    String s = fileKey.toString();
-                    if (s.contains("ino=")) {
-                        String inode = s.substring(s.indexOf("ino=") + 4, s.indexOf(')'));
-                        try {
-                            long val = Long.parseLong(inode);
-                            return Long.toString(val, 36);
-                        } catch (NumberFormatException nfe) {
-                            ctrl.internalOnError(nfe);
-                        }
-                        return inode;
-                    }
-                }
-            } catch (IOException ex) {
-                ctrl.internalOnError(ex);
-            }
-            return null;
-        }
-
         @Override
         public void attachBytes(HttpEvent evt, Response response, boolean chunked) throws Exception {
             if (evt.method() == Method.HEAD) {
@@ -299,185 +316,36 @@ public class DynamicFileResources implements StaticResources {
                     || hasDeflate;
             boolean willCompress = gzipOrDeflate && types.shouldCompress(contentType);
 
-//            System.out.println("ACCEPT ENCODING IS " + acceptEncoding + " CHUNKED " + chunked + " hasGzip "
-//                    + hasGzip + " hasDeflate " + hasDeflate + " willCompress " + willCompress + " response " + response);
-//
             final ByteRanges ranges = evt.header(Headers.RANGE);
-            final long length = file.length();
-            if (ranges != null && ranges.size() > 0) {
+            final long length = info.length;
+            List<Object> parts = parts(ranges, length);
+            if (ranges != null && ranges.size() == 1) {
                 response.add(CONTENT_RANGE, ranges.first().toBoundedRange(length));
-            } else if (!willCompress) {
-                if (!chunked) {
-                    response.add(CONTENT_LENGTH, length);
-                }
+            } else if (ranges != null && ranges.size() > 1) {
+                response.add(CONTENT_TYPE, multipartType());
             }
-            if (!willCompress) {
-                response.add(CONTENT_ENCODING, IDENTITY);
-
-                response.contentWriter(new ChannelFutureListener() {
-
-                    Iterator<Range> it = ranges == null ? null : ranges.iterator();
-                    boolean done = false;
-
-                    SeekableByteChannel channel;
-
-                    private ByteBuf readBytes(Range range) throws IOException {
-                        int len = (int) (range == null ? length : range.length(length));
-                        ByteBuffer buffer = ByteBuffer.allocateDirect(len);
-                        if (range != null) {
-                            channel.position(range.start(length));
-                        }
-                        int read = 0;
-                        while (read < len) {
-                            read += channel.read(buffer);
-                        }
-                        buffer.flip();
-                        return Unpooled.wrappedBuffer(buffer);
-                    }
-
-                    @Override
-                    public void operationComplete(ChannelFuture f) throws Exception {
-                        if (f.cause() != null) {
-                            ctrl.internalOnError(f.cause());
-                            f.channel().close();
-                            return;
-                        }
-                        if (done) {
-//                            System.out.println("SEND LAST CHUNK FOR COMPRESSED " + ((HttpEvent) evt).path());
-                            if (chunked) {
-                                f = f.channel().writeAndFlush(new DefaultLastHttpContent());
-                            }
-                            String conn = evt.header(HttpHeaderNames.CONNECTION);
-                            if (neverKeepAlive || (conn != null && HttpHeaderValues.CLOSE.contentEquals(conn))) {
-                                f.addListener(CLOSE);
-                            }
-                            return;
-                        }
-                        if (channel == null) {
-                            channel = Files.newByteChannel(file.toPath(), StandardOpenOption.READ);
-                            f.channel().closeFuture().addListener((ChannelFutureListener) (ChannelFuture f1) -> {
-                                channel.close();
-                            });
-                        }
-                        ByteBuf buf = null;
-                        try {
-                            if (it == null) {
-                                buf = readBytes(null);
-//                            FileRegion reg = new DefaultFileRegion(file, 0, length);
-                                done = true;
-                                channel.close();
-                            } else {
-                                if (it.hasNext()) {
-                                    Range range = it.next();
-//                                long count = range.length(length);
-//                                FileRegion reg = new DefaultFileRegion(file, range.start(length), count);
-//                                f = f.channel().writeAndFlush(reg);
-                                    buf = readBytes(range);
-                                    done = !it.hasNext();
-                                } else {
-                                    // initially empty iterator
-                                    channel.close();
-                                    done = true;
-                                }
-                            }
-                        } catch (ClosedByInterruptException ex) {
-                            ctrl.internalOnError(ex);
-                            f.channel().close();
-                            return;
-                        }
-                        if (buf != null) {
-                            if (chunked) {
-                                f = f.channel().writeAndFlush(new DefaultHttpContent(buf));
-                            } else {
-                                f = f.channel().writeAndFlush(buf);
-                            }
-                        }
-                        f.addListener(this);
-                    }
-                });
-
-//                response.contentWriter(new ResponseWriter() {
-//                    @Override
-//                    public ResponseWriter.Status write(Event<?> evt, ResponseWriter.Output out, int iteration) throws Exception {
-//                        if (ranges == null) {
-//                            FileRegion reg = new DefaultFileRegion(file, 0, length);
-//                            out.write(reg);
-//                            return Status.DONE;
-//                        } else {
-//                            for (Range range : ranges) {
-//                                long count = range.length(length);
-//                                FileRegion reg = new DefaultFileRegion(file, range.start(length), count);
-//                                out.write(reg);
-//                            }
-//                            return Status.DONE;
-//                        }
-//                    }
-//                });
-                return;
+            // We do any compression ourselves - keep the pipeline's compressor
+            // from touching file regions or already-compressed bytes
+            response.add(INTERNAL_COMPRESS_HEADER, TRUE);
+            String compression = null;
+            if (willCompress) {
+                compression = hasGzip ? "gzip" : "deflate";
+                response.add(Headers.CONTENT_ENCODING, compression);
             } else {
-                ByteBuf buf = Unpooled.buffer();
-                response.add(Headers.CONTENT_ENCODING, hasGzip ? "gzip" : "deflate");
-                // XXX should not do the entire file in one hunk - could be very large
-                try {
-                    if (ranges == null) {
-                        Enc enc = new Enc(hasGzip);
-                        enc.encode(evt.ctx(), Unpooled.wrappedBuffer(Files.readAllBytes(file.toPath())), buf);
-                    } else {
-                        Enc enc = new Enc(hasGzip);
-                        try (SeekableByteChannel channel = Files.newByteChannel(file.toPath(), StandardOpenOption.READ)) {
-                            for (Range r : ranges) {
-                                int rangeLength = (int) r.length(length);
-                                if (rangeLength > 0) {
-                                    ByteBuffer buffer = ByteBuffer.allocate(rangeLength);
-                                    channel.position(r.start(length));
-                                    channel.read(buffer);
-                                    buffer.flip();
-                                    enc.encode(evt.ctx(), Unpooled.wrappedBuffer(buffer), buf);
-                                }
-                            }
-                        }
-                    }
-                } catch (Exception ex) {
-                    ex.printStackTrace();
-                    buf.release();
-                    evt.channel().close();
-                    throw ex;
-                }
+                response.add(CONTENT_ENCODING, IDENTITY);
                 if (!chunked) {
-                    response.add(Headers.CONTENT_LENGTH, (long) buf.readableBytes());
+                    response.add(CONTENT_LENGTH, FileContentWriter.contentLength(parts));
                 }
-
-                response.contentWriter(new ChannelFutureListener() {
-                    boolean first = true;
-
-                    @Override
-                    public void operationComplete(ChannelFuture f) throws Exception {
-                        if (f.cause() != null) {
-                            ctrl.internalOnError(f.cause());
-                            f.channel().close();
-                        }
-                        if (!first) {
-//                            System.out.println("SEND LAST CHUNK FOR COMPRESSED " + ((HttpEvent) evt).path());
-                            if (chunked) {
-                                f = f.channel().writeAndFlush(new DefaultLastHttpContent());
-                            }
-                            String conn = evt.header(HttpHeaderNames.CONNECTION);
-                            if (neverKeepAlive || (conn != null && HttpHeaderValues.CLOSE.contentEquals(conn))) {
-                                f.addListener(CLOSE);
-                            }
-                            return;
-                        }
-//                        System.out.println("SEND COMPRESSED CHUNK OF " + buf.readableBytes() + " " + ((HttpEvent) evt).path());
-                        if (chunked) {
-                            f = f.channel().writeAndFlush(new DefaultHttpContent(buf));
-                        } else {
-                            f = f.channel().writeAndFlush(buf);
-                        }
-                        first = false;
-                        f.addListener(this);
-                    }
-                });
             }
+            // FileRegions cannot pass through the SSL handler
+            boolean zeroCopy = evt.channel().pipeline().get(SslHandler.class) == null;
+            String conn = evt.header(HttpHeaderNames.CONNECTION);
+            // A compressed, unchunked response has no content length, so the
+            // connection must be closed to delimit it
+            boolean close = neverKeepAlive || (willCompress && !chunked)
+                    || (conn != null && HttpHeaderValues.CLOSE.contentEquals(conn));
+            response.contentWriter(new FileContentWriter(file, parts, ctrl, alloc,
+                    zeroCopy, compression, chunked, close, windowSize));
         }
 
         @Override
@@ -486,18 +354,6 @@ public class DynamicFileResources implements StaticResources {
         }
     }
 
-    static final class Enc extends JZlibEncoder {
-
-        Enc(boolean gzip) {
-            super(gzip ? ZlibWrapper.GZIP : ZlibWrapper.ZLIB, 8);
-        }
-
-        @Override
-        protected void encode(ChannelHandlerContext ctx, ByteBuf in, ByteBuf out) throws Exception {
-            super.encode(ctx, in, out);
-        }
-    }
-
     /*
     static final class ChunkedGzipContentWriter extends ResponseWriter {
 
@@ -609,10 +465,6 @@ public class DynamicFileResources implements StaticResources {
             this.lastModified = lastModified;
         }
 
-        public boolean stillValid(File f) {
-            return f.exists() && f.lastModified() == lastModified;
-        }
-
         @Override
         public int hashCode() {
             int hash = 3;
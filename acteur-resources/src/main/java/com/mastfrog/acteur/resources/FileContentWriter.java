@@ -0,0 +1,377 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.resources;
+
+import com.google.common.net.MediaType;
+import com.mastfrog.acteur.headers.Range;
+import com.mastfrog.acteur.spi.ApplicationControl;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes all or part of a file as the body of a response, one message at a
+ * time, writing the next when the previous write completes. Uncompressed
+ * content on a channel without SSL is sent as DefaultFileRegions, so the
+ * bytes never enter the JVM's heap or direct memory; otherwise the file is
+ * read a fixed-size window at a time, so memory use is bounded no matter how
+ * large the file is.
+ *
+ * @author Tim Boudreau
+ */
+final class FileContentWriter implements ChannelFutureListener {
+
+    private final File file;
+    private final List<Object> parts;
+    private final ApplicationControl ctrl;
+    private final ByteBufAllocator alloc;
+    private final boolean zeroCopy;
+    private final boolean chunked;
+    private final boolean closeWhenDone;
+    private final int windowSize;
+    private final Sink sink;
+    private final DeflaterOutputStream compressor;
+    private int partIndex;
+    private long partOffset;
+    private FileChannel channel;
+    private byte[] scratch;
+    private boolean done;
+    private boolean started;
+    private boolean finished;
+
+    /**
+     * Create a writer.
+     *
+     * @param file The file
+     * @param parts The list of parts to write, from {@link #parts}
+     * @param ctrl Error handling
+     * @param alloc Allocator for windowed reads
+     * @param zeroCopy If true, write file regions rather than reading bytes
+     * @param compression null, "gzip" or "deflate"
+     * @param chunked Whether the response is chunked
+     * @param closeWhenDone Whether to close the connection after writing
+     * @param windowSize The number of bytes to read from the file at a time
+     * when not using zero-copy
+     */
+    FileContentWriter(File file, List<Object> parts, ApplicationControl ctrl, ByteBufAllocator alloc,
+            boolean zeroCopy, String compression, boolean chunked, boolean closeWhenDone,
+            int windowSize) throws IOException {
+        this.file = file;
+        this.parts = parts;
+        this.ctrl = ctrl;
+        this.alloc = alloc;
+        this.zeroCopy = zeroCopy && compression == null;
+        this.chunked = chunked;
+        this.closeWhenDone = closeWhenDone;
+        this.windowSize = windowSize;
+        if (compression != null) {
+            sink = new Sink();
+            compressor = "gzip".equals(compression)
+                    ? new GZIPOutputStream(sink, windowSize, true)
+                    : new DeflaterOutputStream(sink, true);
+        } else {
+            sink = null;
+            compressor = null;
+        }
+    }
+
+    @Override
+    public void operationComplete(ChannelFuture f) throws Exception {
+        if (f.cause() != null) {
+            ctrl.internalOnError(f.cause());
+            f.channel().close();
+            closeFile();
+            return;
+        }
+        if (done) {
+            if (chunked) {
+                f = f.channel().writeAndFlush(new DefaultLastHttpContent());
+            }
+            if (closeWhenDone) {
+                f.addListener(CLOSE);
+            }
+            return;
+        }
+        if (!started) {
+            started = true;
+            f.channel().closeFuture().addListener(cf -> closeFile());
+        }
+        Object msg;
+        try {
+            msg = next();
+        } catch (IOException ex) {
+            ctrl.internalOnError(ex);
+            f.channel().close();
+            closeFile();
+            return;
+        }
+        if (msg == null) {
+            // nothing left but the end of the response
+            done = true;
+            operationComplete(f);
+            return;
+        }
+        f.channel().writeAndFlush(msg).addListener(this);
+    }
+
+    private Object next() throws IOException {
+        if (compressor != null) {
+            return nextCompressed();
+        }
+        while (partIndex < parts.size()) {
+            Object part = parts.get(partIndex);
+            if (part instanceof CharSequence) {
+                partIndex++;
+                return content(Unpooled.copiedBuffer((CharSequence) part, StandardCharsets.US_ASCII));
+            }
+            FilePart fp = (FilePart) part;
+            if (fp.count == 0) {
+                partIndex++;
+                continue;
+            }
+            if (zeroCopy) {
+                partIndex++;
+                // Chunked encoding of a FileRegion is handled by the HTTP encoder
+                return new DefaultFileRegion(file, fp.position, fp.count);
+            }
+            int len = (int) Math.min(windowSize, fp.count - partOffset);
+            ByteBuf buf = alloc.ioBuffer(len);
+            try {
+                readFully(buf, fp.position + partOffset, len);
+            } catch (IOException ex) {
+                buf.release();
+                throw ex;
+            }
+            advance(fp, len);
+            return content(buf);
+        }
+        closeFile();
+        return null;
+    }
+
+    private Object nextCompressed() throws IOException {
+        if (finished) {
+            return null;
+        }
+        sink.buf = alloc.buffer(windowSize / 2);
+        try {
+            if (partIndex >= parts.size()) {
+                finished = true;
+                compressor.close();
+                closeFile();
+            } else {
+                Object part = parts.get(partIndex);
+                if (part instanceof CharSequence) {
+                    partIndex++;
+                    compressor.write(part.toString().getBytes(StandardCharsets.US_ASCII));
+                } else {
+                    FilePart fp = (FilePart) part;
+                    int len = (int) Math.min(windowSize, fp.count - partOffset);
+                    if (len > 0) {
+                        if (scratch == null) {
+                            scratch = new byte[windowSize];
+                        }
+                        ByteBuffer bb = ByteBuffer.wrap(scratch, 0, len);
+                        long pos = fp.position + partOffset;
+                        while (bb.hasRemaining()) {
+                            int read = channel().read(bb, pos);
+                            if (read < 0) {
+                                throw new IOException(file + " truncated while being sent");
+                            }
+                            pos += read;
+                        }
+                        compressor.write(scratch, 0, len);
+                    }
+                    advance(fp, len);
+                }
+                compressor.flush();
+            }
+        } catch (IOException ex) {
+            sink.buf.release();
+            sink.buf = null;
+            throw ex;
+        }
+        ByteBuf result = sink.buf;
+        sink.buf = null;
+        return content(result);
+    }
+
+    private void advance(FilePart fp, int len) {
+        partOffset += len;
+        if (partOffset >= fp.count) {
+            partIndex++;
+            partOffset = 0;
+        }
+    }
+
+    private void readFully(ByteBuf buf, long position, int len) throws IOException {
+        FileChannel ch = channel();
+        int read = 0;
+        while (read < len) {
+            int count = buf.writeBytes(ch, position + read, len - read);
+            if (count < 0) {
+                throw new IOException(file + " truncated while being sent");
+            }
+            read += count;
+        }
+    }
+
+    private Object content(ByteBuf buf) {
+        return chunked ? new DefaultHttpContent(buf) : buf;
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        }
+        return channel;
+    }
+
+    private synchronized void closeFile() {
+        if (compressor != null && !finished) {
+            // releases the deflater's native memory if the connection closed
+            // before we were done
+            finished = true;
+            try {
+                compressor.close();
+            } catch (IOException ex) {
+                ctrl.internalOnError(ex);
+            }
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                ctrl.internalOnError(ex);
+            }
+        }
+    }
+
+    /**
+     * Compute the parts of a response body - FileParts for regions of the
+     * file, and CharSequences for multipart/byteranges boundaries and headers.
+     *
+     * @param ranges The requested ranges, or null for the whole file
+     * @param length The file length
+     * @param contentType The file's content type, for multipart headers
+     * @param boundary The multipart boundary, used if there is more than one
+     * range
+     * @return A list of parts
+     */
+    static List<Object> parts(List<Range> ranges, long length, MediaType contentType, String boundary) {
+        if (ranges == null || ranges.isEmpty()) {
+            return Collections.singletonList(new FilePart(0, length));
+        }
+        if (ranges.size() == 1) {
+            Range r = ranges.get(0);
+            return Collections.singletonList(new FilePart(r.start(length), r.length(length)));
+        }
+        List<Object> result = new ArrayList<>(ranges.size() * 2 + 1);
+        for (Range r : ranges) {
+            StringBuilder sb = new StringBuilder(96);
+            if (!result.isEmpty()) {
+                sb.append("\r\n");
+            }
+            sb.append("--").append(boundary).append("\r\n");
+            if (contentType != null) {
+                sb.append("Content-Type: ").append(contentType).append("\r\n");
+            }
+            sb.append("Content-Range: ").append(r.toBoundedRange(length)).append("\r\n\r\n");
+            result.add(sb.toString());
+            result.add(new FilePart(r.start(length), r.length(length)));
+        }
+        result.add("\r\n--" + boundary + "--\r\n");
+        return result;
+    }
+
+    /**
+     * Get the total uncompressed length of a list of parts.
+     *
+     * @param parts The parts
+     * @return The number of bytes
+     */
+    static long contentLength(List<Object> parts) {
+        long result = 0;
+        for (Object o : parts) {
+            if (o instanceof FilePart) {
+                result += ((FilePart) o).count;
+            } else {
+                result += ((CharSequence) o).length();
+            }
+        }
+        return result;
+    }
+
+    static final class FilePart {
+
+        final long position;
+        final long count;
+
+        FilePart(long position, long count) {
+            this.position = position;
+            this.count = Math.max(0, count);
+        }
+
+        @Override
+        public String toString() {
+            return position + ":" + count;
+        }
+    }
+
+    private static final class Sink extends OutputStream {
+
+        ByteBuf buf;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (buf != null) {
+                buf.writeByte(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (buf != null) {
+                buf.writeBytes(b, off, len);
+            }
+        }
+    }
+}
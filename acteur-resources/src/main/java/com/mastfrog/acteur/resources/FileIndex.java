@@ -0,0 +1,315 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.resources;
+
+import com.google.common.net.MediaType;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * In-memory index of the files under a directory and their metadata, kept
+ * current by a WatchService on a single daemon thread, so that looking up a
+ * file while serving a request does not touch the filesystem.
+ * <p>
+ * Note that on platforms where the JDK's WatchService polls rather than using
+ * native notifications (MacOS), changes may take some seconds to be noticed.
+ *
+ * @author Tim Boudreau
+ */
+final class FileIndex implements AutoCloseable {
+
+    private final Path root;
+    private final MimeTypes types;
+    private final BiConsumer<String, FileInfo> onChange;
+    private final Map<String, FileInfo> files = new ConcurrentHashMap<>();
+    private final Map<WatchKey, Path> keys = new ConcurrentHashMap<>();
+    private final WatchService watcher;
+    private final Thread thread;
+    private volatile boolean closed;
+
+    /**
+     * Create an index and start watching.
+     *
+     * @param root The directory
+     * @param types Used to look up each file's MIME type once
+     * @param onChange Called on the watch thread with the relative path and
+     * new metadata (null if deleted) when a file is created, changed or
+     * deleted
+     * @throws IOException If the directory cannot be read or watched
+     */
+    FileIndex(File root, MimeTypes types, BiConsumer<String, FileInfo> onChange) throws IOException {
+        this.root = root.toPath().toAbsolutePath().normalize();
+        this.types = types;
+        this.onChange = onChange;
+        watcher = FileSystems.getDefault().newWatchService();
+        try {
+            scan(this.root, false, null);
+        } catch (IOException ex) {
+            watcher.close();
+            throw ex;
+        }
+        thread = new Thread(this::watch, "acteur-file-watch-" + root.getName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Get the metadata for a file.
+     *
+     * @param relativePath A path relative to the root, using / as separator
+     * @return The file's metadata, or null if no such readable file exists
+     */
+    FileInfo get(String relativePath) {
+        if (!relativePath.isEmpty() && relativePath.charAt(0) == '/') {
+            relativePath = relativePath.substring(1);
+        }
+        return files.get(relativePath);
+    }
+
+    /**
+     * Get the file a relative path maps to, whether or not it exists.
+     *
+     * @param relativePath A relative path
+     * @return A file
+     */
+    File file(String relativePath) {
+        return root.resolve(relativePath).toFile();
+    }
+
+    int size() {
+        return files.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        watcher.close();
+        thread.interrupt();
+    }
+
+    private String relativize(Path path) {
+        String result = root.relativize(path).toString();
+        if (File.separatorChar != '/') {
+            result = result.replace(File.separatorChar, '/');
+        }
+        return result;
+    }
+
+    /**
+     * Events were lost, so walk the whole tree again, dropping anything that
+     * was deleted in the meantime.
+     */
+    void rescan() throws IOException {
+        Set<String> seen = new HashSet<>(files.size());
+        scan(root, true, seen);
+        for (String rel : files.keySet()) {
+            if (!seen.contains(rel) && files.remove(rel) != null) {
+                onChange.accept(rel, null);
+            }
+        }
+    }
+
+    private void scan(Path dir, boolean notify, Set<String> seen) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException {
+                keys.put(d.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), d);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (attrs.isRegularFile()) {
+                    String rel = put(file, attrs, notify);
+                    if (seen != null && rel != null) {
+                        seen.add(rel);
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private String put(Path file, BasicFileAttributes attrs, boolean notify) {
+        String rel = relativize(file);
+        if (!Files.isReadable(file)) {
+            remove(rel, notify);
+            return null;
+        }
+        FileInfo info = new FileInfo(file.toFile(), attrs, types.get(file.getFileName().toString()));
+        FileInfo old = files.put(rel, info);
+        if (notify && !info.equals(old)) {
+            onChange.accept(rel, info);
+        }
+        return rel;
+    }
+
+    private void remove(String rel, boolean notify) {
+        if (files.remove(rel) != null && notify) {
+            onChange.accept(rel, null);
+        }
+        // If it was a directory, everything under it is gone too
+        String prefix = rel + '/';
+        for (String key : files.keySet()) {
+            if (key.startsWith(prefix) && files.remove(key) != null && notify) {
+                onChange.accept(key, null);
+            }
+        }
+    }
+
+    private void watch() {
+        while (!closed) {
+            WatchKey key;
+            try {
+                key = watcher.take();
+            } catch (InterruptedException | ClosedWatchServiceException ex) {
+                return;
+            }
+            Path dir = keys.get(key);
+            try {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        // Lost events - start over
+                        rescan();
+                        continue;
+                    }
+                    if (dir == null) {
+                        continue;
+                    }
+                    Path child = dir.resolve((Path) event.context());
+                    if (event.kind() == ENTRY_DELETE) {
+                        remove(relativize(child), true);
+                        continue;
+                    }
+                    BasicFileAttributes attrs;
+                    try {
+                        attrs = Files.readAttributes(child, BasicFileAttributes.class);
+                    } catch (IOException ex) {
+                        // deleted again before we got here
+                        remove(relativize(child), true);
+                        continue;
+                    }
+                    if (attrs.isDirectory()) {
+                        if (event.kind() == ENTRY_CREATE) {
+                            scan(child, true, null);
+                        }
+                    } else if (attrs.isRegularFile()) {
+                        put(child, attrs, true);
+                    }
+                }
+            } catch (IOException | RuntimeException ex) {
+                Logger.getLogger(FileIndex.class.getName()).log(Level.WARNING,
+                        "Updating file index for " + root, ex);
+            }
+            if (!key.reset()) {
+                keys.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Metadata about a file, read once when it is created or changes.
+     */
+    static final class FileInfo {
+
+        final File file;
+        final long length;
+        final long lastModified;
+        final String inode;
+        final MediaType contentType;
+
+        FileInfo(File file, BasicFileAttributes attrs, MediaType contentType) {
+            this.file = file;
+            this.length = attrs.size();
+            this.lastModified = attrs.lastModifiedTime().toMillis();
+            this.inode = inode(attrs);
+            this.contentType = contentType;
+        }
+
+        private static String inode(BasicFileAttributes attrs) {
+            Object fileKey = attrs.fileKey();
+            if (fileKey != null) {
+                String s = fileKey.toString();
+                int ix = s.indexOf("ino=");
+                if (ix >= 0) {
+                    int end = s.indexOf(')', ix);
+                    String inode = s.substring(ix + 4, end < 0 ? s.length() : end);
+                    try {
+                        return Long.toString(Long.parseLong(inode), 36);
+                    } catch (NumberFormatException nfe) {
+                        return inode;
+                    }
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FileInfo)) {
+                return false;
+            }
+            FileInfo other = (FileInfo) o;
+            return other.length == length && other.lastModified == lastModified
+                    && file.equals(other.file) && Objects.equals(inode, other.inode);
+        }
+
+        @Override
+        public int hashCode() {
+            return file.hashCode() + 71 * (int) (lastModified ^ (lastModified >>> 32));
+        }
+
+        @Override
+        public String toString() {
+            return file + "(" + length + " bytes, " + lastModified + ")";
+        }
+    }
+}
@@ -35,6 +35,9 @@ import com.mastfrog.acteur.util.CacheControlTypes;
 import com.mastfrog.acteur.headers.Headers;
 import com.mastfrog.acteur.util.CacheControl;
 import com.mastfrog.giulius.DeploymentMode;
+import com.mastfrog.giulius.ShutdownHookRegistry;
+import static com.mastfrog.acteur.server.ServerModule.DEFAULT_FAST_STARTUP;
+import static com.mastfrog.acteur.server.ServerModule.SETTINGS_KEY_FAST_STARTUP;
 import com.mastfrog.settings.Settings;
 import com.mastfrog.url.Path;
 import com.mastfrog.util.preconditions.Checks;
@@ -45,16 +48,11 @@ import com.mastfrog.util.streams.HashingOutputStream;
 import com.mastfrog.util.time.TimeUtil;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
-import io.netty.buffer.ByteBufInputStream;
 import io.netty.buffer.ByteBufOutputStream;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
-import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.compression.JZlibDecoder;
-import io.netty.handler.codec.compression.ZlibWrapper;
 import io.netty.handler.codec.http.DefaultHttpContent;
-import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpHeaderValues;
 import io.netty.handler.codec.http.LastHttpContent;
 import java.io.BufferedInputStream;
@@ -69,12 +67,12 @@ import java.time.Duration;
 import java.time.ZonedDateTime;
 import static java.time.temporal.ChronoField.MILLI_OF_SECOND;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.zip.GZIPOutputStream;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Resources based on java.io.File. Note that this implementation caches all
@@ -95,11 +93,22 @@ public final class FileResources implements StaticResources {
     private final boolean internalGzip;
     private final File dir;
     private final boolean debug;
+    private final boolean lazy;
 
     public static final String RESOURCES_BASE_PATH = "resources.base.path";
+    /**
+     * If true (the default), FileResources and DynamicFileResources watch
+     * their directory for changes and keep file metadata in memory, rather
+     * than checking the filesystem on every request. Set to false on
+     * filesystems where watching does not work (some network filesystems do
+     * not deliver change events).
+     */
+    public static final String SETTINGS_KEY_WATCH_FILES = "resources.watch.files";
+    private final Map<String, FileResource2> byName = new HashMap<>();
+    private volatile FileIndex index;
 
     @Inject
-    public FileResources(File dir, MimeTypes types, DeploymentMode mode, ByteBufAllocator allocator, Settings settings, ExpiresPolicy policy) throws Exception {
+    public FileResources(File dir, MimeTypes types, DeploymentMode mode, ByteBufAllocator allocator, Settings settings, ExpiresPolicy policy, ShutdownHookRegistry onShutdown) throws Exception {
         Checks.notNull("allocator", allocator);
         Checks.notNull("types", types);
         Checks.notNull("dir", dir);
@@ -113,6 +122,7 @@ public final class FileResources implements StaticResources {
         scan(dir, "", l);
         patterns = l.toArray(new String[l.size()]);
         debug = settings.getBoolean("acteur.debug", false);
+        lazy = settings.getBoolean(SETTINGS_KEY_FAST_STARTUP, DEFAULT_FAST_STARTUP);
         String resourcesBasePath = settings.getString(RESOURCES_BASE_PATH, "");
         for (String name : l) {
             String pth = Strings.joinPath(resourcesBasePath, name);
@@ -123,7 +133,79 @@ public final class FileResources implements StaticResources {
             ZonedDateTime expires = policy.get(types.get(pth), p);
             Duration maxAge = expires == null ? Duration.ofHours(2)
                     :  Duration.between(ZonedDateTime.now(), expires);
-            this.names.put(pth, new FileResource2(name, maxAge));
+            FileResource2 res = new FileResource2(name, maxAge);
+            this.names.put(pth, res);
+            byName.put(name, res);
+        }
+        if (lazy) {
+            // Files are read on first request; warm them up, and walk the
+            // tree to start watching it, in the background so startup does
+            // not wait on disk I/O.  The directory listing above is still
+            // needed up front, since routing depends on it
+            Thread preload = new Thread(() -> preload(settings, onShutdown), "file-resources-preload");
+            preload.setDaemon(true);
+            preload.setPriority(Thread.MIN_PRIORITY);
+            preload.start();
+        } else {
+            index = watch(dir, types, settings, onShutdown, this::onFileChanged);
+        }
+    }
+
+    private void preload(Settings settings, ShutdownHookRegistry onShutdown) {
+        // Until the index exists, requests check the file's timestamp
+        FileIndex idx = index = watch(dir, types, settings, onShutdown, this::onFileChanged);
+        for (FileResource2 res : byName.values()) {
+            try {
+                res.ensureLoaded();
+                if (idx != null) {
+                    // In case it was loaded by a request, and changed,
+                    // before the watch began
+                    onFileChanged(res.name, idx.get(res.name));
+                }
+            } catch (Exception ex) {
+                Logger.getLogger(FileResources.class.getName()).log(Level.WARNING,
+                        "Preloading " + res.name, ex);
+            }
+        }
+    }
+
+    private void onFileChanged(String name, FileIndex.FileInfo info) {
+        FileResource2 res = byName.get(name);
+        if (res != null && info != null && info.lastModified != res.lastModified) {
+            try {
+                res.load();
+            } catch (Exception ex) {
+                Logger.getLogger(FileResources.class.getName()).log(Level.WARNING,
+                        "Reloading " + name, ex);
+            }
+        }
+    }
+
+    /**
+     * Start watching a directory, if enabled in settings; the watch service
+     * and its thread are closed on shutdown.
+     *
+     * @return An index, or null if watching is disabled or not possible
+     */
+    static FileIndex watch(File dir, MimeTypes types, Settings settings, ShutdownHookRegistry onShutdown, BiConsumer<String, FileIndex.FileInfo> onChange) {
+        if (dir == null || !settings.getBoolean(SETTINGS_KEY_WATCH_FILES, true)) {
+            return null;
+        }
+        try {
+            FileIndex result = new FileIndex(dir, types, onChange);
+            onShutdown.add(() -> {
+                try {
+                    result.close();
+                } catch (IOException ex) {
+                    Logger.getLogger(FileResources.class.getName()).log(Level.FINE,
+                            "Closing watch on " + dir, ex);
+                }
+            });
+            return result;
+        } catch (IOException | UnsupportedOperationException ex) {
+            Logger.getLogger(FileResources.class.getName()).log(Level.WARNING,
+                    "Cannot watch " + dir + " - will check files on each request", ex);
+            return null;
         }
     }
 
@@ -164,45 +246,22 @@ public final class FileResources implements StaticResources {
         return patterns;
     }
 
-    static void gzip(ByteBuf in, ByteBuf out) throws IOException {
-        try (GZIPOutputStream outStream = new GZIPOutputStream(new ByteBufOutputStream(out), 9)) {
-            try (ByteBufInputStream inStream = new ByteBufInputStream(in)) {
-                Streams.copy(inStream, outStream, 512);
-            }
-        }
-    }
-
-    static class SanityCheckDecoder extends JZlibDecoder {
-
-        SanityCheckDecoder() {
-            super(ZlibWrapper.GZIP);
-            super.setSingleDecode(true);
-        }
-
-        @Override
-        protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
-            while (in.readableBytes() > 0) {
-                super.decode(ctx, in, out);
-            }
-        }
-    }
-
     private class FileResource2 implements Resource {
 
-        ByteBuf bytes;
-        ByteBuf compressed;
-        private String hash;
+        private volatile CompressedAsset asset;
+        private volatile String hash;
         final String name;
-        private int length;
         private final File file;
-        private long lastModified;
+        private volatile long lastModified;
         final Duration maxAge;
 
         FileResource2(String name, Duration maxAge) throws Exception {
             Checks.notNull("name", name);
             this.name = name;
             file = new File(dir, name);
-            load();
+            if (!lazy) {
+                load();
+            }
             this.maxAge = maxAge;
         }
 
@@ -220,50 +279,34 @@ public final class FileResources implements StaticResources {
                 }
             }
             lastModified = file.lastModified();
-            bytes.retain();
-            this.bytes = Unpooled.unreleasableBuffer(bytes);
+            CompressedAsset newAsset = new CompressedAsset(Unpooled.unreleasableBuffer(bytes),
+                    CompressedAsset.siblings(file));
             if (internalGzip) {
-                int sizeEstimate = (int) Math.ceil(bytes.readableBytes() * 1.001) + 12;
-                ByteBuf compressedBuffer = allocator.directBuffer(sizeEstimate);
-                gzip(bytes, compressedBuffer);
-                bytes.resetReaderIndex();
-                this.compressed = Unpooled.unreleasableBuffer(compressedBuffer);
-                assert check();
-                bytes.resetReaderIndex();
-                compressedBuffer.resetReaderIndex();
-            } else {
-                compressed = null;
+                newAsset.compressInBackground();
             }
-            bytes.resetReaderIndex();
-            this.bytes = bytes;
-            length = bytes.readableBytes();
+            asset = newAsset;
         }
 
-        private boolean check() throws Exception {
-            SanityCheckDecoder y = new SanityCheckDecoder();
-            ByteBuf test = allocator.buffer(bytes.readableBytes());
-            try {
-                y.decode(null, compressed, Collections.<Object>singletonList(test));
-                compressed.resetReaderIndex();
-                byte[] a = new byte[bytes.readableBytes()];
-                bytes.readBytes(a);
-                byte[] b = new byte[test.readableBytes()];
-                test.readBytes(b);
-                if (!Arrays.equals(a, b)) {
-                    throw new IllegalStateException("Compressed data differs. Orig length " + a.length
-                            + " result length " + b.length + "\n.  ORIG:\n" + new String(a) + "\n\nNEW:\n" + new String(b));
+        private void ensureLoaded() throws Exception {
+            if (asset == null) {
+                synchronized (this) {
+                    if (asset == null) {
+                        load();
+                    }
                 }
-                bytes.resetReaderIndex();
-            } finally {
-                test.release();
             }
-            return true;
         }
 
         @Override
         public void decorateResponse(HttpEvent evt, String path, Response response, boolean chunked) {
-            // XXX would be nicer not to hit the filesystem every time here
-            if (file.lastModified() != lastModified) {
+            try {
+                ensureLoaded();
+            } catch (Exception ex) {
+                Exceptions.chuck(ex);
+            }
+            // If we are watching the directory, changes are picked up
+            // by the watch thread; otherwise check the file
+            if (index == null && file.lastModified() != lastModified) {
                 try {
                     load();
                 } catch (Exception ex) {
@@ -288,34 +331,39 @@ public final class FileResources implements StaticResources {
             if (type != null) {
                 response.add(Headers.CONTENT_TYPE, type);
             }
-            if (internalGzip) {
-                // Flag it so the standard compressor ignores us
-                response.add(Headers.header("X-Internal-Compress"), "true");
-            }
             if (chunked) {
                 response.add(Headers.TRANSFER_ENCODING, HttpHeaderValues.CHUNKED.toString());
             }
-            if (isGzip(evt)) {
-                response.add(Headers.CONTENT_ENCODING, HttpHeaderValues.GZIP);
-                if (!chunked) {
-                    response.add(Headers.CONTENT_LENGTH, (long) compressed.readableBytes());
-                }
-            } else {
-                if (!chunked) {
-                    response.add(Headers.CONTENT_LENGTH, (long) bytes.readableBytes());
-                }
-            }
+            encode(asset, asset.negotiate(evt.header(Headers.ACCEPT_ENCODING)), response, chunked);
             response.chunked(chunked);
         }
 
         @Override
         public void attachBytes(HttpEvent evt, Response response, boolean chunked) {
-            if (isGzip(evt)) {
-                CompressedBytesSender sender = new CompressedBytesSender(compressed.copy(), !evt.requestsConnectionStayOpen(), chunked);
-                response.contentWriter(sender);
-            } else {
-                CompressedBytesSender c = new CompressedBytesSender(bytes.copy(), !evt.requestsConnectionStayOpen(), chunked);
-                response.contentWriter(c);
+            // Negotiate again, so headers match the bytes even if the
+            // compressed variants were completed since decorateResponse()
+            try {
+                ensureLoaded();
+            } catch (Exception ex) {
+                Exceptions.chuck(ex);
+            }
+            CompressedAsset asset = this.asset;
+            String encoding = asset.negotiate(evt.header(Headers.ACCEPT_ENCODING));
+            encode(asset, encoding, response, chunked);
+            response.contentWriter(new CompressedBytesSender(asset.content(encoding),
+                    !evt.requestsConnectionStayOpen(), chunked));
+        }
+
+        private void encode(CompressedAsset asset, String encoding, Response response, boolean chunked) {
+            if (internalGzip || !CompressedAsset.IDENTITY.equals(encoding)) {
+                // Flag it so the standard compressor ignores us
+                response.add(Headers.header("X-Internal-Compress"), "true");
+            }
+            if (!CompressedAsset.IDENTITY.equals(encoding)) {
+                response.add(Headers.CONTENT_ENCODING, encoding);
+            }
+            if (!chunked) {
+                response.add(Headers.CONTENT_LENGTH, asset.length(encoding));
             }
         }
 
@@ -331,14 +379,6 @@ public final class FileResources implements StaticResources {
         }
     }
 
-    boolean isGzip(HttpEvent evt) {
-        if (!internalGzip) {
-            return false;
-        }
-        String hdr = evt.header(HttpHeaderNames.ACCEPT_ENCODING);
-        return hdr != null && hdr.toLowerCase().contains("gzip");
-    }
-
     static final class BytesSender extends ResponseWriter {
 
         private final ByteBuf bytes;
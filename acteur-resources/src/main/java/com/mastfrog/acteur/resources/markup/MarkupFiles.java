@@ -136,9 +136,9 @@ public class MarkupFiles implements Provider<StaticResources> {
             file = unpackMarkupArchive(type, archiveName, onShutdown, ctrl);
         }
         if (dynResources) {
-            resources = new DynamicFileResources(file, types, policy, ctrl, allocator, settings, clos);
+            resources = new DynamicFileResources(file, types, policy, ctrl, allocator, settings, clos, onShutdown);
         } else {
-            resources = new FileResources(file, types, mode, allocator, settings, policy);
+            resources = new FileResources(file, types, mode, allocator, settings, policy, onShutdown);
         }
     }
 
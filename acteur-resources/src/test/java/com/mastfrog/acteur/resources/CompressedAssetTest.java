@@ -0,0 +1,125 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.resources;
+
+import static com.mastfrog.acteur.resources.CompressedAsset.BROTLI;
+import static com.mastfrog.acteur.resources.CompressedAsset.DEFLATE;
+import static com.mastfrog.acteur.resources.CompressedAsset.GZIP;
+import static com.mastfrog.acteur.resources.CompressedAsset.IDENTITY;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class CompressedAssetTest {
+
+    private static final byte[] CONTENT;
+
+    static {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            sb.append("function f").append(i).append("() { return ").append(i).append("; }\n");
+        }
+        CONTENT = sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static CompressedAsset asset(Map<String, byte[]> precompressed) {
+        return new CompressedAsset(Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(CONTENT)), precompressed);
+    }
+
+    @Test
+    public void testNegotiationWithoutVariantsIsIdentity() {
+        CompressedAsset a = asset(Collections.emptyMap());
+        assertEquals(IDENTITY, a.negotiate("gzip, deflate, br"));
+        assertEquals(CONTENT.length, a.length(IDENTITY));
+    }
+
+    @Test
+    public void testComputedVariantsRoundTrip() throws IOException {
+        CompressedAsset a = asset(Collections.emptyMap());
+        a.compressMissing();
+        assertEquals(GZIP, a.negotiate("gzip"));
+        assertEquals(DEFLATE, a.negotiate("deflate"));
+        assertEquals(IDENTITY, a.negotiate(null));
+        assertEquals(IDENTITY, a.negotiate("br"));
+
+        ByteBuf gz = a.content(GZIP);
+        assertEquals(a.length(GZIP), gz.readableBytes());
+        assertTrue(a.length(GZIP) < CONTENT.length);
+        assertArrayEquals(CONTENT, inflate(new GZIPInputStream(new ByteArrayInputStream(bytes(gz)))));
+        ByteBuf def = a.content(DEFLATE);
+        assertArrayEquals(CONTENT, inflate(new InflaterInputStream(new ByteArrayInputStream(bytes(def)))));
+        // slices must not disturb the stored bytes
+        assertEquals(a.length(GZIP), a.content(GZIP).readableBytes());
+    }
+
+    @Test
+    public void testQValues() throws IOException {
+        Map<String, byte[]> pre = new HashMap<>();
+        pre.put(BROTLI, new byte[]{1, 2, 3});
+        CompressedAsset a = asset(pre);
+        a.compressMissing();
+        assertEquals(BROTLI, a.negotiate("gzip, deflate, br"));
+        assertEquals(GZIP, a.negotiate("gzip;q=1.0, br;q=0.5"));
+        assertEquals(DEFLATE, a.negotiate("deflate, gzip;q=0.2, br;q=0"));
+        assertEquals(GZIP, a.negotiate("*;q=0.1, gzip;q=0.9, br;q=0"));
+        assertEquals(BROTLI, a.negotiate("*"));
+        assertEquals(IDENTITY, a.negotiate("identity, gzip;q=0.5"));
+        assertEquals(IDENTITY, a.negotiate("gzip;q=0, deflate;q=0, br;q=0"));
+        assertEquals(GZIP, a.negotiate("x-gzip"));
+        assertEquals(3, a.length(BROTLI));
+    }
+
+    private static byte[] bytes(ByteBuf buf) {
+        byte[] result = new byte[buf.readableBytes()];
+        buf.readBytes(result);
+        return result;
+    }
+
+    private static byte[] inflate(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] b = new byte[512];
+        int count;
+        while ((count = in.read(b)) > 0) {
+            out.write(b, 0, count);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.resources;
+
+import com.google.inject.AbstractModule;
+import com.mastfrog.acteur.RequestLogger;
+import com.mastfrog.acteur.resources.FastStartupFileResourcesTest.M;
+import com.mastfrog.acteur.resources.ResourcesApp.NoCompression;
+import com.mastfrog.acteur.resources.ResourcesApp.SilentRequestLogger;
+import com.mastfrog.acteur.server.ServerModule;
+import com.mastfrog.giulius.tests.GuiceRunner;
+import com.mastfrog.giulius.tests.TestWith;
+import com.mastfrog.netty.http.test.harness.TestHarness;
+import com.mastfrog.netty.http.test.harness.TestHarnessModule;
+import com.mastfrog.util.strings.RandomStrings;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import java.io.File;
+import java.io.IOException;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.nio.file.Files;
+import java.time.Duration;
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * With acteur.fast.startup set (see FastStartupFileResourcesTest.properties),
+ * FileResources reads files on first use, so both the headers and the bytes
+ * of a response must load the file if the background preload has not got to
+ * it yet.
+ *
+ * @author Tim Boudreau
+ */
+@RunWith(GuiceRunner.class)
+@TestWith({TestHarnessModule.class, M.class, NoCompression.class})
+public class FastStartupFileResourcesTest {
+
+    private static final Duration TIMEOUT = Duration.ofMinutes(1);
+    private static final String SMALL = "Loaded on demand\n";
+    private static final String LARGE = new RandomStrings().get(24000);
+    private static final File dir;
+
+    static {
+        // Before the module is created
+        try {
+            dir = Files.createTempDirectory("fast-resources").toFile();
+            Files.write(new File(dir, "small.txt").toPath(), SMALL.getBytes(UTF_8));
+            File sub = new File(dir, "sub");
+            Files.createDirectory(sub.toPath());
+            Files.write(new File(sub, "large.txt").toPath(), LARGE.getBytes(UTF_8));
+        } catch (IOException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    @AfterClass
+    public static void deleteFiles() throws IOException {
+        Files.deleteIfExists(new File(dir, "sub/large.txt").toPath());
+        Files.deleteIfExists(new File(dir, "sub").toPath());
+        Files.deleteIfExists(new File(dir, "small.txt").toPath());
+        Files.deleteIfExists(dir.toPath());
+    }
+
+    @Test(timeout = 60000)
+    public void testFilesAreLoadedOnFirstUse(TestHarness harn) throws Throwable {
+        harn.get("static/sub/large.txt").setTimeout(TIMEOUT).go().await()
+                .assertStatus(OK).assertContent(LARGE);
+        harn.get("static/small.txt").setTimeout(TIMEOUT).go().await()
+                .assertStatus(OK).assertContent(SMALL);
+        harn.get("static/small.txt").setTimeout(TIMEOUT).go().await()
+                .assertStatus(OK).assertContent(SMALL);
+        harn.get("static/missing.txt").setTimeout(TIMEOUT).go().await()
+                .assertCode(404);
+    }
+
+    static class M extends AbstractModule {
+
+        @Override
+        protected void configure() {
+            install(new ServerModule<>(ResourcesApp.class));
+            bind(File.class).toInstance(dir);
+            bind(StaticResources.class).to(FileResources.class);
+            bind(RequestLogger.class).to(SilentRequestLogger.class);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.resources;
+
+import com.mastfrog.acteur.Event;
+import com.mastfrog.acteur.spi.ApplicationControl;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class FileContentWriterTest {
+
+    private static final int WINDOW = 4096;
+    private static File file;
+    private static byte[] bytes;
+
+    @BeforeClass
+    public static void createFile() throws IOException {
+        // Compressible, but not so much that it fits in one window
+        Random rnd = new Random(1831);
+        StringBuilder sb = new StringBuilder();
+        String[] words = {"acteur", "page", "chain", "response", "window", "deflate", "netty"};
+        while (sb.length() < WINDOW * 40) {
+            sb.append(words[rnd.nextInt(words.length)]).append(rnd.nextInt(1000))
+                    .append(rnd.nextInt(12) == 0 ? '\n' : ' ');
+        }
+        bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+        file = File.createTempFile("file-content-writer", ".txt");
+        Files.write(file.toPath(), bytes);
+    }
+
+    @AfterClass
+    public static void deleteFile() throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+
+    @Test
+    public void testGzipChunkedBodyInflatesToTheFile() throws Exception {
+        List<Object> written = write("gzip", true);
+        assertTrue("Expected several windows, got " + written.size(), written.size() > 3);
+        assertTrue(written.get(written.size() - 1) instanceof LastHttpContent);
+        assertArrayEquals(bytes, inflate(new GZIPInputStream(new ByteArrayInputStream(concat(written)))));
+    }
+
+    @Test
+    public void testGzipUnchunkedBodyInflatesToTheFile() throws Exception {
+        List<Object> written = write("gzip", false);
+        assertTrue("Expected several windows, got " + written.size(), written.size() > 3);
+        assertArrayEquals(bytes, inflate(new GZIPInputStream(new ByteArrayInputStream(concat(written)))));
+    }
+
+    @Test
+    public void testDeflateBodyInflatesToTheFile() throws Exception {
+        List<Object> written = write("deflate", true);
+        assertArrayEquals(bytes, inflate(new InflaterInputStream(new ByteArrayInputStream(concat(written)))));
+    }
+
+    @Test
+    public void testUncompressedWindows() throws Exception {
+        List<Object> written = write(null, true);
+        assertTrue("Expected one message per window, got " + written.size(),
+                written.size() > bytes.length / WINDOW);
+        assertArrayEquals(bytes, concat(written));
+    }
+
+    private static List<Object> write(String compression, boolean chunked) throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        ErrorCollector errors = new ErrorCollector();
+        FileContentWriter writer = new FileContentWriter(file,
+                FileContentWriter.parts(null, bytes.length, null, null), errors,
+                ByteBufAllocator.DEFAULT, false, compression, chunked, false, WINDOW);
+        // Writes to an embedded channel complete immediately, so this runs
+        // the whole response - except where Netty defers notifying the
+        // listener to the event loop, to keep the stack shallow
+        writer.operationComplete(channel.newSucceededFuture());
+        channel.runPendingTasks();
+        errors.rethrow();
+        List<Object> result = new ArrayList<>();
+        for (Object o; (o = channel.readOutbound()) != null;) {
+            result.add(o);
+        }
+        channel.finishAndReleaseAll();
+        return result;
+    }
+
+    private static byte[] concat(List<Object> written) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Object o : written) {
+            ByteBuf buf = o instanceof HttpContent ? ((HttpContent) o).content() : (ByteBuf) o;
+            byte[] b = new byte[buf.readableBytes()];
+            buf.readBytes(b);
+            out.write(b, 0, b.length);
+            ReferenceCountUtil.release(o);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] inflate(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[WINDOW];
+        try (InputStream i = in) {
+            for (int count; (count = i.read(buf)) > 0;) {
+                out.write(buf, 0, count);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    static final class ErrorCollector implements ApplicationControl {
+
+        private final List<Throwable> errors = new ArrayList<>();
+
+        @Override
+        public void enableDefaultCorsHandling() {
+            // do nothing
+        }
+
+        @Override
+        public CountDownLatch onEvent(Event<?> event, Channel channel) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void internalOnError(Throwable err) {
+            errors.add(err);
+        }
+
+        void rethrow() throws Exception {
+            if (!errors.isEmpty()) {
+                fail("Errors: " + Arrays.toString(errors.toArray()));
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.resources;
+
+import com.mastfrog.acteur.resources.FileIndex.FileInfo;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class FileIndexTest {
+
+    @Test
+    public void testIndexTracksChanges() throws Exception {
+        Path dir = Files.createTempDirectory("file-index");
+        Files.write(dir.resolve("a.txt"), "hello".getBytes(StandardCharsets.UTF_8));
+        Files.createDirectories(dir.resolve("sub"));
+        Files.write(dir.resolve("sub/b.js"), "x".getBytes(StandardCharsets.UTF_8));
+        Map<String, Object> changes = new ConcurrentHashMap<>();
+        try (FileIndex index = new FileIndex(dir.toFile(), new MimeTypes(StandardCharsets.UTF_8),
+                (path, info) -> changes.put(path, info == null ? "deleted" : info))) {
+            assertEquals(2, index.size());
+            FileInfo a = index.get("a.txt");
+            assertNotNull(a);
+            assertEquals(5, a.length);
+            assertEquals("text", a.contentType.type());
+            assertEquals(a, index.get("/a.txt"));
+            assertNotNull(index.get("sub/b.js"));
+            assertNull(index.get("sub/../a.txt"));
+            assertNull(index.get("nothing.txt"));
+
+            Files.write(dir.resolve("a.txt"), "hello world".getBytes(StandardCharsets.UTF_8));
+            Files.createDirectories(dir.resolve("new"));
+            awaitTrue(() -> changes.containsKey("a.txt"));
+            Files.write(dir.resolve("new/c.txt"), "c".getBytes(StandardCharsets.UTF_8));
+            Files.delete(dir.resolve("sub/b.js"));
+            awaitTrue(() -> index.get("a.txt").length == 11);
+            awaitTrue(() -> index.get("new/c.txt") != null);
+            awaitTrue(() -> index.get("sub/b.js") == null);
+            assertEquals("deleted", changes.get("sub/b.js"));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testRescanDropsFilesDeletedWhileEventsWereLost() throws Exception {
+        Path dir = Files.createTempDirectory("file-index");
+        Files.write(dir.resolve("keep.txt"), "k".getBytes(StandardCharsets.UTF_8));
+        Files.createDirectories(dir.resolve("sub"));
+        Files.write(dir.resolve("sub/gone.txt"), "g".getBytes(StandardCharsets.UTF_8));
+        Map<String, Object> changes = new ConcurrentHashMap<>();
+        try (FileIndex index = new FileIndex(dir.toFile(), new MimeTypes(StandardCharsets.UTF_8),
+                (path, info) -> changes.put(path, info == null ? "deleted" : info))) {
+            assertEquals(2, index.size());
+            Files.delete(dir.resolve("sub/gone.txt"));
+            // What the watch thread does on OVERFLOW; whether or not it has
+            // also seen the delete, the entry must be gone once this returns
+            index.rescan();
+            assertNull(index.get("sub/gone.txt"));
+            assertNotNull(index.get("keep.txt"));
+            assertEquals(1, index.size());
+            assertEquals("deleted", changes.get("sub/gone.txt"));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier test) throws InterruptedException {
+        // Polling watch services (MacOS) can take several seconds
+        long until = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (!test.getAsBoolean()) {
+            assertTrue("Timed out", System.currentTimeMillis() < until);
+            Thread.sleep(20);
+        }
+    }
+
+    private static void delete(Path dir) throws IOException {
+        Files.walk(dir).sorted((a, b) -> b.getNameCount() - a.getNameCount()).forEach(p -> {
+            try {
+                Files.deleteIfExists(p);
+            } catch (IOException ex) {
+                // ignore
+            }
+        });
+    }
+}
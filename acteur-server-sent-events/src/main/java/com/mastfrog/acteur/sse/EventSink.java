@@ -23,31 +23,31 @@
  */
 package com.mastfrog.acteur.sse;
 
-import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 import com.mastfrog.acteur.server.ServerModule;
 import com.mastfrog.acteur.spi.ApplicationControl;
 import com.mastfrog.giulius.ShutdownHookRegistry;
+import com.mastfrog.settings.Settings;
 import com.mastfrog.util.preconditions.Checks;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
-import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.channel.EventLoop;
 import io.netty.util.CharsetUtil;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import javax.inject.Inject;
 
 /**
@@ -57,43 +57,124 @@ import javax.inject.Inject;
  * user or per session EventSinks, write an Acteur that looks up (in a cache or
  * similar) the right EventSink, and include that in its state. Then use the
  * next one.
+ * <p>
+ * Each event is rendered and encoded once, on the publishing thread, and handed
+ * to the event loop of every channel that should receive it; each event loop
+ * writes whatever events have accumulated for its channels and flushes each
+ * channel once per batch. Clients that cannot keep up accumulate a bounded
+ * backlog - see {@link #SETTINGS_KEY_MAX_BACKLOG}.
+ * <p>
+ * Recently published events are retained, already encoded, per channel name,
+ * so that a client reconnecting with a <code>Last-Event-ID</code> header is
+ * first sent whatever it missed that is still retained, then live events -
+ * see {@link #SETTINGS_KEY_REPLAY_EVENTS}. Event ids come from a single
+ * sequence per sink, so a client subscribed to a name, which also receives
+ * events published without one, can resume from the last id it saw.
  *
  * @author Tim Boudreau
  */
 @Singleton
 public class EventSink {
 
-    private final LinkedBlockingQueue<Message> messages = new LinkedBlockingQueue<>();
-    private final AtomicLong count = new AtomicLong();
+    /**
+     * Settings key for the number of encoded events that may be waiting to be
+     * written to a single client whose connection is not keeping up, before
+     * the oldest is dropped (or the client is disconnected, if
+     * {@link #SETTINGS_KEY_DISCONNECT_SLOW_CLIENTS} is set).
+     */
+    public static final String SETTINGS_KEY_MAX_BACKLOG = "sse.max.backlog";
+    /**
+     * Default value for {@link #SETTINGS_KEY_MAX_BACKLOG}.
+     */
+    public static final int DEFAULT_MAX_BACKLOG = 512;
+    /**
+     * Settings key - if true, a client whose backlog is full is disconnected
+     * rather than silently losing its oldest events; browsers' EventSource
+     * reconnects automatically. Default false.
+     */
+    public static final String SETTINGS_KEY_DISCONNECT_SLOW_CLIENTS = "sse.disconnect.slow.clients";
+    /**
+     * Settings key for the number of published events retained for replay to
+     * reconnecting clients, for each channel name and for events published
+     * without one. Set to 0 to retain nothing.
+     */
+    public static final String SETTINGS_KEY_REPLAY_EVENTS = "sse.replay.events";
+    /**
+     * Default value for {@link #SETTINGS_KEY_REPLAY_EVENTS}.
+     */
+    public static final int DEFAULT_REPLAY_EVENTS = 128;
+    /**
+     * Settings key for the age in milliseconds after which a published event
+     * is no longer retained for replay.
+     */
+    public static final String SETTINGS_KEY_REPLAY_MAX_AGE_MILLIS = "sse.replay.max.age.millis";
+    /**
+     * Default value for {@link #SETTINGS_KEY_REPLAY_MAX_AGE_MILLIS}.
+     */
+    public static final long DEFAULT_REPLAY_MAX_AGE_MILLIS = 60000;
+
+    private final Object lock = new Object();
+    private long lastId = -1;
+    private long lastSweep;
     private final MessageRenderer ren;
-    private final Set<Channel> channels = Sets.newConcurrentHashSet();
-    private final Map<EventChannelName, List<Channel>> channelsForName = Maps.newConcurrentMap();
+    private final Topic all;
+    private final Map<EventChannelName, Topic> topics = new ConcurrentHashMap<>();
+    private final Map<EventLoop, LoopBatch> batches = new ConcurrentHashMap<>();
+    private final SseClient.Config config;
+    private final int replayEvents;
+    private final long replayMaxAge;
+    private final LongAdder replayed = new LongAdder();
     private volatile boolean shutdown;
-    private volatile Thread thread;
     private final ByteBufAllocator alloc;
     private final ApplicationControl ctrl;
-    private final Runner runner = new Runner();
-    private final Shutdown shutdownRun = new Shutdown();
 
     /**
      * Normally you will just ask for an instance to be injected into your
      * constructor.
      *
      * @param ren A message renderer
-     * @param svc The executor service that messages are dequeued on and sent to
-     * all open registered channels
      * @param alloc An allocator for byte buffers, bound by the framework
      * @param ctrl Used to handle any exceptions
      * @param reg Shutdown hook registry that allows this sink to mark itself as
      * shut down, cease sending messages and clean up after itself
+     * @param settings Settings, consulted for the backlog and replay limits
      */
     @Inject
+    protected EventSink(MessageRenderer ren, ByteBufAllocator alloc, ApplicationControl ctrl, ShutdownHookRegistry reg, Settings settings) {
+        this(ren, alloc, ctrl, reg, settings.getInt(SETTINGS_KEY_MAX_BACKLOG, DEFAULT_MAX_BACKLOG),
+                settings.getBoolean(SETTINGS_KEY_DISCONNECT_SLOW_CLIENTS, false),
+                settings.getInt(SETTINGS_KEY_REPLAY_EVENTS, DEFAULT_REPLAY_EVENTS),
+                settings.getLong(SETTINGS_KEY_REPLAY_MAX_AGE_MILLIS, DEFAULT_REPLAY_MAX_AGE_MILLIS));
+    }
+
+    /**
+     * Constructor retained for subclasses; events are no longer dequeued on a
+     * background thread, so the executor is unused, and the default backlog
+     * and replay limits apply.
+     *
+     * @param ren A message renderer
+     * @param svc Unused
+     * @param alloc An allocator for byte buffers, bound by the framework
+     * @param ctrl Used to handle any exceptions
+     * @param reg Shutdown hook registry that allows this sink to mark itself as
+     * shut down, cease sending messages and clean up after itself
+     * @deprecated Use the constructor that takes Settings
+     */
+    @Deprecated
     protected EventSink(MessageRenderer ren, @Named(ServerModule.BACKGROUND_THREAD_POOL_NAME) ExecutorService svc, ByteBufAllocator alloc, ApplicationControl ctrl, ShutdownHookRegistry reg) {
+        this(ren, alloc, ctrl, reg, DEFAULT_MAX_BACKLOG, false, DEFAULT_REPLAY_EVENTS, DEFAULT_REPLAY_MAX_AGE_MILLIS);
+    }
+
+    private EventSink(MessageRenderer ren, ByteBufAllocator alloc, ApplicationControl ctrl, ShutdownHookRegistry reg,
+            int maxBacklog, boolean disconnectSlowClients, int replayEvents, long replayMaxAge) {
         this.ren = ren;
         this.alloc = alloc;
         this.ctrl = ctrl;
-        reg.add(shutdownRun);
-        svc.submit(runner);
+        this.config = new SseClient.Config(maxBacklog, disconnectSlowClients);
+        this.replayEvents = Math.max(0, replayEvents);
+        this.replayMaxAge = replayMaxAge;
+        this.all = new Topic(null, new ReplayBuffer(this.replayEvents, replayMaxAge));
+        reg.add(new Shutdown());
     }
 
     /**
@@ -107,22 +188,13 @@ public class EventSink {
      * @return this
      */
     public EventSink publish(EventChannelName name, String eventType, Object message) {
-        if (shutdown || channels.isEmpty()) {
-            return this;
-        }
-        // make sure we use the first instance we were passed
-        for (EventChannelName n : channelsForName.keySet()) {
-            if (name.equals(n)) {
-                name = n;
-                break;
-            }
+        Topic topic = topicFor(name);
+        if (topic != null) {
+            send(topic, eventType, message);
         }
-//        long id = name == null ? count.getAndIncrement() : name.nextId();
-        Message msg = new Message(name, eventType, count.getAndIncrement(), message);
-        messages.offer(msg);
         return this;
     }
-    
+
     /**
      * Publish an event
      *
@@ -146,7 +218,7 @@ public class EventSink {
     public EventSink publish(Object message) {
         return publish((EventChannelName) null, message);
     }
-    
+
     /**
      * Publish an event to a named channel
      *
@@ -157,20 +229,105 @@ public class EventSink {
      */
     public EventSink publish(EventChannelName name, Object message) {
         Checks.notNull("message", message);
-        if (shutdown || channels.isEmpty()) {
-            return this;
+        return publish(name, null, message);
+    }
+
+    private Topic topicFor(EventChannelName name) {
+        if (shutdown) {
+            return null;
         }
-        // make sure we use the first instance we were passed
-        for (EventChannelName n : channelsForName.keySet()) {
-            if (name.equals(n)) {
-                name = n;
-                break;
+        // A topic exists while it has clients, or retained events a
+        // reconnecting client may want
+        Topic result = name == null ? all : topics.get(name);
+        return result == null || (result.clients.isEmpty() && replayEvents == 0) ? null : result;
+    }
+
+    private void send(Topic topic, String eventType, Object message) {
+        String data = ren.toString(message);
+        long timestamp = System.currentTimeMillis();
+        // The message, which may be large, is encoded before taking the lock;
+        // only the few bytes of the event and id lines are written under it
+        ByteBuf body = encodeData(data);
+        try {
+            // Ids are assigned, events retained and batches enqueued under one
+            // lock, so every client sees events in id order, and a client being
+            // registered sees each event either by replay or live, never both
+            synchronized (lock) {
+                if (topic != all && topics.get(topic.name) != topic) {
+                    return;
+                }
+                long id = ++lastId;
+                ByteBuf buf = join(encodeHeader(eventType, id, timestamp), body.retain());
+                try {
+                    for (Map.Entry<EventLoop, SseClient[]> e : topic.clients.entrySet()) {
+                        batchFor(e.getKey()).add(buf.retainedDuplicate(), e.getValue());
+                    }
+                    topic.history.add(id, timestamp, buf.retainedDuplicate());
+                } finally {
+                    buf.release();
+                }
             }
+        } finally {
+            body.release();
+        }
+    }
+
+    private LoopBatch batchFor(EventLoop loop) {
+        LoopBatch result = batches.get(loop);
+        if (result == null) {
+            result = batches.computeIfAbsent(loop, LoopBatch::new);
+        }
+        return result;
+    }
+
+    ByteBuf encode(String eventType, long id, long timestamp, String data) {
+        return join(encodeHeader(eventType, id, timestamp), encodeData(data));
+    }
+
+    private ByteBuf join(ByteBuf header, ByteBuf body) {
+        return alloc.compositeBuffer(2).addComponents(true, header, body);
+    }
+
+    private ByteBuf encodeHeader(String eventType, long id, long timestamp) {
+        ByteBuf buf = alloc.ioBuffer((eventType == null ? 0 : eventType.length() + 8) + 40);
+        if (eventType != null) {
+            buf.writeCharSequence("\nevent: ", CharsetUtil.US_ASCII);
+            ByteBufUtil.writeUtf8(buf, eventType);
+        }
+        buf.writeCharSequence("\nid: ", CharsetUtil.US_ASCII);
+        writeDecimal(buf, id);
+        buf.writeByte('-');
+        writeDecimal(buf, timestamp);
+        return buf;
+    }
+
+    private ByteBuf encodeData(String data) {
+        ByteBuf buf = alloc.ioBuffer(data.length() + 16);
+        buf.writeCharSequence("\ndata: ", CharsetUtil.US_ASCII);
+        // Each line of a multi-line message needs its own data: prefix
+        int start = 0;
+        for (int nl = data.indexOf('\n'); nl >= 0; nl = data.indexOf('\n', start)) {
+            ByteBufUtil.writeUtf8(buf, data.subSequence(start, nl));
+            buf.writeCharSequence("\ndata: ", CharsetUtil.US_ASCII);
+            start = nl + 1;
+        }
+        ByteBufUtil.writeUtf8(buf, start == 0 ? data : data.subSequence(start, data.length()));
+        buf.writeByte('\n').writeByte('\n');
+        return buf;
+    }
+
+    private static void writeDecimal(ByteBuf buf, long value) {
+        if (value < 0) {
+            buf.writeCharSequence(Long.toString(value), CharsetUtil.US_ASCII);
+            return;
+        }
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            buf.writeByte('0' + (int) ((value / divisor) % 10));
         }
-        long id = name == null ? count.getAndIncrement() : name.nextId();
-        Message msg = new Message(name, id, message);
-        messages.offer(msg);
-        return this;
     }
 
     /**
@@ -180,201 +337,362 @@ public class EventSink {
      * @return this
      */
     public EventSink register(Channel channel) {
-        if (!shutdown && channel.isOpen()) {
-            channels.add(channel);
-            channel.closeFuture().addListener(remover);
+        return register(null, channel, null);
+    }
+
+    /**
+     * Register a channel which will receive events from this event sink,
+     * first replaying any retained events published after the one the client
+     * last received.
+     *
+     * @param channel A channel
+     * @param lastEventId The value of the request's <code>Last-Event-ID</code>
+     * header, or null
+     * @return this
+     */
+    public EventSink register(Channel channel, String lastEventId) {
+        return register(null, channel, lastEventId);
+    }
+
+    /**
+     * Register a channel which will receive events published to the passed
+     * name, as well as events published without a name.
+     *
+     * @param name The name of the sub-channel
+     * @param channel A channel
+     * @return this
+     */
+    public EventSink register(EventChannelName name, Channel channel) {
+        return register(name, channel, null);
+    }
+
+    /**
+     * Register a channel which will receive events published to the passed
+     * name, as well as events published without a name, first replaying any
+     * retained events published after the one the client last received.
+     *
+     * @param name The name of the sub-channel, or null
+     * @param channel A channel
+     * @param lastEventId The value of the request's <code>Last-Event-ID</code>
+     * header, or null
+     * @return this
+     */
+    public EventSink register(EventChannelName name, Channel channel, String lastEventId) {
+        if (shutdown || !channel.isOpen()) {
+            return this;
+        }
+        SseClient client = SseClient.forChannel(channel, config);
+        long resumeAfter = ReplayBuffer.parseId(lastEventId);
+        synchronized (lock) {
+            long now = System.currentTimeMillis();
+            sweep(now);
+            Topic named = null;
+            if (name != null) {
+                named = topics.get(name);
+                if (named == null) {
+                    // The first instance we are passed is the one we keep
+                    named = new Topic(name, new ReplayBuffer(replayEvents, replayMaxAge));
+                    topics.put(name, named);
+                }
+                if (named.add(client)) {
+                    channel.closeFuture().addListener(new RemoveListener(name, client));
+                } else {
+                    named = null;
+                }
+            }
+            Topic unnamed = null;
+            if (all.add(client)) {
+                unnamed = all;
+                channel.closeFuture().addListener(new RemoveListener(null, client));
+            }
+            if (resumeAfter >= 0) {
+                replay(client, resumeAfter, now, unnamed, named);
+            }
         }
         return this;
     }
 
-    public synchronized EventSink register(EventChannelName name, Channel channel) {
-        if (!shutdown && channel.isOpen()) {
-            channels.add(channel);
-            List<Channel> chlls = channelsForName.get(name);
-            if (chlls == null) {
-                chlls = Lists.newCopyOnWriteArrayList(Arrays.asList(channel));
-                channelsForName.put(name, chlls);
-            } else {
-                chlls.add(channel);
+    private void replay(SseClient client, long resumeAfter, long now, Topic a, Topic b) {
+        List<ReplayBuffer.Entry> missed = new ArrayList<>();
+        for (Topic topic : new Topic[]{a, b}) {
+            if (topic != null) {
+                topic.history.prune(now);
+                topic.history.after(resumeAfter, missed);
             }
-            channel.closeFuture().addListener(new RemoveListener(name));
-            register(channel);
         }
-        return this;
+        if (missed.isEmpty()) {
+            return;
+        }
+        if (a != null && b != null) {
+            missed.sort((x, y) -> Long.compare(x.id, y.id));
+        }
+        SseClient[] target = new SseClient[]{client};
+        LoopBatch batch = batchFor(client.channel.eventLoop());
+        for (ReplayBuffer.Entry e : missed) {
+            batch.add(e.event.retainedDuplicate(), target);
+        }
+        replayed.add(missed.size());
     }
 
-    private final RemoveListener remover = new RemoveListener();
+    private void sweep(long now) {
+        // Drop expired history, and names nobody is subscribed to any more
+        // once nothing is retained for them
+        if (replayEvents == 0 || now - lastSweep < replayMaxAge) {
+            return;
+        }
+        lastSweep = now;
+        all.history.prune(now);
+        for (Iterator<Topic> it = topics.values().iterator(); it.hasNext();) {
+            Topic topic = it.next();
+            topic.history.prune(now);
+            if (topic.clients.isEmpty() && topic.history.isEmpty()) {
+                it.remove();
+            }
+        }
+    }
 
     private final class RemoveListener implements ChannelFutureListener {
 
         private final EventChannelName name;
+        private final SseClient client;
 
-        public RemoveListener(EventChannelName name) {
+        RemoveListener(EventChannelName name, SseClient client) {
             this.name = name;
-        }
-
-        public RemoveListener() {
-            this(null);
+            this.client = client;
         }
 
         @Override
         public void operationComplete(ChannelFuture f) throws Exception {
-            if (name != null) {
-                List<Channel> chlls = channelsForName.get(name);
-                if (chlls != null) {
-                    chlls.remove(f.channel());
-                    if (chlls.isEmpty()) {
-                        channelsForName.remove(name);
+            synchronized (lock) {
+                if (name == null) {
+                    all.remove(client);
+                    return;
+                }
+                Topic topic = topics.get(name);
+                if (topic != null) {
+                    topic.remove(client);
+                    if (topic.clients.isEmpty() && topic.history.isEmpty()) {
+                        topics.remove(name);
                     }
                 }
             }
-            channels.remove(f.channel());
         }
     }
 
+    /**
+     * Stop sending events to all currently registered channels, without
+     * closing them, and discard all retained events.
+     */
     public void clear() {
-        channels.clear();
-        messages.clear();
+        synchronized (lock) {
+            all.clear();
+            for (Topic topic : topics.values()) {
+                topic.clear();
+            }
+            topics.clear();
+        }
+    }
+
+    /**
+     * Get the number of channels currently registered.
+     *
+     * @return A count
+     */
+    public int clientCount() {
+        int result = 0;
+        for (SseClient[] clients : all.clients.values()) {
+            result += clients.length;
+        }
+        return result;
+    }
+
+    /**
+     * Get the number of events discarded because a client's backlog was full,
+     * or because it was disconnected for being too slow.
+     *
+     * @return A count
+     */
+    public long droppedEventCount() {
+        return config.dropped.sum();
+    }
+
+    /**
+     * Get the number of events currently waiting in clients' backlogs for
+     * their connections to become writable.
+     *
+     * @return A count
+     */
+    public long backloggedEventCount() {
+        return config.backlogged.sum();
+    }
+
+    /**
+     * Get the number of retained events sent to reconnecting clients.
+     *
+     * @return A count
+     */
+    public long replayedEventCount() {
+        return replayed.sum();
     }
 
-    private ByteBuf toByteBuf(Message msg) {
-        StringBuilder builder = new StringBuilder();
-        if (msg.eventType != null) {
-            builder.append("\nevent: ").append(msg.eventType);
+    /**
+     * The channels subscribed to one name, or to everything, grouped by the
+     * event loop each belongs to, and the events retained for replay. Modified
+     * only under the sink's lock.
+     */
+    private static final class Topic {
+
+        private static final SseClient[] EMPTY = new SseClient[0];
+        final EventChannelName name;
+        final Map<EventLoop, SseClient[]> clients = new ConcurrentHashMap<>();
+        final ReplayBuffer history;
+
+        Topic(EventChannelName name, ReplayBuffer history) {
+            this.name = name;
+            this.history = history;
+        }
+
+        boolean add(SseClient client) {
+            EventLoop loop = client.channel.eventLoop();
+            SseClient[] old = clients.get(loop);
+            if (old == null) {
+                old = EMPTY;
+            }
+            for (SseClient c : old) {
+                if (c == client) {
+                    return false;
+                }
+            }
+            SseClient[] result = Arrays.copyOf(old, old.length + 1);
+            result[old.length] = client;
+            clients.put(loop, result);
+            return true;
+        }
+
+        void remove(SseClient client) {
+            EventLoop loop = client.channel.eventLoop();
+            SseClient[] old = clients.get(loop);
+            if (old == null) {
+                return;
+            }
+            for (int i = 0; i < old.length; i++) {
+                if (old[i] == client) {
+                    if (old.length == 1) {
+                        clients.remove(loop);
+                    } else {
+                        SseClient[] result = new SseClient[old.length - 1];
+                        System.arraycopy(old, 0, result, 0, i);
+                        System.arraycopy(old, i + 1, result, i, result.length - i);
+                        clients.put(loop, result);
+                    }
+                    return;
+                }
+            }
+        }
+
+        void clear() {
+            clients.clear();
+            history.clear();
         }
-        String stringMessage = ren.toString(msg.message).replace("\n", "\ndata: "); //XXX support multiline
-        builder.append("\nid: ").append(msg.id).append("-").append(msg.timestamp)
-                .append("\ndata: ").append(stringMessage).append('\n').append('\n');
-        return alloc.ioBuffer(builder.length()).writeBytes(builder.toString().getBytes(CharsetUtil.UTF_8));
     }
 
-    private class Runner implements Runnable {
+    /**
+     * Events waiting to be written to the channels of one event loop; a single
+     * task drains everything that has accumulated, so a burst of events costs
+     * one task submission and one flush per channel.
+     */
+    private final class LoopBatch implements Runnable {
+
+        private final EventLoop loop;
+        private final ConcurrentLinkedQueue<Delivery> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final List<SseClient> touched = new ArrayList<>();
+
+        LoopBatch(EventLoop loop) {
+            this.loop = loop;
+        }
+
+        void add(ByteBuf event, SseClient[] clients) {
+            pending.offer(new Delivery(event, clients));
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    loop.execute(this);
+                } catch (RuntimeException ex) {
+                    // Rejected - the loop is shutting down
+                    scheduled.set(false);
+                    discard();
+                }
+            }
+        }
 
         @Override
         public void run() {
-            synchronized (EventSink.class) {
-                thread = Thread.currentThread();
-            }
-            final List<Message> msgs = new LinkedList<>();
+            scheduled.set(false);
+            Delivery delivery;
             try {
-                for (;;) {
+                while ((delivery = pending.poll()) != null) {
                     try {
-                        if (shutdown) {
-                            break;
-                        }
-                        msgs.add(messages.take());
-                        messages.drainTo(msgs);
-                        if (channels.isEmpty() && channelsForName.isEmpty()) {
-                            msgs.clear();
-                            continue;
-                        }
-                        for (Message msg : msgs) {
-                            EventChannelName target = msg.channelName;
-                            ByteBuf buf = toByteBuf(msg);
-                            if (target == null) {
-                                for (Iterator<Channel> channelIterator = channels.iterator(); channelIterator.hasNext();) {
-                                    if (shutdown) {
-                                        return;
-                                    }
-                                    Channel channel = channelIterator.next();
-                                    if (!channel.isOpen()) {
-                                        channelIterator.remove();
-                                    } else {
-                                        try {
-                                            ByteBuf toWrite = buf.duplicate().retain();
-                                            channel.writeAndFlush(new DefaultHttpContent(toWrite));
-                                        } catch (Exception e) {
-                                            ctrl.internalOnError(e);
-                                            channelIterator.remove();
-                                        }
-                                    }
-                                }
-                            } else {
-                                List<Channel> targetChannels = channelsForName.get(target);
-                                if (targetChannels != null) {
-                                    for (Iterator<Channel> channelIterator = targetChannels.iterator(); channelIterator.hasNext();) {
-                                        if (shutdown) {
-                                            return;
-                                        }
-                                        Channel channel = channelIterator.next();
-                                        if (!channel.isOpen()) {
-                                            channelIterator.remove();
-                                        } else {
-                                            try {
-                                                ByteBuf toWrite = buf.duplicate().retain();
-                                                channel.writeAndFlush(new DefaultHttpContent(toWrite));
-                                            } catch (Exception e) {
-                                                ctrl.internalOnError(e);
-                                                channelIterator.remove();
-                                            }
-                                        }
-                                    }
-                                }
+                        for (SseClient client : delivery.clients) {
+                            if (shutdown) {
+                                break;
+                            }
+                            client.offer(delivery.event.retainedDuplicate());
+                            if (!client.inBatch) {
+                                client.inBatch = true;
+                                touched.add(client);
                             }
-                            buf.release();
                         }
-                        msgs.clear();
-                    } catch (InterruptedException ex) {
-                        return;
+                    } finally {
+                        delivery.event.release();
                     }
                 }
+            } catch (Exception e) {
+                ctrl.internalOnError(e);
             } finally {
-                msgs.clear();
-                try {
-                    for (Channel c : channels) {
-                        c.close();
-                    }
-                } finally {
-                    channels.clear();
-                    synchronized (EventSink.this) {
-                        thread = null;
-                    }
+                for (SseClient client : touched) {
+                    client.inBatch = false;
+                    client.flushIfNeeded();
                 }
+                touched.clear();
             }
         }
-    }
 
-    private class Shutdown implements Runnable {
-
-        @Override
-        public void run() {
-            shutdown = true;
-            Thread t;
-            synchronized (EventSink.this) {
-                t = thread;
-                thread = null;
-            }
-            if (t != null && t.isAlive()) {
-                t.interrupt();
+        private void discard() {
+            Delivery delivery;
+            while ((delivery = pending.poll()) != null) {
+                delivery.event.release();
             }
         }
     }
 
-    private static final class Message {
+    private static final class Delivery {
 
-        public final long timestamp = System.currentTimeMillis();
-        public final String eventType;
-        public final long id;
-        public final Object message;
-        public final EventChannelName channelName;
+        final ByteBuf event;
+        final SseClient[] clients;
 
-        public Message(long id, Object message) {
-            this((EventChannelName) null, id, message);
-        }
-
-        public Message(EventChannelName name, long id, Object message) {
-            this(name, null, id, message);
+        Delivery(ByteBuf event, SseClient[] clients) {
+            this.event = event;
+            this.clients = clients;
         }
+    }
 
-        public Message(String eventType, long id, Object message) {
-            this(null, eventType, id, message);
-        }
+    private class Shutdown implements Runnable {
 
-        public Message(EventChannelName channelName, String eventType, long id, Object message) {
-            this.channelName = channelName;
-            this.eventType = eventType;
-            this.id = id;
-            this.message = message;
+        @Override
+        public void run() {
+            shutdown = true;
+            try {
+                for (SseClient[] clients : all.clients.values()) {
+                    for (SseClient client : clients) {
+                        client.channel.close();
+                    }
+                }
+            } finally {
+                clear();
+                for (LoopBatch batch : batches.values()) {
+                    batch.discard();
+                }
+            }
         }
     }
 }
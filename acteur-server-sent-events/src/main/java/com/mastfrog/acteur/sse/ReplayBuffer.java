@@ -0,0 +1,162 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.sse;
+
+import io.netty.buffer.ByteBuf;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Bounded history of already-encoded events published to one topic of an
+ * EventSink, kept so that a client which reconnects with a
+ * <code>Last-Event-ID</code> header can be sent what it missed. Entries are
+ * held in id order and evicted when there are too many or they are too old.
+ * <p>
+ * Not thread-safe - guarded by the owning EventSink's lock.
+ *
+ * @author Tim Boudreau
+ */
+final class ReplayBuffer {
+
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private final int maxEvents;
+    private final long maxAgeMillis;
+
+    ReplayBuffer(int maxEvents, long maxAgeMillis) {
+        this.maxEvents = maxEvents;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Retain an event, evicting whatever no longer fits.
+     *
+     * @param id The event's id, greater than that of any event added before
+     * @param timestamp The time it was published
+     * @param event The encoded event, which this buffer takes ownership of
+     */
+    void add(long id, long timestamp, ByteBuf event) {
+        if (maxEvents <= 0) {
+            event.release();
+            return;
+        }
+        while (entries.size() >= maxEvents) {
+            entries.poll().event.release();
+        }
+        entries.add(new Entry(id, timestamp, event));
+        prune(timestamp);
+    }
+
+    /**
+     * Evict events published more than the maximum age before the passed time.
+     *
+     * @param now The current time in millis since the epoch
+     */
+    void prune(long now) {
+        long oldest = now - maxAgeMillis;
+        Entry e;
+        while ((e = entries.peek()) != null && e.timestamp < oldest) {
+            entries.poll().event.release();
+        }
+    }
+
+    /**
+     * Collect the retained events with ids greater than the passed one.
+     *
+     * @param lastId The id of the last event a client received
+     * @param into A list to add to, in id order
+     */
+    void after(long lastId, List<Entry> into) {
+        // Usually a client has only missed the last few events, so search
+        // backwards from the newest
+        int count = 0;
+        for (Iterator<Entry> it = entries.descendingIterator(); it.hasNext();) {
+            if (it.next().id <= lastId) {
+                break;
+            }
+            count++;
+        }
+        int skip = entries.size() - count;
+        for (Entry e : entries) {
+            if (skip-- <= 0) {
+                into.add(e);
+            }
+        }
+    }
+
+    void clear() {
+        Entry e;
+        while ((e = entries.poll()) != null) {
+            e.event.release();
+        }
+    }
+
+    /**
+     * Parse the numeric id from the value of a <code>Last-Event-ID</code>
+     * header, which EventSink writes as <code>id-timestamp</code>.
+     *
+     * @param lastEventId A header value, possibly null
+     * @return The id, or -1 if absent or not one of ours
+     */
+    static long parseId(CharSequence lastEventId) {
+        if (lastEventId == null) {
+            return -1;
+        }
+        long result = 0;
+        int len = lastEventId.length();
+        int i = 0;
+        for (; i < len; i++) {
+            char c = lastEventId.charAt(i);
+            if (c == '-') {
+                break;
+            }
+            if (c < '0' || c > '9' || result > (Long.MAX_VALUE - 9) / 10) {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return i == 0 ? -1 : result;
+    }
+
+    static final class Entry {
+
+        final long id;
+        final long timestamp;
+        final ByteBuf event;
+
+        Entry(long id, long timestamp, ByteBuf event) {
+            this.id = id;
+            this.timestamp = timestamp;
+            this.event = event;
+        }
+    }
+}
@@ -27,6 +27,7 @@ package com.mastfrog.acteur.sse;
 import com.google.common.net.MediaType;
 import com.google.inject.Provider;
 import com.mastfrog.acteur.Acteur;
+import com.mastfrog.acteur.HttpEvent;
 import com.mastfrog.acteur.headers.Headers;
 import com.mastfrog.acteur.util.CacheControl;
 import com.mastfrog.acteur.util.Connection;
@@ -51,20 +52,24 @@ import javax.inject.Inject;
  * <li>Subclass this and used &#064;Named to look up a specific EventSource 
  * (make sure to bind it in Scopes.SINGLETON)</li>
  * </ul>
+ * If the request carries a <code>Last-Event-ID</code> header, as browsers send
+ * when an EventSource reconnects, any events published since that one which the
+ * EventSink still retains are sent before live events.
  *
  * @author Tim Boudreau
  */
 public final class SseActeur extends Acteur {
 
     private static final MediaType TYPE = MediaType.parse("text/event-stream; charset=UTF-8");
+    private static final String LAST_EVENT_ID = "Last-Event-ID";
 
     @Inject
-    public SseActeur(EventSink sink, Provider<EventChannelName> name) {
+    public SseActeur(EventSink sink, Provider<EventChannelName> name, HttpEvent evt) {
         add(Headers.CONTENT_TYPE, TYPE);
         add(Headers.CACHE_CONTROL, CacheControl.PRIVATE_NO_CACHE_NO_STORE);
         add(Headers.CONNECTION, Connection.keep_alive);
         setState(new RespondWith(OK));
-        setResponseBodyWriter(new L(sink, name.get()));
+        setResponseBodyWriter(new L(sink, name.get(), evt.header(LAST_EVENT_ID)));
         setChunked(true);
     }
 
@@ -72,21 +77,19 @@ public final class SseActeur extends Acteur {
 
         private final EventSink sink;
         private final EventChannelName name;
+        private final String lastEventId;
 
-        public L(EventSink sink, EventChannelName name) {
+        public L(EventSink sink, EventChannelName name, String lastEventId) {
             this.sink = sink;
             this.name = name;
+            this.lastEventId = lastEventId;
         }
 
         @Override
         public void operationComplete(ChannelFuture future) throws Exception {
             // At this point we know the headers have been sent, so it is
             // safe to start sending events
-            if (name == null) {
-                sink.register(future.channel());
-            } else {
-                sink.register(name, future.channel());
-            }
+            sink.register(name, future.channel(), lastEventId);
         }
     }
 }
@@ -0,0 +1,176 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.sse;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One connected event-stream client, and the bounded backlog of encoded events
+ * waiting to be written to it. Installed at the head of the channel's pipeline
+ * when the channel is registered with an EventSink. Events are written straight
+ * through while the channel is writable; while it is not they wait here, and
+ * are written when Netty reports the channel writable again. When the backlog
+ * is full, the oldest event is dropped, or the client is disconnected (so its
+ * EventSource reconnects) if the sink is configured to do that.
+ * <p>
+ * Everything except {@link #forChannel(Channel, Config)} is called on the
+ * channel's event loop.
+ *
+ * @author Tim Boudreau
+ */
+final class SseClient extends ChannelInboundHandlerAdapter {
+
+    static final String HANDLER_NAME = "sse-backlog";
+    private static final AttributeKey<SseClient> KEY = AttributeKey.valueOf(SseClient.class, "sse");
+
+    final Channel channel;
+    private final ArrayDeque<ByteBuf> backlog = new ArrayDeque<>();
+    private final Config config;
+    private boolean needsFlush;
+    boolean inBatch;
+
+    private SseClient(Channel channel, Config config) {
+        this.channel = channel;
+        this.config = config;
+    }
+
+    static SseClient forChannel(Channel channel, Config config) {
+        Attribute<SseClient> attr = channel.attr(KEY);
+        SseClient result = attr.get();
+        if (result == null) {
+            SseClient nue = new SseClient(channel, config);
+            result = attr.setIfAbsent(nue);
+            if (result == null) {
+                result = nue;
+                channel.pipeline().addFirst(HANDLER_NAME, nue);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Take ownership of an encoded event and write it, queue it, or drop
+     * something.
+     *
+     * @param event An encoded event, which this client will release if it is
+     * not written
+     */
+    void offer(ByteBuf event) {
+        if (!channel.isActive()) {
+            event.release();
+            return;
+        }
+        if (backlog.isEmpty() && channel.isWritable()) {
+            write(event);
+            return;
+        }
+        if (backlog.size() >= config.maxBacklog) {
+            if (config.disconnect) {
+                event.release();
+                config.dropped.increment();
+                config.disconnected.increment();
+                discardAll();
+                channel.close();
+                return;
+            }
+            backlog.poll().release();
+            config.dropped.increment();
+            config.backlogged.decrement();
+        }
+        backlog.add(event);
+        config.backlogged.increment();
+    }
+
+    /**
+     * Flush the channel if anything was written since the last flush - called
+     * once per batch of events, after all of them have been offered.
+     */
+    void flushIfNeeded() {
+        if (needsFlush) {
+            needsFlush = false;
+            channel.flush();
+        }
+    }
+
+    private void write(ByteBuf event) {
+        channel.write(new DefaultHttpContent(event), channel.voidPromise());
+        needsFlush = true;
+    }
+
+    private void drain() {
+        while (!backlog.isEmpty() && channel.isWritable()) {
+            write(backlog.poll());
+            config.backlogged.decrement();
+        }
+        flushIfNeeded();
+    }
+
+    private void discardAll() {
+        ByteBuf event;
+        while ((event = backlog.poll()) != null) {
+            event.release();
+            config.dropped.increment();
+            config.backlogged.decrement();
+        }
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isWritable()) {
+            drain();
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        discardAll();
+        super.channelInactive(ctx);
+    }
+
+    /**
+     * Limits shared by all of a sink's clients, and the counters they update.
+     */
+    static final class Config {
+
+        final int maxBacklog;
+        final boolean disconnect;
+        final LongAdder dropped = new LongAdder();
+        final LongAdder backlogged = new LongAdder();
+        final LongAdder disconnected = new LongAdder();
+
+        Config(int maxBacklog, boolean disconnect) {
+            this.maxBacklog = Math.max(1, maxBacklog);
+            this.disconnect = disconnect;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.sse;
+
+import com.mastfrog.acteur.Event;
+import com.mastfrog.acteur.spi.ApplicationControl;
+import com.mastfrog.giulius.ShutdownHookRegistry;
+import com.mastfrog.settings.SettingsBuilder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.util.CharsetUtil;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class EventSinkTest {
+
+    @Test
+    public void testEncoding() throws Throwable {
+        EventSink sink = sink(4);
+        ByteBuf buf = sink.encode("foo", 3, 12, "a\nb\u00e9");
+        try {
+            assertEquals("\nevent: foo\nid: 3-12\ndata: a\ndata: b\u00e9\n\n", buf.toString(CharsetUtil.UTF_8));
+        } finally {
+            buf.release();
+        }
+        buf = sink.encode(null, 1234567890123L, 0, "hello");
+        try {
+            assertEquals("\nid: 1234567890123-0\ndata: hello\n\n", buf.toString(CharsetUtil.UTF_8));
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testNamedAndUnnamedDelivery() throws Throwable {
+        EventSink sink = sink(4);
+        EmbeddedChannel a = new EmbeddedChannel();
+        EmbeddedChannel b = new EmbeddedChannel();
+        EventChannelName name = new EventChannelName("stuff");
+        sink.register(a);
+        sink.register(name, b);
+        sink.register(name, b);
+        assertEquals(2, sink.clientCount());
+
+        sink.publish("one");
+        sink.publish(new EventChannelName("stuff"), "two");
+        sink.publish(new EventChannelName("nobody"), "three");
+        a.runPendingTasks();
+        b.runPendingTasks();
+        assertEquals(1, read(a).size());
+        List<String> forB = read(b);
+        assertEquals(forB.toString(), 2, forB.size());
+        assertTrue(forB.get(0), forB.get(0).endsWith("\ndata: one\n\n"));
+        // Named and unnamed events share one id sequence
+        assertTrue(forB.get(1), forB.get(1).startsWith("\nid: 1-"));
+
+        b.close().sync();
+        assertEquals(1, sink.clientCount());
+        sink.publish(name, "four");
+        a.close().sync();
+        assertEquals(0, sink.clientCount());
+    }
+
+    @Test(timeout = 30000)
+    public void testConcurrentPublishersDeliverInIdOrder() throws Throwable {
+        EventSink sink = sink(1000);
+        EmbeddedChannel ch = new EmbeddedChannel();
+        sink.register(ch);
+        int threads = 4;
+        int perThread = 50;
+        ExecutorService svc = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(svc.submit(() -> {
+                start.await();
+                for (int i = 0; i < perThread; i++) {
+                    sink.publish("msg-" + thread + "-" + i);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        svc.shutdown();
+        ch.runPendingTasks();
+        List<String> got = read(ch);
+        assertEquals(threads * perThread, got.size());
+        for (int i = 0; i < got.size(); i++) {
+            assertTrue(got.get(i), got.get(i).startsWith("\nid: " + (i + 1) + "-"));
+        }
+        ch.close().sync();
+    }
+
+    @Test
+    public void testSlowClientBacklogIsBounded() throws Throwable {
+        EventSink sink = sink(2);
+        EmbeddedChannel ch = new EmbeddedChannel();
+        sink.register(ch);
+        ch.unsafe().outboundBuffer().setUserDefinedWritability(1, false);
+        ch.runPendingTasks();
+        for (int i = 0; i < 5; i++) {
+            sink.publish("msg-" + i);
+        }
+        ch.runPendingTasks();
+        assertEquals(0, read(ch).size());
+        assertEquals(2L, sink.backloggedEventCount());
+        assertEquals(3L, sink.droppedEventCount());
+
+        ch.unsafe().outboundBuffer().setUserDefinedWritability(1, true);
+        ch.runPendingTasks();
+        List<String> got = read(ch);
+        assertEquals(got.toString(), 2, got.size());
+        assertTrue(got.get(0), got.get(0).endsWith("\ndata: msg-3\n\n"));
+        assertTrue(got.get(1), got.get(1).endsWith("\ndata: msg-4\n\n"));
+        assertEquals(0L, sink.backloggedEventCount());
+        ch.close().sync();
+    }
+
+    @Test
+    public void testReconnectingClientResumesAfterLastEventId() throws Throwable {
+        EventSink sink = sink(16);
+        EventChannelName name = new EventChannelName("stuff");
+        EmbeddedChannel first = new EmbeddedChannel();
+        sink.register(name, first);
+        sink.publish("zero");
+        sink.publish(name, "one");
+        first.runPendingTasks();
+        List<String> got = read(first);
+        assertEquals(got.toString(), 2, got.size());
+        String lastId = got.get(1).substring("\nid: ".length(), got.get(1).indexOf("\ndata"));
+        first.close().sync();
+
+        // Published while nobody is listening
+        sink.publish(name, "two");
+        sink.publish("three");
+        sink.publish(new EventChannelName("other"), "nobody");
+
+        EmbeddedChannel second = new EmbeddedChannel();
+        sink.register(new EventChannelName("stuff"), second, lastId);
+        sink.publish(name, "four");
+        second.runPendingTasks();
+        got = read(second);
+        assertEquals(got.toString(), 3, got.size());
+        assertTrue(got.get(0), got.get(0).startsWith("\nid: 2-"));
+        assertTrue(got.get(0), got.get(0).endsWith("\ndata: two\n\n"));
+        assertTrue(got.get(1), got.get(1).endsWith("\ndata: three\n\n"));
+        assertTrue(got.get(2), got.get(2).startsWith("\nid: 4-"));
+        assertEquals(2L, sink.replayedEventCount());
+
+        // A client with no Last-Event-ID only gets live events
+        EmbeddedChannel third = new EmbeddedChannel();
+        sink.register(third);
+        third.runPendingTasks();
+        assertEquals(0, read(third).size());
+        second.close().sync();
+        third.close().sync();
+    }
+
+    @Test
+    public void testReplayBufferLimits() {
+        ReplayBuffer buf = new ReplayBuffer(3, 1000);
+        for (int i = 0; i < 5; i++) {
+            buf.add(i, 10000 + i * 100, Unpooled.buffer(1).writeByte(i));
+        }
+        assertEquals(3, buf.size());
+        List<ReplayBuffer.Entry> into = new ArrayList<>();
+        buf.after(2, into);
+        assertEquals(2, into.size());
+        assertEquals(3L, into.get(0).id);
+        into.clear();
+        buf.after(-1, into);
+        assertEquals(3, into.size());
+        buf.prune(11250);
+        assertEquals(2, buf.size());
+        buf.prune(20000);
+        assertTrue(buf.isEmpty());
+
+        assertEquals(42L, ReplayBuffer.parseId("42-1571234567890"));
+        assertEquals(7L, ReplayBuffer.parseId("7"));
+        assertEquals(-1L, ReplayBuffer.parseId(null));
+        assertEquals(-1L, ReplayBuffer.parseId(""));
+        assertEquals(-1L, ReplayBuffer.parseId("abc"));
+        assertEquals(-1L, ReplayBuffer.parseId("99999999999999999999999-1"));
+    }
+
+    private static List<String> read(EmbeddedChannel ch) {
+        List<String> result = new ArrayList<>();
+        for (HttpContent c = ch.readOutbound(); c != null; c = ch.readOutbound()) {
+            result.add(c.content().toString(CharsetUtil.UTF_8));
+            c.release();
+        }
+        return result;
+    }
+
+    private static EventSink sink(int backlog) throws Throwable {
+        return new EventSink(msg -> msg.toString(), ByteBufAllocator.DEFAULT, new Ctrl(),
+                new ShutdownHookRegistry() {
+                }, new SettingsBuilder().add(EventSink.SETTINGS_KEY_MAX_BACKLOG, backlog).build());
+    }
+
+    static final class Ctrl implements ApplicationControl {
+
+        @Override
+        public void enableDefaultCorsHandling() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CountDownLatch onEvent(Event<?> event, Channel channel) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void internalOnError(Throwable err) {
+            throw new AssertionError(err);
+        }
+    }
+}
@@ -37,6 +37,11 @@ public final class RequestID {
 
     public final int index;
     public final long time = System.currentTimeMillis();
+    /**
+     * The value of System.nanoTime() when this id was created, for measuring
+     * elapsed time within a request.
+     */
+    public final long startNanos = System.nanoTime();
     // A trivial unique per run id to uniquify id strings
     private static final String RUN_ID = Long.toString(
             (System.currentTimeMillis() - 142097304385L) / 60000, 36);
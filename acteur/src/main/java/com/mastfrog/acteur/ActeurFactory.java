@@ -52,6 +52,7 @@ import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 import javax.inject.Inject;
 import org.netbeans.validation.api.InvalidInputException;
@@ -688,13 +689,29 @@ public class ActeurFactory {
 
     @Deprecated
     public Acteur matchPath(boolean decode, final String... regexen) {
+        return matchPathSupplier(decode, regexen).get();
+    }
+
+    /**
+     * Create a builder for a single acteur which performs several of the
+     * simple checks this class offers in one pass.
+     */
+    FusedPreconditions.Builder preconditions() {
+        return new FusedPreconditions.Builder(event, charset);
+    }
+
+    /**
+     * Does the work of matchPath() once, returning a supplier which creates
+     * the resulting acteur for each request.
+     */
+    Supplier<Acteur> matchPathSupplier(boolean decode, final String... regexen) {
         if (regexen.length == 1) {
             String exactPath = cache.exactPathForRegex(regexen[0]);
             if (exactPath != null) {
-                return new ExactMatchPath(event, exactPath, decode);
+                return () -> new ExactMatchPath(event, exactPath, decode);
             }
         }
-        return new MatchPath(event, cache, decode, regexen);
+        return () -> new MatchPath(event, cache, decode, regexen);
     }
 
     static class ExactMatchPath extends Acteur {
@@ -798,18 +815,23 @@ public class ActeurFactory {
     }
 
     public Acteur globPathMatch(boolean decode, String... patterns) {
+        return globPathMatchSupplier(decode, patterns).get();
+    }
+
+    /**
+     * Does the work of globPathMatch() once, returning a supplier which
+     * creates the resulting acteur for each request.
+     */
+    Supplier<Acteur> globPathMatchSupplier(boolean decode, String... patterns) {
         if (patterns.length == 1 && cache.isExactGlob(patterns[0])) {
             String pattern = patterns[0];
-            if (pattern.length() > 0 && pattern.charAt(0) == '/') {
-                pattern = pattern.substring(1);
-            }
-            return new ExactMatchPath(event, patterns[0], decode);
+            return () -> new ExactMatchPath(event, pattern, decode);
         }
         String[] rexen = new String[patterns.length];
         for (int i = 0; i < rexen.length; i++) {
             rexen[i] = PathPatterns.patternFromGlob(patterns[i]);
         }
-        return matchPath(decode, rexen);
+        return matchPathSupplier(decode, rexen);
     }
 
     /**
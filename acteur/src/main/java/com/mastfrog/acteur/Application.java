@@ -24,17 +24,21 @@
 package com.mastfrog.acteur;
 
 import com.mastfrog.acteur.headers.Headers;
+import com.google.common.cache.CacheStats;
 import com.google.common.net.MediaType;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 import com.mastfrog.acteur.annotations.Early;
+import com.mastfrog.acteur.annotations.StreamingBody;
 import com.mastfrog.acteur.debug.Probe;
 import com.mastfrog.acteur.headers.HeaderValueType;
+import com.mastfrog.acteur.preconditions.PageAnnotationHandler;
 import com.mastfrog.settings.SettingsBuilder;
 import com.mastfrog.giulius.Dependencies;
 import com.mastfrog.giulius.scope.ReentrantScope;
 import com.mastfrog.acteur.util.CacheControl;
 import com.mastfrog.acteur.util.CacheControlTypes;
+import com.mastfrog.acteur.server.PathFactory;
 import com.mastfrog.acteur.server.ServerModule;
 import static com.mastfrog.acteur.server.ServerModule.GUICE_BINDING_DEFAULT_CONTEXT_OBJECTS;
 import com.mastfrog.acteur.util.ErrorInterceptor;
@@ -69,6 +73,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import com.mastfrog.graal.annotation.Expose;
 import io.netty.handler.codec.http.DefaultHttpResponse;
@@ -128,6 +133,8 @@ public class Application implements Iterable<Page> {
 
     private final RequestID.Factory ids = new RequestID.Factory();
 
+    private final Map<Class<? extends Page>, PagePlan> plans = new ConcurrentHashMap<>();
+
     /**
      * Create an application, optionally passing in an array of page types (you
      * can also call <code>add()</code> to add them).
@@ -155,6 +162,39 @@ public class Application implements Iterable<Page> {
         }
     };
 
+    /**
+     * Get the combined hit, miss and eviction counts for the caches used to
+     * match request paths to pages, for export to whatever metrics system
+     * the application uses. The size of the caches is controlled by the
+     * setting <code>acteur.route.cache.size</code>.
+     *
+     * @return The cache statistics
+     */
+    public CacheStats routeCacheStats() {
+        CacheStats result = filters.matchCacheStats();
+        Dependencies deps = this.deps;
+        if (deps != null) {
+            result = result.plus(deps.getInstance(PathPatterns.class).globCacheStats());
+        }
+        return result;
+    }
+
+    /**
+     * Get the hit, miss and eviction counts for the cache of parsed request
+     * paths. Its bounds are controlled by the settings
+     * <code>acteur.path.cache.size</code> and
+     * <code>acteur.path.cache.max.chars</code>.
+     *
+     * @return The cache statistics
+     */
+    public CacheStats pathCacheStats() {
+        Dependencies deps = this.deps;
+        if (deps == null) {
+            return new CacheStats(0, 0, 0, 0, 0, 0);
+        }
+        return deps.getInstance(PathFactory.class).pathCacheStats();
+    }
+
     public boolean hasEarlyPages() {
         return !this.earlyPages.isEmpty();
     }
@@ -164,6 +204,18 @@ public class Application implements Iterable<Page> {
         return result;
     }
 
+    /**
+     * Determine if a request is for a page annotated with &#064;StreamingBody,
+     * whose body is handed to acteurs as a ContentStream rather than
+     * aggregated.
+     *
+     * @param req The request
+     * @return true if it matches a streaming page
+     */
+    public boolean isStreamingPageMatch(HttpRequest req) {
+        return filters.isStreamingPageMatch(req);
+    }
+
     List<Object> rawPages() {
         return this.pages;
     }
@@ -202,6 +254,11 @@ public class Application implements Iterable<Page> {
             Application.this.enableDefaultCorsHandling();
         }
 
+        @Override
+        public void compilePagePlans() {
+            Application.this.compilePagePlans();
+        }
+
         @Override
         public CountDownLatch onEvent(Event<?> event, Channel channel) {
             return Application.this.onEvent(event, channel);
@@ -272,7 +329,11 @@ public class Application implements Iterable<Page> {
             throw new ConfigurationError(page + " is not a subclass of " + Page.class.getName());
         }
         assert checkConstructor(page);
-        if (page.getAnnotation(Early.class) != null) {
+        if (page.getAnnotation(StreamingBody.class) != null) {
+            filters.addEarlyPage(page);
+            filters.addStreamingPage(page);
+            earlyPages.add(page);
+        } else if (page.getAnnotation(Early.class) != null) {
             filters.addEarlyPage(page);
             earlyPages.add(page);
         } else {
@@ -283,7 +344,11 @@ public class Application implements Iterable<Page> {
 
     @SuppressWarnings("unchecked")
     protected final void add(Page page) {
-        if (page.getClass().getAnnotation(Early.class) != null) {
+        if (page.getClass().getAnnotation(StreamingBody.class) != null) {
+            filters.addEarlyPage(page);
+            filters.addStreamingPage(page);
+            earlyPages.add(page);
+        } else if (page.getClass().getAnnotation(Early.class) != null) {
             filters.addEarlyPage(page);
             earlyPages.add(page);
         } else {
@@ -481,6 +546,47 @@ public class Application implements Iterable<Page> {
         return deps;
     }
 
+    PagePlan plan(Page page) {
+        return plan(page.getClass(), null);
+    }
+
+    /**
+     * Read the annotations of every page type added so far, so the first
+     * request for each does not have to. Pages added later, and any whose
+     * plan is invalidated by a handler registered afterwards, are compiled
+     * on first use. May run in the background, concurrently with requests,
+     * in fast startup mode.
+     */
+    void compilePagePlans() {
+        PageAnnotationHandler.Registry registry = getDependencies().getInstance(PageAnnotationHandler.Registry.class);
+        compilePagePlans(earlyPages, registry);
+        compilePagePlans(pages, registry);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void compilePagePlans(List<Object> pagesAndPageTypes, PageAnnotationHandler.Registry registry) {
+        // Iterate a copy - the help page may be added by the first request
+        for (Object o : pagesAndPageTypes.toArray()) {
+            plan(o instanceof Class<?> ? (Class<? extends Page>) o : ((Page) o).getClass(), registry);
+        }
+    }
+
+    boolean hasCompiledPlan(Class<? extends Page> type) {
+        PagePlan result = plans.get(type);
+        return result != null && result.isCurrent();
+    }
+
+    private PagePlan plan(Class<? extends Page> type, PageAnnotationHandler.Registry registry) {
+        PagePlan result = plans.get(type);
+        if (result == null || !result.isCurrent()) {
+            result = new PagePlan(type, registry == null
+                    ? getDependencies().getInstance(PageAnnotationHandler.Registry.class)
+                    : registry);
+            plans.put(type, result);
+        }
+        return result;
+    }
+
     @SuppressWarnings({"unchecked", "ThrowableInstanceNotThrown", "ThrowableInstanceNeverThrown"})
     Dependencies getDependencies() {
         if (deps == null) {
@@ -48,7 +48,10 @@ import com.mastfrog.acteur.preconditions.UrlParametersMayNotBeCombinedSets;
 import com.mastfrog.giulius.Dependencies;
 import com.mastfrog.giulius.Ordered;
 import com.mastfrog.settings.Settings;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 import javax.inject.Inject;
 
 /**
@@ -83,42 +86,53 @@ public final class BuiltInPageAnnotationHandler extends PageAnnotationHandler {
     }
 
     @Override
-    @SuppressWarnings("deprecation")
     public <T extends Page> boolean processAnnotations(T page, List<? super Acteur> acteurs) {
-        Class<?> c = page.getClass();
+        List<Supplier<? extends Acteur>> compiled = compile(page.getClass());
+        for (Supplier<? extends Acteur> s : compiled) {
+            acteurs.add(s.get());
+        }
+        return !compiled.isEmpty();
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public <T extends Page> List<Supplier<? extends Acteur>> compile(Class<T> c) {
+        List<Supplier<? extends Acteur>> acteurs = new ArrayList<>(4);
         PathRegex regex = c.getAnnotation(PathRegex.class);
-        int oldSize = acteurs.size();
         if (regex != null) {
-            acteurs.add(af.matchPath(regex.decode(), regex.value()));
+            acteurs.add(af.matchPathSupplier(regex.decode(), regex.value()));
         }
         Path path = c.getAnnotation(Path.class);
         if (path != null) {
-            acteurs.add(af.globPathMatch(path.value()));
+            acteurs.add(af.globPathMatchSupplier(false, path.value()));
         }
+        // The simple, stateless checks are run by a single acteur, in the
+        // same order they would have been run as separate ones
+        FusedPreconditions.Builder checks = af.preconditions();
         Methods m = c.getAnnotation(Methods.class);
         if (m != null) {
-            acteurs.add(af.matchMethods(m.value()));
+            checks.methods(m.value());
         }
         MaximumPathLength len = c.getAnnotation(MaximumPathLength.class);
         if (len != null) {
-            acteurs.add(af.maximumPathLength(len.value()));
+            checks.maximumPathLength(len.value());
         }
         BannedUrlParameters banned = c.getAnnotation(BannedUrlParameters.class);
         if (banned != null) {
-            acteurs.add(af.banParameters(banned.value()));
+            checks.bannedParameters(banned.value());
         }
         RequireAtLeastOneUrlParameterFrom atLeastOneOf = c.getAnnotation(RequireAtLeastOneUrlParameterFrom.class);
         if (atLeastOneOf != null) {
-            acteurs.add(af.requireAtLeastOneParameter(atLeastOneOf.value()));
+            checks.requireAtLeastOneParameter(atLeastOneOf.value());
         }
         RequiredUrlParameters params = c.getAnnotation(RequiredUrlParameters.class);
         if (params != null) {
             switch (params.combination()) {
                 case ALL:
-                    acteurs.add(af.requireParameters(params.value()));
+                    checks.requireParameters(params.value());
                     break;
                 case AT_LEAST_ONE:
-                    acteurs.add(af.requireAtLeastOneParameter(params.value()));
+                    checks.requireAtLeastOneParameter(params.value());
                     break;
                 default:
                     throw new AssertionError(params.combination());
@@ -126,59 +140,68 @@ public final class BuiltInPageAnnotationHandler extends PageAnnotationHandler {
         }
         RequireParametersIfMethodMatches methodParams = c.getAnnotation(RequireParametersIfMethodMatches.class);
         if (methodParams != null) {
-            acteurs.add(af.requireParametersIfMethodMatches(methodParams.method(), methodParams.value()));
+            checks.requireParametersIfMethodMatches(methodParams.method(), methodParams.value());
         }
         ParametersMustBeNumbersIfPresent nums = c.getAnnotation(ParametersMustBeNumbersIfPresent.class);
         if (nums != null) {
-            acteurs.add(af.parametersMustBeNumbersIfTheyArePresent(nums.allowDecimal(), nums.allowNegative(), nums.value()));
+            checks.parametersMustBeNumbers(nums.allowDecimal(), nums.allowNegative(), nums.value());
         }
         MinimumRequestBodyLength minLength = c.getAnnotation(MinimumRequestBodyLength.class);
         if (minLength != null) {
-            acteurs.add(af.minimumBodyLength(minLength.value()));
+            checks.minimumBodyLength(minLength.value());
         }
         MaximumRequestBodyLength maxLength = c.getAnnotation(MaximumRequestBodyLength.class);
         if (maxLength != null) {
-            acteurs.add(af.maximumBodyLength(maxLength.value()));
+            checks.maximumBodyLength(maxLength.value());
         }
         UrlParametersMayNotBeCombined combos = c.getAnnotation(UrlParametersMayNotBeCombined.class);
         if (combos != null) {
-            acteurs.add(af.parametersMayNotBeCombined(combos.value()));
+            checks.parametersMayNotBeCombined(combos.value());
         }
         UrlParametersMayNotBeCombinedSets comboSet = c.getAnnotation(UrlParametersMayNotBeCombinedSets.class);
         if (comboSet != null) {
             for (UrlParametersMayNotBeCombined c1 : comboSet.value()) {
-                acteurs.add(af.parametersMayNotBeCombined(c1.value()));
+                checks.parametersMayNotBeCombined(c1.value());
             }
         }
+        if (!checks.isEmpty()) {
+            acteurs.add(checks.build());
+        }
         InjectUrlParametersAs paramsIface = c.getAnnotation(InjectUrlParametersAs.class);
         if (paramsIface != null) {
             Class<?> type = paramsIface.value();
-            acteurs.add(af.injectRequestParametersAs(type));
+            acteurs.add(() -> af.injectRequestParametersAs(type));
         }
         CORS cors = c.getAnnotation(CORS.class);
         if (cors != null) {
-            acteurs.add(Acteur.wrap(CORSResource.CorsHeaders.class, deps));
+            acteurs.add(wrap(CORSResource.CorsHeaders.class));
         }
         boolean hasAuth = false;
         @SuppressWarnings("deprecation")
         com.mastfrog.acteur.preconditions.BasicAuth auth = c.getAnnotation(com.mastfrog.acteur.preconditions.BasicAuth.class);
         if (auth != null) {
-            acteurs.add(Acteur.wrap(AuthenticationActeur.class, deps));
+            acteurs.add(wrap(AuthenticationActeur.class));
         }
         Authenticated auth2 = c.getAnnotation(Authenticated.class);
         if (!hasAuth && auth2 != null) {
-            acteurs.add(Acteur.wrap(AuthenticationActeur.class, deps));
+            acteurs.add(wrap(AuthenticationActeur.class));
         }
         AuthenticatedIf authIf = c.getAnnotation(AuthenticatedIf.class);
         if (!hasAuth && authIf != null) {
             if (settings.getBoolean(authIf.setting(), false)) {
-                acteurs.add(Acteur.wrap(AuthenticationActeur.class, deps));
+                acteurs.add(wrap(AuthenticationActeur.class));
             }
         }
         InjectRequestBodyAs as = c.getAnnotation(InjectRequestBodyAs.class);
         if (as != null) {
-            acteurs.add(af.injectRequestBodyAsJSON(as.value()));
+            Class<?> type = as.value();
+            acteurs.add(() -> af.injectRequestBodyAsJSON(type));
         }
-        return oldSize != acteurs.size();
+        return acteurs;
+    }
+
+    private Supplier<Acteur> wrap(Class<? extends Acteur> type) {
+        Charset charset = deps.getInstance(Charset.class);
+        return () -> new Acteur.WrapperActeur(deps, charset, type);
     }
 }
@@ -0,0 +1,107 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpHeaders;
+
+/**
+ * Flow-controlled access to a request body, for pages annotated with
+ * &#064;StreamingBody. Nothing is delivered until a subscriber is attached and
+ * chunks have been requested; while there is no outstanding demand, the
+ * channel does not read from the socket.
+ * <p>
+ * May be injected into any acteur; for requests whose body was aggregated as
+ * usual, the returned instance delivers the aggregated content as a single
+ * chunk.
+ *
+ * @author Tim Boudreau
+ */
+public interface ContentStream {
+
+    /**
+     * Attach the subscriber which will receive chunks. Only one subscriber may
+     * be attached.
+     *
+     * @param subscriber The subscriber
+     * @return this
+     * @throws IllegalStateException if a subscriber is already attached
+     */
+    ContentStream subscribe(ChunkSubscriber subscriber);
+
+    /**
+     * Request up to <code>chunks</code> more chunks to be passed to the
+     * subscriber. May be called from any thread.
+     *
+     * @param chunks The number of chunks, greater than zero
+     * @return this
+     */
+    ContentStream request(long chunks);
+
+    /**
+     * Stop delivering content; any remaining body is read and discarded so
+     * the connection can be reused.
+     */
+    void cancel();
+
+    /**
+     * Get the number of bytes of content delivered to the subscriber so far.
+     *
+     * @return The number of bytes
+     */
+    long bytesDelivered();
+
+    /**
+     * Receives chunks of a request body. Methods are called on the channel's
+     * event loop and should not block; offload slow work and call
+     * <code>request()</code> when it is done.
+     */
+    public interface ChunkSubscriber {
+
+        /**
+         * Called with a chunk of content. The buffer is released after this
+         * method returns; call <code>retain()</code> on it to keep it longer.
+         *
+         * @param chunk The chunk
+         * @throws Exception If something goes wrong, which will result in
+         * the stream being cancelled and onError() being called
+         */
+        void onChunk(ByteBuf chunk) throws Exception;
+
+        /**
+         * Called once the last chunk has been delivered.
+         *
+         * @param trailingHeaders Any trailing headers sent with the request
+         */
+        void onComplete(HttpHeaders trailingHeaders);
+
+        /**
+         * Called if the connection is closed or fails before the body has
+         * been completely received.
+         *
+         * @param err The error
+         */
+        void onError(Throwable err);
+    }
+}
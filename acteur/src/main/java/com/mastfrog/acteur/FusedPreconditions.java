@@ -0,0 +1,522 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.google.common.net.MediaType;
+import com.mastfrog.acteur.errors.Err;
+import com.mastfrog.acteur.headers.Headers;
+import com.mastfrog.acteur.headers.Method;
+import com.mastfrog.acteur.preconditions.Description;
+import com.mastfrog.util.preconditions.Checks;
+import com.mastfrog.util.preconditions.Exceptions;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import javax.inject.Provider;
+
+/**
+ * The simple, stateless checks the built-in precondition annotations perform
+ * (methods, path length, url parameters, body length), compiled once per page
+ * type into a single acteur which runs them all in one pass over the request,
+ * rather than one acteur instance and one chain step per annotation.
+ * Responses are the same as those of the individual acteurs from
+ * ActeurFactory.
+ *
+ * @author Tim Boudreau
+ */
+final class FusedPreconditions implements Supplier<Acteur> {
+
+    private final Provider<HttpEvent> event;
+    private final Check[] checks;
+
+    private FusedPreconditions(Provider<HttpEvent> event, Check[] checks) {
+        this.event = event;
+        this.checks = checks;
+    }
+
+    @Override
+    public Acteur get() {
+        return new PreconditionsActeur(event, checks);
+    }
+
+    @Override
+    public String toString() {
+        return "Preconditions " + Arrays.toString(checks);
+    }
+
+    static final class Builder {
+
+        private final Provider<HttpEvent> event;
+        private final Charset charset;
+        private final List<Check> checks = new ArrayList<>(5);
+
+        Builder(Provider<HttpEvent> event, Charset charset) {
+            this.event = event;
+            this.charset = charset;
+        }
+
+        boolean isEmpty() {
+            return checks.isEmpty();
+        }
+
+        Builder methods(Method... methods) {
+            checks.add(new MethodsCheck(charset, methods));
+            return this;
+        }
+
+        Builder maximumPathLength(int length) {
+            Checks.nonZero("length", length);
+            Checks.nonNegative("length", length);
+            checks.add(new MaximumPathLengthCheck(length));
+            return this;
+        }
+
+        Builder bannedParameters(String... names) {
+            checks.add(new BannedParametersCheck(names));
+            return this;
+        }
+
+        Builder requireAtLeastOneParameter(String... names) {
+            checks.add(new AtLeastOneParameterCheck(names));
+            return this;
+        }
+
+        Builder requireParameters(String... names) {
+            checks.add(new RequiredParametersCheck(charset, names));
+            return this;
+        }
+
+        Builder requireParametersIfMethodMatches(Method method, String... names) {
+            Checks.notNull("method", method);
+            Checks.notNull("params", names);
+            Checks.notEmpty("params", Arrays.asList(names));
+            checks.add(new ParametersIfMethodCheck(method, names));
+            return this;
+        }
+
+        Builder parametersMustBeNumbers(boolean allowDecimal, boolean allowNegative, String... names) {
+            checks.add(new NumberParametersCheck(allowDecimal, allowNegative, names));
+            return this;
+        }
+
+        Builder minimumBodyLength(int length) {
+            checks.add(new BodyLengthCheck(length, true));
+            return this;
+        }
+
+        Builder maximumBodyLength(int length) {
+            checks.add(new BodyLengthCheck(length, false));
+            return this;
+        }
+
+        Builder parametersMayNotBeCombined(String... names) {
+            checks.add(new NotCombinedCheck(charset, names));
+            return this;
+        }
+
+        FusedPreconditions build() {
+            return new FusedPreconditions(event, checks.toArray(new Check[checks.size()]));
+        }
+    }
+
+    @Description("Checks the preconditions specified by annotations on the page")
+    static final class PreconditionsActeur extends Acteur {
+
+        private final Provider<HttpEvent> event;
+        private final Check[] checks;
+
+        PreconditionsActeur(Provider<HttpEvent> event, Check[] checks) {
+            this.event = event;
+            this.checks = checks;
+        }
+
+        @Override
+        public com.mastfrog.acteur.State getState() {
+            HttpEvent evt = event.get();
+            for (Check check : checks) {
+                com.mastfrog.acteur.State result = check.check(evt, this);
+                if (result != null) {
+                    return result;
+                }
+            }
+            return new ConsumedState();
+        }
+
+        @Override
+        public void describeYourself(Map<String, Object> into) {
+            for (Check check : checks) {
+                check.describe(into);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Preconditions " + Arrays.toString(checks);
+        }
+    }
+
+    /**
+     * One check; returns null if the request passes, and otherwise the state
+     * the acteur should return.
+     */
+    static abstract class Check {
+
+        abstract com.mastfrog.acteur.State check(HttpEvent evt, Acteur a);
+
+        abstract void describe(Map<String, Object> into);
+
+        static com.mastfrog.acteur.State badRequest(Acteur a, String msg) {
+            return a.new RespondWith(Err.badRequest(msg));
+        }
+
+        static com.mastfrog.acteur.State plainTextBadRequest(Acteur a, Charset charset, String msg) {
+            a.add(Headers.CONTENT_TYPE, MediaType.PLAIN_TEXT_UTF_8.withCharset(charset));
+            return badRequest(a, msg);
+        }
+    }
+
+    static final class MethodsCheck extends Check {
+
+        private final Charset charset;
+        private final Method[] methods;
+
+        MethodsCheck(Charset charset, Method[] methods) {
+            this.charset = charset;
+            this.methods = methods;
+        }
+
+        @Override
+        com.mastfrog.acteur.State check(HttpEvent evt, Acteur a) {
+            HttpMethod m = evt.method();
+            a.add(Headers.ALLOW, methods);
+            for (Method mm : methods) {
+                if (mm == m || mm.equals(m)) {
+                    return null;
+                }
+            }
+            return a.new RejectedState();
+        }
+
+        @Override
+        void describe(Map<String, Object> into) {
+            into.put(methods.length == 1 ? "Method" : "Methods", methods);
+        }
+
+        @Override
+        public String toString() {
+            return "Match Methods " + Arrays.toString(methods);
+        }
+    }
+
+    static final class MaximumPathLengthCheck extends Check {
+
+        private final int length;
+
+        MaximumPathLengthCheck(int length) {
+            this.length = length;
+        }
+
+        @Override
+        com.mastfrog.acteur.State check(HttpEvent evt, Acteur a) {
+            return evt.path().size() > length ? a.new RejectedState() : null;
+        }
+
+        @Override
+        void describe(Map<String, Object> into) {
+            into.put("Maximum Path Length", length);
+        }
+
+        @Override
+        public String toString() {
+            return "Maximum Path Length " + length;
+        }
+    }
+
+    static final class BannedParametersCheck extends Check {
+
+        private final String[] names;
+
+        BannedParametersCheck(String[] names) {
+            this.names = names.clone();
+            Arrays.sort(this.names);
+        }
+
+        @Override
+        com.mastfrog.acteur.State check(HttpEvent evt, Acteur a) {
+            for (String name : names) {
+                if (evt.urlParameter(name) != null) {
+                    return badRequest(a, name + " not allowed in parameters\n");
+                }
+            }
+            return null;
+        }
+
+        @Override
+        void describe(Map<String, Object> into) {
+            into.put("Illegal Parameters", names);
+        }
+
+        @Override
+        public String toString() {
+            return "Ban Parameters " + Arrays.toString(names);
+        }
+    }
+
+    static final class AtLeastOneParameterCheck extends Check {
+
+        private final String[] names;
+
+        AtLeastOneParameterCheck(String[] names) {
+            this.names = names;
+        }
+
+        @Override
+        com.mastfrog.acteur.State check(HttpEvent evt, Acteur a) {
+            for (String nm : names) {
+                if (evt.urlParameter(nm) != null) {
+                    return null;
+                }
+            }
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < names.length; i++) {
+                sb.append("'").append(names[i]).append("'");
+                if (i != names.length - 1) {
+                    sb.append(", ");
+                }
+            }
+            return badRequest(a, "Must have at least one of " + sb + " as parameters\n");
+        }
+
+        @Override
+        void describe(Map<String, Object> into) {
+            into.put("At least one parameter required", names);
+        }
+
+        @Override
+        public String toString() {
+            return "Require Parameters " + Arrays.asList(names);
+        }
+    }
+
+    static final class RequiredParametersCheck extends Check {
+
+        private final Charset charset;
+        private final String[] names;
+
+        RequiredParametersCheck(Charset charset, String[] names) {
+            this.charset = charset;
+            this.names = names;
+        }
+
+        @Override
+        com.mastfrog.acteur.State check(HttpEvent evt, Acteur a) {
+            for (String nm : names) {
+                if (evt.urlParameter(nm) == null) {
+                    return plainTextBadRequest(a, charset, "Missing URL parameter '" + nm + "'\n");
+                }
+            }
+            return null;
+        }
+
+        @Override
+        void describe(Map<String, Object> into) {
+            into.put("requiredParameters", names);
+        }
+
+        @Override
+        public String toString() {
+            return "Require Parameters " + Arrays.asList(names);
+        }
+    }
+
+    static final class ParametersIfMethodCheck extends Check {
+
+        private final Method method;
+        private final String[] names;
+
+        ParametersIfMethodCheck(Method method, String[] names) {
+            this.method = method;
+            this.names = names;
+        }
+
+        @Override
+        com.mastfrog.acteur.State check(HttpEvent evt, Acteur a) {
+            if (method.equals(evt.method())) {
+                for (String nm : names) {
+                    if (evt.urlParameter(nm) == null) {
+                        return badRequest(a, "Required parameters: " + Arrays.asList(names));
+                    }
+                }
+            }
+            return null;
+        }
+
+        @Override
+        void describe(Map<String, Object> into) {
+            into.put("Required parameters for " + method, names);
+        }
+
+        @Override
+        public String toString() {
+            return "Require Parameters If Method Is " + method + " " + Arrays.asList(names);
+        }
+    }
+
+    static final class NumberParametersCheck extends Check {
+
+        private final boolean allowDecimal;
+        private final boolean allowNegative;
+        private final String[] names;
+
+        NumberParametersCheck(boolean allowDecimal, boolean allowNegative, String[] names) {
+            this.allowDecimal = allowDecimal;
+            this.allowNegative = allowNegative;
+            this.names = names;
+        }
+
+        @Override
+        com.mastfrog.acteur.State check(HttpEvent evt, Acteur a) {
+            for (String name : names) {
+                String p = evt.urlParameter(name);
+                if (p != null && !isNumber(p)) {
+                    return badRequest(a, "Parameter " + name + " is not a legal number here: '" + p + "'\n");
+                }
+            }
+            return null;
+        }
+
+        private boolean isNumber(String p) {
+            boolean decimalSeen = false;
+            for (int i = 0; i < p.length(); i++) {
+                char c = p.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    continue;
+                }
+                if (c == '-' && i == 0 && allowNegative) {
+                    continue;
+                }
+                // As in ActeurFactory, a misplaced '-' may still pass as
+                // the decimal point
+                if ((c == '.' || c == '-') && !decimalSeen && allowDecimal) {
+                    decimalSeen = true;
+                    continue;
+                }
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        void describe(Map<String, Object> into) {
+            into.put("URL parameters must be numbers if present" + (allowNegative ? "(negative allowed) " : ("(must be non-negative) "))
+                    + (allowDecimal ? "(decimal-allowed)" : "(must be integers)"), names);
+        }
+
+        @Override
+        public String toString() {
+            return "Number Parameters " + Arrays.asList(names);
+        }
+    }
+
+    static final class BodyLengthCheck extends Check {
+
+        private final int length;
+        private final boolean minimum;
+
+        BodyLengthCheck(int length, boolean minimum) {
+            this.length = length;
+            this.minimum = minimum;
+        }
+
+        @Override
+        com.mastfrog.acteur.State check(HttpEvent evt, Acteur a) {
+            int val;
+            try {
+                val = evt.content().readableBytes();
+            } catch (IOException ex) {
+                return Exceptions.chuck(ex);
+            }
+            if (minimum && val < length) {
+                return badRequest(a, "Request body must be > " + length + " characters");
+            } else if (!minimum && val > length) {
+                return a.new RespondWith(new Err(HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE,
+                        "Request body must be < " + length + " characters"));
+            }
+            return null;
+        }
+
+        @Override
+        void describe(Map<String, Object> into) {
+            into.put(minimum ? "Minimum Body Length" : "Maximum Body Length", length);
+        }
+
+        @Override
+        public String toString() {
+            return (minimum ? "Minimum Body Length " : "Maximum Body Length ") + length;
+        }
+    }
+
+    static final class NotCombinedCheck extends Check {
+
+        private final Charset charset;
+        private final String[] names;
+
+        NotCombinedCheck(Charset charset, String[] names) {
+            this.charset = charset;
+            this.names = names;
+        }
+
+        @Override
+        com.mastfrog.acteur.State check(HttpEvent evt, Acteur a) {
+            String first = null;
+            for (String nm : names) {
+                if (evt.urlParameter(nm) != null) {
+                    if (first == null) {
+                        first = nm;
+                    } else {
+                        return plainTextBadRequest(a, charset, "Parameters may not contain both '"
+                                + first + "' and '" + nm + "'\n");
+                    }
+                }
+            }
+            return null;
+        }
+
+        @Override
+        void describe(Map<String, Object> into) {
+            into.put("requiredParameters", names);
+        }
+
+        @Override
+        public String toString() {
+            return "Parameters may not be combined: " + Arrays.asList(names);
+        }
+    }
+}
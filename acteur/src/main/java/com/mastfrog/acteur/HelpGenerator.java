@@ -33,6 +33,7 @@ import com.mastfrog.acteur.annotations.Precursors;
 import com.mastfrog.acteur.preconditions.Description;
 import com.mastfrog.acteur.preconditions.Example;
 import com.mastfrog.acteur.preconditions.Examples;
+import com.mastfrog.acteurbase.Instantiator;
 import static com.mastfrog.util.preconditions.Checks.notNull;
 import com.mastfrog.util.preconditions.Exceptions;
 import com.mastfrog.util.strings.Strings;
@@ -131,6 +132,8 @@ public final class HelpGenerator {
                             at = ((WrapperActeur) acteur).type();
                         } else if (acteur instanceof Class<?>) {
                             at = (Class<?>) acteur;
+                        } else if (acteur instanceof Instantiator<?>) {
+                            at = ((Instantiator<?>) acteur).type();
                         }
                         if (at != null) {
                             Map<String, Object> callFlow = new HashMap<>();
@@ -32,6 +32,7 @@ import io.netty.handler.codec.http.HttpRequest;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -122,6 +123,18 @@ public interface HttpEvent extends Event<HttpRequest> {
      */
     Map<String, String> urlParametersAsMap();
 
+    /**
+     * Get all values of a URL query string parameter, which may legitimately
+     * be repeated, in the order they appear in the URL.
+     *
+     * @param name The parameter name
+     * @return A list of values, empty if the parameter is not present
+     */
+    default List<String> urlParameters(String name) {
+        String result = urlParameter(name);
+        return result == null ? Collections.emptyList() : Collections.singletonList(result);
+    }
+
     /**
      * Very primitive Java dynamic proxy magic: You write a Java interface with
      * methods that each return a primitive type, and whose name corresponds to
@@ -27,7 +27,7 @@ import com.google.common.collect.Sets;
 import com.google.inject.ImplementedBy;
 import com.mastfrog.acteur.headers.Method;
 import com.mastfrog.acteur.preconditions.Description;
-import com.mastfrog.acteur.preconditions.PageAnnotationHandler;
+import com.mastfrog.acteurbase.Instantiator;
 import com.mastfrog.util.preconditions.Checks;
 import static com.mastfrog.util.preconditions.Checks.notNull;
 import static com.mastfrog.util.collections.CollectionUtils.setOf;
@@ -37,7 +37,6 @@ import java.util.ArrayList;
 import static java.util.Collections.singleton;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -161,6 +160,7 @@ public abstract class Page {
         for (Object o : acteurs) {
             try {
                 Acteur a = o instanceof Acteur ? (Acteur) o
+                        : o instanceof Instantiator<?> ? (Acteur) ((Instantiator<?>) o).get()
                         : application.getDependencies().getInstance(((Class<? extends Acteur>) o));
                 a.describeYourself(m);
             } catch (Exception e) {
@@ -217,6 +217,16 @@ public abstract class Page {
         acteurs.add(action);
     }
 
+    /**
+     * Add an instantiator which creates an acteur for each request without
+     * reflection - used by pages generated from &#064;HttpCall acteurs.
+     *
+     * @param factory An instantiator
+     */
+    protected final void add(Instantiator<? extends Acteur> factory) {
+        acteurs.add(notNull("factory", factory));
+    }
+
     final Application getApplication() {
         return application;
     }
@@ -230,20 +240,6 @@ public abstract class Page {
     }
 
     List<Object> acteurs(boolean corsByDefault) {
-        List<Acteur> annos = this.annotations();
-        List<Object> l = new ArrayList<>(annos.size() + acteurs.size() + (corsByDefault ? 1 : 0));
-        l.addAll(this.annotations());
-        if (corsByDefault) {
-            l.add(CORSResource.CorsHeaders.class);
-        }
-        l.addAll(acteurs);
-        return l;
-    }
-
-    private List<Acteur> annotations() {
-        PageAnnotationHandler.Registry handler = getApplication().getDependencies().getInstance(PageAnnotationHandler.Registry.class);
-        List<Acteur> results = new LinkedList<>();
-        handler.processAnnotations(this, results);
-        return results;
+        return getApplication().plan(this).acteurs(this, corsByDefault, acteurs);
     }
 }
@@ -23,7 +23,9 @@
  */
 package com.mastfrog.acteur;
 
-import com.google.common.collect.Sets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.mastfrog.acteur.Page.PathPatternInfo;
 import com.mastfrog.acteur.headers.Method;
 import static com.mastfrog.acteur.headers.Method.GET;
@@ -43,6 +45,7 @@ import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -55,25 +58,78 @@ import java.util.regex.Pattern;
  */
 class PagePathAndMethodFilter {
 
-    private final PathPatterns pp = new PathPatterns();
+    private final PathPatterns pp;
     private final Map<Method, ByMethod> all = new EnumMap<>(Method.class);
-    private final Set<MethodPath> matchesCache = Sets.newConcurrentHashSet();
-    private final Set<MethodPath> nonMatchesCache = Sets.newConcurrentHashSet();
+    // One cache per method, indexed by ordinal, keyed on the path portion of
+    // the request URI, so requests differing only in their query (ids,
+    // cache-busters, paging) share one entry rather than evicting the
+    // working set.  The undecoded path is used, since raw routes match
+    // against it and the decoded form is derived from it
+    private final Cache<String, Boolean>[] matchCaches;
     private final List<Object> unknowns = new ArrayList<>(5);
     static final boolean DEBUG = Boolean.getBoolean("path.cache.debug");
+    static final int DEFAULT_MATCH_CACHE_SIZE = 2048;
 
     private final Function<String, String> basePathFilter;
 
-    PagePathAndMethodFilter(Function<String, String> basePathFilter) {
+    PagePathAndMethodFilter(Function<String, String> basePathFilter, int matchCacheSize, PathPatterns pp) {
         this.basePathFilter = basePathFilter;
+        this.matchCaches = createMatchCaches(matchCacheSize);
+        this.pp = pp;
+    }
+
+    PagePathAndMethodFilter(Function<String, String> basePathFilter, int matchCacheSize) {
+        this(basePathFilter, matchCacheSize, new PathPatterns());
     }
 
     PagePathAndMethodFilter() {
-        this.basePathFilter = new IdentityFunction();
+        this(new IdentityFunction(), DEFAULT_MATCH_CACHE_SIZE);
     }
 
     PagePathAndMethodFilter(String basePath) {
-        this(filterForBasePath(basePath));
+        this(basePath, DEFAULT_MATCH_CACHE_SIZE);
+    }
+
+    PagePathAndMethodFilter(String basePath, int matchCacheSize) {
+        this(basePath, matchCacheSize, new PathPatterns());
+    }
+
+    PagePathAndMethodFilter(String basePath, int matchCacheSize, PathPatterns pp) {
+        this(filterForBasePath(basePath), matchCacheSize, pp);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Cache<String, Boolean>[] createMatchCaches(int size) {
+        Method[] methods = Method.values();
+        Cache<String, Boolean>[] result = new Cache[methods.length];
+        for (int i = 0; i < result.length; i++) {
+            // Guava's cache evicts in approximate LRU order per segment
+            result[i] = CacheBuilder.newBuilder()
+                    .maximumSize(Math.max(0, size))
+                    .concurrencyLevel(4)
+                    .recordStats()
+                    .build();
+        }
+        return result;
+    }
+
+    /**
+     * Get the combined hit, miss and eviction counts of the path match caches.
+     *
+     * @return The stats
+     */
+    CacheStats matchCacheStats() {
+        CacheStats result = new CacheStats(0, 0, 0, 0, 0, 0);
+        for (Cache<String, Boolean> cache : matchCaches) {
+            result = result.plus(cache.stats());
+        }
+        return result;
+    }
+
+    private void invalidateMatchCaches() {
+        for (Cache<String, Boolean> cache : matchCaches) {
+            cache.invalidateAll();
+        }
     }
 
     private static final Function<String, String> filterForBasePath(String basePath) {
@@ -179,32 +235,21 @@ class PagePathAndMethodFilter {
     }
 
     public boolean match(HttpRequest req) {
-        String path = this.basePathFilter.apply(req.uri());
-        if (path == null) {
-            return false;
-        }
-        path = trimLeadingAndTrailingSlashes(trimQuery(path));
+        String key = trimQuery(req.uri());
         Method method = Method.get(req);
-
-        MethodPath mp = new MethodPath(method, path);
-        if (nonMatchesCache.contains(mp)) {
-            return false;
-        }
-        if (matchesCache.contains(mp)) {
-            return true;
+        Cache<String, Boolean> cache = matchCaches[method.ordinal()];
+        Boolean cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
         }
-        ByMethod bm = all.get(mp.method);
-        if (bm == null) {
-            nonMatchesCache.add(mp);
-            return false;
-        }
-        if (bm.match(mp.path)) {
-            matchesCache.add(mp);
-            return true;
-        } else {
-            nonMatchesCache.add(mp);
+        String path = this.basePathFilter.apply(key);
+        if (path == null) {
             return false;
         }
+        ByMethod bm = all.get(method);
+        boolean result = bm != null && bm.match(trimLeadingAndTrailingSlashes(path));
+        cache.put(key, result);
+        return result;
     }
 
     void addHelp(String helpPattern) {
@@ -214,10 +259,17 @@ class PagePathAndMethodFilter {
             all.put(GET, by);
         }
         by.add(HelpPage.class, helpPattern);
+        invalidateMatchCaches();
     }
 
     public List<Object> listFor(HttpRequest req) {
-        String path = this.basePathFilter.apply(req.uri());
+        String key = trimQuery(req.uri());
+        Method method = Method.get(req);
+        List<Object> checkFirst = unknowns;
+        if (Boolean.FALSE.equals(matchCaches[method.ordinal()].getIfPresent(key))) {
+            return checkFirst;
+        }
+        String path = this.basePathFilter.apply(key);
         if (path == null) {
             // Base path didn't match
             if (DEBUG) {
@@ -227,14 +279,8 @@ class PagePathAndMethodFilter {
             }
             return Collections.emptyList();
         }
-        path = trimLeadingAndTrailingSlashes(trimQuery(path));
-        Method method = Method.get(req);
-        MethodPath mp = new MethodPath(method, path);
-        List<Object> checkFirst = unknowns;
-        if (nonMatchesCache.contains(mp)) {
-            return checkFirst;
-        }
-        ByMethod bm = all.get(mp.method);
+        path = trimLeadingAndTrailingSlashes(path);
+        ByMethod bm = all.get(method);
         if (bm == null) {
             if (DEBUG) {
                 System.out.println("  no ByMethod for "
@@ -276,6 +322,7 @@ class PagePathAndMethodFilter {
         if (!added && !unknowns.contains(page)) {
             unknowns.add(page);
         }
+        invalidateMatchCaches();
     }
 
     void add(Class<? extends Page> type) {
@@ -294,6 +341,7 @@ class PagePathAndMethodFilter {
         if (!added && !unknowns.contains(type)) {
             unknowns.add(type);
         }
+        invalidateMatchCaches();
     }
 
     void addUnknown(Page pg) {
@@ -302,18 +350,19 @@ class PagePathAndMethodFilter {
 
     private final class ByMethod {
 
-        private final Set<Pattern> patterns = new HashSet<>();
+        private final RouteIndex routes = new RouteIndex();
         private final Set<String> exacts = new HashSet<>();
         private final Map<String, List<Object>> pageForExacts = new HashMap<>();
-        private final Map<Pattern, List<Object>> pagePatterns = new HashMap<>();
+        private final Map<Pattern, List<Object>> pagePatterns = new LinkedHashMap<>();
         private final Set<Pattern> decodePatterns = new HashSet<>();
+        private final Set<Pattern> rawPatterns = new HashSet<>();
         private final Set<String> decodeExacts = new HashSet<>();
 
         public String toString() {
             StringBuilder sb = new StringBuilder();
             sb.append("  exact: ").append(Strings.join(", ", exacts));
             List<String> l = new ArrayList<>();
-            for (Pattern p : patterns) {
+            for (Pattern p : pagePatterns.keySet()) {
                 l.add(p.pattern());
             }
             sb.append("  patns: ").append(Strings.join(", ", l));
@@ -327,40 +376,20 @@ class PagePathAndMethodFilter {
         private List<List<Object>> matchingLists(String trimmedUri) {
             List<List<Object>> res = new ArrayList<>(4);
             List<Object> a = pageForExacts.get(trimmedUri);
-            String decodedUri = null;
+            String decodedUri = trimmedUri;
             if (a != null) {
                 res.add(a);
             } else if (Strings.contains('%', trimmedUri)) {
-                try {
-                    decodedUri = URLDecoder.decode(trimmedUri, "UTF-8");
-                } catch (UnsupportedEncodingException ex) {
-                    return Exceptions.chuck(ex);
-                }
+                decodedUri = decode(trimmedUri);
                 a = pageForExacts.get(decodedUri);
                 if (a != null) {
                     res.add(a);
                 }
             }
-            for (Pattern p : patterns) {
-                String toTest = trimmedUri;
-                if (decodePatterns.contains(p)) {
-                    if (decodedUri == null) {
-                        try {
-                            decodedUri = URLDecoder.decode(trimmedUri, "UTF-8");
-                        } catch (UnsupportedEncodingException ex) {
-                            return Exceptions.chuck(ex);
-                        }
-                    }
-                    toTest = decodedUri;
-                }
-                boolean isMatch = p.matcher(toTest).matches();
-                if (isMatch) {
-                    List<Object> l = pagePatterns.get(p);
-                    if (l != null) {
-                        res.add(l);
-                    }
-                }
+            if (decodedUri == trimmedUri && routes.needsDecoding()) {
+                decodedUri = decode(trimmedUri);
             }
+            routes.collect(trimmedUri, decodedUri, res);
             return res;
         }
 
@@ -373,30 +402,14 @@ class PagePathAndMethodFilter {
             if (exacts.contains(trimmedUri)) {
                 return true;
             }
-            String decodedUri = null;
-            if (Strings.contains('%', trimmedUri) || Strings.contains('+', trimmedUri)) {
-                try {
-                    decodedUri = URLDecoder.decode(trimmedUri, "UTF-8");
-                } catch (UnsupportedEncodingException ex) {
-                    return Exceptions.chuck(ex);
-                }
-                if (exacts.contains(decodedUri)) {
-                    return true;
-                }
+            String decodedUri = decode(trimmedUri);
+            if (decodedUri != trimmedUri && exacts.contains(decodedUri)) {
+                return true;
             }
-            for (Pattern p : patterns) {
-                boolean isMatch = p.matcher(trimmedUri).matches();
-                if (isMatch) {
-                    return true;
-                }
-                if (decodedUri != null) {
-                    isMatch = p.matcher(decodedUri).matches();
-                    if (isMatch) {
-                        return true;
-                    }
-                }
+            if (routes.matches(trimmedUri)) {
+                return true;
             }
-            return false;
+            return decodedUri != trimmedUri && routes.matches(decodedUri);
         }
 
         void add(Class<? extends Page> page, String regex) {
@@ -404,7 +417,7 @@ class PagePathAndMethodFilter {
             if (exact != null) {
                 exacts.add(exact);
             } else {
-                patterns.add(pp.getPattern(regex));
+                addPattern(pp.getPattern(regex), null, false);
             }
         }
 
@@ -438,17 +451,7 @@ class PagePathAndMethodFilter {
                         }
                         l.add(instance == null ? page : instance);
                     } else {
-                        Pattern pattern = pp.getPattern(PathPatterns.patternFromGlob(pat));
-                        patterns.add(pattern);
-                        if (pth.decode()) {
-                            decodePatterns.add(pattern);
-                        }
-                        List<Object> l = pagePatterns.get(pattern);
-                        if (l == null) {
-                            l = new ArrayList<>();
-                            pagePatterns.put(pattern, l);
-                        }
-                        l.add(instance == null ? page : instance);
+                        addGlob(pat, instance == null ? page : instance, pth.decode());
                     }
                 }
             }
@@ -501,19 +504,38 @@ class PagePathAndMethodFilter {
             return pathFound;
         }
 
-        void addPattern(Pattern pattern, Object instance, boolean decode) {
-            patterns.add(pattern);
-            if (decode) {
-                decodePatterns.add(pattern);
-            }
+        void addGlob(String glob, Object instance, boolean decode) {
+            Pattern pattern = pp.getPattern(PathPatterns.patternFromGlob(glob));
             List<Object> l = pagePatterns.get(pattern);
             if (l == null) {
                 l = new ArrayList<>();
                 pagePatterns.put(pattern, l);
             }
+            // A glob registered both with and without decoding gets a route
+            // for each, sharing one page list
+            if ((decode ? decodePatterns : rawPatterns).add(pattern)) {
+                // Globs the trie cannot represent fall back to the regex
+                if (!routes.addGlob(glob, l, decode)) {
+                    routes.addRegex(pattern, l, decode);
+                }
+            }
             l.add(instance);
         }
 
+        void addPattern(Pattern pattern, Object instance, boolean decode) {
+            List<Object> l = pagePatterns.get(pattern);
+            if (l == null) {
+                l = new ArrayList<>();
+                pagePatterns.put(pattern, l);
+            }
+            if ((decode ? decodePatterns : rawPatterns).add(pattern)) {
+                routes.addRegex(pattern, l, decode);
+            }
+            if (instance != null) {
+                l.add(instance);
+            }
+        }
+
         void addExact(String pat, Object instance, boolean decode) {
             exacts.add(pat);
             if (decode) {
@@ -528,6 +550,21 @@ class PagePathAndMethodFilter {
         }
     }
 
+    /**
+     * URL-decode a path if it contains anything to decode, returning the
+     * same instance if not.
+     */
+    private static String decode(String uri) {
+        if (!Strings.contains('%', uri) && !Strings.contains('+', uri)) {
+            return uri;
+        }
+        try {
+            return URLDecoder.decode(uri, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            return Exceptions.chuck(ex);
+        }
+    }
+
     private static String trimLeadingAndTrailingSlashes(String pat) {
         if (pat.length() > 1) {
             if (pat.charAt(0) == '/') {
@@ -547,44 +584,4 @@ class PagePathAndMethodFilter {
         }
         return uri;
     }
-
-    private static final class MethodPath {
-
-        private final Method method;
-        private final String path;
-        private int hash;
-
-        MethodPath(Method method, String path) {
-            this.method = method;
-            this.path = path;
-        }
-
-//        MethodPath(HttpRequest req) {
-//            path = trimLeadingAndTrailingSlashes(trimQuery(req.uri()));
-//            method = Method.get(req);
-//        }
-        @Override
-        public int hashCode() {
-            if (hash != 0) {
-                return hash;
-            }
-            return hash = path.hashCode() + (71 * (method.ordinal()));
-        }
-
-        @Override
-        public boolean equals(Object obj) {
-            if (this == obj) {
-                return true;
-            }
-            if (obj == null) {
-                return false;
-            }
-            return obj instanceof MethodPath && ((MethodPath) obj).method == method
-                    && ((MethodPath) obj).path.equals(path);
-        }
-
-        public String toString() {
-            return method.name() + ":" + path;
-        }
-    }
 }
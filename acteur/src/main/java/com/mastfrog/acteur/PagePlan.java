@@ -0,0 +1,69 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.mastfrog.acteur.annotations.Execution;
+import com.mastfrog.acteur.preconditions.PageAnnotationHandler.Registry;
+import com.mastfrog.acteurbase.ExecutionPolicy;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Everything about a page type that used to be worked out from its
+ * annotations on every request, computed once at startup, before the server
+ * is bound - or, for pages added later, when the first request for a page of
+ * that type arrives.
+ *
+ * @author Tim Boudreau
+ */
+final class PagePlan {
+
+    private final Registry.Compiled annotations;
+    private final ExecutionPolicy executionPolicy;
+
+    PagePlan(Class<? extends Page> pageType, Registry registry) {
+        annotations = registry.compile(pageType);
+        Execution exe = pageType.getAnnotation(Execution.class);
+        executionPolicy = exe == null ? null : exe.value();
+    }
+
+    boolean isCurrent() {
+        return annotations.isCurrent();
+    }
+
+    ExecutionPolicy executionPolicy(ExecutionPolicy defaultPolicy) {
+        return executionPolicy == null ? defaultPolicy : executionPolicy;
+    }
+
+    List<Object> acteurs(Page page, boolean corsByDefault, List<Object> pageActeurs) {
+        List<Object> result = new ArrayList<>(annotations.sizeHint()
+                + pageActeurs.size() + (corsByDefault ? 1 : 0));
+        annotations.addTo(page, result);
+        if (corsByDefault) {
+            result.add(CORSResource.CorsHeaders.class);
+        }
+        result.addAll(pageActeurs);
+        return result;
+    }
+}
@@ -30,6 +30,7 @@ import com.mastfrog.acteur.errors.ResponseException;
 import com.mastfrog.acteur.headers.HeaderValueType;
 import com.mastfrog.acteur.headers.Headers;
 import com.mastfrog.acteur.server.ServerModule;
+import com.mastfrog.acteur.server.WebSocketEvent;
 import static com.mastfrog.acteur.server.ServerModule.DELAY_EXECUTOR;
 import static com.mastfrog.acteur.server.ServerModule.X_INTERNAL_COMPRESS_HEADER;
 import com.mastfrog.acteur.util.CacheControl;
@@ -40,6 +41,7 @@ import com.mastfrog.acteurbase.Chain;
 import com.mastfrog.acteurbase.ChainCallback;
 import com.mastfrog.acteurbase.ChainRunner;
 import com.mastfrog.acteurbase.ChainsRunner;
+import com.mastfrog.acteurbase.ExecutionPolicy;
 import com.mastfrog.giulius.Dependencies;
 import com.mastfrog.giulius.DeploymentMode;
 import com.mastfrog.giulius.scope.ReentrantScope;
@@ -108,6 +110,16 @@ class PagesImpl2 {
 
     private final boolean httpCompressorEnabled;
 
+    private final ExecutionPolicy defaultExecutionPolicy;
+
+    private final boolean directWebSocketDispatch;
+
+    private final ExecutorService exe;
+
+    private final ReentrantScope scope;
+
+    private static final CountDownLatch DISPATCHED = new CountDownLatch(0);
+
     static final HeaderValueType<CharSequence> X_BODY_GENERATOR = Headers.header(new AsciiString("X-Body-Generator"));
 
     @Inject
@@ -119,8 +131,14 @@ class PagesImpl2 {
         renderStackTraces = settings.getBoolean(ServerModule.SETTINGS_KEY_RENDER_STACK_TRACES, !mode.isProduction());
         debug = settings.getBoolean("acteur.debug", false);
         httpCompressorEnabled = settings.getBoolean(ServerModule.HTTP_COMPRESSION, true);
+        defaultExecutionPolicy = ExecutionPolicy.parse(settings.getString(
+                ServerModule.SETTINGS_KEY_EXECUTION_POLICY), ExecutionPolicy.POOLED);
+        directWebSocketDispatch = settings.getBoolean(WebSocketUpgradeActeur.SETTINGS_KEY_WEBSOCKET_DIRECT_DISPATCH,
+                WebSocketUpgradeActeur.DEFAULT_WEBSOCKET_DIRECT_DISPATCH);
+        this.exe = exe;
+        this.scope = scope;
         ChainRunner chr = new ChainRunner(exe, scope);
-        ch = new ChainsRunner(exe, scope, chr);
+        ch = new ChainsRunner(exe, scope, chr, defaultExecutionPolicy);
     }
 
     /**
@@ -183,7 +201,18 @@ class PagesImpl2 {
         return true;
     }
 
+    private ExecutionPolicy executionPolicy(Page page) {
+        return application.plan(page).executionPolicy(defaultExecutionPolicy);
+    }
+
     public CountDownLatch onEvent(RequestID id, Event<?> event, Channel channel, Object[] defaultContext) {
+        if (directWebSocketDispatch && event instanceof WebSocketEvent) {
+            WebSocketDispatcher dispatcher = webSocketDispatcher(channel);
+            if (dispatcher.canDispatch()) {
+                dispatcher.dispatch(id, (WebSocketEvent) event);
+                return DISPATCHED;
+            }
+        }
         CountDownLatch latch = new CountDownLatch(1);
 
         Iterable<PageChain> pagesIterable;
@@ -225,6 +254,33 @@ class PagesImpl2 {
         return latch;
     }
 
+    /**
+     * Get or create the dispatcher which runs the acteurs following a
+     * WebSocketUpgradeActeur for each frame on this channel. Frames on a
+     * channel are read one at a time on its event loop, so there is no race
+     * to create it.
+     */
+    private WebSocketDispatcher webSocketDispatcher(Channel channel) {
+        Attribute<WebSocketDispatcher> attr = channel.attr(WebSocketDispatcher.DISPATCHER_KEY);
+        WebSocketDispatcher result = attr.get();
+        if (result == null) {
+            Supplier<? extends Chain<? extends Acteur, ?>> chainSupplier = channel.attr(WebSocketUpgradeActeur.CHAIN_KEY).get();
+            if (chainSupplier == null) {
+                throw new IllegalStateException("Got a WebSocketFrame on a channel with no websocket chain set up");
+            }
+            PageChain pageChain = (PageChain) chainSupplier.get();
+            Object[] context = pageChain.ctx;
+            if (pageChain.findInContext(Closables.class) == null) {
+                // One for the life of the connection, rather than one per frame
+                context = ArrayUtils.concatenate(context, new Object[]{new Closables(channel, application.control())});
+            }
+            result = WebSocketDispatcher.create(application, channel.attr(WebSocketUpgradeActeur.PAGE_KEY).get(),
+                    pageChain.steps(), context, pageChain.executionPolicy(), exe, scope, renderStackTraces);
+            attr.set(result);
+        }
+        return result;
+    }
+
     static class CancelOnChannelClose implements ChannelFutureListener {
 
         final AtomicBoolean cancelled = new AtomicBoolean();
@@ -257,6 +313,17 @@ class PagesImpl2 {
             if (chain.page != null) {
                 Page.set(chain.page);
             }
+            application.probe.onBeforeRunActeur(id, event, chain.page);
+        }
+
+        @Override
+        public void onDeferred(PageChain chain) {
+            application.probe.onDeferred(id, event, chain.page);
+        }
+
+        @Override
+        public void onResumed(PageChain chain) {
+            application.probe.onResumed(id, event, chain.page);
         }
 
         @Override
@@ -281,11 +348,8 @@ class PagesImpl2 {
 
         @Override
         public void onDone(com.mastfrog.acteur.State state, List<ResponseImpl> responses) {
-            ResponseImpl finalR = new ResponseImpl();
             // Coalesce the responses generated by individual acteurs
-            for (ResponseImpl r : responses) {
-                finalR.merge(r);
-            }
+            ResponseImpl finalR = ResponseImpl.coalesce(responses);
             receive(state.getActeur(), state, finalR);
             latch.countDown();
         }
@@ -521,6 +585,11 @@ class PagesImpl2 {
                 }
 
                 fut.addListener(application.errorLoggingListener);
+                if (application.probe.observesResponseWrites()) {
+                    boolean complete = !response.hasListener();
+                    fut.addListener(f -> application.probe.onResponseFlushed(id, event,
+                            resp.status(), complete, f.isSuccess()));
+                }
 
                 final Page pg = state.getLockedPage();
                 ChannelFuture bodyFuture = response.sendMessage(event, fut, resp, response.hasListener());
@@ -575,14 +644,18 @@ class PagesImpl2 {
         @Override
         public PageChain convert(Page r) {
             r.setApplication(application);
-            if (event instanceof HttpEvent) {
-                Path pth = ((HttpEvent) event).path();
-                Thread.currentThread().setName(pth + " for " + r.getClass().getName());
-            } else {
-                Thread.currentThread().setName(id + " of " + r.getClass().getName());
+            // Don't rename the event loop thread if we are running on it
+            if (defaultExecutionPolicy != ExecutionPolicy.INLINE) {
+                if (event instanceof HttpEvent) {
+                    Path pth = ((HttpEvent) event).path();
+                    Thread.currentThread().setName(pth + " for " + r.getClass().getName());
+                } else {
+                    Thread.currentThread().setName(id + " of " + r.getClass().getName());
+                }
             }
             application.probe.onBeforeRunPage(id, event, r);
             PageChain result = new PageChain(application, application.getDependencies(), application.getRequestScope(), Acteur.class, r, r, id, event, clos);
+            result.setExecutionPolicy(executionPolicy(r));
             return result;
         }
 
@@ -681,14 +754,20 @@ class PagesImpl2 {
             for (int i = pos; i < types.size(); i++) {
                 rem.add(types.get(i));
             }
+            ExecutionPolicy policy = executionPolicy();
             return () -> {
                 List<Object> l = new ArrayList<>(rem);
                 PageChain chain = new PageChain(app, deps, scope, type, l, context);
+                chain.setExecutionPolicy(policy);
                 chain.page = page;
                 return chain;
             };
         }
 
+        List<Object> steps() {
+            return types;
+        }
+
         private void addToContext(Event<?> event) {
             ctx = ArrayUtils.concatenate(ctx, new Object[]{event});
         }
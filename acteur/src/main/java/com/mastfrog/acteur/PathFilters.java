@@ -24,6 +24,8 @@
 package com.mastfrog.acteur;
 
 import static com.mastfrog.acteur.server.ServerModule.SETTINGS_KEY_BASE_PATH;
+import static com.mastfrog.acteur.server.ServerModule.SETTINGS_KEY_ROUTE_MATCH_CACHE_SIZE;
+import com.google.common.cache.CacheStats;
 import com.mastfrog.giulius.Dependencies;
 import com.mastfrog.settings.Settings;
 import io.netty.handler.codec.http.HttpRequest;
@@ -53,10 +55,19 @@ abstract class PathFilters {
 
     abstract PagePathAndMethodFilter earlyPages();
 
+    abstract CacheStats matchCacheStats();
+
+    abstract boolean isStreamingPageMatch(HttpRequest req);
+
+    abstract void addStreamingPage(Page page);
+
+    abstract void addStreamingPage(Class<? extends Page> page);
+
     private static class InitialPathFilters extends PathFilters {
 
         private final List<Object> earlyPages = new ArrayList<>(25);
         private final List<Object> normalPages = new ArrayList<>(25);
+        private final List<Object> streamingPages = new ArrayList<>(5);
 
         @Override
         boolean isEarlyPageMatch(HttpRequest req) {
@@ -93,15 +104,40 @@ abstract class PathFilters {
             throw new IllegalStateException("Not yet initialized");
         }
 
-        private PathFilters toInitializedInstance(String basePath) {
-            PagePathAndMethodFilter normal = new PagePathAndMethodFilter(basePath);
+        @Override
+        CacheStats matchCacheStats() {
+            return new CacheStats(0, 0, 0, 0, 0, 0);
+        }
+
+        @Override
+        boolean isStreamingPageMatch(HttpRequest req) {
+            throw new IllegalStateException("Not yet initialized");
+        }
+
+        @Override
+        void addStreamingPage(Page page) {
+            streamingPages.add(page);
+        }
+
+        @Override
+        void addStreamingPage(Class<? extends Page> page) {
+            streamingPages.add(page);
+        }
+
+        private PathFilters toInitializedInstance(String basePath, int cacheSize, PathPatterns pp) {
+            PagePathAndMethodFilter normal = new PagePathAndMethodFilter(basePath, cacheSize, pp);
             addToFilter(normalPages, normal);
             PagePathAndMethodFilter early = null;
             if (!earlyPages.isEmpty()) {
-                early = new PagePathAndMethodFilter(basePath);
+                early = new PagePathAndMethodFilter(basePath, cacheSize, pp);
                 addToFilter(earlyPages, early);
             }
-            return new InitializedPathFilters(basePath, normal, early);
+            PagePathAndMethodFilter streaming = null;
+            if (!streamingPages.isEmpty()) {
+                streaming = new PagePathAndMethodFilter(basePath, cacheSize, pp);
+                addToFilter(streamingPages, streaming);
+            }
+            return new InitializedPathFilters(basePath, cacheSize, pp, normal, early, streaming);
         }
 
         @SuppressWarnings("unchecked")
@@ -139,10 +175,14 @@ abstract class PathFilters {
                 InitialPathFilters ipf = (InitialPathFilters) result;
                 Dependencies deps = supp.get();
                 if (deps != null) {
+                    // Share the singleton, so Application.routeCacheStats()
+                    // sees the glob lookups done while matching routes
+                    PathPatterns pp = deps.getInstance(PathPatterns.class);
                     Settings settings = deps.getInstance(Settings.class);
                     if (settings == null) {
                         // possible but unlikely
-                        result = ipf.toInitializedInstance(null);
+                        result = ipf.toInitializedInstance(null,
+                                PagePathAndMethodFilter.DEFAULT_MATCH_CACHE_SIZE, pp);
                     } else {
                         String bp = settings.getString(SETTINGS_KEY_BASE_PATH);
                         if (PagePathAndMethodFilter.DEBUG) {
@@ -151,7 +191,14 @@ abstract class PathFilters {
                                     + ipf.normalPages + "\nEarly pages: \n"
                                     + ipf.earlyPages);
                         }
-                        result = ipf.toInitializedInstance(bp);
+                        result = ipf.toInitializedInstance(bp,
+                                settings.getInt(SETTINGS_KEY_ROUTE_MATCH_CACHE_SIZE,
+                                        PagePathAndMethodFilter.DEFAULT_MATCH_CACHE_SIZE), pp);
+                    }
+                    // Build the filters (and their route indexes and caches)
+                    // once, not on every request
+                    if (!filters.compareAndSet(ipf, result)) {
+                        result = filters.get();
                     }
                 }
             }
@@ -193,20 +240,47 @@ abstract class PathFilters {
             return delegate().earlyPages();
         }
 
+        @Override
+        CacheStats matchCacheStats() {
+            return delegate().matchCacheStats();
+        }
+
+        @Override
+        boolean isStreamingPageMatch(HttpRequest req) {
+            return delegate().isStreamingPageMatch(req);
+        }
+
+        @Override
+        void addStreamingPage(Page page) {
+            delegate().addStreamingPage(page);
+        }
+
+        @Override
+        void addStreamingPage(Class<? extends Page> page) {
+            delegate().addStreamingPage(page);
+        }
+
     }
 
     private static final class InitializedPathFilters extends PathFilters {
 
         private final String basePath;
+        private final int cacheSize;
+        private final PathPatterns pp;
 
         private final PagePathAndMethodFilter filter;
         private PagePathAndMethodFilter earlyPageMatcher;
+        private PagePathAndMethodFilter streamingPageMatcher;
 
         @Inject
-        InitializedPathFilters(String basePath, PagePathAndMethodFilter filter, PagePathAndMethodFilter earlyPageMatcher) {
+        InitializedPathFilters(String basePath, int cacheSize, PathPatterns pp, PagePathAndMethodFilter filter,
+                PagePathAndMethodFilter earlyPageMatcher, PagePathAndMethodFilter streamingPageMatcher) {
             this.basePath = basePath;
+            this.cacheSize = cacheSize;
+            this.pp = pp;
             this.filter = filter;
             this.earlyPageMatcher = earlyPageMatcher;
+            this.streamingPageMatcher = streamingPageMatcher;
         }
 
         boolean isEarlyPageMatch(HttpRequest req) {
@@ -229,11 +303,44 @@ abstract class PathFilters {
         @Override
         PagePathAndMethodFilter earlyPages() {
             if (earlyPageMatcher == null) {
-                earlyPageMatcher = new PagePathAndMethodFilter(basePath);
+                earlyPageMatcher = new PagePathAndMethodFilter(basePath, cacheSize, pp);
             }
             return earlyPageMatcher;
         }
 
+        @Override
+        CacheStats matchCacheStats() {
+            CacheStats result = filter.matchCacheStats();
+            PagePathAndMethodFilter early = earlyPageMatcher;
+            if (early != null) {
+                result = result.plus(early.matchCacheStats());
+            }
+            PagePathAndMethodFilter streaming = streamingPageMatcher;
+            return streaming == null ? result : result.plus(streaming.matchCacheStats());
+        }
+
+        @Override
+        boolean isStreamingPageMatch(HttpRequest req) {
+            return streamingPageMatcher != null && streamingPageMatcher.match(req);
+        }
+
+        @Override
+        void addStreamingPage(Page page) {
+            streamingPages().add(page);
+        }
+
+        @Override
+        void addStreamingPage(Class<? extends Page> page) {
+            streamingPages().add(page);
+        }
+
+        private PagePathAndMethodFilter streamingPages() {
+            if (streamingPageMatcher == null) {
+                streamingPageMatcher = new PagePathAndMethodFilter(basePath, cacheSize, pp);
+            }
+            return streamingPageMatcher;
+        }
+
         @Override
         void addNormalPage(Page page) {
             normalPages().add(page);
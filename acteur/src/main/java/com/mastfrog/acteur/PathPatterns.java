@@ -24,6 +24,9 @@
 
 package com.mastfrog.acteur;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.google.inject.Singleton;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -75,7 +78,11 @@ class PathPatterns {
         return match.toString();
     }
 
-    private final Map<String, Boolean> matchCache = new ConcurrentHashMap<>();
+    private final Cache<String, Boolean> matchCache = CacheBuilder.newBuilder()
+            .maximumSize(512)
+            .concurrencyLevel(4)
+            .recordStats()
+            .build();
     private final Map<String, String> exactPathForRegex = new ConcurrentHashMap<>();
     private static final String INVALID = "::////";
 
@@ -144,7 +151,7 @@ class PathPatterns {
     }
 
     boolean isExactGlob(String s) {
-        Boolean match = matchCache.get(s);
+        Boolean match = matchCache.getIfPresent(s);
         if (match != null) {
             return match;
         }
@@ -158,6 +165,10 @@ class PathPatterns {
         matchCache.put(s, result);
         return result;
     }
+
+    CacheStats globCacheStats() {
+        return matchCache.stats();
+    }
     private final Map<String, Pattern> patternCache = new ConcurrentHashMap<>();
 
     Pattern getPattern(String regex) {
@@ -44,7 +44,6 @@ import com.mastfrog.marshallers.netty.NettyContentMarshallers;
 import com.mastfrog.util.preconditions.Checks;
 import com.mastfrog.util.codec.Codec;
 import com.mastfrog.util.strings.Strings;
-import com.mastfrog.util.collections.CollectionUtils;
 import com.mastfrog.util.thread.ThreadLocalTransfer;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
@@ -85,10 +84,11 @@ import java.nio.charset.Charset;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
@@ -107,7 +107,8 @@ final class ResponseImpl extends Response {
 
     private volatile boolean modified;
     HttpResponseStatus status;
-    private final List<Entry<?>> headers = new ArrayList<>(3);
+    // Allocated on first use - most acteurs never touch the headers
+    private List<Entry<?>> headers = Collections.emptyList();
     private Object message;
     ChannelFutureListener listener;
     private boolean chunked;
@@ -115,18 +116,49 @@ final class ResponseImpl extends Response {
     private static final boolean debug = Boolean.getBoolean("acteur.debug");
 
     static final ThreadLocalTransfer<List<ResponseImpl>> shadowResponses = new ThreadLocalTransfer<>();
-    List<ResponseImpl> alsoConsult;
+    private List<ResponseImpl> alsoConsult;
+    private int consultCount;
 
     ResponseImpl() {
         // Ensure's an Acteur's call to response().get(Headers.FOO) can see
         // values set earlier in the chain.  Needed to get rid of ResponseHeaders
-        // and page.decorateResponse().
+        // and page.decorateResponse().  The chain's list only grows, so
+        // remembering its size is enough to see exactly the preceding ones,
+        // without copying it for every acteur
         List<ResponseImpl> previousActeursResponses = shadowResponses.get();
-        if (previousActeursResponses != null) {
-            alsoConsult = CollectionUtils.reversed(previousActeursResponses);
+        if (previousActeursResponses != null && !previousActeursResponses.isEmpty()) {
+            alsoConsult = previousActeursResponses;
+            consultCount = previousActeursResponses.size();
         }
     }
 
+    /**
+     * Coalesce the responses of a chain's acteurs into one, reusing the first
+     * rather than allocating a new one to merge everything into.
+     *
+     * @param responses The responses, in the order the acteurs ran
+     * @return A response
+     */
+    static ResponseImpl coalesce(List<ResponseImpl> responses) {
+        ResponseImpl result = null;
+        for (ResponseImpl r : responses) {
+            if (result == null) {
+                // Unmodified responses are ignored by merge(), so only a
+                // modified one can stand in for the merged result
+                if (r.modified) {
+                    result = r;
+                    // It no longer belongs to a single acteur, so it must not
+                    // consult the others - they are merged into it
+                    result.alsoConsult = null;
+                    result.consultCount = 0;
+                }
+            } else if (r != result) {
+                result.merge(r);
+            }
+        }
+        return result == null ? new ResponseImpl() : result;
+    }
+
     boolean hasListener() {
         return listener != null;
     }
@@ -199,8 +231,8 @@ final class ResponseImpl extends Response {
 
     public HttpResponseStatus getResponseCode() {
         if (status == null && alsoConsult != null) {
-            for (ResponseImpl previous : alsoConsult) {
-                HttpResponseStatus raw = previous.rawStatus();
+            for (ListIterator<ResponseImpl> it = alsoConsult.listIterator(consultCount); it.hasPrevious();) {
+                HttpResponseStatus raw = it.previous().rawStatus();
                 if (raw != null) {
                     return raw;
                 }
@@ -247,13 +279,18 @@ final class ResponseImpl extends Response {
     @SuppressWarnings("unchecked")
     @Override
     public <T> Response add(HeaderValueType<T> decorator, T value) {
-        List<Entry<?>> old = new LinkedList<>();
+        if (headers.isEmpty() && !(headers instanceof ArrayList<?>)) {
+            headers = new ArrayList<>(4);
+        }
+        // Only Allow headers need the replaced entries, to coalesce them
+        boolean isAllow = decorator.is(HttpHeaderNames.ALLOW);
+        boolean isSetCookie = decorator.is(HttpHeaderNames.SET_COOKIE);
+        List<Entry<?>> old = null;
         // XXX set cookie!
         for (Iterator<Entry<?>> it = headers.iterator(); it.hasNext();) {
             Entry<?> e = it.next();
             // Do prune setting the same cookie twice
-            if (decorator.is(HttpHeaderNames.SET_COOKIE)
-                    && e.decorator.is(HttpHeaderNames.SET_COOKIE)) {
+            if (isSetCookie && e.decorator.is(HttpHeaderNames.SET_COOKIE)) {
                 if (compareCookies(e.value, value)) {
                     it.remove();
                     continue;
@@ -262,7 +299,12 @@ final class ResponseImpl extends Response {
                 }
             }
             if (e.match(decorator) != null) {
-                old.add(e);
+                if (isAllow) {
+                    if (old == null) {
+                        old = new ArrayList<>(3);
+                    }
+                    old.add(e);
+                }
                 it.remove();
             }
         }
@@ -270,7 +312,7 @@ final class ResponseImpl extends Response {
         // For now, special handling for Allow:
         // Longer term, should HeaderValueType.isArray() and a way to
         // coalesce
-        if (!old.isEmpty() && decorator.is(HttpHeaderNames.ALLOW)) {
+        if (old != null) {
             old.add(e);
             Set<Method> all = EnumSet.noneOf(Method.class);
             for (Entry<?> en : old) {
@@ -289,8 +331,8 @@ final class ResponseImpl extends Response {
     public <T> T get(HeaderValueType<T> decorator) {
         T result = internalGet(decorator);
         if (result == null && alsoConsult != null) {
-            for (ResponseImpl preceding : alsoConsult) {
-                result = preceding.internalGet(decorator);
+            for (ListIterator<ResponseImpl> it = alsoConsult.listIterator(consultCount); it.hasPrevious();) {
+                result = it.previous().internalGet(decorator);
                 if (result != null) {
                     break;
                 }
@@ -641,6 +683,20 @@ final class ResponseImpl extends Response {
         return false;
     }
 
+    /**
+     * Convert the message, if any, into bytes, without building an
+     * HttpResponse - used directly for web socket replies.
+     */
+    ByteBuf payload(Event<?> evt, Charset defaultCharset) throws Exception {
+        // Ensure we pass the correct character set based on the MIME type and failing
+        // over to the character set the application was configured with (default UTF-8):
+        MediaType mimeType = get(CONTENT_TYPE);
+        if (mimeType != null && mimeType.charset().isPresent()) {
+            defaultCharset = mimeType.charset().get();
+        }
+        return writeMessage(evt, defaultCharset);
+    }
+
     private static final AsciiString ZERO = AsciiString.of("0");
 
     public HttpResponse toResponse(Event<?> evt, Charset defaultCharset) throws Exception {
@@ -655,14 +711,8 @@ final class ResponseImpl extends Response {
                         + " - " + listener);
             }
         }
-        // Ensure we pass the correct character set based on the MIME type and failing
-        // over to the character set the application was configured with (default UTF-8):
-        MediaType mimeType = get(CONTENT_TYPE);
-        if (mimeType != null && mimeType.charset().isPresent()) {
-            defaultCharset = mimeType.charset().get();
-        }
         // Convert the message payload, if any, into a ByteBuf
-        ByteBuf buf = writeMessage(evt, defaultCharset);
+        ByteBuf buf = payload(evt, defaultCharset);
         // If this happens, the application is telling the framework to do two contradictory things -
         // you can either send a payload by attaching it to the response, or by attaching a listener
         // which will be notified when the headers have been written (or flushed) to the socket
@@ -758,7 +808,9 @@ final class ResponseImpl extends Response {
                 warn(evt);
                 version = HTTP_1_0;
             }
-            System.out.println("Set X-Internal-Compress");
+            if (debug) {
+                System.out.println("Set X-Internal-Compress");
+            }
             hdrs.set(X_INTERNAL_COMPRESS, true);
         }
         if (debug) {
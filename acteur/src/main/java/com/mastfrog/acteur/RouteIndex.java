@@ -0,0 +1,378 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Index of the non-exact routes for one HTTP method, used by
+ * PagePathAndMethodFilter. Globs from &#064;Path annotations are stored in a
+ * trie keyed on path segment, with wildcard segments matched by a small glob
+ * matcher equivalent to the regular expression produced by
+ * {@link PathPatterns#patternFromGlob(java.lang.String)}, so finding candidate
+ * pages is proportional to the number of segments in the request path rather
+ * than the number of routes. Regular expressions, and globs which use regex
+ * syntax the trie cannot represent, are tested linearly as a fallback.
+ * <p>
+ * Results are returned in the order routes were added, regardless of whether
+ * they were matched via the trie or a regular expression. The same page list
+ * may be added both as a decoding and a non-decoding route; it takes the
+ * position of its first route, and is returned once if both match.
+ * <p>
+ * Not thread-safe for concurrent mutation; routes are added during
+ * application initialization.
+ *
+ * @author Tim Boudreau
+ */
+final class RouteIndex {
+
+    private final SegmentNode root = new SegmentNode();
+    private final SegmentNode decodeRoot = new SegmentNode();
+    private final List<RegexRoute> regexes = new ArrayList<>();
+    private final Map<List<Object>, Integer> orders = new IdentityHashMap<>();
+    private boolean hasDecodeRoutes;
+    private int routeCount;
+
+    boolean isEmpty() {
+        return routeCount == 0;
+    }
+
+    boolean needsDecoding() {
+        return hasDecodeRoutes;
+    }
+
+    /**
+     * Determine if a glob can be represented in the trie - i.e. it contains a
+     * wildcard, and does not contain characters which patternFromGlob passes
+     * through to the regular expression unescaped.
+     *
+     * @param glob A glob
+     * @return true if it can be indexed
+     */
+    static boolean isIndexableGlob(String glob) {
+        boolean hasWildcard = false;
+        for (int i = 0; i < glob.length(); i++) {
+            switch (glob.charAt(i)) {
+                case '*':
+                case '?':
+                    hasWildcard = true;
+                    break;
+                case '+':
+                case '|':
+                case '\\':
+                    return false;
+                default:
+                    break;
+            }
+        }
+        return hasWildcard;
+    }
+
+    /**
+     * Add a glob route.
+     *
+     * @param glob The glob
+     * @param pages The list of pages the glob maps to, which may be added to
+     * later
+     * @param decode Whether the glob is matched against the URL-decoded path
+     * @return false if the glob cannot be indexed and should be added as a
+     * regular expression instead
+     */
+    boolean addGlob(String glob, List<Object> pages, boolean decode) {
+        if (!isIndexableGlob(glob)) {
+            return false;
+        }
+        if (glob.length() > 0 && glob.charAt(0) == '/') {
+            glob = glob.substring(1);
+        }
+        SegmentNode node = decode ? decodeRoot : root;
+        int start = 0;
+        for (;;) {
+            int end = glob.indexOf('/', start);
+            if (end < 0) {
+                end = glob.length();
+            }
+            node = node.child(glob.substring(start, end));
+            if (end == glob.length()) {
+                break;
+            }
+            start = end + 1;
+        }
+        node.addRoute(new Route(orderOf(pages), pages));
+        hasDecodeRoutes |= decode;
+        return true;
+    }
+
+    void addRegex(Pattern pattern, List<Object> pages, boolean decode) {
+        regexes.add(new RegexRoute(orderOf(pages), pages, pattern, decode));
+        hasDecodeRoutes |= decode;
+    }
+
+    private int orderOf(List<Object> pages) {
+        routeCount++;
+        return orders.computeIfAbsent(pages, p -> orders.size());
+    }
+
+    /**
+     * Add the page lists of all routes matching the path to the passed list.
+     *
+     * @param path The path, with leading and trailing slashes and query
+     * trimmed
+     * @param decodedPath The URL-decoded path, or the same string if it
+     * contains nothing to decode
+     * @param into The list to add to
+     */
+    void collect(String path, String decodedPath, List<List<Object>> into) {
+        if (routeCount == 0) {
+            return;
+        }
+        List<Route> found = new ArrayList<>(4);
+        collect(root, path, found);
+        if (hasDecodeRoutes) {
+            collect(decodeRoot, decodedPath, found);
+        }
+        for (RegexRoute rx : regexes) {
+            if (rx.pattern.matcher(rx.decode ? decodedPath : path).matches()) {
+                found.add(rx);
+            }
+        }
+        if (found.size() > 1) {
+            found.sort(null);
+        }
+        List<Object> prev = null;
+        for (Route r : found) {
+            // A path with a leading slash may match the same route twice,
+            // and a page list may have both a raw and a decoding route;
+            // either way they share an order, so duplicates are adjacent
+            if (r.pages != prev && !r.pages.isEmpty()) {
+                into.add(r.pages);
+            }
+            prev = r.pages;
+        }
+    }
+
+    private static void collect(SegmentNode node, String path, List<Route> into) {
+        node.collect(path, 0, into);
+        // patternFromGlob patterns tolerate a leading slash, which may
+        // or may not be consumed by the first segment
+        if (path.length() > 0 && path.charAt(0) == '/') {
+            node.collect(path, 1, into);
+        }
+    }
+
+    /**
+     * Determine if any route, decoding or not, matches the path.
+     *
+     * @param path A path
+     * @return true if something matches
+     */
+    boolean matches(String path) {
+        if (routeCount == 0) {
+            return false;
+        }
+        if (root.matches(path, 0) || decodeRoot.matches(path, 0)) {
+            return true;
+        }
+        if (path.length() > 0 && path.charAt(0) == '/'
+                && (root.matches(path, 1) || decodeRoot.matches(path, 1))) {
+            return true;
+        }
+        for (RegexRoute rx : regexes) {
+            if (rx.pattern.matcher(path).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static class Route implements Comparable<Route> {
+
+        final int order;
+        final List<Object> pages;
+
+        Route(int order, List<Object> pages) {
+            this.order = order;
+            this.pages = pages;
+        }
+
+        @Override
+        public int compareTo(Route o) {
+            return Integer.compare(order, o.order);
+        }
+    }
+
+    static final class RegexRoute extends Route {
+
+        final Pattern pattern;
+        final boolean decode;
+
+        RegexRoute(int order, List<Object> pages, Pattern pattern, boolean decode) {
+            super(order, pages);
+            this.pattern = pattern;
+            this.decode = decode;
+        }
+    }
+
+    static final class SegmentNode {
+
+        private Map<String, SegmentNode> literals;
+        private List<String> wildcardGlobs;
+        private List<SegmentNode> wildcardNodes;
+        private List<Route> routes;
+
+        SegmentNode child(String segment) {
+            if (isIndexableGlob(segment)) {
+                if (wildcardGlobs == null) {
+                    wildcardGlobs = new ArrayList<>(3);
+                    wildcardNodes = new ArrayList<>(3);
+                }
+                int ix = wildcardGlobs.indexOf(segment);
+                if (ix >= 0) {
+                    return wildcardNodes.get(ix);
+                }
+                SegmentNode result = new SegmentNode();
+                wildcardGlobs.add(segment);
+                wildcardNodes.add(result);
+                return result;
+            }
+            if (literals == null) {
+                literals = new HashMap<>(4);
+            }
+            SegmentNode result = literals.get(segment);
+            if (result == null) {
+                result = new SegmentNode();
+                literals.put(segment, result);
+            }
+            return result;
+        }
+
+        void addRoute(Route route) {
+            if (routes == null) {
+                routes = new ArrayList<>(2);
+            }
+            routes.add(route);
+        }
+
+        void collect(String path, int start, List<Route> into) {
+            int end = path.indexOf('/', start);
+            boolean last = end < 0;
+            if (last) {
+                end = path.length();
+            }
+            if (literals != null) {
+                SegmentNode lit = literals.get(path.substring(start, end));
+                if (lit != null) {
+                    lit.collectOrDescend(path, end, last, into);
+                }
+            }
+            if (wildcardGlobs != null) {
+                for (int i = 0; i < wildcardGlobs.size(); i++) {
+                    if (globMatches(wildcardGlobs.get(i), 0, path, start, end)) {
+                        wildcardNodes.get(i).collectOrDescend(path, end, last, into);
+                    }
+                }
+            }
+        }
+
+        private void collectOrDescend(String path, int end, boolean last, List<Route> into) {
+            if (last) {
+                if (routes != null) {
+                    into.addAll(routes);
+                }
+            } else {
+                collect(path, end + 1, into);
+            }
+        }
+
+        boolean matches(String path, int start) {
+            int end = path.indexOf('/', start);
+            boolean last = end < 0;
+            if (last) {
+                end = path.length();
+            }
+            if (literals != null) {
+                SegmentNode lit = literals.get(path.substring(start, end));
+                if (lit != null && lit.matchesOrDescends(path, end, last)) {
+                    return true;
+                }
+            }
+            if (wildcardGlobs != null) {
+                for (int i = 0; i < wildcardGlobs.size(); i++) {
+                    if (globMatches(wildcardGlobs.get(i), 0, path, start, end)
+                            && wildcardNodes.get(i).matchesOrDescends(path, end, last)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private boolean matchesOrDescends(String path, int end, boolean last) {
+            if (last) {
+                return routes != null;
+            }
+            return matches(path, end + 1);
+        }
+    }
+
+    /**
+     * Match one segment of a glob, where * matches any run of characters and
+     * ? matches zero or one character, as in patternFromGlob.
+     */
+    static boolean globMatches(String glob, int globPos, String path, int pathPos, int pathEnd) {
+        while (globPos < glob.length()) {
+            char g = glob.charAt(globPos);
+            switch (g) {
+                case '*':
+                    while (globPos + 1 < glob.length() && glob.charAt(globPos + 1) == '*') {
+                        globPos++;
+                    }
+                    if (globPos + 1 == glob.length()) {
+                        return true;
+                    }
+                    for (int i = pathPos; i <= pathEnd; i++) {
+                        if (globMatches(glob, globPos + 1, path, i, pathEnd)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                case '?':
+                    return globMatches(glob, globPos + 1, path, pathPos, pathEnd)
+                            || (pathPos < pathEnd && globMatches(glob, globPos + 1, path, pathPos + 1, pathEnd));
+                default:
+                    if (pathPos >= pathEnd || path.charAt(pathPos) != g) {
+                        return false;
+                    }
+                    globPos++;
+                    pathPos++;
+            }
+        }
+        return pathPos == pathEnd;
+    }
+}
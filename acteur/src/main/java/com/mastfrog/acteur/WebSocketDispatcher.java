@@ -0,0 +1,476 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Provider;
+import com.google.inject.ProvisionException;
+import com.google.inject.TypeLiteral;
+import com.google.inject.spi.Dependency;
+import com.google.inject.spi.InjectionPoint;
+import com.mastfrog.acteur.PagesImpl2.ErrorPage;
+import com.mastfrog.acteur.errors.ResponseException;
+import com.mastfrog.acteur.server.WebSocketEvent;
+import com.mastfrog.acteur.util.RequestID;
+import com.mastfrog.acteurbase.Blocking;
+import com.mastfrog.acteurbase.Chain;
+import com.mastfrog.acteurbase.Deferral;
+import com.mastfrog.acteurbase.Deferral.DeferredCode;
+import com.mastfrog.acteurbase.Deferral.Resumer;
+import com.mastfrog.acteurbase.ExecutionPolicy;
+import com.mastfrog.acteurbase.Instantiator;
+import com.mastfrog.giulius.scope.ReentrantScope;
+import com.mastfrog.util.collections.ArrayUtils;
+import com.mastfrog.util.preconditions.Exceptions;
+import com.mastfrog.util.thread.QuietAutoCloseable;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.AttributeKey;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import org.netbeans.validation.api.InvalidInputException;
+
+/**
+ * Runs the acteurs that follow a WebSocketUpgradeActeur for each frame on a
+ * connection, without the chain machinery used for HTTP requests. Everything
+ * that is the same for every frame - the acteur providers, the objects
+ * contributed to the scope by the upgrade, the page and the execution policy -
+ * is resolved once, when the first frame arrives; after that a frame costs
+ * the acteurs' construction and a write.
+ * <p>
+ * Acteurs may still pause or extend the chain at runtime, as
+ * {@link Acteur#then(com.mastfrog.function.throwing.ThrowingConsumer)},
+ * <code>continueAfter()</code>, <code>defer()</code> and
+ * <code>deferThenRespond()</code> do - each frame has its own Chain and
+ * Deferral in scope, which insert or append acteurs for that frame only, and
+ * resume it in the background thread pool. Chains whose acteurs inject
+ * Deferral or Chain directly may use them in other ways, so they go through the
+ * full machinery; see {@link #canDispatch()}.
+ *
+ * @author Tim Boudreau
+ */
+final class WebSocketDispatcher {
+
+    static final AttributeKey<WebSocketDispatcher> DISPATCHER_KEY
+            = AttributeKey.valueOf(WebSocketDispatcher.class, "dispatcher");
+
+    // Whether a type's injection points ask for anything only ChainRunner
+    // provides
+    private static final ClassValue<Boolean> NEEDS_CHAIN = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            try {
+                if (needsChain(InjectionPoint.forConstructorOf(type).getDependencies())) {
+                    return true;
+                }
+                for (InjectionPoint ip : InjectionPoint.forInstanceMethodsAndFields(type)) {
+                    if (needsChain(ip.getDependencies())) {
+                        return true;
+                    }
+                }
+                return false;
+            } catch (RuntimeException ex) {
+                // Let the full chain report whatever is wrong with it
+                return true;
+            }
+        }
+    };
+
+    private final Application application;
+    private final Page page;
+    private final Object[] context;
+    private final Object[] steps;
+    private final boolean inline;
+    private final ExecutorService exe;
+    private final ReentrantScope scope;
+    private final boolean renderStackTraces;
+
+    private WebSocketDispatcher(Application application, Page page, Object[] context, Object[] steps,
+            boolean inline, ExecutorService exe, ReentrantScope scope, boolean renderStackTraces) {
+        this.application = application;
+        this.page = page;
+        this.context = context;
+        this.steps = steps;
+        this.inline = inline;
+        this.exe = exe;
+        this.scope = scope;
+        this.renderStackTraces = renderStackTraces;
+    }
+
+    /**
+     * Create a dispatcher for the remainder of a page's chain.
+     *
+     * @param application The application
+     * @param page The page that performed the upgrade
+     * @param remaining The acteur types or instances that follow the upgrade
+     * @param context The scope contents at the time of the upgrade
+     * @param policy The chain's execution policy
+     * @param exe The background thread pool
+     * @param scope The request scope
+     * @param renderStackTraces Whether error replies include stack traces
+     * @return A dispatcher, which may not be able to handle frames if the
+     * chain needs deferral
+     */
+    @SuppressWarnings("unchecked")
+    static WebSocketDispatcher create(Application application, Page page, List<Object> remaining,
+            Object[] context, ExecutionPolicy policy, ExecutorService exe, ReentrantScope scope,
+            boolean renderStackTraces) {
+        Injector injector = application.getDependencies().getInjector();
+        Object[] steps = new Object[remaining.size()];
+        boolean blocking = false;
+        for (int i = 0; i < steps.length; i++) {
+            Object o = remaining.get(i);
+            Class<?> type = o instanceof Class<?> ? (Class<?>) o
+                    : o instanceof Instantiator<?> ? ((Instantiator<?>) o).type()
+                    : o.getClass();
+            if (requiresChain(type)) {
+                return new WebSocketDispatcher(application, page, context, null, false, exe, scope, renderStackTraces);
+            }
+            blocking |= type.getAnnotation(Blocking.class) != null;
+            steps[i] = o instanceof Class<?> ? injector.getProvider((Class<? extends Acteur>) o) : o;
+        }
+        boolean inline = policy == ExecutionPolicy.INLINE && !blocking;
+        return new WebSocketDispatcher(application, page, context, steps, inline, exe, scope, renderStackTraces);
+    }
+
+    /**
+     * Determine if this dispatcher can run frames itself, or if they must go
+     * through the full chain.
+     *
+     * @return true if dispatch() may be called
+     */
+    boolean canDispatch() {
+        return steps != null;
+    }
+
+    /**
+     * Run the acteurs for one frame - on the calling thread if the chain's
+     * execution policy is inline, otherwise in the background thread pool.
+     * Must be called within the request scope, with the frame's event and id.
+     *
+     * @param id The request id
+     * @param event The frame
+     */
+    void dispatch(RequestID id, WebSocketEvent event) {
+        FrameRun frameRun = new FrameRun(id, event);
+        if (inline) {
+            run(frameRun);
+        } else {
+            exe.submit(scope.wrap(frameRun));
+        }
+    }
+
+    private void run(FrameRun frameRun) {
+        RequestID id = frameRun.id;
+        WebSocketEvent event = frameRun.event;
+        Channel channel = event.channel();
+        ResponseImpl reply = null;
+        try (QuietAutoCloseable cl = scope.enter(context)) {
+            // The frame run is the Chain and Deferral acteurs look up at runtime
+            try (QuietAutoCloseable cl1 = scope.enter(event, frameRun)) {
+                try (QuietAutoCloseable cl2 = Page.set(page)) {
+                    if (frameRun.position == 0) {
+                        application.probe.onBeforeRunPage(id, event, page);
+                    }
+                    if (frameRun.runActeurs()) {
+                        frameRun.pause();
+                        return;
+                    }
+                    reply = frameRun.reply;
+                }
+            }
+        } catch (ThreadDeath | OutOfMemoryError ee) {
+            Exceptions.chuck(ee);
+        } catch (Exception | Error e) {
+            Throwable t = e;
+            if (e instanceof ProvisionException && e.getCause() != null) {
+                t = e.getCause();
+            }
+            reply = onError(id, event, t);
+        }
+        try {
+            if (reply != null && channel.isOpen()) {
+                write(event, reply);
+            }
+        } catch (Exception ex) {
+            application.internalOnError(ex);
+        } finally {
+            if (reply == null || reply.getMessage() != event.request()) {
+                WebSocketFrame frame = event.request();
+                if (frame.refCnt() > 0) {
+                    frame.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * The state of one frame's run through the acteurs, which is also the
+     * Chain and Deferral in scope while they run. The acteur list is shared
+     * with the dispatcher until an acteur adds to it.
+     */
+    private final class FrameRun implements Callable<Void>, Chain<Object, FrameRun>, Deferral, Resumer {
+
+        private final RequestID id;
+        private final WebSocketEvent event;
+        private final AtomicBoolean deferred = new AtomicBoolean();
+        private Object[] shared = steps;
+        private List<Object> own;
+        private int position;
+        private Object[] state = new Object[0];
+        private ResponseImpl reply;
+        private DeferredCode deferredCode;
+        private volatile Callable<Void> next;
+
+        FrameRun(RequestID id, WebSocketEvent event) {
+            this.id = id;
+            this.event = event;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            run(this);
+            return null;
+        }
+
+        /**
+         * Run acteurs from the current position until one finishes, rejects
+         * or defers the frame, entering the scope with whatever the previous
+         * ones contributed.
+         *
+         * @return true if the frame was deferred and there are acteurs left
+         * to run once it is resumed
+         */
+        @SuppressWarnings("unchecked")
+        boolean runActeurs() {
+            while (position < size()) {
+                Object step = stepAt(position++);
+                Acteur acteur;
+                State st;
+                Object[] ctx = state();
+                try (QuietAutoCloseable cl = ctx.length == 0 ? null : scope.enter(ctx)) {
+                    acteur = step instanceof Acteur ? (Acteur) step
+                            : ((javax.inject.Provider<? extends Acteur>) step).get();
+                    st = acteur.getState();
+                }
+                application.probe.onActeurWasRun(id, event, page, acteur, st);
+                if (st.isRejected()) {
+                    reply = null;
+                    return false;
+                }
+                ResponseImpl response = acteur.getResponse();
+                if (response != null && response.isModified() && response.getMessage() != null) {
+                    reply = response;
+                }
+                if (st.isFinished()) {
+                    return false;
+                }
+                addToContext(st.getContext());
+                if (deferred.get() && position < size()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void pause() throws Exception {
+            next = scope.wrap(this);
+            DeferredCode code = deferredCode;
+            deferredCode = null;
+            if (code != null) {
+                code.run(this);
+            }
+        }
+
+        @Override
+        public void resume(Object... addToContext) {
+            if (!deferred.compareAndSet(true, false)) {
+                throw new IllegalStateException("Not deferred");
+            }
+            addToContext(addToContext);
+            Callable<Void> nx = next;
+            if (nx != null) {
+                exe.submit(nx);
+            }
+        }
+
+        @Override
+        @Deprecated
+        public Resumer defer() {
+            if (!deferred.compareAndSet(false, true)) {
+                throw new IllegalStateException("Already deferred");
+            }
+            return this;
+        }
+
+        @Override
+        public Resumer defer(DeferredCode code) {
+            Resumer result = defer();
+            deferredCode = code;
+            return result;
+        }
+
+        private synchronized Object[] state() {
+            return state;
+        }
+
+        private synchronized void addToContext(Object[] ctx) {
+            if (ctx != null && ctx.length > 0) {
+                state = ArrayUtils.concatenate(state, ctx);
+            }
+        }
+
+        private int size() {
+            return own == null ? shared.length : own.size();
+        }
+
+        private Object stepAt(int ix) {
+            return own == null ? shared[ix] : own.get(ix);
+        }
+
+        private List<Object> own() {
+            if (own == null) {
+                own = new ArrayList<>(Arrays.asList(shared));
+            }
+            return own;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Object toStep(Object o) {
+            if (o instanceof Class<?> && Acteur.class.isAssignableFrom((Class<?>) o)) {
+                return application.getDependencies().getInjector().getProvider((Class<? extends Acteur>) o);
+            } else if (o instanceof Acteur || o instanceof Instantiator<?>) {
+                return o;
+            }
+            throw new IllegalArgumentException("Not an acteur or acteur type: " + o);
+        }
+
+        @Override
+        public FrameRun add(Object obj) {
+            own().add(toStep(obj));
+            return this;
+        }
+
+        @Override
+        public FrameRun add(Class<?> type) {
+            own().add(toStep(type));
+            return this;
+        }
+
+        @Override
+        public FrameRun insert(Object obj) {
+            own().add(position, toStep(obj));
+            return this;
+        }
+
+        @Override
+        public ExecutionPolicy executionPolicy() {
+            return inline ? ExecutionPolicy.INLINE : ExecutionPolicy.POOLED;
+        }
+
+        @Override
+        public Iterator<Object> iterator() {
+            // Acteurs that can get at this inject Chain, and so are not
+            // dispatched here
+            throw new UnsupportedOperationException("Not iterable for web socket frames");
+        }
+
+        @Override
+        public Supplier<FrameRun> remnantSupplier(Object... scopeTypes) {
+            throw new UnsupportedOperationException("No remnant for web socket frames");
+        }
+    }
+
+    private void write(WebSocketEvent event, ResponseImpl reply) throws Exception {
+        Object message = reply.getMessage();
+        if (message instanceof WebSocketFrame) {
+            event.channel().writeAndFlush(message);
+            return;
+        }
+        ByteBuf buf;
+        try (QuietAutoCloseable cl = Page.set(page)) {
+            buf = reply.payload(event, application.charset);
+        }
+        if (buf != null) {
+            event.channel().writeAndFlush(new BinaryWebSocketFrame(buf));
+        }
+    }
+
+    private ResponseImpl onError(RequestID id, WebSocketEvent event, Throwable thrown) {
+        application.probe.onThrown(id, event, thrown);
+        // These should not be logged - they can be thrown when validating input
+        if (!(thrown instanceof ResponseException && !(thrown instanceof InvalidInputException))) {
+            application.internalOnError(thrown);
+        }
+        ErrorPage pg = new ErrorPage();
+        pg.setApplication(application);
+        try (QuietAutoCloseable ac = Page.set(pg)) {
+            try (QuietAutoCloseable ac2 = scope.enter(id, event)) {
+                Acteur err = Acteur.error(null, pg, thrown, event, renderStackTraces);
+                ResponseImpl result = err.getResponse();
+                return result != null && result.getMessage() != null ? result : null;
+            }
+        } catch (Exception | Error e) {
+            thrown.addSuppressed(e);
+            application.internalOnError(e);
+            return null;
+        }
+    }
+
+    static boolean requiresChain(Class<?> type) {
+        return NEEDS_CHAIN.get(type);
+    }
+
+    private static boolean needsChain(Set<Dependency<?>> dependencies) {
+        for (Dependency<?> dep : dependencies) {
+            if (isChainType(dep.getKey())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isChainType(Key<?> key) {
+        TypeLiteral<?> literal = key.getTypeLiteral();
+        Class<?> raw = literal.getRawType();
+        if ((raw == Provider.class || raw == javax.inject.Provider.class)
+                && literal.getType() instanceof ParameterizedType) {
+            Type param = ((ParameterizedType) literal.getType()).getActualTypeArguments()[0];
+            raw = TypeLiteral.get(param).getRawType();
+        }
+        return raw == Deferral.class || Chain.class.isAssignableFrom(raw);
+    }
+}
@@ -28,14 +28,23 @@ import com.google.inject.Module;
 import com.google.inject.TypeLiteral;
 import com.google.inject.name.Names;
 import com.mastfrog.acteur.server.ServerModule;
+import static com.mastfrog.acteur.server.ServerModule.DEFAULT_FAST_STARTUP;
+import static com.mastfrog.acteur.server.ServerModule.SETTINGS_KEY_FAST_STARTUP;
 import com.mastfrog.giulius.scope.ReentrantScope;
 import com.mastfrog.settings.Settings;
 import com.mastfrog.util.preconditions.Exceptions;
+import com.mastfrog.util.thread.QuietAutoCloseable;
 import static com.mastfrog.util.collections.CollectionUtils.setOf;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Acteur ServerModule which uses GenericApplication. Page that have the
@@ -160,27 +169,74 @@ public class GenericApplicationModule<T extends GenericApplication> extends Serv
     @Override
     protected void configure() {
         try {
-            super.configure();
             HttpCallRegistryLoader ldr = new HttpCallRegistryLoader(appType);
+            boolean fast = settings.getBoolean(SETTINGS_KEY_FAST_STARTUP, DEFAULT_FAST_STARTUP);
+            // In fast startup mode, scan the classpath for registry files
+            // while the server module's own bindings are being set up
+            CompletableFuture<Set<Class<?>>> implicit = null;
+            CompletableFuture<Set<Class<? extends Module>>> modules = null;
+            if (fast) {
+                implicit = CompletableFuture.supplyAsync(ldr::implicitBindings);
+                modules = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return ldr.modules();
+                    } catch (IOException | ClassNotFoundException ex) {
+                        return Exceptions.chuck(ex);
+                    }
+                });
+            }
+            super.configure();
             Set<Class<?>> toExclude = ImmutableSet.copyOf(setOf(exclude));
             bind(Class[].class).annotatedWith(Names.named(EXCLUDED_CLASSES)).toInstance(exclude);
             bind(new GenericArrayOfClasses()).annotatedWith(Names.named(EXCLUDED_CLASSES)).toInstance(exclude);
             bind(new SetOfClasses()).annotatedWith(Names.named(EXCLUDED_CLASSES)).toInstance(toExclude);
-            for (Class<?> c : ldr.implicitBindings()) {
+            Set<Class<?>> implicitTypes;
+            Set<Class<? extends Module>> moduleTypes;
+            try (QuietAutoCloseable ac = timeline.begin("load page registry")) {
+                implicitTypes = fast ? join(implicit) : ldr.implicitBindings();
+                moduleTypes = fast ? join(modules) : ldr.modules();
+            }
+            for (Class<?> c : implicitTypes) {
                 if (!toExclude.contains(c)) {
                     scope.bindTypes(binder(), c);
                 }
             }
-            for (Class<? extends Module> module : ldr.modules()) {
+            List<Class<? extends Module>> toInstall = new ArrayList<>(moduleTypes.size());
+            for (Class<? extends Module> module : moduleTypes) {
                 if (!toExclude.contains(module)) {
-                    install(instantiateModule(module, settings, scope));
+                    toInstall.add(module);
+                }
+            }
+            // Module constructors may do real work, and are independent of
+            // each other;  installing them must still happen on this thread
+            Stream<Class<? extends Module>> stream = fast ? toInstall.parallelStream() : toInstall.stream();
+            List<Module> instances = stream.map(this::instantiate).collect(Collectors.toList());
+            for (Module module : instances) {
+                try (QuietAutoCloseable ac = timeline.begin("configure " + module.getClass().getSimpleName())) {
+                    install(module);
                 }
             }
-        } catch (IOException | ClassNotFoundException | NoSuchMethodException | InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
+        } catch (IOException | ClassNotFoundException ex) {
             Exceptions.chuck(ex);
         }
     }
 
+    private Module instantiate(Class<? extends Module> type) {
+        try (QuietAutoCloseable ac = timeline.begin("instantiate " + type.getSimpleName())) {
+            return instantiateModule(type, settings, scope);
+        } catch (NoSuchMethodException | InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
+            return Exceptions.chuck(ex);
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            return Exceptions.chuck(ex.getCause() == null ? ex : ex.getCause());
+        }
+    }
+
     private static final class GenericArrayOfClasses extends TypeLiteral<Class<?>[]> {
 
     }
@@ -33,6 +33,7 @@ import com.mastfrog.util.collections.Converter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collections;
 import static java.util.Collections.emptySet;
 import java.util.Enumeration;
@@ -41,9 +42,10 @@ import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  *
@@ -70,33 +72,29 @@ public final class HttpCallRegistryLoader implements Iterable<Class<? extends Pa
         if (cl != null) { // graal
             try {
                 Set<String> seenLines = new HashSet<>();
-                Enumeration<URL> numbleLists = cl.getResources(Origin.META_INF_PATH);
-                if (numbleLists != null) {
-                    for (URL url : CollectionUtils.toIterable(numbleLists)) {
-                        try (final InputStream in = url.openStream()) {
-                            String[] lines = Streams.readString(in, "UTF-8").split("\n");
-                            for (String line : lines) {
-                                // CRLF issues if build was done on Windows
-                                // gives us class names ending in a \r
-                                line = line.trim();
-                                if (line.isEmpty() || line.startsWith("#") || seenLines.contains(line)) {
-                                    continue;
-                                }
-                                // If A and B depend on C, and D depends on both, D can
-                                // wind up with duplicates - harmless but has overhead, so
-                                // nip that in the bud here
-                                seenLines.add(line);
-                                try {
-                                    types.add(cl.loadClass(line));
-                                } catch (Throwable t) {
-                                    // Graal
-                                    t.printStackTrace();
-                                    types.add(Class.forName(line));
-                                }
+                for (ResourceFile file : resourceFiles(cl, Origin.META_INF_PATH)) {
+                    try {
+                        for (String line : file.lines) {
+                            // CRLF issues if build was done on Windows
+                            // gives us class names ending in a \r
+                            line = line.trim();
+                            if (line.isEmpty() || line.startsWith("#") || seenLines.contains(line)) {
+                                continue;
+                            }
+                            // If A and B depend on C, and D depends on both, D can
+                            // wind up with duplicates - harmless but has overhead, so
+                            // nip that in the bud here
+                            seenLines.add(line);
+                            try {
+                                types.add(cl.loadClass(line));
+                            } catch (Throwable t) {
+                                // Graal
+                                t.printStackTrace();
+                                types.add(Class.forName(line));
                             }
-                        } catch (ClassNotFoundException ex) {
-                            return Exceptions.chuck(ex);
                         }
+                    } catch (ClassNotFoundException ex) {
+                        return Exceptions.chuck(ex);
                     }
                 }
             } catch (IOException ex) {
@@ -113,27 +111,19 @@ public final class HttpCallRegistryLoader implements Iterable<Class<? extends Pa
         if (cl == null) {
             return emptySet(); // graal
         }
-        Enumeration<URL> eurls = cl.getResources(GuiceModule.META_INF_PATH);
-        if (eurls == null) {
-            return emptySet();
-        }
-        for (URL url : CollectionUtils.toIterable(eurls)) {
-            try (final InputStream in = url.openStream()) {
-                // Split into lines
-                String[] lines = Streams.readString(in, "UTF-8").split("\n");
-                for (String line : lines) {
-                    line = line.trim();
-                    // Skip comments and blanks - these could be
-                    // generated manually
-                    if (line.isEmpty() || line.charAt(0) == '#') {
-                        continue;
-                    }
-                    Class<?> moduleType = Class.forName(line);
-                    if (!Module.class.isAssignableFrom(moduleType)) {
-                        throw new ClassCastException("Not a subclass of " + Module.class.getName() + ": " + line);
-                    }
-                    types.add((Class<? extends Module>) moduleType);
+        for (ResourceFile file : resourceFiles(cl, GuiceModule.META_INF_PATH)) {
+            for (String line : file.lines) {
+                line = line.trim();
+                // Skip comments and blanks - these could be
+                // generated manually
+                if (line.isEmpty() || line.charAt(0) == '#') {
+                    continue;
                 }
+                Class<?> moduleType = Class.forName(line);
+                if (!Module.class.isAssignableFrom(moduleType)) {
+                    throw new ClassCastException("Not a subclass of " + Module.class.getName() + ": " + line);
+                }
+                types.add((Class<? extends Module>) moduleType);
             }
         }
         return types;
@@ -143,9 +133,6 @@ public final class HttpCallRegistryLoader implements Iterable<Class<? extends Pa
         if (entries.isEmpty()) {
             try {
                 ClassLoader cl = type.getClassLoader();
-                // Lines are in the form fqn:order
-                Pattern classAndOrder = Pattern.compile("(.*?):(-?\\d+)");
-                Pattern classAndOrderWithImplicitBindings = Pattern.compile("(.*?):(-?\\d+)\\{(.*)\\}$");
                 // We are keeping track of both classpath order and ordering
                 // attributes!
                 int ix = 0;
@@ -153,37 +140,19 @@ public final class HttpCallRegistryLoader implements Iterable<Class<? extends Pa
                 if (cl == null) { // graal?
                     return Collections.emptyList();
                 }
-                Enumeration<URL> eurls = cl.getResources(HttpCall.META_INF_PATH);
-                if (eurls == null) { // graal
-                    return Collections.emptyList();
-                }
-                for (URL url : CollectionUtils.toIterable(eurls)) {
-                    try (final InputStream in = url.openStream()) {
-                        // Split into lines
-                        String[] lines = Streams.readString(in, "UTF-8").split("\n");
-                        for (String line : lines) {
-                            // Skip comments and blanks - these could be
-                            // generated manually
-                            if (line.isEmpty() || line.charAt(0) == '#') {
-                                continue;
-                            }
-                            Matcher m = classAndOrderWithImplicitBindings.matcher(line);
-                            if (m.find()) {
-                                String className = m.group(1);
-                                int order = Integer.parseInt(m.group(2));
-                                String bindings = m.group(3);
-                                entries.add(new Entry(ix, className, order, url, bindings));
-                            } else {
-                                m = classAndOrder.matcher(line);
-                                if (m.find()) {
-                                    String className = m.group(1);
-                                    int order = Integer.parseInt(m.group(2));
-                                    entries.add(new Entry(ix, className, order, url));
-                                }
-                            }
+                for (ResourceFile file : resourceFiles(cl, HttpCall.META_INF_PATH)) {
+                    for (String line : file.lines) {
+                        // Skip comments and blanks - these could be
+                        // generated manually
+                        if (line.isEmpty() || line.charAt(0) == '#') {
+                            continue;
+                        }
+                        Entry e = parseLine(ix, line, file.url);
+                        if (e != null) {
+                            entries.add(e);
                         }
-                        ix++;
                     }
+                    ix++;
                 }
             } catch (Exception ex) {
                 Exceptions.chuck(ex);
@@ -194,18 +163,99 @@ public final class HttpCallRegistryLoader implements Iterable<Class<? extends Pa
         return entries;
     }
 
+    /**
+     * Registry files cannot change while the classloader that found them is
+     * alive, and the same ones are read by both the module and the
+     * application, so keep their contents rather than reading them again.
+     * Only strings and URLs are cached, so the classloader is not retained.
+     */
+    private static final Map<ClassLoader, Map<String, List<ResourceFile>>> RESOURCE_FILES
+            = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private static List<ResourceFile> resourceFiles(ClassLoader cl, String path) throws IOException {
+        Map<String, List<ResourceFile>> forLoader = RESOURCE_FILES.computeIfAbsent(cl,
+                ignored -> new ConcurrentHashMap<>());
+        List<ResourceFile> result = forLoader.get(path);
+        if (result == null) {
+            result = new ArrayList<>(4);
+            Enumeration<URL> eurls = cl.getResources(path);
+            if (eurls != null) { // graal
+                for (URL url : CollectionUtils.toIterable(eurls)) {
+                    try (final InputStream in = url.openStream()) {
+                        result.add(new ResourceFile(url, Streams.readString(in, "UTF-8").split("\n")));
+                    }
+                }
+            }
+            forLoader.put(path, result);
+        }
+        return result;
+    }
+
+    private static final class ResourceFile {
+
+        final URL url;
+        final String[] lines;
+
+        ResourceFile(URL url, String[] lines) {
+            this.url = url;
+            this.lines = lines;
+        }
+    }
+
+    /**
+     * Parse one line of a pages.list file, in the form
+     * <code>fqn:order</code> or <code>fqn:order{binding1,binding2}</code>,
+     * returning null if it is not in either form.
+     */
+    static Entry parseLine(int classpathOrder, String line, URL url) throws ClassNotFoundException {
+        line = line.trim();
+        String bindings = null;
+        int end = line.length();
+        if (end > 0 && line.charAt(end - 1) == '}') {
+            int open = line.indexOf('{');
+            if (open < 0) {
+                return null;
+            }
+            bindings = line.substring(open + 1, end - 1);
+            end = open;
+        }
+        int colon = line.lastIndexOf(':', end - 1);
+        if (colon <= 0 || colon == end - 1) {
+            return null;
+        }
+        int order = 0;
+        boolean negative = line.charAt(colon + 1) == '-';
+        for (int i = colon + (negative ? 2 : 1); i < end; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                return null;
+            }
+            order = order * 10 + (c - '0');
+        }
+        if (negative) {
+            if (colon + 2 == end) {
+                return null;
+            }
+            order = -order;
+        }
+        String className = line.substring(0, colon);
+        return bindings == null
+                ? new Entry(classpathOrder, className, order, url)
+                : new Entry(classpathOrder, className, order, url, bindings);
+    }
+
     @Override
     public Iterator<Class<? extends Page>> iterator() {
         // Convert its iterator to an Iterator<Class<? extends Page>>
         return CollectionUtils.convertedIterator(new EntryConverter(), entries().iterator());
     }
 
-    private static class Entry implements Comparable<Entry> {
+    static class Entry implements Comparable<Entry> {
 
-        private final int order;
+        final int order;
         private final int classpathOrder;
-        private final Class<? extends Page> type;
-        private final Set<Class<?>> bindings = new LinkedHashSet<>();
+        final Class<? extends Page> type;
+        final Set<Class<?>> bindings = new LinkedHashSet<>();
 
         @SuppressWarnings(value = "unchecked")
         Entry(int classpathOrder, String className, int order, URL url) throws ClassNotFoundException {
@@ -49,10 +49,22 @@ public abstract class HttpProbe implements Provider<Probe> {
         // do nothing
     }
 
+    protected void onBeforeRunActeur(RequestID id, HttpEvent evt, Page page) {
+        // do nothing
+    }
+
     protected void onActeurWasRun(RequestID id, HttpEvent evt, Page page, Acteur acteur, ActeurState result) {
         // do nothing
     }
 
+    protected void onDeferred(RequestID id, HttpEvent evt, Page page) {
+        // do nothing
+    }
+
+    protected void onResumed(RequestID id, HttpEvent evt, Page page) {
+        // do nothing
+    }
+
     protected void onFallthrough(RequestID id, HttpEvent evt) {
         // do nothing
     }
@@ -61,6 +73,14 @@ public abstract class HttpProbe implements Provider<Probe> {
         // do nothing
     }
 
+    protected boolean observesResponseWrites() {
+        return false;
+    }
+
+    protected void onResponseFlushed(RequestID id, HttpEvent httpEvent, HttpResponseStatus status, boolean complete, boolean success) {
+        // do nothing
+    }
+
     protected void onInfo(String info, Object... objs) {
         // do nothing
     }
@@ -98,6 +118,13 @@ public abstract class HttpProbe implements Provider<Probe> {
             }
         }
 
+        @Override
+        public void onBeforeRunActeur(RequestID id, Event<?> evt, Page page) {
+            if (evt instanceof HttpEvent && isEnabled()) {
+                HttpProbe.this.onBeforeRunActeur(id, (HttpEvent) evt, page);
+            }
+        }
+
         @Override
         public void onActeurWasRun(RequestID id, Event<?> evt, Page page, Acteur acteur, ActeurState result) {
             if (evt instanceof HttpEvent && isEnabled()) {
@@ -105,6 +132,20 @@ public abstract class HttpProbe implements Provider<Probe> {
             }
         }
 
+        @Override
+        public void onDeferred(RequestID id, Event<?> evt, Page page) {
+            if (evt instanceof HttpEvent && isEnabled()) {
+                HttpProbe.this.onDeferred(id, (HttpEvent) evt, page);
+            }
+        }
+
+        @Override
+        public void onResumed(RequestID id, Event<?> evt, Page page) {
+            if (evt instanceof HttpEvent && isEnabled()) {
+                HttpProbe.this.onResumed(id, (HttpEvent) evt, page);
+            }
+        }
+
         @Override
         public void onFallthrough(RequestID id, Event<?> evt) {
             if (evt instanceof HttpEvent && isEnabled()) {
@@ -119,6 +160,18 @@ public abstract class HttpProbe implements Provider<Probe> {
             }
         }
 
+        @Override
+        public boolean observesResponseWrites() {
+            return HttpProbe.this.observesResponseWrites();
+        }
+
+        @Override
+        public void onResponseFlushed(RequestID id, Event<?> event, HttpResponseStatus status, boolean complete, boolean success) {
+            if (event instanceof HttpEvent && isEnabled()) {
+                HttpProbe.this.onResponseFlushed(id, (HttpEvent) event, status, complete, success);
+            }
+        }
+
         @Override
         public void onInfo(String info, Object... objs) {
             if (isEnabled()) {
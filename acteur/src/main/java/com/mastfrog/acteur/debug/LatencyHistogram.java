@@ -0,0 +1,149 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.debug;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size, lock-free histogram of durations in microseconds. Buckets are
+ * exact below 32, and above that each power of two is split into 16 linear
+ * sub-buckets, so any recorded value is reported to within about 6% - the
+ * same scheme HdrHistogram uses, with the precision fixed to keep each
+ * histogram under 5Kb.
+ *
+ * @author Tim Boudreau
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40;
+    static final int BUCKETS = 2 * SUB + (MAX_EXPONENT - SUB_BITS) * SUB;
+    static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        } else if (micros > MAX_VALUE) {
+            micros = MAX_VALUE;
+        }
+        counts.incrementAndGet(indexOf(micros));
+        sum.add(micros);
+        max.accumulateAndGet(micros, Math::max);
+    }
+
+    static int indexOf(long value) {
+        if (value < 2 * SUB) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BITS;
+        int top = (int) (value >>> shift);
+        return 2 * SUB + (exponent - SUB_BITS - 1) * SUB + (top - SUB);
+    }
+
+    /**
+     * The largest value which would be stored in the bucket at the passed
+     * index.
+     */
+    static long highestValueIn(int index) {
+        if (index < 2 * SUB) {
+            return index;
+        }
+        int offset = index - 2 * SUB;
+        int shift = offset / SUB + 1;
+        long top = offset % SUB + SUB;
+        return ((top + 1) << shift) - 1;
+    }
+
+    long count() {
+        long result = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            result += counts.get(i);
+        }
+        return result;
+    }
+
+    long sum() {
+        return sum.sum();
+    }
+
+    long max() {
+        return max.get();
+    }
+
+    /**
+     * Get the value at a percentile.
+     *
+     * @param percentile A number between 0 and 100
+     * @return The value, or 0 if nothing has been recorded
+     */
+    long valueAt(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += snapshot[i] = counts.get(i);
+        }
+        return valueAt(percentile, snapshot, total);
+    }
+
+    private long valueAt(double percentile, long[] snapshot, long total) {
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil((percentile / 100D) * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                return Math.min(highestValueIn(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    Map<String, Object> toMap() {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += snapshot[i] = counts.get(i);
+        }
+        Map<String, Object> result = new LinkedHashMap<>(8);
+        result.put("count", total);
+        result.put("mean", total == 0 ? 0 : sum.sum() / total);
+        result.put("p50", valueAt(50, snapshot, total));
+        result.put("p90", valueAt(90, snapshot, total));
+        result.put("p99", valueAt(99, snapshot, total));
+        result.put("p999", valueAt(99.9, snapshot, total));
+        result.put("max", max.get());
+        return result;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.debug;
+
+import com.google.common.net.MediaType;
+import com.mastfrog.acteur.Acteur;
+import com.mastfrog.acteur.ActeurFactory;
+import com.mastfrog.acteur.HttpEvent;
+import com.mastfrog.acteur.Page;
+import static com.mastfrog.acteur.debug.LatencyProbe.DEFAULT_LATENCY_PATH;
+import static com.mastfrog.acteur.debug.LatencyProbe.SETTINGS_KEY_LATENCY_PATH;
+import com.mastfrog.acteur.headers.Headers;
+import static com.mastfrog.acteur.headers.Method.GET;
+import com.mastfrog.acteur.preconditions.Description;
+import com.mastfrog.acteur.preconditions.Methods;
+import com.mastfrog.acteur.util.CacheControl;
+import com.mastfrog.settings.Settings;
+import static io.netty.handler.codec.http.HttpResponseStatus.NOT_FOUND;
+import java.util.Map;
+import javax.inject.Inject;
+
+/**
+ * Serves the statistics collected by {@link LatencyProbe} as JSON, or in
+ * the Prometheus text format if the <code>format=prometheus</code> URL
+ * parameter is present. Responds on the path set by
+ * {@link LatencyProbe#SETTINGS_KEY_LATENCY_PATH}, <code>/_latency</code> by
+ * default.
+ *
+ * @author Tim Boudreau
+ */
+@Description(category = "Info", value = "Breakdown of request latency by "
+        + "page, phase and acteur, as JSON or, with ?format=prometheus, "
+        + "in the Prometheus text format")
+@Methods(GET)
+public final class LatencyPage extends Page {
+
+    private static final MediaType PROMETHEUS_TEXT
+            = MediaType.PLAIN_TEXT_UTF_8.withParameter("version", "0.0.4");
+
+    @Inject
+    LatencyPage(ActeurFactory af, Settings settings) {
+        add(af.matchPath(settings.getString(SETTINGS_KEY_LATENCY_PATH, DEFAULT_LATENCY_PATH)));
+        add(LatencyActeur.class);
+    }
+
+    private static final class LatencyActeur extends Acteur {
+
+        @Inject
+        LatencyActeur(Probe probe, HttpEvent evt) {
+            if (!(probe instanceof LatencyProbe)) {
+                reply(NOT_FOUND, "LatencyProbe is not bound as the Probe\n");
+                return;
+            }
+            LatencyProbe latency = (LatencyProbe) probe;
+            add(Headers.CACHE_CONTROL, CacheControl.PRIVATE_NO_CACHE_NO_STORE);
+            if ("prometheus".equals(evt.urlParameter("format"))) {
+                add(Headers.CONTENT_TYPE, PROMETHEUS_TEXT);
+                ok(latency.toPrometheus());
+            } else {
+                ok(latency.toMap());
+            }
+        }
+
+        @Override
+        public void describeYourself(Map<String, Object> into) {
+            into.put("Reports request latency", true);
+        }
+    }
+}
@@ -0,0 +1,420 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.debug;
+
+import com.google.inject.Singleton;
+import com.mastfrog.acteur.Acteur;
+import com.mastfrog.acteur.Event;
+import com.mastfrog.acteur.Page;
+import com.mastfrog.acteur.util.RequestID;
+import com.mastfrog.acteurbase.ActeurState;
+import com.mastfrog.settings.Settings;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.inject.Inject;
+
+/**
+ * A probe which breaks down where the time handling each request went, and
+ * aggregates that into histograms per page and per acteur type. To use it,
+ * bind it in your module:
+ * <pre>
+ * bind(Probe.class).to(LatencyProbe.class);
+ * </pre> and add {@link LatencyPage} to your application to serve the results.
+ * <p>
+ * For the page which responded to a request, the phases recorded are:
+ * <ul>
+ * <li><b>routing</b> - from the request being dispatched until the page which
+ * responded was started, including running the acteurs of any pages which
+ * rejected the request</li>
+ * <li><b>queued</b> - time the page's acteurs spent waiting for a thread</li>
+ * <li><b>acteurs</b> - time spent instantiating and running its acteurs</li>
+ * <li><b>deferred</b> - time the page was paused by a Deferral</li>
+ * <li><b>write</b> - from the response being handed off until it was
+ * flushed to the socket; for responses with a listener that writes the body
+ * after the headers, this is recorded as <b>headers</b> instead, since when
+ * the listener writes its last byte is not visible here</li>
+ * <li><b>total</b> - from dispatch until the response was flushed</li>
+ * </ul>
+ * Time spent by Netty decoding the request happens before a request is
+ * dispatched and is not included. To reduce overhead in busy servers, set
+ * {@link #SETTINGS_KEY_LATENCY_SAMPLE_INTERVAL} to only trace one in every
+ * <i>n</i> requests. All values are in microseconds.
+ *
+ * @author Tim Boudreau
+ */
+@Singleton
+public final class LatencyProbe implements Probe {
+
+    /**
+     * Trace only one in this many requests; the default is 1, to trace
+     * every request.
+     */
+    public static final String SETTINGS_KEY_LATENCY_SAMPLE_INTERVAL = "acteur.latency.sample.interval";
+    /**
+     * Default value for {@link #SETTINGS_KEY_LATENCY_SAMPLE_INTERVAL}.
+     */
+    public static final int DEFAULT_LATENCY_SAMPLE_INTERVAL = 1;
+    /**
+     * Regular expression for the URL path {@link LatencyPage} responds to.
+     */
+    public static final String SETTINGS_KEY_LATENCY_PATH = "acteur.latency.path";
+    /**
+     * Default value for {@link #SETTINGS_KEY_LATENCY_PATH}.
+     */
+    public static final String DEFAULT_LATENCY_PATH = "^_latency$";
+    /**
+     * Number of requests in flight above which we look for traces of
+     * requests which will never complete (the client disconnected, or the
+     * response was written by an error path that bypasses the probe).
+     */
+    private static final int SWEEP_THRESHOLD = 4096;
+    private static final long ABANDON_AFTER_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final String UNKNOWN_PAGE = "<unknown>";
+
+    private final int sampleInterval;
+    private final Map<RequestID, Trace> traces = new ConcurrentHashMap<>();
+    private final Map<String, PageStats> pages = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> acteurs = new ConcurrentHashMap<>();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder unmatched = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+
+    @Inject
+    LatencyProbe(Settings settings) {
+        this.sampleInterval = Math.max(1, settings.getInt(SETTINGS_KEY_LATENCY_SAMPLE_INTERVAL,
+                DEFAULT_LATENCY_SAMPLE_INTERVAL));
+    }
+
+    LatencyProbe(int sampleInterval) {
+        this.sampleInterval = Math.max(1, sampleInterval);
+    }
+
+    enum Phase {
+        ROUTING, QUEUED, ACTEURS, DEFERRED, HEADERS, WRITE, TOTAL;
+
+        String key() {
+            return name().toLowerCase();
+        }
+    }
+
+    private boolean sampled(RequestID id) {
+        return sampleInterval == 1 || id.index % sampleInterval == 0;
+    }
+
+    private Trace trace(RequestID id) {
+        return sampled(id) ? traces.get(id) : null;
+    }
+
+    @Override
+    public void onBeforeProcessRequest(RequestID id, Event<?> req) {
+        if (sampled(id)) {
+            if (traces.size() > SWEEP_THRESHOLD) {
+                sweep();
+            }
+            traces.put(id, new Trace(id.startNanos));
+        }
+    }
+
+    private void sweep() {
+        long now = System.nanoTime();
+        for (Iterator<Trace> it = traces.values().iterator(); it.hasNext();) {
+            if (now - it.next().start > ABANDON_AFTER_NANOS) {
+                it.remove();
+                abandoned.increment();
+            }
+        }
+    }
+
+    @Override
+    public void onBeforeRunPage(RequestID id, Event<?> evt, Page page) {
+        Trace trace = trace(id);
+        if (trace != null) {
+            trace.pageStarted(page, System.nanoTime());
+        }
+    }
+
+    @Override
+    public void onBeforeRunActeur(RequestID id, Event<?> evt, Page page) {
+        Trace trace = trace(id);
+        if (trace != null) {
+            trace.acteurStarted(System.nanoTime());
+        }
+    }
+
+    @Override
+    public void onActeurWasRun(RequestID id, Event<?> evt, Page page, Acteur acteur, ActeurState result) {
+        // Called a second time with a null state once the page is cleared
+        if (result == null || acteur == null) {
+            return;
+        }
+        Trace trace = trace(id);
+        if (trace != null) {
+            long elapsed = trace.acteurCompleted(System.nanoTime());
+            if (elapsed >= 0) {
+                acteurs.computeIfAbsent(acteur.getClass().getName(), ignored -> new LatencyHistogram())
+                        .record(micros(elapsed));
+            }
+        }
+    }
+
+    @Override
+    public void onDeferred(RequestID id, Event<?> evt, Page page) {
+        Trace trace = trace(id);
+        if (trace != null) {
+            trace.deferred(System.nanoTime());
+        }
+    }
+
+    @Override
+    public void onResumed(RequestID id, Event<?> evt, Page page) {
+        Trace trace = trace(id);
+        if (trace != null) {
+            trace.resumed(System.nanoTime());
+        }
+    }
+
+    @Override
+    public void onFallthrough(RequestID id, Event<?> evt) {
+        if (sampled(id) && traces.remove(id) != null) {
+            unmatched.increment();
+        }
+    }
+
+    @Override
+    public void onBeforeSendResponse(RequestID id, Event<?> event, Acteur acteur, HttpResponseStatus status, boolean hasListener, Object message) {
+        Trace trace = trace(id);
+        if (trace != null) {
+            trace.sendStart = System.nanoTime();
+        }
+    }
+
+    @Override
+    public boolean observesResponseWrites() {
+        return true;
+    }
+
+    @Override
+    public void onResponseFlushed(RequestID id, Event<?> event, HttpResponseStatus status, boolean complete, boolean success) {
+        Trace trace = sampled(id) ? traces.remove(id) : null;
+        if (trace != null) {
+            completed.increment();
+            if (success) {
+                trace.finish(System.nanoTime(), complete);
+            }
+        }
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    final class Trace {
+
+        final long start;
+        private String page;
+        private long pageStart;
+        private long mark;
+        private long acteurStart;
+        private long deferredAt;
+        private long queued;
+        private long running;
+        private long deferredFor;
+        long sendStart;
+
+        Trace(long start) {
+            this.start = start;
+            this.mark = start;
+        }
+
+        void pageStarted(Page page, long now) {
+            // Only the page which finally responds is of interest;  time
+            // spent on pages that rejected the request counts as routing
+            this.page = page == null ? UNKNOWN_PAGE : page.getClass().getName();
+            pageStart = mark = now;
+            queued = running = deferredFor = deferredAt = 0;
+        }
+
+        void acteurStarted(long now) {
+            acteurStart = now;
+            queued += now - mark;
+        }
+
+        long acteurCompleted(long now) {
+            // Direct websocket dispatch runs acteurs without announcing them
+            if (acteurStart == 0) {
+                return -1;
+            }
+            long elapsed = now - acteurStart;
+            acteurStart = 0;
+            running += elapsed;
+            mark = now;
+            return elapsed;
+        }
+
+        void deferred(long now) {
+            deferredAt = now;
+        }
+
+        void resumed(long now) {
+            // Resume can race the notification of deferral
+            if (deferredAt != 0) {
+                deferredFor += now - deferredAt;
+                deferredAt = 0;
+                mark = now;
+            }
+        }
+
+        void finish(long now, boolean complete) {
+            String key = page == null ? UNKNOWN_PAGE : page;
+            PageStats stats = pages.computeIfAbsent(key, ignored -> new PageStats());
+            if (pageStart != 0) {
+                stats.record(Phase.ROUTING, pageStart - start);
+                stats.record(Phase.QUEUED, queued);
+                stats.record(Phase.ACTEURS, running);
+                if (deferredFor != 0) {
+                    stats.record(Phase.DEFERRED, deferredFor);
+                }
+            }
+            if (sendStart != 0) {
+                stats.record(complete ? Phase.WRITE : Phase.HEADERS, now - sendStart);
+            }
+            stats.record(Phase.TOTAL, now - start);
+        }
+    }
+
+    static final class PageStats {
+
+        private final LatencyHistogram[] phases = new LatencyHistogram[Phase.values().length];
+
+        PageStats() {
+            for (int i = 0; i < phases.length; i++) {
+                phases[i] = new LatencyHistogram();
+            }
+        }
+
+        void record(Phase phase, long nanos) {
+            phases[phase.ordinal()].record(micros(nanos));
+        }
+
+        LatencyHistogram get(Phase phase) {
+            return phases[phase.ordinal()];
+        }
+    }
+
+    /**
+     * Get the aggregated statistics as a map suitable for rendering as JSON.
+     *
+     * @return A map
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new LinkedHashMap<>(8);
+        result.put("unit", "microseconds");
+        result.put("sampleInterval", sampleInterval);
+        result.put("completed", completed.sum());
+        result.put("unmatched", unmatched.sum());
+        result.put("abandoned", abandoned.sum());
+        result.put("inFlight", traces.size());
+        Map<String, Object> pageInfo = new LinkedHashMap<>(pages.size());
+        for (String name : sorted(pages)) {
+            PageStats stats = pages.get(name);
+            Map<String, Object> phaseInfo = new LinkedHashMap<>(8);
+            for (Phase phase : Phase.values()) {
+                LatencyHistogram hist = stats.get(phase);
+                if (hist.count() > 0) {
+                    phaseInfo.put(phase.key(), hist.toMap());
+                }
+            }
+            pageInfo.put(name, phaseInfo);
+        }
+        result.put("pages", pageInfo);
+        Map<String, Object> acteurInfo = new LinkedHashMap<>(acteurs.size());
+        for (String name : sorted(acteurs)) {
+            acteurInfo.put(name, acteurs.get(name).toMap());
+        }
+        result.put("acteurs", acteurInfo);
+        return result;
+    }
+
+    /**
+     * Get the aggregated statistics as summaries in the Prometheus text
+     * exposition format.
+     *
+     * @return A string
+     */
+    public String toPrometheus() {
+        StringBuilder sb = new StringBuilder(4096);
+        String phaseMetric = "acteur_request_phase_microseconds";
+        sb.append("# HELP ").append(phaseMetric)
+                .append(" Time spent in each phase of requests, by responding page\n");
+        sb.append("# TYPE ").append(phaseMetric).append(" summary\n");
+        for (String name : sorted(pages)) {
+            PageStats stats = pages.get(name);
+            for (Phase phase : Phase.values()) {
+                LatencyHistogram hist = stats.get(phase);
+                if (hist.count() > 0) {
+                    summary(phaseMetric, "page=\"" + escape(name)
+                            + "\",phase=\"" + phase.key() + "\"", hist, sb);
+                }
+            }
+        }
+        String acteurMetric = "acteur_acteur_microseconds";
+        sb.append("# HELP ").append(acteurMetric)
+                .append(" Time spent instantiating and running each type of acteur\n");
+        sb.append("# TYPE ").append(acteurMetric).append(" summary\n");
+        for (String name : sorted(acteurs)) {
+            summary(acteurMetric, "acteur=\"" + escape(name) + "\"", acteurs.get(name), sb);
+        }
+        sb.append("# TYPE acteur_requests_unmatched_total counter\n");
+        sb.append("acteur_requests_unmatched_total ").append(unmatched.sum()).append('\n');
+        sb.append("# TYPE acteur_requests_abandoned_total counter\n");
+        sb.append("acteur_requests_abandoned_total ").append(abandoned.sum()).append('\n');
+        return sb.toString();
+    }
+
+    private static void summary(String metric, String labels, LatencyHistogram hist, StringBuilder sb) {
+        for (double q : new double[]{0.5, 0.9, 0.99, 0.999}) {
+            sb.append(metric).append('{').append(labels).append(",quantile=\"")
+                    .append(q).append("\"} ").append(hist.valueAt(q * 100)).append('\n');
+        }
+        sb.append(metric).append("_sum{").append(labels).append("} ").append(hist.sum()).append('\n');
+        sb.append(metric).append("_count{").append(labels).append("} ").append(hist.count()).append('\n');
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static List<String> sorted(Map<String, ?> map) {
+        List<String> result = new ArrayList<>(map.keySet());
+        result.sort(null);
+        return result;
+    }
+}
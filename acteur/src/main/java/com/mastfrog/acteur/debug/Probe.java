@@ -47,10 +47,45 @@ public interface Probe {
 
     }
 
+    /**
+     * Called before each acteur is instantiated and run.
+     *
+     * @param id The request id
+     * @param evt The event
+     * @param page The page the acteur belongs to
+     */
+    default void onBeforeRunActeur(RequestID id, Event<?> evt, Page page) {
+
+    }
+
     default void onActeurWasRun(RequestID id, Event<?> evt, Page page, Acteur acteur, ActeurState result) {
 
     }
 
+    /**
+     * Called when an acteur has paused processing of a request using a
+     * Deferral.
+     *
+     * @param id The request id
+     * @param evt The event
+     * @param page The page whose acteurs were deferred
+     */
+    default void onDeferred(RequestID id, Event<?> evt, Page page) {
+
+    }
+
+    /**
+     * Called when a deferred request is resumed, before the next acteur is
+     * submitted to run.
+     *
+     * @param id The request id
+     * @param evt The event
+     * @param page The page whose acteurs were deferred
+     */
+    default void onResumed(RequestID id, Event<?> evt, Page page) {
+
+    }
+
     default void onFallthrough(RequestID id, Event<?> evt) {
 
     }
@@ -66,4 +101,31 @@ public interface Probe {
     default void onBeforeSendResponse(RequestID id, Event<?> event, Acteur acteur, HttpResponseStatus status, boolean hasListener, Object message) {
 
     }
+
+    /**
+     * If true, {@link #onResponseFlushed} will be called; off by default,
+     * since it requires adding a listener to every response.
+     *
+     * @return Whether or not this probe wants to be notified when responses
+     * are written
+     */
+    default boolean observesResponseWrites() {
+        return false;
+    }
+
+    /**
+     * Called when the write of the response headers has completed - if the
+     * response has no listener which writes the body, this is the point at
+     * which the entire response has been flushed to the socket. Only called
+     * if {@link #observesResponseWrites()} returns true.
+     *
+     * @param id The request id
+     * @param event The event
+     * @param status The response status
+     * @param complete True if the body was written along with the headers
+     * @param success False if the write failed
+     */
+    default void onResponseFlushed(RequestID id, Event<?> event, HttpResponseStatus status, boolean complete, boolean success) {
+
+    }
 }
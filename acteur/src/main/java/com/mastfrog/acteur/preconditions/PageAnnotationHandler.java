@@ -33,11 +33,13 @@ import com.mastfrog.util.preconditions.ConfigurationError;
 import java.lang.annotation.Annotation;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Supplier;
 import javax.inject.Inject;
 
 /**
@@ -91,6 +93,22 @@ public abstract class PageAnnotationHandler {
 
     public abstract <T extends Page> boolean processAnnotations(T page, List<? super Acteur> addTo);
 
+    /**
+     * Read the annotations of a page type once, and return suppliers of the
+     * acteurs this handler would add for every page of that type, so they can
+     * be created for each request without looking at annotations again. The
+     * default implementation returns null, meaning
+     * {@link #processAnnotations(Page, List)} is called for every request.
+     *
+     * @param <T> The page type
+     * @param pageType The page type
+     * @return A list of suppliers, each of which creates one acteur per
+     * request, in the order they should run, or null
+     */
+    public <T extends Page> List<Supplier<? extends Acteur>> compile(Class<T> pageType) {
+        return null;
+    }
+
     protected final Set<Class<? extends Annotation>> types() {
         return types;
     }
@@ -108,6 +126,7 @@ public abstract class PageAnnotationHandler {
 
         private final List<PageAnnotationHandler> handlers = new LinkedList<>();
         private final Set<Class<? super Page>> annotatedPages = Sets.newConcurrentHashSet();
+        private volatile int revision;
 
         public <T extends Page> boolean processAnnotations(T page, List<? super Acteur> addTo) {
             boolean result = false;
@@ -117,6 +136,28 @@ public abstract class PageAnnotationHandler {
             return result;
         }
 
+        /**
+         * Compile what all registered handlers add for a page type - call
+         * once all handlers are registered, and reuse the result for every
+         * request for that page type.
+         *
+         * @param pageType A page type
+         * @return The compiled acteurs
+         */
+        public Compiled compile(Class<? extends Page> pageType) {
+            int rev = revision;
+            List<Object> steps = new ArrayList<>(handlers.size() * 2);
+            for (PageAnnotationHandler handler : handlers) {
+                List<Supplier<? extends Acteur>> compiled = handler.compile(pageType);
+                if (compiled == null) {
+                    steps.add(handler);
+                } else {
+                    steps.addAll(compiled);
+                }
+            }
+            return new Compiled(this, rev, steps.toArray());
+        }
+
         @SuppressWarnings({"element-type-mismatch", "unchecked"})
         public <T extends Page> boolean hasAnnotations(T page) {
             Class<? super Page> c = (Class<? super Page>) page.getClass();
@@ -135,10 +176,72 @@ public abstract class PageAnnotationHandler {
         public void register(PageAnnotationHandler handler) {
             handlers.add(handler);
             Collections.sort(handlers, new Ordered.OrderedObjectComparator());
+            revision++;
         }
 
         private volatile Set<Class<? extends Annotation>> types;
 
+        /**
+         * The acteurs all handlers add for one page type, as suppliers of
+         * acteurs from handlers that can compile them, and the handlers
+         * themselves for those that cannot.
+         */
+        public static final class Compiled {
+
+            private final Registry registry;
+            private final int revision;
+            private final Object[] steps;
+            private final int sizeHint;
+
+            Compiled(Registry registry, int revision, Object[] steps) {
+                this.registry = registry;
+                this.revision = revision;
+                this.steps = steps;
+                int size = 0;
+                for (Object o : steps) {
+                    size += o instanceof PageAnnotationHandler ? 2 : 1;
+                }
+                this.sizeHint = size;
+            }
+
+            /**
+             * Add the acteurs for one request.
+             *
+             * @param <T> The page type
+             * @param page The page
+             * @param addTo The list to add to
+             */
+            @SuppressWarnings("unchecked")
+            public <T extends Page> void addTo(T page, List<? super Acteur> addTo) {
+                for (Object step : steps) {
+                    if (step instanceof PageAnnotationHandler) {
+                        ((PageAnnotationHandler) step).processAnnotations(page, addTo);
+                    } else {
+                        addTo.add(((Supplier<? extends Acteur>) step).get());
+                    }
+                }
+            }
+
+            /**
+             * Determine if no handlers have been registered since this was
+             * compiled.
+             *
+             * @return true if this is still usable
+             */
+            public boolean isCurrent() {
+                return registry.revision == revision;
+            }
+
+            /**
+             * A guess at how many acteurs addTo() will add, for sizing lists.
+             *
+             * @return A count
+             */
+            public int sizeHint() {
+                return sizeHint;
+            }
+        }
+
         public Set<Class<? extends Annotation>> types() {
             if (types == null) {
                 synchronized (this) {
@@ -0,0 +1,100 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.server;
+
+import com.mastfrog.acteur.ContentStream;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.EmptyHttpHeaders;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * ContentStream over a body which has already been aggregated, so acteurs
+ * written against the streaming API also work on ordinary pages.
+ *
+ * @author Tim Boudreau
+ */
+final class AggregatedContentStream implements ContentStream {
+
+    private final ByteBuf content;
+    private final AtomicBoolean done = new AtomicBoolean();
+    private volatile ChunkSubscriber subscriber;
+    private volatile boolean requested;
+    private volatile long delivered;
+
+    AggregatedContentStream(ByteBuf content) {
+        this.content = content;
+    }
+
+    @Override
+    public ContentStream subscribe(ChunkSubscriber subscriber) {
+        if (subscriber == null) {
+            throw new IllegalArgumentException("Null subscriber");
+        }
+        synchronized (this) {
+            if (this.subscriber != null) {
+                throw new IllegalStateException("Already subscribed: " + this.subscriber);
+            }
+            this.subscriber = subscriber;
+        }
+        maybeDeliver();
+        return this;
+    }
+
+    @Override
+    public ContentStream request(long chunks) {
+        if (chunks <= 0) {
+            throw new IllegalArgumentException("Must request at least one chunk: " + chunks);
+        }
+        requested = true;
+        maybeDeliver();
+        return this;
+    }
+
+    @Override
+    public void cancel() {
+        done.set(true);
+    }
+
+    @Override
+    public long bytesDelivered() {
+        return delivered;
+    }
+
+    private void maybeDeliver() {
+        ChunkSubscriber sub = subscriber;
+        if (sub == null || !requested || !done.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            if (content != null && content.isReadable()) {
+                ByteBuf slice = content.slice();
+                delivered = slice.readableBytes();
+                sub.onChunk(slice);
+            }
+            sub.onComplete(EmptyHttpHeaders.INSTANCE);
+        } catch (Exception ex) {
+            sub.onError(ex);
+        }
+    }
+}
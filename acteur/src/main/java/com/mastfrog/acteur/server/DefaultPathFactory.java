@@ -25,7 +25,9 @@ package com.mastfrog.acteur.server;
 
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
+import com.google.common.cache.Weigher;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.mastfrog.acteur.HttpEvent;
@@ -36,6 +38,8 @@ import static com.mastfrog.acteur.server.ServerModule.SETTINGS_KEY_URLS_EXTERNAL
 import static com.mastfrog.acteur.server.ServerModule.SETTINGS_KEY_URLS_EXTERNAL_SECURE_PORT;
 import static com.mastfrog.acteur.server.ServerModule.SETTINGS_KEY_URLS_HOST_NAME;
 import static com.mastfrog.acteur.server.ServerModule.SETTINGS_KEY_GENERATE_URLS_WITH_INET_ADDRESS_GET_LOCALHOST;
+import static com.mastfrog.acteur.server.ServerModule.SETTINGS_KEY_PATH_CACHE_MAX_CHARS;
+import static com.mastfrog.acteur.server.ServerModule.SETTINGS_KEY_PATH_CACHE_SIZE;
 import com.mastfrog.settings.Settings;
 import com.mastfrog.url.*;
 import com.mastfrog.util.preconditions.Checks;
@@ -46,7 +50,6 @@ import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.util.AsciiString;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -61,12 +64,16 @@ class DefaultPathFactory implements PathFactory {
     static final AsciiString X_FORWARDED_SSL = new AsciiString("X-Forwarded-Ssl");
     static final AsciiString FRONT_END_HTTPS = new AsciiString("Front-End-Https");
     static final AsciiString FORWARDED = new AsciiString("Forwarded");
+    static final int DEFAULT_PATH_CACHE_SIZE = 4096;
+    static final long DEFAULT_PATH_CACHE_MAX_CHARS = 256 * 1024;
 
     private final int port;
     private final int securePort;
     private final String hostname;
     private final Path pth;
     private final boolean secure;
+    private final String basePathString;
+    private final LoadingCache<String, Path> cache;
 
     @Inject
     DefaultPathFactory(Settings settings) {
@@ -107,6 +114,8 @@ class DefaultPathFactory implements PathFactory {
         if (!pth.isValid()) {
             throw new ConfigurationError(SETTINGS_KEY_BASE_PATH + " is not a valid URL path: '" + path + "'");
         }
+        basePathString = pth.toString();
+        cache = createCache(settings, new LDR());
     }
 
     @Override
@@ -121,7 +130,6 @@ class DefaultPathFactory implements PathFactory {
     private Path basePath() {
         return pth;
     }
-    private static final Pattern STRIP_QUERY = Pattern.compile("(.*?)\\?(.*)");
 
     @Override
     public Path toExternalPath(String path) {
@@ -141,40 +149,88 @@ class DefaultPathFactory implements PathFactory {
     private class LDR extends CacheLoader<String, Path> {
 
         @Override
-        public Path load(String uri) throws Exception {
-            Path result;
-            if (uri.startsWith("/")) {
-                uri = uri.substring(1);
-            }
-            Matcher m = STRIP_QUERY.matcher(uri);
-            if (m.matches()) {
-                uri = m.group(1);
-            }
-            if (uri.startsWith(basePath().toString())) {
-                uri = uri.substring(basePath().toString().length());
-            }
-            if (uri.length() > 1 && uri.endsWith("/")) {
-                uri = uri.substring(0, uri.length() - 1);
-            }
-            result = Path.parse(uri, true);
-            return result;
+        public Path load(String path) throws Exception {
+            return Path.parse(path, true);
+        }
+    }
+
+    /**
+     * Extract the portion of a request URI that identifies the path - without
+     * leading or trailing slashes, query string or base path - with index
+     * arithmetic rather than a regular expression, so only the key is
+     * allocated.
+     */
+    static String pathPortion(String uri, String basePath) {
+        int start = 0;
+        int end = uri.length();
+        if (end > 0 && uri.charAt(0) == '/') {
+            start = 1;
+        }
+        int q = uri.indexOf('?', start);
+        if (q >= 0) {
+            end = q;
+        }
+        int baseLength = basePath.length();
+        if (baseLength > 0 && baseLength <= end - start && uri.startsWith(basePath, start)) {
+            start += baseLength;
+        }
+        if (end - start > 1 && uri.charAt(end - 1) == '/') {
+            end--;
+        }
+        return start == 0 && end == uri.length() ? uri : uri.substring(start, end);
+    }
+
+    /**
+     * Weighs cache entries by the length of their key, with a floor of
+     * <code>maxChars / maxEntries</code> per entry so that the total weight
+     * bound also enforces the entry-count bound (Guava's CacheBuilder does
+     * not allow setting both).
+     */
+    private static final class PathWeigher implements Weigher<String, Path> {
+
+        private final int minWeight;
+
+        PathWeigher(int minWeight) {
+            this.minWeight = minWeight;
+        }
+
+        @Override
+        public int weigh(String key, Path value) {
+            return Math.max(minWeight, key.length());
         }
     }
-    private final LoadingCache<String, Path> cache = CacheBuilder.newBuilder()
-            .expireAfterAccess(5, TimeUnit.MINUTES)
-            .concurrencyLevel(5)
-            .initialCapacity(20)
-            .build(new LDR());
+
+    private static LoadingCache<String, Path> createCache(Settings settings, CacheLoader<String, Path> loader) {
+        int maxEntries = Math.max(0, settings.getInt(SETTINGS_KEY_PATH_CACHE_SIZE, DEFAULT_PATH_CACHE_SIZE));
+        long maxChars = Math.max(0L, settings.getLong(SETTINGS_KEY_PATH_CACHE_MAX_CHARS, DEFAULT_PATH_CACHE_MAX_CHARS));
+        if (maxEntries == 0) {
+            maxChars = 0;
+        }
+        int minWeight = maxEntries == 0 ? 1
+                : (int) Math.max(1L, Math.min(Integer.MAX_VALUE, (maxChars + maxEntries - 1) / maxEntries));
+        return CacheBuilder.newBuilder()
+                .maximumWeight(maxChars)
+                .weigher(new PathWeigher(minWeight))
+                .concurrencyLevel(5)
+                .initialCapacity(Math.min(maxEntries, 20))
+                .recordStats()
+                .build(loader);
+    }
 
     @Override
     public Path toPath(String uri) {
         try {
-            return cache.get(uri);
+            return cache.get(pathPortion(uri, basePathString));
         } catch (Exception e) {
             return Exceptions.chuck(e);
         }
     }
 
+    @Override
+    public CacheStats pathCacheStats() {
+        return cache.stats();
+    }
+
     @Override
     public URL constructURL(Protocol protocol, Path path) {
         return constructURL(protocol, path, secure);
@@ -88,6 +88,11 @@ class EarlyPagesPipelineDecorator implements PipelineDecorator {
 
         @Override
         protected void channelRead0(ChannelHandlerContext ctx, HttpRequest msg) throws Exception {
+            if (application.isStreamingPageMatch(msg)) {
+                // Must be in place before this method exits, or content
+                // decoded from the same read would reach the aggregator
+                StreamingBodyHandler.install(ctx, msg);
+            }
             upstream.handleHttpRequest(ctx, msg, true);
         }
     }
@@ -25,7 +25,6 @@ package com.mastfrog.acteur.server;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Optional;
-import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.net.HostAndPort;
 import com.google.common.net.MediaType;
 import com.google.inject.util.Providers;
@@ -49,17 +48,22 @@ import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpHeaderValues;
 import static io.netty.handler.codec.http.HttpHeaderNames.HOST;
 import io.netty.handler.codec.http.HttpRequest;
-import io.netty.handler.codec.http.QueryStringDecoder;
 import io.netty.util.AsciiString;
 import io.netty.util.CharsetUtil;
 import static io.netty.util.CharsetUtil.UTF_8;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.net.URI;
 import java.nio.charset.Charset;
-import java.util.HashMap;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 /**
  *
@@ -258,7 +262,12 @@ final class EventImpl implements HttpEvent {
 
     @Override
     public String urlParameter(String param) {
-        return urlParametersAsMap().get(param);
+        return parameters().first(param);
+    }
+
+    @Override
+    public List<String> urlParameters(String name) {
+        return parameters().all(name);
     }
 
     @Override
@@ -283,29 +292,99 @@ final class EventImpl implements HttpEvent {
 
     @Override
     public <T> T header(HeaderValueType<T> value) {
+        Object cached = cachedHeader(value);
+        if (cached != null) {
+            return cached == NO_VALUE ? null : copyIfArray(value.type().cast(cached));
+        }
         String header = header(value.name());
-        if (header != null) {
-            return value.toValue(header);
+        T result = header == null ? null : value.toValue(header);
+        if (result == null || isImmutable(result)) {
+            cacheHeader(value, result);
+            return copyIfArray(result);
+        }
+        return result;
+    }
+
+    // Typed headers are requested repeatedly by acteurs, decorators and
+    // resources over the course of one request, and parsing dates, media
+    // types and cookies is not free.  So remember parsed values, keyed on
+    // the identity of the HeaderValueType, in pairs in a small array - there
+    // are rarely more than a handful per request, so a linear scan beats
+    // hashing.  Header types created on the fly past the last slot are
+    // simply parsed every time, and so are values callers could modify,
+    // such as CacheControl and cookies, so that no caller sees another's
+    // changes.
+    private static final int HEADER_SLOTS = 8;
+    private static final Object NO_VALUE = new Object();
+    private Object[] parsedHeaders;
+    private int parsedHeaderCount;
+
+    private synchronized Object cachedHeader(HeaderValueType<?> type) {
+        Object[] slots = parsedHeaders;
+        if (slots != null) {
+            for (int i = 0; i < parsedHeaderCount * 2; i += 2) {
+                if (slots[i] == type) {
+                    return slots[i + 1];
+                }
+            }
         }
         return null;
     }
-    private Map<String, String> paramsMap;
 
-    @Override
-    public synchronized Map<String, String> urlParametersAsMap() {
-        if (paramsMap == null) {
-            QueryStringDecoder queryStringDecoder = new QueryStringDecoder(req.uri());
-            Map<String, List<String>> params = queryStringDecoder.parameters();
-            Map<String, String> result = new HashMap<>();
-            for (Map.Entry<String, List<String>> e : params.entrySet()) {
-                if (e.getValue().isEmpty()) {
-                    continue;
+    private synchronized void cacheHeader(HeaderValueType<?> type, Object value) {
+        if (parsedHeaders == null) {
+            parsedHeaders = new Object[HEADER_SLOTS * 2];
+        } else if (parsedHeaderCount == HEADER_SLOTS) {
+            return;
+        }
+        int ix = parsedHeaderCount++ * 2;
+        parsedHeaders[ix] = type;
+        parsedHeaders[ix + 1] = value == null ? NO_VALUE : value;
+    }
+
+    private static final Set<Class<?>> IMMUTABLE_HEADER_TYPES = new HashSet<>(Arrays.asList(
+            String.class, AsciiString.class, Boolean.class, Integer.class, Long.class,
+            Short.class, Byte.class, Double.class, Float.class, Duration.class,
+            ZonedDateTime.class, Locale.class, URI.class, MediaType.class));
+
+    private static boolean isImmutable(Object value) {
+        if (value instanceof Object[]) {
+            // The array itself is copied on the way out, but its elements
+            // are shared
+            for (Object o : (Object[]) value) {
+                if (o != null && !isImmutable(o)) {
+                    return false;
                 }
-                result.put(e.getKey(), e.getValue().get(0));
             }
-            paramsMap = ImmutableSortedMap.copyOf(result);
+            return true;
         }
-        return paramsMap;
+        return value instanceof Enum<?> || value instanceof Charset
+                || IMMUTABLE_HEADER_TYPES.contains(value.getClass());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T copyIfArray(T value) {
+        // Arrays (methods, strings) are mutable; don't let one caller
+        // alter what the next one sees
+        if (value instanceof Object[]) {
+            return (T) ((Object[]) value).clone();
+        }
+        return value;
+    }
+    private volatile QueryParameters params;
+
+    private QueryParameters parameters() {
+        QueryParameters result = params;
+        if (result == null) {
+            // Creating it twice in a race is harmless
+            params = result = new QueryParameters(req.uri());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, String> urlParametersAsMap() {
+        return parameters().asMap();
     }
 
     @Override
@@ -331,20 +410,20 @@ final class EventImpl implements HttpEvent {
 
     @Override
     public Optional<Integer> intUrlParameter(String name) {
-        String val = urlParameter(name);
-        if (val != null) {
-            int ival = Integer.parseInt(val);
-            return Optional.of(ival);
+        QueryParameters p = parameters();
+        int ix = p.indexOf(name);
+        if (ix >= 0) {
+            return Optional.of(p.intValue(ix));
         }
         return Optional.absent();
     }
 
     @Override
     public Optional<Long> longUrlParameter(String name) {
-        String val = urlParameter(name);
-        if (val != null) {
-            long lval = Long.parseLong(val);
-            return Optional.of(lval);
+        QueryParameters p = parameters();
+        int ix = p.indexOf(name);
+        if (ix >= 0) {
+            return Optional.of(p.longValue(ix));
         }
         return Optional.absent();
     }
@@ -27,14 +27,19 @@ import com.google.inject.ImplementedBy;
 import com.google.inject.name.Named;
 import com.mastfrog.acteur.server.EventLoopFactory.DefaultEventLoopFactory;
 import static com.mastfrog.acteur.server.ServerModule.EVENT_THREADS;
+import static com.mastfrog.acteur.server.ServerModule.SETTINGS_KEY_EPOLL_ACCEPTORS;
+import static com.mastfrog.acteur.server.ServerModule.SETTINGS_KEY_EPOLL_EDGE_TRIGGERED;
+import static com.mastfrog.acteur.server.ServerModule.SETTINGS_KEY_EPOLL_TCP_FASTOPEN;
+import static com.mastfrog.acteur.server.ServerModule.SETTINGS_KEY_TRANSPORT;
 import static com.mastfrog.acteur.server.ServerModule.WORKER_THREADS;
 import com.mastfrog.giulius.thread.ThreadCount;
 import com.mastfrog.settings.Settings;
+import com.mastfrog.util.preconditions.ConfigurationError;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.ChannelFactory;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.ServerChannel;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import java.util.concurrent.Executor;
 import javax.inject.Inject;
@@ -43,7 +48,8 @@ import javax.inject.Singleton;
 /**
  * Factory for event loop groups used by the Netty transport. This interface
  * exists to abstract creation of these such that Netty's native transport
- * implementations can be plugged in by external code.
+ * implementations can be plugged in by external code; the default
+ * implementation selects one using the <code>acteur.transport</code> setting.
  *
  * @author Tim Boudreau
  */
@@ -58,6 +64,26 @@ public abstract class EventLoopFactory {
         return NioServerSocketChannel.class;
     }
 
+    /**
+     * The transport the event loop groups were created for.
+     *
+     * @return A transport
+     */
+    public Transport transport() {
+        return Transport.NIO;
+    }
+
+    /**
+     * The number of server channels to bind to the server port - more than
+     * one only makes sense when the transport supports
+     * <code>SO_REUSEPORT</code> and {@link #configureBootstrap} enables it.
+     *
+     * @return The number of acceptors, 1 by default
+     */
+    protected int acceptorCount() {
+        return 1;
+    }
+
     protected ChannelFactory<? extends ServerChannel> channelFactory() {
         if (channelType() == NioServerSocketChannel.class) {
             return new NioServerChannelFactory(false);
@@ -90,6 +116,10 @@ public abstract class EventLoopFactory {
         private final EventLoopGroup events;
         private final EventLoopGroup workers;
         private final boolean debug;
+        private final Transport transport;
+        private final int acceptors;
+        private final int tcpFastOpen;
+        private final Boolean edgeTriggered;
 
         @Inject
         DefaultEventLoopFactory(@Named(EVENT_THREADS) Executor eventThreadFactory,
@@ -98,14 +128,76 @@ public abstract class EventLoopFactory {
                 @Named(WORKER_THREADS) ThreadCount workerThreadCount,
                 Settings settings) {
             debug = settings.getBoolean("channel.debug", false);
-            events = new NioEventLoopGroup(eventThreadCount.get(), eventThreadFactory);
-            workers = new NioEventLoopGroup(workerThreadCount.get(), workerThreadFactory);
+            transport = Transport.resolve(settings.getString(SETTINGS_KEY_TRANSPORT));
+            events = transport.createGroup(eventThreadCount.get(), eventThreadFactory);
+            workers = transport.createGroup(workerThreadCount.get(), workerThreadFactory);
+            if (transport == Transport.EPOLL) {
+                acceptors = Math.max(1, settings.getInt(SETTINGS_KEY_EPOLL_ACCEPTORS, 1));
+                tcpFastOpen = Math.max(0, settings.getInt(SETTINGS_KEY_EPOLL_TCP_FASTOPEN, 0));
+                edgeTriggered = settings.allKeys().contains(SETTINGS_KEY_EPOLL_EDGE_TRIGGERED)
+                        ? settings.getBoolean(SETTINGS_KEY_EPOLL_EDGE_TRIGGERED, true)
+                        : null;
+            } else {
+                acceptors = 1;
+                tcpFastOpen = 0;
+                edgeTriggered = null;
+            }
+        }
+
+        @Override
+        public Transport transport() {
+            return transport;
+        }
+
+        @Override
+        protected int acceptorCount() {
+            return acceptors;
+        }
+
+        @Override
+        protected Class<? extends ServerChannel> channelType() {
+            return transport.serverChannelType();
         }
 
+        @Override
         protected ChannelFactory<? extends ServerChannel> channelFactory() {
+            if (transport != Transport.NIO) {
+                return null;
+            }
             return new NioServerChannelFactory(debug);
         }
 
+        @Override
+        protected ServerBootstrap configureBootstrap(ServerBootstrap bootstrap) {
+            bootstrap = super.configureBootstrap(bootstrap);
+            if (acceptors > 1) {
+                setOption(bootstrap, "SO_REUSEPORT", true, false);
+            }
+            if (tcpFastOpen > 0) {
+                setOption(bootstrap, "TCP_FASTOPEN", tcpFastOpen, false);
+            }
+            if (edgeTriggered != null) {
+                Object mode = transport.enumConstant("EpollMode",
+                        edgeTriggered ? "EDGE_TRIGGERED" : "LEVEL_TRIGGERED");
+                setOption(bootstrap, "EPOLL_MODE", mode, false);
+                setOption(bootstrap, "EPOLL_MODE", mode, true);
+            }
+            return bootstrap;
+        }
+
+        private <T> void setOption(ServerBootstrap bootstrap, String name, T value, boolean child) {
+            ChannelOption<T> option = transport.option(name);
+            if (option == null || value == null) {
+                throw new ConfigurationError("Transport " + transport.settingsName()
+                        + " does not support " + name);
+            }
+            if (child) {
+                bootstrap.childOption(option, value);
+            } else {
+                bootstrap.option(option, value);
+            }
+        }
+
         @Override
         public EventLoopGroup getEventGroup() {
             return events;
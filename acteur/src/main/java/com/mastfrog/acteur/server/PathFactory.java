@@ -23,6 +23,7 @@
  */
 package com.mastfrog.acteur.server;
 
+import com.google.common.cache.CacheStats;
 import com.google.inject.ImplementedBy;
 import com.mastfrog.acteur.HttpEvent;
 import static com.mastfrog.acteur.server.ServerModule.*;
@@ -94,6 +95,18 @@ public interface PathFactory {
      */
     public Path toPath(String uri);
 
+    /**
+     * Get the hit, miss and eviction counts of the cache of parsed request
+     * paths, if this factory has one, for export to whatever metrics system
+     * the application uses.
+     *
+     * @return The cache statistics, or empty statistics if paths are not
+     * cached
+     */
+    default CacheStats pathCacheStats() {
+        return new CacheStats(0, 0, 0, 0, 0, 0);
+    }
+
     /**
      * Construct a URL suitable for external use, inserting the basepath and
      * host name if necessary.
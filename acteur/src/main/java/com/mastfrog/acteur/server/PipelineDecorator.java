@@ -63,6 +63,12 @@ public interface PipelineDecorator {
      */
     public static final String PRE_CONTENT_PAGE_HANDLER = "early";
 
+    /**
+     * Name of the handler which feeds request bodies to &#064;StreamingBody
+     * pages; only present while such a request's body is being read.
+     */
+    public static final String STREAMING_BODY_HANDLER = "streamingBody";
+
     public static final String SSL_HANDLER = "ssl";
 
     default void onBeforeInstallSslHandler(ChannelPipeline pipeline) {
@@ -47,6 +47,7 @@ import com.mastfrog.settings.Settings;
 import com.mastfrog.util.preconditions.ConfigurationError;
 import com.mastfrog.util.thread.AutoCloseThreadLocal;
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
@@ -148,6 +149,17 @@ class PipelineFactoryImpl extends ChannelInitializer<SocketChannel> {
 
     @Override
     public void initChannel(SocketChannel ch) throws Exception {
+        initPipeline(ch);
+    }
+
+    /**
+     * Install the HTTP handlers on a channel of any type, so the same
+     * pipeline can be exercised over in-VM channels in benchmarks.
+     *
+     * @param ch A channel
+     * @throws Exception If something goes wrong
+     */
+    void initPipeline(Channel ch) throws Exception {
         // Create a default pipeline implementation.
         ChannelPipeline pipeline = ch.pipeline();
         ch.attr(SSL_ATTRIBUTE_KEY).set(useSsl);
@@ -0,0 +1,276 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.server;
+
+import com.google.common.collect.ImmutableSortedMap;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import static io.netty.util.CharsetUtil.UTF_8;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Flyweight view of the query string of a request URI. The URI is scanned
+ * once, recording the offsets of each name and value; nothing is copied or
+ * decoded until a value is asked for, and names are compared against the raw
+ * URI in place. Parameter separators and decoding follow Netty's
+ * QueryStringDecoder (<code>&amp;</code> and <code>;</code> separate,
+ * <code>+</code> is a space), which this replaces.
+ *
+ * @author Tim Boudreau
+ */
+final class QueryParameters {
+
+    private static final int NAME_START = 0;
+    private static final int NAME_END = 1;
+    private static final int VALUE_START = 2;
+    private static final int VALUE_END = 3;
+    private static final int STRIDE = 4;
+    private final String uri;
+    // name start, name end, value start, value end for each parameter
+    private final int[] offsets;
+    private final int count;
+    // Decoded values, filled in lazily; Strings are immutable, so racing
+    // to fill a slot is harmless
+    private final String[] decoded;
+    private volatile Map<String, String> map;
+
+    QueryParameters(String uri) {
+        this.uri = uri;
+        int start = uri.indexOf('?');
+        int end = uri.indexOf('#', start < 0 ? 0 : start);
+        if (end < 0) {
+            end = uri.length();
+        }
+        if (start < 0 || start + 1 >= end) {
+            offsets = new int[0];
+            count = 0;
+            decoded = new String[0];
+            return;
+        }
+        int[] offs = new int[STRIDE * 4];
+        int ct = 0;
+        int nameStart = start + 1;
+        int eq = -1;
+        for (int i = nameStart; i <= end; i++) {
+            char c = i == end ? '&' : uri.charAt(i);
+            if (c == '=' && eq < 0) {
+                eq = i;
+            } else if (c == '&' || c == ';') {
+                int nameEnd = eq < 0 ? i : eq;
+                if (nameEnd > nameStart) {
+                    if ((ct + 1) * STRIDE > offs.length) {
+                        int[] nue = new int[offs.length * 2];
+                        System.arraycopy(offs, 0, nue, 0, offs.length);
+                        offs = nue;
+                    }
+                    int base = ct++ * STRIDE;
+                    offs[base + NAME_START] = nameStart;
+                    offs[base + NAME_END] = nameEnd;
+                    offs[base + VALUE_START] = eq < 0 ? i : eq + 1;
+                    offs[base + VALUE_END] = i;
+                }
+                nameStart = i + 1;
+                eq = -1;
+            }
+        }
+        offsets = offs;
+        count = ct;
+        decoded = new String[ct];
+    }
+
+    int size() {
+        return count;
+    }
+
+    boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Get the index of the first parameter with the passed name.
+     *
+     * @param name A name
+     * @return An index or -1
+     */
+    int indexOf(String name) {
+        return indexOf(name, 0);
+    }
+
+    private int indexOf(String name, int from) {
+        for (int i = from; i < count; i++) {
+            if (nameMatches(i, name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean nameMatches(int ix, String name) {
+        int start = offsets[ix * STRIDE + NAME_START];
+        int end = offsets[ix * STRIDE + NAME_END];
+        if (needsDecoding(start, end)) {
+            return name.equals(decode(start, end));
+        }
+        return end - start == name.length() && uri.regionMatches(start, name, 0, name.length());
+    }
+
+    String name(int ix) {
+        return decode(offsets[ix * STRIDE + NAME_START], offsets[ix * STRIDE + NAME_END]);
+    }
+
+    String value(int ix) {
+        String result = decoded[ix];
+        if (result == null) {
+            result = decoded[ix] = decode(offsets[ix * STRIDE + VALUE_START], offsets[ix * STRIDE + VALUE_END]);
+        }
+        return result;
+    }
+
+    String first(String name) {
+        int ix = indexOf(name);
+        return ix < 0 ? null : value(ix);
+    }
+
+    List<String> all(String name) {
+        int ix = indexOf(name);
+        if (ix < 0) {
+            return Collections.emptyList();
+        }
+        int next = indexOf(name, ix + 1);
+        if (next < 0) {
+            return Collections.singletonList(value(ix));
+        }
+        List<String> result = new ArrayList<>(4);
+        result.add(value(ix));
+        do {
+            result.add(value(next));
+            next = indexOf(name, next + 1);
+        } while (next >= 0);
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Parse the value of a parameter as a long without decoding it into a
+     * string first, unless it contains escapes.
+     *
+     * @param ix The parameter index
+     * @return A long
+     * @throws NumberFormatException if it is not a number
+     */
+    long longValue(int ix) {
+        int start = offsets[ix * STRIDE + VALUE_START];
+        int end = offsets[ix * STRIDE + VALUE_END];
+        if (start == end || needsDecoding(start, end)) {
+            return Long.parseLong(value(ix));
+        }
+        // A '+' would have needed decoding, to a space, so only '-' here
+        boolean negative = uri.charAt(start) == '-';
+        int i = start;
+        if (negative) {
+            if (++i == end) {
+                throw new NumberFormatException("For input string: \"" + value(ix) + "\"");
+            }
+        }
+        // Accumulate negatively, as Long.parseLong does, so MIN_VALUE parses
+        long result = 0;
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multMin = limit / 10;
+        for (; i < end; i++) {
+            int digit = uri.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || result < multMin) {
+                throw new NumberFormatException("For input string: \"" + value(ix) + "\"");
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw new NumberFormatException("For input string: \"" + value(ix) + "\"");
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Parse the value of a parameter as an int, without decoding it into a
+     * string first unless it contains escapes.
+     *
+     * @param ix The parameter index
+     * @return An int
+     * @throws NumberFormatException if it is not a number or out of range
+     */
+    int intValue(int ix) {
+        long result = longValue(ix);
+        if (result < Integer.MIN_VALUE || result > Integer.MAX_VALUE) {
+            throw new NumberFormatException("For input string: \"" + value(ix) + "\"");
+        }
+        return (int) result;
+    }
+
+    /**
+     * Get the parameters as a sorted map of names to their first values.
+     *
+     * @return A map
+     */
+    Map<String, String> asMap() {
+        Map<String, String> result = map;
+        if (result == null) {
+            if (count == 0) {
+                result = ImmutableSortedMap.of();
+            } else {
+                TreeMap<String, String> m = new TreeMap<>();
+                for (int i = 0; i < count; i++) {
+                    m.putIfAbsent(name(i), value(i));
+                }
+                result = ImmutableSortedMap.copyOfSorted(m);
+            }
+            map = result;
+        }
+        return result;
+    }
+
+    private boolean needsDecoding(int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = uri.charAt(i);
+            if (c == '%' || c == '+') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String decode(int start, int end) {
+        if (start == end) {
+            return "";
+        }
+        String raw = uri.substring(start, end);
+        return needsDecoding(start, end) ? QueryStringDecoder.decodeComponent(raw, UTF_8) : raw;
+    }
+
+    @Override
+    public String toString() {
+        return asMap().toString();
+    }
+}
@@ -30,6 +30,7 @@ import com.mastfrog.acteur.annotations.GenericApplication;
 import com.mastfrog.acteur.annotations.GenericApplication.GenericApplicationSettings;
 import com.mastfrog.acteur.annotations.GenericApplicationModule;
 import com.mastfrog.acteur.util.Server;
+import com.mastfrog.giulius.Dependencies;
 import com.mastfrog.giulius.DependenciesBuilder;
 import com.mastfrog.giulius.InjectionInfo;
 import com.mastfrog.giulius.SettingsBindings;
@@ -39,6 +40,7 @@ import com.mastfrog.settings.SettingsBuilder;
 import static com.mastfrog.settings.SettingsBuilder.DEFAULT_NAMESPACE;
 import com.mastfrog.util.preconditions.Checks;
 import com.mastfrog.util.preconditions.Exceptions;
+import com.mastfrog.util.thread.QuietAutoCloseable;
 import io.netty.handler.ssl.SslContext;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
@@ -269,17 +271,26 @@ public final class ServerBuilder {
      * @throws IOException if something goes wrong
      */
     public Server build() throws IOException {
-        return toDependenciesBuilder().build().getInstance(Server.class);
+        DependenciesBuilder db = toDependenciesBuilder();
+        long start = System.nanoTime();
+        Dependencies deps = db.build();
+        Server result = deps.getInstance(Server.class);
+        deps.getInstance(StartupTimeline.class).record("create injector and server", start, System.nanoTime());
+        return result;
     }
     
     public DependenciesBuilder toDependenciesBuilder() throws IOException {
+        long start = System.nanoTime();
         SettingsBuilder sb = new SettingsBuilder(namespace);
         sb.addDefaultLocations();
         for (Settings s : settingsList) {
             sb.add(s);
         }
         Settings settings = sb.build();
+        long settingsLoaded = System.nanoTime();
         ScopeProvider appModule = appModule(settings);
+        StartupTimeline timeline = ((ServerModule<?>) appModule).startupTimeline();
+        timeline.record("load settings", start, settingsLoaded);
         DependenciesBuilder db = new DependenciesBuilder().add(appModule);
         db.enableOnlyBindingsFor(settingsBindings.toArray(new SettingsBindings[settingsBindings.size()]));
         db.add(settings, namespace);
@@ -288,7 +299,9 @@ public final class ServerBuilder {
             db.add(m);
         }
         for (Class<? extends Module> m : moduleClasses) {
-            db.add(instantiateModule(m, appModule, settings));
+            try (QuietAutoCloseable cl = timeline.begin("instantiate " + m.getSimpleName())) {
+                db.add(instantiateModule(m, appModule, settings));
+            }
         }
         db.add(new CorsAndHelpModule(enableCors, enableHelp));
 
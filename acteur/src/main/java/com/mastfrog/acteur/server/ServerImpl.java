@@ -46,7 +46,10 @@ import java.lang.ref.WeakReference;
 import java.net.BindException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
@@ -69,6 +72,7 @@ final class ServerImpl implements Server {
     private final Provider<ApplicationControl> app;
     private final Settings settings;
     private final ServerLifecycleHook.Registry hooks;
+    private final StartupTimeline timeline;
 
     @Inject
     ServerImpl(
@@ -79,7 +83,8 @@ final class ServerImpl implements Server {
             ShutdownHookRegistry registry,
             Provider<ApplicationControl> app,
             Settings settings,
-            ServerLifecycleHook.Registry hooks) {
+            ServerLifecycleHook.Registry hooks,
+            StartupTimeline timeline) {
         this.port = settings.getInt(ServerModule.PORT, DEFAULT_PORT);
         this.pipelineFactory = pipelineFactory;
         this.loopFactory = loopFactory;
@@ -89,6 +94,7 @@ final class ServerImpl implements Server {
         this.app = app;
         this.settings = settings;
         this.hooks = hooks;
+        this.timeline = timeline;
     }
 
     @Override
@@ -106,6 +112,23 @@ final class ServerImpl implements Server {
         this.port = port;
         ServerControlImpl result = null;
         final CountDownLatch afterStart = new CountDownLatch(1);
+        if (settings.getBoolean(ServerModule.SETTINGS_KEY_CORS_ENABLED, true)) {
+            // XXX ugly place to do this
+            app.get().enableDefaultCorsHandling();
+        }
+        boolean compileAfterBind = false;
+        if (!timeline.isStarted()) {
+            if (settings.getBoolean(ServerModule.SETTINGS_KEY_FAST_STARTUP, ServerModule.DEFAULT_FAST_STARTUP)) {
+                // Pages not compiled by the time a request needs them
+                // are compiled on first use
+                compileAfterBind = true;
+            } else {
+                long compileStart = System.nanoTime();
+                app.get().compilePagePlans();
+                timeline.record("compile page plans", compileStart, System.nanoTime());
+            }
+        }
+        long bindStart = System.nanoTime();
         try {
             result = new ServerControlImpl(port, afterStart, loopFactory, registry, isExitOnBindFailure(settings));
 
@@ -116,7 +139,8 @@ final class ServerImpl implements Server {
                 addr = InetAddress.getByName(bindAddress);
             }
 
-            ServerBootstrap bootstrap = loopFactory.get().configureBootstrap(bootstrapProvider.get())
+            EventLoopFactory factory = loopFactory.get();
+            ServerBootstrap bootstrap = factory.configureBootstrap(bootstrapProvider.get())
                     .childHandler(pipelineFactory);
 
             if (addr == null) {
@@ -130,12 +154,19 @@ final class ServerImpl implements Server {
             if (settings.getBoolean("acteur.debug", false)) {
                 System.err.println("Starting " + this);
             }
-            if (settings.getBoolean(ServerModule.SETTINGS_KEY_CORS_ENABLED, true)) {
-                // XXX ugly place to do this
-                app.get().enableDefaultCorsHandling();
-            }
             afterStart.await();
-            return result.throwIfFailure(null);
+            result.throwIfFailure(null);
+            onStarted(port, bindStart);
+            if (compileAfterBind) {
+                compilePagePlansInBackground();
+            }
+            // With SO_REUSEPORT, bind further server channels to the same
+            // address so accepts are spread across several event loops
+            SocketAddress boundTo = result.localAddress();
+            for (int i = 1; i < factory.acceptorCount() && boundTo != null; i++) {
+                result.addAcceptor(bootstrap.localAddress(boundTo).bind().sync().channel());
+            }
+            return result;
         } catch (InterruptedException ex) {
             app.get().internalOnError(ex);
             afterStart.countDown();
@@ -147,6 +178,31 @@ final class ServerImpl implements Server {
         }
     }
 
+    private void onStarted(int port, long bindStart) {
+        if (timeline.isStarted()) {
+            return;
+        }
+        timeline.record("bind port " + port, bindStart, System.nanoTime());
+        timeline.started();
+        if (settings.getBoolean(ServerModule.SETTINGS_KEY_LOG_STARTUP_TIMELINE,
+                ServerModule.DEFAULT_LOG_STARTUP_TIMELINE)) {
+            Logger.getLogger(ServerImpl.class.getName()).log(Level.INFO, "{0}", timeline);
+        }
+    }
+
+    private void compilePagePlansInBackground() {
+        Thread thread = new Thread(() -> {
+            try {
+                app.get().compilePagePlans();
+            } catch (RuntimeException | Error ex) {
+                app.get().internalOnError(ex);
+            }
+        }, "acteur-compile-page-plans");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
     public ServerControl start() throws IOException {
         return start(this.port);
     }
@@ -183,6 +239,7 @@ final class ServerImpl implements Server {
     private static class ServerControlImpl implements ServerControl, Runnable, ChannelFutureListener {
 
         private Channel localChannel;
+        private final List<Channel> acceptors = new ArrayList<>(2);
 
         private final EventLoopGroup events;
         private final EventLoopGroup workers;
@@ -207,6 +264,14 @@ final class ServerImpl implements Server {
             shutdown(timeout, unit, true);
         }
 
+        synchronized SocketAddress localAddress() {
+            return localChannel == null ? null : localChannel.localAddress();
+        }
+
+        synchronized void addAcceptor(Channel channel) {
+            acceptors.add(channel);
+        }
+
         private synchronized boolean isTerminated() {
             return localChannel == null ? true : !localChannel.isOpen();
         }
@@ -222,6 +287,10 @@ final class ServerImpl implements Server {
                 Channel ch;
                 synchronized (this) {
                     ch = localChannel;
+                    for (Channel acceptor : acceptors) {
+                        acceptor.close();
+                    }
+                    acceptors.clear();
                 }
                 if (ch != null) {
                     if (ch.isOpen()) {
@@ -25,17 +25,21 @@ package com.mastfrog.acteur.server;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.AbstractModule;
+import com.google.inject.Binding;
 import com.google.inject.Key;
 import com.google.inject.Module;
 import com.google.inject.Provider;
 import com.google.inject.Scopes;
 import com.google.inject.Singleton;
 import com.google.inject.TypeLiteral;
+import com.google.inject.matcher.AbstractMatcher;
 import com.google.inject.name.Names;
+import com.google.inject.spi.ProvisionListener;
 import com.mastfrog.acteur.Acteur;
 import com.mastfrog.acteur.Application;
 import com.mastfrog.acteur.BuiltInPageAnnotationHandler;
 import com.mastfrog.acteur.Closables;
+import com.mastfrog.acteur.ContentStream;
 import com.mastfrog.acteur.DeferredComputationResult;
 import com.mastfrog.acteur.Event;
 import com.mastfrog.acteur.HttpEvent;
@@ -77,6 +81,7 @@ import static com.mastfrog.util.preconditions.Checks.nonNegative;
 import static com.mastfrog.util.preconditions.Checks.nonZero;
 import com.mastfrog.util.codec.Codec;
 import com.mastfrog.util.preconditions.ConfigurationError;
+import com.mastfrog.util.preconditions.Exceptions;
 import com.mastfrog.util.strings.Strings;
 import static com.mastfrog.util.collections.CollectionUtils.setOf;
 import io.netty.bootstrap.ServerBootstrap;
@@ -110,6 +115,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
 import org.netbeans.validation.api.InvalidInputException;
 
@@ -374,6 +380,65 @@ public class ServerModule<A extends Application> extends AbstractModule {
      * requirements under load by turning this off.
      */
     public static final String SETTINGS_KEY_USE_FORK_JOIN_POOL = "acteur.fork.join";
+    /**
+     * Default execution policy for page acteur chains - either
+     * <code>pooled</code> (the default), where each acteur is run as a task
+     * in the background thread pool, or <code>inline</code>, where acteurs are
+     * run on the thread that received the request (the event loop) until one
+     * defers the chain or is annotated with
+     * {@link com.mastfrog.acteurbase.Blocking}. Individual pages can override
+     * this with {@link com.mastfrog.acteur.annotations.Execution}.
+     */
+    public static final String SETTINGS_KEY_EXECUTION_POLICY = "acteur.execution.policy";
+    /**
+     * Maximum number of request paths, per HTTP method, for which the result
+     * of matching the path against the application's pages is cached.
+     * Least-recently-used entries are evicted past this size. Hit, miss and
+     * eviction counts are available from
+     * {@link com.mastfrog.acteur.Application#routeCacheStats()}.
+     */
+    public static final String SETTINGS_KEY_ROUTE_MATCH_CACHE_SIZE = "acteur.route.cache.size";
+    /**
+     * Maximum number of distinct request paths whose parsed
+     * {@link com.mastfrog.url.Path} is cached. The cache is keyed on the path
+     * alone, so query strings do not create new entries. Defaults to 4096;
+     * set to 0 to disable caching. Hit, miss and eviction counts are
+     * available from {@link PathFactory#pathCacheStats()}.
+     */
+    public static final String SETTINGS_KEY_PATH_CACHE_SIZE = "acteur.path.cache.size";
+    /**
+     * Maximum total number of characters of request paths held in the parsed
+     * path cache, so that long paths cannot fill memory before
+     * <code>acteur.path.cache.size</code> is reached. Defaults to 262144.
+     */
+    public static final String SETTINGS_KEY_PATH_CACHE_MAX_CHARS = "acteur.path.cache.max.chars";
+    /**
+     * The Netty transport to use - one of <code>nio</code> (the default),
+     * <code>epoll</code>, <code>io_uring</code> or <code>auto</code> to pick
+     * the best native transport available. If the requested transport's
+     * classes or native library are not present, NIO is used. See
+     * {@link Transport}.
+     */
+    public static final String SETTINGS_KEY_TRANSPORT = "acteur.transport";
+    /**
+     * When using the epoll transport, the number of server channels to bind
+     * to the port with <code>SO_REUSEPORT</code>, so the kernel spreads
+     * incoming connections across that many accepting event loops. Values
+     * greater than 1 enable <code>SO_REUSEPORT</code>; the event thread count
+     * should be at least this large.
+     */
+    public static final String SETTINGS_KEY_EPOLL_ACCEPTORS = "acteur.transport.epoll.acceptors";
+    /**
+     * When using the epoll transport, the <code>TCP_FASTOPEN</code> queue
+     * length for the server socket; 0 or unset leaves it disabled.
+     */
+    public static final String SETTINGS_KEY_EPOLL_TCP_FASTOPEN = "acteur.transport.epoll.tcp.fastopen";
+    /**
+     * When using the epoll transport, whether channels use edge-triggered
+     * (true) or level-triggered (false) mode. Unset leaves Netty's default,
+     * which is edge-triggered.
+     */
+    public static final String SETTINGS_KEY_EPOLL_EDGE_TRIGGERED = "acteur.transport.epoll.edge.triggered";
 
     /**
      * If the default support for CORS requests is enabled, this is the max age
@@ -605,6 +670,36 @@ public class ServerModule<A extends Application> extends AbstractModule {
      * http codec will return a /bad-request response.
      */
     public static final String SETTINGS_KEY_MAX_CHUNK_SIZE = "max.chunk.size";
+    /**
+     * If true, start up in a way that reduces the time before the first
+     * request can be served: the page registry and the modules it lists are
+     * loaded and instantiated in parallel with configuring this module; the
+     * annotations of pages are read on a background thread once the server
+     * is bound, rather than before (a request which arrives first reads them
+     * for its own pages); and the contents of static file resources are read
+     * on first use and in the background, where watching their directory for
+     * changes is also set up. Default CORS handling is still configured, and
+     * the static resource directory still listed, before the server is bound,
+     * since both determine which pages match a request. Off by default.
+     */
+    public static final String SETTINGS_KEY_FAST_STARTUP = "acteur.fast.startup";
+    /**
+     * Default value for {@link ServerModule#SETTINGS_KEY_FAST_STARTUP}.
+     */
+    public static final boolean DEFAULT_FAST_STARTUP = false;
+    /**
+     * If true, log the {@link StartupTimeline} once the server is bound.
+     */
+    public static final String SETTINGS_KEY_LOG_STARTUP_TIMELINE = "acteur.startup.timeline.log";
+    /**
+     * Default value for {@link ServerModule#SETTINGS_KEY_LOG_STARTUP_TIMELINE}.
+     */
+    public static final boolean DEFAULT_LOG_STARTUP_TIMELINE = false;
+    /**
+     * Singletons which take less than this many milliseconds to create are
+     * not recorded in the {@link StartupTimeline}.
+     */
+    static final long STARTUP_TIMELINE_MIN_SINGLETON_MILLIS = 1;
 
     static final AttributeKey<Boolean> SSL_ATTRIBUTE_KEY = AttributeKey.newInstance("ssl");
 
@@ -614,6 +709,10 @@ public class ServerModule<A extends Application> extends AbstractModule {
     private final int workerThreads;
     private final int backgroundThreads;
     private final List<Module> otherModules = new ArrayList<>();
+    /**
+     * Records startup phases; subclasses may record their own.
+     */
+    protected final StartupTimeline timeline = new StartupTimeline();
 
     static final class FastThreadLocalThreadSupplier implements ConventionalThreadSupplier {
 
@@ -663,9 +762,22 @@ public class ServerModule<A extends Application> extends AbstractModule {
         return scope;
     }
 
+    /**
+     * Get the timeline startup phases are recorded into, which is bound in
+     * the injector this module is used in.
+     *
+     * @return The timeline
+     */
+    public final StartupTimeline startupTimeline() {
+        return timeline;
+    }
+
     @Override
     @SuppressWarnings("deprecation")
     protected void configure() {
+        long configureStart = System.nanoTime();
+        bind(StartupTimeline.class).toInstance(timeline);
+        bindListener(new SingletonBindings(), new SingletonTimer(timeline));
         bind(ZonedDateTime.class).toInstance(ZonedDateTime.now());
         bind(Server.class).to(ServerImpl.class);
         bind(ReentrantScope.class).toInstance(scope);
@@ -752,6 +864,7 @@ public class ServerModule<A extends Application> extends AbstractModule {
         bind(ExceptionEvaluatorRegistry.class).asEagerSingleton();
         bind(InvalidInputExceptionEvaluator.class).asEagerSingleton();
         bind(Channel.class).toProvider(ChannelProvider.class);
+        bind(ContentStream.class).toProvider(ContentStreamProvider.class);
         bind(HttpMethod.class).toProvider(MethodProvider.class);
         bind(Method.class).toProvider(MethodProvider2.class);
         bind(Path.class).toProvider(PathProvider.class);
@@ -765,6 +878,40 @@ public class ServerModule<A extends Application> extends AbstractModule {
         bind(Protocol.class).toProvider(ProtocolProvider.class);
         bind(WebSocketFrame.class).toProvider(WebSocketFrameProvider.class);
 //        bind(Guice42InjectionRequester.class).asEagerSingleton();
+        timeline.record("configure " + ServerModule.class.getSimpleName(), configureStart, System.nanoTime());
+    }
+
+    static final class SingletonBindings extends AbstractMatcher<Binding<?>> {
+
+        @Override
+        public boolean matches(Binding<?> binding) {
+            // Singletons are only provisioned once, so timing them costs
+            // nothing once the server is running
+            return Scopes.isSingleton(binding);
+        }
+    }
+
+    static final class SingletonTimer implements ProvisionListener {
+
+        private final StartupTimeline timeline;
+
+        SingletonTimer(StartupTimeline timeline) {
+            this.timeline = timeline;
+        }
+
+        @Override
+        public <T> void onProvision(ProvisionInvocation<T> provision) {
+            if (timeline.isStarted()) {
+                provision.provision();
+                return;
+            }
+            long start = System.nanoTime();
+            provision.provision();
+            long end = System.nanoTime();
+            if (end - start >= TimeUnit.MILLISECONDS.toNanos(STARTUP_TIMELINE_MIN_SINGLETON_MILLIS)) {
+                timeline.record("create " + provision.getBinding().getKey(), start, end);
+            }
+        }
     }
 
     static final class Guice42InjectionRequester extends ServerLifecycleHook {
@@ -951,6 +1098,30 @@ public class ServerModule<A extends Application> extends AbstractModule {
         }
     }
 
+    private static final class ContentStreamProvider implements Provider<ContentStream> {
+
+        private final Provider<HttpEvent> evt;
+
+        @Inject
+        ContentStreamProvider(Provider<HttpEvent> evt) {
+            this.evt = evt;
+        }
+
+        @Override
+        public ContentStream get() {
+            HttpEvent event = evt.get();
+            StreamingBodyHandler streaming = event.channel().attr(StreamingBodyHandler.STREAMING_BODY_KEY).get();
+            if (streaming != null) {
+                return streaming;
+            }
+            try {
+                return new AggregatedContentStream(event.content());
+            } catch (IOException ex) {
+                return Exceptions.chuck(ex);
+            }
+        }
+    }
+
     private static final class InvalidInputExceptionEvaluator extends ExceptionEvaluator {
 
         @Inject
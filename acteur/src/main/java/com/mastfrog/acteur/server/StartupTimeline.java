@@ -0,0 +1,180 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.server;
+
+import com.mastfrog.util.strings.AlignedText;
+import com.mastfrog.util.thread.QuietAutoCloseable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how long the phases of starting a server took - building settings
+ * and modules, configuring each module, creating the injector and the
+ * singletons it creates eagerly, and binding the server socket. Available
+ * for injection, so an application can serve it from an admin endpoint; it
+ * is logged once the server has started if
+ * {@link ServerModule#SETTINGS_KEY_LOG_STARTUP_TIMELINE} is set.
+ * <p>
+ * Phases may overlap - modules may be configured in parallel, and the time
+ * recorded for creating a singleton includes creating whatever it depends
+ * on.
+ *
+ * @author Tim Boudreau
+ */
+public final class StartupTimeline {
+
+    private final long created = System.nanoTime();
+    private final List<Phase> phases = new ArrayList<>(32);
+    private volatile long started = -1;
+
+    /**
+     * Begin a phase, which ends when the returned object is closed.
+     *
+     * @param name The name of the phase
+     * @return An object to close when the phase has completed
+     */
+    public QuietAutoCloseable begin(String name) {
+        long start = System.nanoTime();
+        return () -> record(name, start, System.nanoTime());
+    }
+
+    /**
+     * Record a phase which has already completed. Phases recorded after the
+     * server has started are ignored.
+     *
+     * @param name The name of the phase
+     * @param startNanos The value of System.nanoTime() when it began
+     * @param endNanos The value of System.nanoTime() when it ended
+     */
+    public void record(String name, long startNanos, long endNanos) {
+        if (started >= 0) {
+            return;
+        }
+        Phase phase = new Phase(name, startNanos - created, endNanos - startNanos,
+                Thread.currentThread().getName());
+        synchronized (this) {
+            phases.add(phase);
+        }
+    }
+
+    /**
+     * Determine if the server has finished starting, after which nothing
+     * more is recorded.
+     *
+     * @return True if started
+     */
+    public boolean isStarted() {
+        return started >= 0;
+    }
+
+    void started() {
+        if (started < 0) {
+            started = System.nanoTime() - created;
+        }
+    }
+
+    /**
+     * The time between this timeline's creation (when the server's module
+     * was created) and the server socket being bound.
+     *
+     * @return The elapsed time in milliseconds, or -1 if not started
+     */
+    public long totalMillis() {
+        long s = started;
+        return s < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(s);
+    }
+
+    /**
+     * Get the recorded phases, in order of when they began, as maps
+     * with the keys <code>name</code>, <code>offsetMillis</code>,
+     * <code>durationMillis</code> and <code>thread</code>, suitable for
+     * rendering as JSON.
+     *
+     * @return A list of phases
+     */
+    public List<Map<String, Object>> phases() {
+        List<Phase> copy = sortedPhases();
+        List<Map<String, Object>> result = new ArrayList<>(copy.size());
+        for (Phase p : copy) {
+            Map<String, Object> m = new LinkedHashMap<>(6);
+            m.put("name", p.name);
+            m.put("offsetMillis", millis(p.offset));
+            m.put("durationMillis", millis(p.duration));
+            m.put("thread", p.thread);
+            result.add(m);
+        }
+        return result;
+    }
+
+    private synchronized List<Phase> sortedPhases() {
+        List<Phase> copy = new ArrayList<>(phases);
+        Collections.sort(copy);
+        return copy;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000D;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Startup timeline");
+        long s = started;
+        if (s >= 0) {
+            sb.append(" (started in ").append(String.format("%.1f", millis(s))).append("ms)");
+        }
+        sb.append(":\n");
+        StringBuilder table = new StringBuilder();
+        for (Phase p : sortedPhases()) {
+            table.append("  +").append(String.format("%.1f", millis(p.offset))).append("ms\t")
+                    .append(String.format("%.1f", millis(p.duration))).append("ms\t")
+                    .append(p.name).append('\t').append(p.thread).append('\n');
+        }
+        return sb.append(AlignedText.formatTabbed(table)).toString();
+    }
+
+    private static final class Phase implements Comparable<Phase> {
+
+        final String name;
+        final long offset;
+        final long duration;
+        final String thread;
+
+        Phase(String name, long offset, long duration, String thread) {
+            this.name = name;
+            this.offset = offset;
+            this.duration = duration;
+            this.thread = thread;
+        }
+
+        @Override
+        public int compareTo(Phase o) {
+            return Long.compare(offset, o.offset);
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.server;
+
+import com.mastfrog.acteur.ContentStream;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.EmptyHttpHeaders;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import static io.netty.handler.codec.http.HttpResponseStatus.CONTINUE;
+import io.netty.handler.codec.http.HttpUtil;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Sits in front of the aggregator for requests to &#064;StreamingBody pages,
+ * turning off auto-read and reading from the socket only while the subscriber
+ * has outstanding demand. Removes itself once the last chunk has been
+ * received. All state is touched only on the event loop.
+ * <p>
+ * Since the aggregator never sees the request, this also answers
+ * <code>Expect: 100-continue</code>, when the body is first requested. And
+ * since a page may respond without reading the body at all (a failed
+ * precondition, say), it watches for the end of the response; if the body has
+ * not all been consumed by then, the rest is discarded, so that the next
+ * request on the connection is read. If the client was waiting for a
+ * <code>100 Continue</code> it never got, there is no knowing whether it will
+ * send the body, so the connection is closed after the response instead.
+ *
+ * @author Tim Boudreau
+ */
+final class StreamingBodyHandler extends ChannelDuplexHandler implements ContentStream {
+
+    static final AttributeKey<StreamingBodyHandler> STREAMING_BODY_KEY
+            = AttributeKey.newInstance(StreamingBodyHandler.class.getSimpleName());
+    private final ArrayDeque<HttpContent> pending = new ArrayDeque<>(4);
+    private final boolean expectContinue;
+    private ChannelHandlerContext ctx;
+    private ChunkSubscriber subscriber;
+    private long demand;
+    private long delivered;
+    private boolean lastReceived;
+    private boolean finished;
+    private boolean cancelled;
+    private boolean continueSent;
+
+    StreamingBodyHandler(boolean expectContinue) {
+        this.expectContinue = expectContinue;
+    }
+
+    static void install(ChannelHandlerContext ctx, HttpRequest request) {
+        StreamingBodyHandler handler = new StreamingBodyHandler(HttpUtil.is100ContinueExpected(request));
+        ctx.channel().config().setAutoRead(false);
+        ctx.channel().attr(STREAMING_BODY_KEY).set(handler);
+        // After the encoder, if there is one, so responses pass through
+        // this handler as HTTP objects rather than bytes
+        String after = ctx.pipeline().get(PipelineDecorator.ENCODER) != null
+                ? PipelineDecorator.ENCODER : PipelineDecorator.PRE_CONTENT_PAGE_HANDLER;
+        ctx.pipeline().addAfter(after, PipelineDecorator.STREAMING_BODY_HANDLER, handler);
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof HttpContent) || lastReceived) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        HttpContent content = (HttpContent) msg;
+        lastReceived = content instanceof LastHttpContent;
+        if (cancelled) {
+            content.release();
+            if (lastReceived) {
+                done();
+            }
+            return;
+        }
+        pending.add(content);
+        drain();
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        // With auto-read off, keep the socket flowing only while the subscriber
+        // can take more than what has already been decoded
+        if (!finished && (cancelled || (demand > 0 && pending.isEmpty()))) {
+            ctx.read();
+        }
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (!finished) {
+            fail(new ClosedChannelException());
+        }
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        boolean responseComplete = msg instanceof LastHttpContent
+                && !(msg instanceof HttpResponse && CONTINUE.equals(((HttpResponse) msg).status()));
+        ctx.write(msg, promise);
+        if (responseComplete && !finished) {
+            onResponseComplete(promise);
+        }
+    }
+
+    private void onResponseComplete(ChannelPromise promise) {
+        if (expectContinue && !continueSent && !lastReceived) {
+            if (promise.isVoid()) {
+                ctx.channel().close();
+            } else {
+                promise.addListener(ChannelFutureListener.CLOSE);
+            }
+        }
+        ChunkSubscriber sub = cancelled ? null : subscriber;
+        discardRemaining();
+        if (sub != null) {
+            sub.onError(new CancellationException("Response sent before the request body was read"));
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        if (!finished) {
+            fail(cause);
+        }
+        ctx.fireExceptionCaught(cause);
+    }
+
+    @Override
+    public ContentStream subscribe(ChunkSubscriber subscriber) {
+        if (subscriber == null) {
+            throw new IllegalArgumentException("Null subscriber");
+        }
+        onEventLoop(() -> {
+            if (this.subscriber != null) {
+                subscriber.onError(new IllegalStateException("Already subscribed: " + this.subscriber));
+                return;
+            }
+            this.subscriber = subscriber;
+            drain();
+        });
+        return this;
+    }
+
+    @Override
+    public ContentStream request(long chunks) {
+        if (chunks <= 0) {
+            throw new IllegalArgumentException("Must request at least one chunk: " + chunks);
+        }
+        onEventLoop(() -> {
+            if (expectContinue && !continueSent && !cancelled && !lastReceived && ctx != null) {
+                continueSent = true;
+                ctx.writeAndFlush(new DefaultFullHttpResponse(HTTP_1_1, CONTINUE, Unpooled.EMPTY_BUFFER));
+            }
+            demand = demand + chunks < 0 ? Long.MAX_VALUE : demand + chunks;
+            drain();
+        });
+        return this;
+    }
+
+    @Override
+    public void cancel() {
+        onEventLoop(this::discardRemaining);
+    }
+
+    private void discardRemaining() {
+        if (cancelled || finished) {
+            return;
+        }
+        cancelled = true;
+        releasePending();
+        if (lastReceived) {
+            done();
+        } else {
+            ctx.read();
+        }
+    }
+
+    @Override
+    public long bytesDelivered() {
+        return delivered;
+    }
+
+    private void onEventLoop(Runnable run) {
+        if (ctx == null || ctx.executor().inEventLoop()) {
+            run.run();
+        } else {
+            ctx.executor().execute(run);
+        }
+    }
+
+    private void drain() {
+        if (ctx == null) {
+            return;
+        }
+        while (!cancelled && subscriber != null && !pending.isEmpty()) {
+            HttpContent next = pending.peek();
+            boolean last = next instanceof LastHttpContent;
+            boolean empty = !next.content().isReadable();
+            if (!empty && demand == 0) {
+                return;
+            }
+            pending.poll();
+            try {
+                if (!empty) {
+                    demand--;
+                    delivered += next.content().readableBytes();
+                    subscriber.onChunk(next.content());
+                }
+                if (last) {
+                    HttpHeaders trailers = ((LastHttpContent) next).trailingHeaders();
+                    done();
+                    subscriber.onComplete(trailers == null ? EmptyHttpHeaders.INSTANCE : trailers);
+                    return;
+                }
+            } catch (Exception ex) {
+                cancelled = true;
+                releasePending();
+                subscriber.onError(ex);
+                if (lastReceived) {
+                    done();
+                } else {
+                    ctx.read();
+                }
+                return;
+            } finally {
+                ReferenceCountUtil.release(next);
+            }
+        }
+        if (demand > 0 && pending.isEmpty() && !finished) {
+            ctx.read();
+        }
+    }
+
+    private void fail(Throwable err) {
+        releasePending();
+        finished = true;
+        ChunkSubscriber sub = subscriber;
+        if (sub != null && !cancelled) {
+            cancelled = true;
+            sub.onError(err);
+        }
+        cancelled = true;
+    }
+
+    private void releasePending() {
+        HttpContent c;
+        while ((c = pending.poll()) != null) {
+            ReferenceCountUtil.release(c);
+        }
+    }
+
+    private void done() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        ctx.channel().attr(STREAMING_BODY_KEY).compareAndSet(this, null);
+        ctx.channel().config().setAutoRead(true);
+        if (ctx.pipeline().context(this) != null) {
+            ctx.pipeline().remove(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StreamingBodyHandler(demand=" + demand + ", delivered="
+                + delivered + ", pending=" + pending.size()
+                + (cancelled ? ", cancelled" : "")
+                + (finished ? ", finished" : "") + ")";
+    }
+}
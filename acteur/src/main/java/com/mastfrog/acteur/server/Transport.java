@@ -0,0 +1,241 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.server;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Netty transports the server can run on. The native transports are looked
+ * up reflectively, so they are only usable if the corresponding Netty
+ * artifact (<code>netty-transport-native-epoll</code> with the platform
+ * classifier, or <code>netty-incubator-transport-native-io_uring</code>) is
+ * on the classpath and its native library loads; otherwise
+ * {@link #resolve(java.lang.String)} falls back to NIO.
+ *
+ * @author Tim Boudreau
+ */
+public enum Transport {
+    NIO(null, null, null, null, null),
+    EPOLL("io.netty.channel.epoll.Epoll",
+            "io.netty.channel.epoll.EpollEventLoopGroup",
+            "io.netty.channel.epoll.EpollServerSocketChannel",
+            "io.netty.channel.epoll.EpollSocketChannel",
+            "io.netty.channel.epoll.EpollChannelOption"),
+    IO_URING("io.netty.incubator.channel.uring.IOUring",
+            "io.netty.incubator.channel.uring.IOUringEventLoopGroup",
+            "io.netty.incubator.channel.uring.IOUringServerSocketChannel",
+            "io.netty.incubator.channel.uring.IOUringSocketChannel",
+            "io.netty.incubator.channel.uring.IOUringChannelOption");
+
+    /**
+     * Setting value which selects the best available transport - epoll, then
+     * io_uring, then NIO.
+     */
+    public static final String AUTO = "auto";
+
+    private final String availabilityType;
+    private final String groupType;
+    private final String serverChannelType;
+    private final String channelType;
+    private final String optionsType;
+    private Boolean available;
+
+    Transport(String availabilityType, String groupType, String serverChannelType,
+            String channelType, String optionsType) {
+        this.availabilityType = availabilityType;
+        this.groupType = groupType;
+        this.serverChannelType = serverChannelType;
+        this.channelType = channelType;
+        this.optionsType = optionsType;
+    }
+
+    /**
+     * Get the name of this transport as used in settings.
+     *
+     * @return A name such as <code>io_uring</code>
+     */
+    public String settingsName() {
+        return name().toLowerCase();
+    }
+
+    /**
+     * Determine if this transport's classes are present and its native
+     * library (if any) can be loaded on this machine.
+     *
+     * @return true if it can be used
+     */
+    public synchronized boolean isAvailable() {
+        if (available == null) {
+            if (availabilityType == null) {
+                available = true;
+            } else {
+                try {
+                    Method m = type(availabilityType).getMethod("isAvailable");
+                    available = (Boolean) m.invoke(null);
+                } catch (Exception | LinkageError ex) {
+                    available = false;
+                }
+            }
+        }
+        return available;
+    }
+
+    /**
+     * Create an event loop group for this transport.
+     *
+     * @param threads The number of threads
+     * @param executor The executor threads come from
+     * @return A group
+     */
+    public EventLoopGroup createGroup(int threads, Executor executor) {
+        if (groupType == null) {
+            return new NioEventLoopGroup(threads, executor);
+        }
+        try {
+            return (EventLoopGroup) type(groupType)
+                    .getConstructor(Integer.TYPE, Executor.class)
+                    .newInstance(threads, executor);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Could not create " + groupType, ex);
+        }
+    }
+
+    /**
+     * Get the server socket channel type for this transport.
+     *
+     * @return A channel type
+     */
+    @SuppressWarnings("unchecked")
+    public Class<? extends ServerChannel> serverChannelType() {
+        if (serverChannelType == null) {
+            return NioServerSocketChannel.class;
+        }
+        return (Class<? extends ServerChannel>) type(serverChannelType);
+    }
+
+    /**
+     * Get the client socket channel type for this transport.
+     *
+     * @return A channel type
+     */
+    @SuppressWarnings("unchecked")
+    public Class<? extends Channel> socketChannelType() {
+        if (channelType == null) {
+            return NioSocketChannel.class;
+        }
+        return (Class<? extends Channel>) type(channelType);
+    }
+
+    /**
+     * Look up a transport-specific channel option, such as
+     * <code>SO_REUSEPORT</code> or <code>TCP_FASTOPEN</code>, by the name of
+     * its constant.
+     *
+     * @param <T> The option's value type
+     * @param name The name of the static field holding the option
+     * @return The option, or null if this transport does not have it
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ChannelOption<T> option(String name) {
+        if (optionsType == null) {
+            return null;
+        }
+        try {
+            return (ChannelOption<T>) type(optionsType).getField(name).get(null);
+        } catch (ReflectiveOperationException | IllegalStateException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Look up an enum constant in this transport's package, such as
+     * <code>EpollMode.EDGE_TRIGGERED</code>.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    Object enumConstant(String simpleTypeName, String constant) {
+        if (optionsType == null) {
+            return null;
+        }
+        String pkg = optionsType.substring(0, optionsType.lastIndexOf('.') + 1);
+        try {
+            return Enum.valueOf((Class<? extends Enum>) type(pkg + simpleTypeName), constant);
+        } catch (IllegalStateException | IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    private static Class<?> type(String name) {
+        try {
+            return Class.forName(name, true, Transport.class.getClassLoader());
+        } catch (ClassNotFoundException ex) {
+            throw new IllegalStateException(name + " not on classpath", ex);
+        }
+    }
+
+    /**
+     * Parse a transport name from settings (<code>nio</code>,
+     * <code>epoll</code>, <code>io_uring</code> or <code>auto</code>),
+     * returning NIO if the name is null or the requested transport is not
+     * available on this machine.
+     *
+     * @param name A name
+     * @return A transport which is available
+     */
+    public static Transport resolve(String name) {
+        if (name == null || name.trim().isEmpty()) {
+            return NIO;
+        }
+        String nm = name.trim().toLowerCase().replace('-', '_');
+        if (AUTO.equals(nm)) {
+            for (Transport t : new Transport[]{EPOLL, IO_URING}) {
+                if (t.isAvailable()) {
+                    return t;
+                }
+            }
+            return NIO;
+        }
+        for (Transport t : values()) {
+            if (t.settingsName().equals(nm)) {
+                if (t.isAvailable()) {
+                    return t;
+                }
+                Logger.getLogger(Transport.class.getName()).log(Level.WARNING,
+                        "Transport {0} requested but not available; using nio", nm);
+                return NIO;
+            }
+        }
+        throw new IllegalArgumentException("Unknown transport '" + name
+                + "' - should be one of nio, epoll, io_uring or auto");
+    }
+}
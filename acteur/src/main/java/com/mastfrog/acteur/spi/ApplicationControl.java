@@ -43,6 +43,16 @@ public interface ApplicationControl {
 
     void enableDefaultCorsHandling();
 
+    /**
+     * Read the annotations of the application's pages ahead of the first
+     * request. Called once the application is configured, before the server
+     * is bound - or, in fast startup mode, on a background thread once it has
+     * been bound, so this must be safe to call while requests are running.
+     */
+    default void compilePagePlans() {
+        // do nothing
+    }
+
     CountDownLatch onEvent(final Event<?> event, final Channel channel);
 
     void internalOnError(Throwable err);
@@ -83,6 +83,17 @@ public class WebSocketUpgradeActeur extends Acteur {
     public static final boolean DEFAULT_WEBSOCKET_SECURE_PROTOCOL = false;
     public static final String SETTINGS_KEY_WEBSOCKET_FRAME_MAX_LENGTH = "websocket.frame.max.bytes";
     public static final int DEFAULT_WEBSOCKET_FRAME_MAX_LENGTH = 5 * 1024 * 1024;
+    /**
+     * If true (the default), frames are run through the acteurs following
+     * this one directly, with the acteur types and scope contents resolved
+     * once per connection, instead of through the full chain machinery used
+     * for HTTP requests. Acteurs may still pause or extend the chain for a
+     * frame with <code>then()</code>, <code>continueAfter()</code>,
+     * <code>defer()</code> and <code>deferThenRespond()</code>; chains whose
+     * acteurs inject Deferral or Chain directly always use the full machinery.
+     */
+    public static final String SETTINGS_KEY_WEBSOCKET_DIRECT_DISPATCH = "websocket.direct.dispatch";
+    public static final boolean DEFAULT_WEBSOCKET_DIRECT_DISPATCH = true;
     public static final AttributeKey<Supplier<? extends Chain<? extends Acteur, ?>>> CHAIN_KEY
             = AttributeKey.valueOf(WebSocketUpgradeActeur.class, "websocket");
     public static final AttributeKey<Page> PAGE_KEY
@@ -0,0 +1,60 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.mastfrog.acteur.PagePlanTest.M;
+import com.mastfrog.giulius.tests.GuiceRunner;
+import com.mastfrog.giulius.tests.TestWith;
+import com.mastfrog.netty.http.test.harness.TestHarness;
+import com.mastfrog.netty.http.test.harness.TestHarnessModule;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import java.time.Duration;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * With acteur.fast.startup set (see FastStartupTest.properties), page plans
+ * are compiled in the background once the server is bound, and requests that
+ * arrive first compile what they need.
+ *
+ * @author Tim Boudreau
+ */
+@RunWith(GuiceRunner.class)
+@TestWith({M.class, TestHarnessModule.class, SilentRequestLogger.class})
+public class FastStartupTest {
+
+    private static final long TIMEOUT = 16000;
+    private static final Duration TO = Duration.ofMillis(TIMEOUT);
+
+    @Test(timeout = TIMEOUT)
+    public void testPlansAreCompiledAfterBind(TestHarness harn, Application app) throws Throwable {
+        harn.get("annotated").setTimeout(TO).addQueryPair("id", "23").go()
+                .assertStatus(OK).assertContent("annotated");
+        harn.get("plain").setTimeout(TO).go().assertStatus(OK).assertContent("plain");
+        while (!app.hasCompiledPlan(PagePlanTest.Annotated.class)
+                || !app.hasCompiledPlan(PagePlanTest.Plain.class)) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import static com.google.common.net.MediaType.PLAIN_TEXT_UTF_8;
+import com.google.inject.Inject;
+import com.mastfrog.acteur.FusedPreconditionsTest.M;
+import com.mastfrog.acteur.headers.Headers;
+import static com.mastfrog.acteur.headers.Method.GET;
+import static com.mastfrog.acteur.headers.Method.POST;
+import com.mastfrog.acteur.preconditions.BannedUrlParameters;
+import com.mastfrog.acteur.preconditions.MaximumRequestBodyLength;
+import com.mastfrog.acteur.preconditions.Methods;
+import com.mastfrog.acteur.preconditions.ParametersMustBeNumbersIfPresent;
+import com.mastfrog.acteur.preconditions.Path;
+import com.mastfrog.acteur.preconditions.UrlParametersMayNotBeCombined;
+import com.mastfrog.acteur.server.ServerModule;
+import com.mastfrog.giulius.tests.GuiceRunner;
+import com.mastfrog.giulius.tests.TestWith;
+import com.mastfrog.netty.http.test.harness.TestHarness;
+import com.mastfrog.netty.http.test.harness.TestHarness.CallResult;
+import com.mastfrog.netty.http.test.harness.TestHarness.TestRequestBuilder;
+import com.mastfrog.netty.http.test.harness.TestHarnessModule;
+import static io.netty.handler.codec.http.HttpResponseStatus.BAD_REQUEST;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.netty.handler.codec.http.HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.time.Duration;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Sends the same requests to a page whose preconditions are annotations, and
+ * so get fused into one acteur, and to a page which adds the equivalent
+ * acteurs from ActeurFactory one by one, and checks the responses match.
+ *
+ * @author Tim Boudreau
+ */
+@RunWith(GuiceRunner.class)
+@TestWith({M.class, TestHarnessModule.class, SilentRequestLogger.class})
+public class FusedPreconditionsTest {
+
+    private static final long TIMEOUT = 16000;
+    private static final Duration TO = Duration.ofMillis(TIMEOUT);
+
+    @Test(timeout = TIMEOUT)
+    public void testPassingRequests(TestHarness harn) throws Throwable {
+        assertSameResponse(harn, OK);
+        assertSameResponse(harn, OK, "n", "12");
+        assertSameResponse(harn, OK, "a", "1");
+        assertSameResponse(harn, OK, "b", "2", "n", "-3");
+        assertSameResponse(harn, OK, "evil2", "1");
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testBannedParameters(TestHarness harn) throws Throwable {
+        assertSameResponse(harn, BAD_REQUEST, "evil", "1");
+        assertSameResponse(harn, BAD_REQUEST, "evil", "1", "n", "x");
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testNumberParameters(TestHarness harn) throws Throwable {
+        assertSameResponse(harn, BAD_REQUEST, "n", "abc");
+        assertSameResponse(harn, BAD_REQUEST, "n", "1.5");
+        assertSameResponse(harn, BAD_REQUEST, "n", "1-2");
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testParametersNotCombined(TestHarness harn) throws Throwable {
+        assertSameResponse(harn, BAD_REQUEST, "a", "1", "b", "2");
+        assertSameResponse(harn, BAD_REQUEST, "b", "2", "a", "1");
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testMaximumBodyLength(TestHarness harn) throws Throwable {
+        assertSamePostResponse(harn, OK, "short");
+        assertSamePostResponse(harn, OK, "0123456789");
+        assertSamePostResponse(harn, REQUEST_ENTITY_TOO_LARGE, "01234567890123456789");
+    }
+
+    private void assertSameResponse(TestHarness harn, HttpResponseStatus status, String... params) throws Throwable {
+        TestRequestBuilder fused = harn.get("fused").setTimeout(TO);
+        TestRequestBuilder unfused = harn.get("unfused").setTimeout(TO);
+        for (int i = 0; i < params.length; i += 2) {
+            fused.addQueryPair(params[i], params[i + 1]);
+            unfused.addQueryPair(params[i], params[i + 1]);
+        }
+        assertSameResponse(status, "GET " + String.join(",", params), fused, unfused);
+    }
+
+    private void assertSamePostResponse(TestHarness harn, HttpResponseStatus status, String body) throws Throwable {
+        assertSameResponse(status, "POST " + body,
+                harn.post("fused").setTimeout(TO).setBody(body, PLAIN_TEXT_UTF_8),
+                harn.post("unfused").setTimeout(TO).setBody(body, PLAIN_TEXT_UTF_8));
+    }
+
+    private void assertSameResponse(HttpResponseStatus status, String desc, TestRequestBuilder fused,
+            TestRequestBuilder unfused) throws Throwable {
+        CallResult unfusedResult = unfused.go().await().assertStatus(status);
+        CallResult fusedResult = fused.go().await().assertStatus(status);
+        assertEquals(desc, unfusedResult.content(), fusedResult.content());
+        assertEquals(desc, String.valueOf(unfusedResult.getHeader(Headers.CONTENT_TYPE)),
+                String.valueOf(fusedResult.getHeader(Headers.CONTENT_TYPE)));
+    }
+
+    @Methods({GET, POST})
+    @Path("/fused")
+    @BannedUrlParameters("evil")
+    @ParametersMustBeNumbersIfPresent("n")
+    @MaximumRequestBodyLength(10)
+    @UrlParametersMayNotBeCombined({"a", "b"})
+    static class Fused extends Page {
+
+        @Inject
+        Fused(ActeurFactory af) {
+            add(af.respondWith(OK, "ok"));
+        }
+    }
+
+    @Path("/unfused")
+    static class Unfused extends Page {
+
+        @Inject
+        Unfused(ActeurFactory af) {
+            add(af.matchMethods(GET, POST));
+            add(af.banParameters("evil"));
+            add(af.parametersMustBeNumbersIfTheyArePresent(false, true, "n"));
+            add(af.maximumBodyLength(10));
+            add(af.parametersMayNotBeCombined("a", "b"));
+            add(af.respondWith(OK, "ok"));
+        }
+    }
+
+    static class A extends Application {
+
+        A() {
+            add(Fused.class);
+            add(Unfused.class);
+        }
+    }
+
+    static class M extends ServerModule<A> {
+
+        M() {
+            super(A.class);
+        }
+    }
+}
@@ -23,6 +23,7 @@
  */
 package com.mastfrog.acteur;
 
+import com.google.common.cache.CacheStats;
 import com.google.inject.util.Providers;
 import com.mastfrog.acteur.headers.Method;
 import static com.mastfrog.acteur.headers.Method.GET;
@@ -131,6 +132,71 @@ public class PagePathAndMethodFilterTest {
         assertOne(l, PageWithAnnoDecode.class);
     }
 
+    @Test
+    public void testGlobRegisteredWithAndWithoutDecoding() {
+        for (boolean decodedFirst : new boolean[]{false, true}) {
+            PagePathAndMethodFilter filter = new PagePathAndMethodFilter();
+            if (decodedFirst) {
+                filter.add(DecodedFilesPage.class);
+                filter.add(RawFilesPage.class);
+            } else {
+                filter.add(RawFilesPage.class);
+                filter.add(DecodedFilesPage.class);
+            }
+            // Only matches once decoded
+            assertTrue(filter.match(get("/files/a%20b")));
+            List<Object> l = filter.listFor(get("/files/a%20b"));
+            assertTrue(Strings.join(',', l), l.contains(DecodedFilesPage.class));
+            // Matches raw and decoded, but the pages must be listed once
+            l = filter.listFor(get("/files/axb"));
+            assertEquals(Strings.join(',', l), 2, l.size());
+            assertTrue(Strings.join(',', l), l.contains(RawFilesPage.class));
+            assertTrue(Strings.join(',', l), l.contains(DecodedFilesPage.class));
+        }
+    }
+
+    @Test
+    public void testMatchCacheIsBounded() {
+        PagePathAndMethodFilter filter = new PagePathAndMethodFilter("/", 10);
+        filter.add(GlobPage.class);
+        for (int i = 0; i < 100; i++) {
+            assertFalse(filter.match(post("/api/v2/nothing/" + i)));
+        }
+        assertTrue(filter.match(post("/api/v2/things/23/new?foo=bar")));
+        assertTrue(filter.match(post("/api/v2/things/23/new?foo=bar")));
+        assertTrue(filter.match(post("/api/v2/things/23/new?foo=baz")));
+        CacheStats stats = filter.matchCacheStats();
+        assertEquals(stats.toString(), 2, stats.hitCount());
+        assertEquals(stats.toString(), 101, stats.missCount());
+        assertTrue(stats.toString(), stats.evictionCount() >= 80);
+    }
+
+    @Test
+    public void testRequestsDifferingOnlyByQueryShareOneCacheEntry() {
+        PagePathAndMethodFilter filter = new PagePathAndMethodFilter("/", 10);
+        filter.add(GlobPage.class);
+        assertTrue(filter.match(post("/api/v2/things/23/new")));
+        for (int i = 0; i < 100; i++) {
+            assertTrue(filter.match(post("/api/v2/things/23/new?id=" + i + "&_=" + (i * 31))));
+            assertFalse(filter.match(post("/api/v2/nothing?page=" + i)));
+        }
+        CacheStats stats = filter.matchCacheStats();
+        assertEquals(stats.toString(), 2, stats.missCount());
+        assertEquals(stats.toString(), 199, stats.hitCount());
+        assertEquals(stats.toString(), 0, stats.evictionCount());
+    }
+
+    @Test
+    public void testSharedPathPatternsSeeRouteGlobs() {
+        PathPatterns shared = new PathPatterns();
+        PagePathAndMethodFilter filter = new PagePathAndMethodFilter("/", 10, shared);
+        filter.add(GlobPage.class);
+        filter.add(ExactPage.class);
+        CacheStats stats = shared.globCacheStats();
+        assertTrue(stats.toString(), stats.requestCount() > 0);
+        assertTrue(filter.match(post("/api/v2/things/23/new")));
+    }
+
     @Test
     public void testUnknownsAlwaysReturned() {
         PagePathAndMethodFilter filter = new PagePathAndMethodFilter();
@@ -199,6 +265,18 @@ public class PagePathAndMethodFilterTest {
         }
     }
 
+    @Methods(GET)
+    @Path("/files/a?b")
+    static final class RawFilesPage extends Page {
+
+    }
+
+    @Methods(GET)
+    @Path(value = "/files/a?b", decode = true)
+    static final class DecodedFilesPage extends Page {
+
+    }
+
     @Methods(POST)
     @PathRegex(value = {INTL_PATTERN_B, "^whatevs$"}, decode = true)
     static final class PageWithAnnoDecode extends Page {
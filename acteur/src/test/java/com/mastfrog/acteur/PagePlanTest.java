@@ -0,0 +1,165 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.google.inject.Inject;
+import com.mastfrog.acteur.PagePlanTest.M;
+import static com.mastfrog.acteur.headers.Method.GET;
+import com.mastfrog.acteur.preconditions.Methods;
+import com.mastfrog.acteur.preconditions.PageAnnotationHandler;
+import com.mastfrog.acteur.preconditions.ParametersMustBeNumbersIfPresent;
+import com.mastfrog.acteur.preconditions.Path;
+import com.mastfrog.acteur.preconditions.RequiredUrlParameters;
+import com.mastfrog.acteur.server.ServerModule;
+import com.mastfrog.giulius.tests.GuiceRunner;
+import com.mastfrog.giulius.tests.TestWith;
+import com.mastfrog.netty.http.test.harness.TestHarness;
+import com.mastfrog.netty.http.test.harness.TestHarnessModule;
+import static io.netty.handler.codec.http.HttpResponseStatus.BAD_REQUEST;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+import java.lang.annotation.Target;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+@RunWith(GuiceRunner.class)
+@TestWith({M.class, TestHarnessModule.class, SilentRequestLogger.class})
+public class PagePlanTest {
+
+    private static final long TIMEOUT = 16000;
+    private static final Duration TO = Duration.ofMillis(TIMEOUT);
+
+    @Test(timeout = TIMEOUT)
+    public void testPlansAreCompiledBeforeTheFirstRequest(TestHarness harn, Application app) throws Throwable {
+        assertTrue(app.hasCompiledPlan(Annotated.class));
+        assertTrue(app.hasCompiledPlan(Plain.class));
+        harn.get("annotated").setTimeout(TO).go().assertStatus(BAD_REQUEST);
+        harn.get("annotated").setTimeout(TO).addQueryPair("id", "x").go().assertStatus(BAD_REQUEST);
+        harn.get("annotated").setTimeout(TO).addQueryPair("id", "23").go()
+                .assertStatus(OK).assertContent("annotated");
+        harn.get("plain").setTimeout(TO).go().assertStatus(OK).assertContent("plain");
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testCompiledPlanAddsTheSameActeursAsProcessingAnnotations(TestHarness harn, Application app,
+            ActeurFactory af, PageAnnotationHandler.Registry registry) throws Throwable {
+        for (Page page : new Page[]{new Annotated(af), new Plain(af)}) {
+            page.setApplication(app);
+            int before = Counting.calls.get();
+            List<Object> compiled = page.acteurs(false);
+            assertEquals(before + 1, Counting.calls.get());
+            List<Object> uncompiled = new ArrayList<>();
+            registry.processAnnotations(page, uncompiled);
+            assertEquals(before + 2, Counting.calls.get());
+
+            assertEquals(page.getClass().getSimpleName(), uncompiled.size() + page.countActeurs(), compiled.size());
+            for (int i = 0; i < uncompiled.size(); i++) {
+                assertEquals(page.getClass().getSimpleName() + " acteur " + i,
+                        uncompiled.get(i).getClass(), compiled.get(i).getClass());
+            }
+        }
+    }
+
+    @Methods(GET)
+    @Path("/annotated")
+    @RequiredUrlParameters("id")
+    @ParametersMustBeNumbersIfPresent("id")
+    @Counted
+    static class Annotated extends Page {
+
+        @Inject
+        Annotated(ActeurFactory af) {
+            add(af.respondWith(OK, "annotated"));
+        }
+    }
+
+    @Methods(GET)
+    @Path("/plain")
+    static class Plain extends Page {
+
+        @Inject
+        Plain(ActeurFactory af) {
+            add(af.respondWith(OK, "plain"));
+        }
+    }
+
+    @Target(ElementType.TYPE)
+    @Retention(RUNTIME)
+    public @interface Counted {
+
+    }
+
+    /**
+     * A handler which does not implement compile(), so compiled plans must
+     * fall back to calling it for every request.
+     */
+    static class Counting extends PageAnnotationHandler {
+
+        static final AtomicInteger calls = new AtomicInteger();
+
+        @Inject
+        Counting(PageAnnotationHandler.Registry reg) {
+            super(reg, Counted.class);
+        }
+
+        @Override
+        public <T extends Page> boolean processAnnotations(T page, List<? super Acteur> addTo) {
+            calls.incrementAndGet();
+            return page.getClass().getAnnotation(Counted.class) != null;
+        }
+    }
+
+    static class A extends Application {
+
+        A() {
+            add(Annotated.class);
+            add(Plain.class);
+        }
+    }
+
+    static class M extends ServerModule<A> {
+
+        M() {
+            super(A.class);
+        }
+
+        @Override
+        protected void configure() {
+            super.configure();
+            bind(Counting.class).asEagerSingleton();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.mastfrog.acteur.headers.Headers;
+import com.mastfrog.acteur.headers.Method;
+import static io.netty.handler.codec.http.HttpResponseStatus.CREATED;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class ResponseImplTest {
+
+    @Test
+    public void testCoalesceReusesFirstModifiedResponse() {
+        List<ResponseImpl> chain = new ArrayList<>();
+        ResponseImpl untouched = new ResponseImpl();
+        chain.add(untouched);
+        ResponseImpl first = new ResponseImpl();
+        first.add(Headers.ETAG, "abc");
+        chain.add(first);
+        ResponseImpl second = new ResponseImpl();
+        second.status(CREATED);
+        second.add(Headers.ETAG, "def");
+        chain.add(second);
+
+        ResponseImpl result = ResponseImpl.coalesce(chain);
+        assertSame(first, result);
+        assertEquals(CREATED, result.getResponseCode());
+        assertEquals("def", result.get(Headers.ETAG).toString());
+    }
+
+    @Test
+    public void testCoalesceOfNothingIsUnmodified() {
+        ResponseImpl result = ResponseImpl.coalesce(Arrays.asList(new ResponseImpl()));
+        assertFalse(result.isModified());
+        assertNull(result.get(Headers.ETAG));
+    }
+
+    @Test
+    public void testLaterActeursSeePrecedingHeaders() {
+        List<ResponseImpl> chain = new ArrayList<>();
+        ResponseImpl first = new ResponseImpl();
+        first.add(Headers.ETAG, "abc");
+        first.status(CREATED);
+        chain.add(first);
+        // As PagesImpl2 does before running each acteur
+        ResponseImpl.shadowResponses.set(chain);
+        ResponseImpl second = new ResponseImpl();
+        // Added after the second was created, so it should not be visible
+        ResponseImpl third = new ResponseImpl();
+        third.add(Headers.LOCATION, URI.create("/foo"));
+        chain.add(third);
+        assertEquals("abc", second.get(Headers.ETAG).toString());
+        assertEquals(CREATED, second.getResponseCode());
+        assertNull(second.get(Headers.LOCATION));
+    }
+
+    @Test
+    public void testAllowHeadersAreCombined() {
+        ResponseImpl resp = new ResponseImpl();
+        resp.add(Headers.ALLOW, new Method[]{Method.GET});
+        resp.add(Headers.ALLOW, new Method[]{Method.PUT, Method.GET});
+        assertEquals(EnumSet.of(Method.GET, Method.PUT),
+                EnumSet.copyOf(Arrays.asList(resp.get(Headers.ALLOW))));
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class RouteIndexTest {
+
+    private static final String[] GLOB_PARTS = {"a", "b", "ab", "*", "?",
+        "a*", "*b", "a?b", "*.html", "x*y*z", "", "?*"};
+    private static final String[] PATH_PARTS = {"a", "b", "ab", "aab", "abb",
+        "x.html", ".html", "xyz", "xaybz", "", "/", "aXb", "ab.html"};
+
+    @Test
+    public void testGlobsMatchLikeRegex() {
+        Random rnd = new Random(1);
+        for (int i = 0; i < 5000; i++) {
+            String glob = randomPath(rnd, GLOB_PARTS);
+            if (!RouteIndex.isIndexableGlob(glob)) {
+                continue;
+            }
+            if (rnd.nextBoolean()) {
+                glob = "/" + glob;
+            }
+            RouteIndex index = new RouteIndex();
+            assertTrue(glob, index.addGlob(glob, Collections.singletonList(glob), false));
+            Pattern pattern = Pattern.compile(PathPatterns.patternFromGlob(glob));
+            for (int j = 0; j < 20; j++) {
+                String path = randomPath(rnd, PATH_PARTS);
+                boolean expect = pattern.matcher(path).matches();
+                List<List<Object>> found = new ArrayList<>();
+                index.collect(path, path, found);
+                assertEquals(glob + " vs " + path, expect, !found.isEmpty());
+                assertEquals(glob + " vs " + path, expect, index.matches(path));
+            }
+        }
+    }
+
+    @Test
+    public void testNonIndexableGlobs() {
+        assertFalse(RouteIndex.isIndexableGlob("foo/bar"));
+        assertFalse(RouteIndex.isIndexableGlob("foo/a+/bar*"));
+        assertFalse(RouteIndex.isIndexableGlob("foo|bar/*"));
+        assertTrue(RouteIndex.isIndexableGlob("foo/*/bar"));
+        assertTrue(RouteIndex.isIndexableGlob("foo/ba?"));
+        assertFalse(new RouteIndex().addGlob("a+/*", new ArrayList<>(), false));
+    }
+
+    @Test
+    public void testOrderingIsRegistrationOrder() {
+        RouteIndex index = new RouteIndex();
+        List<Object> first = Arrays.asList("first");
+        List<Object> second = Arrays.asList("second");
+        List<Object> third = Arrays.asList("third");
+        List<Object> fourth = Arrays.asList("fourth");
+        index.addRegex(Pattern.compile("^api\\/.*"), first, false);
+        index.addGlob("api/*/things", second, false);
+        index.addGlob("api/v1/*", third, false);
+        index.addRegex(Pattern.compile("^nothing$"), Arrays.asList("nothing"), false);
+        index.addGlob("*/v1/things", fourth, false);
+        List<List<Object>> found = new ArrayList<>();
+        index.collect("api/v1/things", "api/v1/things", found);
+        assertEquals(Arrays.asList(first, second, third, fourth), found);
+    }
+
+    @Test
+    public void testDecodedRoutesUseDecodedPath() {
+        RouteIndex index = new RouteIndex();
+        List<Object> raw = Arrays.asList("raw");
+        List<Object> rawMiss = Arrays.asList("rawMiss");
+        List<Object> decoded = Arrays.asList("decoded");
+        // Only matches the raw path
+        assertTrue(index.addGlob("files/a%*", raw, false));
+        // Only matches the decoded path, so must not be found
+        assertTrue(index.addGlob("files/a?b", rawMiss, false));
+        assertFalse(index.needsDecoding());
+        assertTrue(index.addGlob("files/a?b", decoded, true));
+        assertTrue(index.needsDecoding());
+        List<List<Object>> found = new ArrayList<>();
+        index.collect("files/a%20b", "files/a b", found);
+        assertEquals(Arrays.asList(raw, decoded), found);
+    }
+
+    /**
+     * Compares the route index with a linear scan of compiled patterns, which
+     * is what PagePathAndMethodFilter did before it. Run with
+     * -Dacteur.benchmark=true.
+     */
+    @Test
+    public void benchmarkAgainstLinearScan() {
+        Assume.assumeTrue(Boolean.getBoolean("acteur.benchmark"));
+        int routes = 400;
+        RouteIndex index = new RouteIndex();
+        List<Pattern> patterns = new ArrayList<>();
+        for (int i = 0; i < routes; i++) {
+            String glob = "api/v" + (i % 4) + "/resource" + i + "/*/items/*";
+            index.addGlob(glob, Collections.singletonList(i), false);
+            patterns.add(Pattern.compile(PathPatterns.patternFromGlob(glob)));
+        }
+        String[] paths = new String[1024];
+        Random rnd = new Random(2);
+        for (int i = 0; i < paths.length; i++) {
+            int r = rnd.nextInt(routes * 2);
+            paths[i] = "api/v" + (r % 4) + "/resource" + r + "/" + rnd.nextInt(100000) + "/items/" + rnd.nextInt(1000);
+        }
+        int iterations = 200;
+        long linearHits = 0;
+        long indexHits = 0;
+        for (int warmup = 0; warmup < 2; warmup++) {
+            long start = System.nanoTime();
+            for (int it = 0; it < iterations; it++) {
+                for (String path : paths) {
+                    for (Pattern p : patterns) {
+                        if (p.matcher(path).matches()) {
+                            linearHits++;
+                        }
+                    }
+                }
+            }
+            long linear = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int it = 0; it < iterations; it++) {
+                for (String path : paths) {
+                    List<List<Object>> found = new ArrayList<>(2);
+                    index.collect(path, path, found);
+                    indexHits += found.size();
+                }
+            }
+            long indexed = System.nanoTime() - start;
+            int lookups = iterations * paths.length;
+            System.out.println("Linear scan of " + routes + " patterns: "
+                    + (linear / lookups) + "ns/lookup; route index: "
+                    + (indexed / lookups) + "ns/lookup");
+        }
+        assertEquals(linearHits, indexHits);
+    }
+
+    private static String randomPath(Random rnd, String[] parts) {
+        StringBuilder sb = new StringBuilder();
+        int count = 1 + rnd.nextInt(3);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append('/');
+            }
+            sb.append(parts[rnd.nextInt(parts.length)]);
+        }
+        return sb.toString();
+    }
+}
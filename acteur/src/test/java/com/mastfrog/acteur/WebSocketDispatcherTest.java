@@ -0,0 +1,237 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur;
+
+import com.google.inject.Provider;
+import com.mastfrog.acteur.WebSocketDispatcherTest.M;
+import com.mastfrog.acteur.server.ServerModule;
+import com.mastfrog.acteur.server.WebSocketEvent;
+import com.mastfrog.acteur.util.RequestID;
+import com.mastfrog.acteurbase.Chain;
+import com.mastfrog.acteurbase.Deferral;
+import com.mastfrog.acteurbase.ExecutionPolicy;
+import com.mastfrog.giulius.scope.ReentrantScope;
+import com.mastfrog.giulius.tests.GuiceRunner;
+import com.mastfrog.giulius.tests.TestWith;
+import com.mastfrog.util.codec.Codec;
+import com.mastfrog.util.thread.QuietAutoCloseable;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Named;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+@RunWith(GuiceRunner.class)
+@TestWith({M.class, SilentRequestLogger.class})
+public class WebSocketDispatcherTest {
+
+    @Test
+    public void testChainRequirementsAreDetected() {
+        assertFalse(WebSocketDispatcher.requiresChain(PlainActeur.class));
+        assertTrue(WebSocketDispatcher.requiresChain(DeferringActeur.class));
+        assertTrue(WebSocketDispatcher.requiresChain(ChainActeur.class));
+        assertTrue(WebSocketDispatcher.requiresChain(DeferralProviderActeur.class));
+        assertTrue(WebSocketDispatcher.requiresChain(FieldInjectedActeur.class));
+        assertFalse(WebSocketDispatcher.requiresChain(ThenActeur.class));
+        assertFalse(WebSocketDispatcher.requiresChain(ContinueActeur.class));
+    }
+
+    @Test(timeout = 20000)
+    public void testThenResumesTheFrame(Frames frames) throws Throwable {
+        assertEquals("deferred hello", frames.send("hello", ThenActeur.class, ReplyActeur.class));
+        assertEquals("deferred again", frames.send("again", ThenActeur.class, ReplyActeur.class));
+    }
+
+    @Test(timeout = 20000)
+    public void testContinueAfterInsertsIntoTheFrame(Frames frames) throws Throwable {
+        assertEquals("continued hello", frames.send("hello", ContinueActeur.class, ReplyActeur.class));
+    }
+
+    static final class ThenActeur extends Acteur {
+
+        @Inject
+        ThenActeur(WebSocketEvent evt) {
+            String text = ((TextWebSocketFrame) evt.request()).text();
+            then(res -> CompletableFuture.runAsync(() -> res.resume("deferred " + text)));
+        }
+    }
+
+    static final class ContinueActeur extends Acteur {
+
+        @Inject
+        ContinueActeur(WebSocketEvent evt) {
+            String text = ((TextWebSocketFrame) evt.request()).text();
+            continueAfter(CompletableFuture.supplyAsync(() -> "continued " + text));
+        }
+    }
+
+    static final class ReplyActeur extends Acteur {
+
+        @Inject
+        ReplyActeur(String msg) {
+            ok(msg);
+        }
+    }
+
+    /**
+     * Runs frames through a dispatcher, as PagesImpl2 does for a channel
+     * which has been upgraded, and collects what is written back.
+     */
+    static final class Frames {
+
+        private final Application app;
+        private final ReentrantScope scope;
+        private final ExecutorService exe;
+        private final Codec codec;
+
+        @Inject
+        Frames(Application app, ReentrantScope scope,
+                @Named(ServerModule.BACKGROUND_THREAD_POOL_NAME) ExecutorService exe, Codec codec) {
+            this.app = app;
+            this.scope = scope;
+            this.exe = exe;
+            this.codec = codec;
+        }
+
+        String send(String text, Class<?>... acteurs) throws Exception {
+            WsPage page = new WsPage();
+            page.setApplication(app);
+            // Stands in for the upgrade request, which is in the context
+            // captured by the upgrade
+            HttpEvent upgrade = (HttpEvent) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{HttpEvent.class}, (proxy, method, args) -> null);
+            WebSocketDispatcher dispatcher = WebSocketDispatcher.create(app, page, Arrays.asList((Object[]) acteurs),
+                    new Object[]{upgrade}, ExecutionPolicy.INLINE, exe, scope, true);
+            assertTrue(dispatcher.canDispatch());
+
+            BlockingQueue<Object> written = new LinkedBlockingQueue<>();
+            EmbeddedChannel channel = new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+                @Override
+                public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+                    written.offer(msg);
+                    promise.setSuccess();
+                }
+            });
+            WebSocketEvent event = new WebSocketEvent(new TextWebSocketFrame(text),
+                    channel.pipeline().firstContext(), channel.remoteAddress(), codec);
+            RequestID id = new RequestID.Factory().next();
+            try (QuietAutoCloseable cl = scope.enter(id, event)) {
+                dispatcher.dispatch(id, event);
+            }
+            Object reply = written.poll(10, TimeUnit.SECONDS);
+            assertNotNull("Nothing written for " + Arrays.toString(acteurs), reply);
+            assertTrue(reply.toString(), reply instanceof BinaryWebSocketFrame);
+            ByteBuf content = ((BinaryWebSocketFrame) reply).content();
+            try {
+                return content.toString(StandardCharsets.UTF_8);
+            } finally {
+                content.release();
+            }
+        }
+    }
+
+    static final class WsPage extends Page {
+
+    }
+
+    @SuppressWarnings("deprecation")
+    @ImplicitBindings(String.class)
+    static final class A extends Application {
+
+    }
+
+    static final class M extends ServerModule<A> {
+
+        M() {
+            super(A.class);
+        }
+    }
+
+    static final class PlainActeur extends Acteur {
+
+        @Inject
+        PlainActeur(WebSocketFrame frame, WebSocketEvent evt) {
+            ok(frame.content().readableBytes());
+        }
+    }
+
+    static final class DeferringActeur extends Acteur {
+
+        @Inject
+        DeferringActeur(Deferral defer) {
+            next();
+        }
+    }
+
+    static final class ChainActeur extends Acteur {
+
+        @Inject
+        @SuppressWarnings("rawtypes")
+        ChainActeur(Chain chain) {
+            next();
+        }
+    }
+
+    static final class DeferralProviderActeur extends Acteur {
+
+        @Inject
+        DeferralProviderActeur(Provider<Deferral> defer) {
+            next();
+        }
+    }
+
+    static final class FieldInjectedActeur extends Acteur {
+
+        @Inject
+        Deferral defer;
+
+        @Inject
+        FieldInjectedActeur() {
+            next();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.mastfrog.acteur.annotations;
+
+import com.google.inject.name.Names;
+import com.mastfrog.acteur.Application;
+import com.mastfrog.acteur.SilentRequestLogger;
+import com.mastfrog.acteur.annotations.InstantiatorPage.MembersInjected;
+import com.mastfrog.acteur.annotations.InstantiatorPage.Primitive;
+import com.mastfrog.acteur.annotations.InstantiatorPage.Qualified;
+import com.mastfrog.acteur.annotations.InstantiatorPage.Respond;
+import com.mastfrog.acteur.server.ServerModule;
+import com.mastfrog.acteurbase.Instantiator;
+import com.mastfrog.giulius.tests.GuiceRunner;
+import com.mastfrog.giulius.tests.TestWith;
+import com.mastfrog.netty.http.test.harness.TestHarness;
+import com.mastfrog.netty.http.test.harness.TestHarnessModule;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Checks the page generated from InstantiatorPage: acteurs whose
+ * constructors can be called directly get instantiators, the members-injected
+ * one is left to Guice, and all of them run.
+ *
+ * @author Tim Boudreau
+ */
+@TestWith({TestHarnessModule.class, GeneratedInstantiatorsTest.M.class, SilentRequestLogger.class})
+@RunWith(GuiceRunner.class)
+public class GeneratedInstantiatorsTest {
+
+    @Test
+    public void testInstantiatorsAreGenerated() {
+        Set<Type> created = new HashSet<>();
+        for (Class<?> nested : InstantiatorPage__GenPage.class.getDeclaredClasses()) {
+            for (Type iface : nested.getGenericInterfaces()) {
+                if (iface instanceof ParameterizedType
+                        && ((ParameterizedType) iface).getRawType() == Instantiator.class) {
+                    created.add(((ParameterizedType) iface).getActualTypeArguments()[0]);
+                }
+            }
+        }
+        assertEquals(new HashSet<>(Arrays.asList(Qualified.class, Primitive.class,
+                InstantiatorPage.class, Respond.class)), created);
+        assertFalse("Members injection should fall back to Guice",
+                created.contains(MembersInjected.class));
+    }
+
+    @Test(timeout = 60000L)
+    public void testGeneratedPageRuns(TestHarness harn) throws Throwable {
+        harn.get("/instantiated").go().await().assertStatus(OK)
+                .assertContent("qualified:hello,primitive:3,generator,members");
+    }
+
+    static class M extends ServerModule<App> {
+
+        M() {
+            super(App.class, 2, 2, 2);
+        }
+
+        @Override
+        protected void configure() {
+            super.configure();
+            bind(String.class).annotatedWith(Names.named("greeting")).toInstance("hello");
+            bind(Integer.class).annotatedWith(Names.named("count")).toInstance(3);
+        }
+    }
+
+    static class App extends Application {
+
+        App() {
+            add(InstantiatorPage__GenPage.class);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.mastfrog.acteur.annotations;
+
+import com.mastfrog.acteur.SilentRequestLogger;
+import com.mastfrog.acteur.annotations.GenericApplicationTest.GAM;
+import com.mastfrog.acteur.server.StartupTimeline;
+import com.mastfrog.giulius.Dependencies;
+import com.mastfrog.netty.http.test.harness.TestHarnessModule;
+import com.mastfrog.giulius.tests.GuiceRunner;
+import com.mastfrog.giulius.tests.TestWith;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * With acteur.fast.startup set (see GenericApplicationFastStartupTest.properties),
+ * the registry is read and the modules it lists instantiated in parallel -
+ * they must still all be installed.
+ *
+ * @author Tim Boudreau
+ */
+@TestWith({GAM.class, TestHarnessModule.class, SilentRequestLogger.class})
+@RunWith(GuiceRunner.class)
+public class GenericApplicationFastStartupTest {
+
+    @Test
+    public void testRegistryModulesAreInstalled(Dependencies deps, StartupTimeline timeline) {
+        Short moduleCheck = deps.getInstance(Short.class);
+        assertNotNull(moduleCheck);
+        assertEquals(537, moduleCheck.intValue());
+        assertEquals("Kilroy was here", deps.getInstance(StringBuilder.class) + "");
+        assertNotNull(deps.getInstance(GenericApplication.class));
+
+        Set<Object> phases = new HashSet<>();
+        for (Map<String, Object> phase : timeline.phases()) {
+            phases.add(phase.get("name"));
+        }
+        assertTrue(phases.toString(), phases.contains("load page registry"));
+        assertTrue(phases.toString(), phases.contains("instantiate DummyModule"));
+        assertTrue(phases.toString(), phases.contains("instantiate AnotherDummyModule"));
+    }
+}
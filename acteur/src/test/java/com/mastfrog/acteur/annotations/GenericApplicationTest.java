@@ -28,7 +28,7 @@ import org.junit.runner.RunWith;
  *
  * @author Tim Boudreau
  */
-@TestWith({GenericApplicationModule.class, TestHarnessModule.class, SilentRequestLogger.class})
+@TestWith({GenericApplicationTest.GAM.class, TestHarnessModule.class, SilentRequestLogger.class})
 @RunWith(GuiceRunner.class)
 public class GenericApplicationTest {
     
@@ -37,6 +37,15 @@ public class GenericApplicationTest {
         new ServerBuilder().add(s).build().start(8080).await();
     }
 
+    // InstantiatorPage belongs to GeneratedInstantiatorsTest and needs
+    // bindings of its own
+    public static class GAM extends GenericApplicationModule<GenericApplication> {
+
+        public GAM(Settings settings) {
+            super(settings, InstantiatorPage__GenPage.class);
+        }
+    }
+
     static class M extends AbstractModule {
 
         @Override
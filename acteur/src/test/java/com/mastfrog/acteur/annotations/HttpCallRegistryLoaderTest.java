@@ -0,0 +1,72 @@
+package com.mastfrog.acteur.annotations;
+
+import com.mastfrog.acteur.annotations.HttpCallRegistryLoader.Entry;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class HttpCallRegistryLoaderTest {
+
+    private static final String PAGE = FakePage.class.getName();
+
+    @Test
+    public void testNegativeOrder() throws Exception {
+        Entry e = parse(PAGE + ":-3");
+        assertNotNull(e);
+        assertEquals(FakePage.class, e.type);
+        assertEquals(-3, e.order);
+        assertTrue(e.bindings.isEmpty());
+    }
+
+    @Test
+    public void testOrderWithBindings() throws Exception {
+        Entry e = parse(PAGE + ":5{java.lang.String,java.lang.Integer}");
+        assertNotNull(e);
+        assertEquals(FakePage.class, e.type);
+        assertEquals(5, e.order);
+        assertEquals(new LinkedHashSet<>(Arrays.asList(String.class, Integer.class)), e.bindings);
+    }
+
+    @Test
+    public void testMissingOrder() throws Exception {
+        assertNull(parse(PAGE));
+        assertNull(parse(PAGE + ":"));
+        assertNull(parse(PAGE + ":{java.lang.String}"));
+    }
+
+    @Test
+    public void testBareMinusSign() throws Exception {
+        assertNull(parse(PAGE + ":-"));
+        assertNull(parse(PAGE + ":-{java.lang.String}"));
+    }
+
+    @Test
+    public void testNonNumericOrder() throws Exception {
+        assertNull(parse(PAGE + ":5x"));
+        assertNull(parse(PAGE + ":--5"));
+    }
+
+    @Test
+    public void testTrailingCarriageReturn() throws Exception {
+        Entry e = parse(PAGE + ":7\r");
+        assertNotNull(e);
+        assertEquals(7, e.order);
+
+        e = parse(PAGE + ":-12{java.lang.String}\r");
+        assertNotNull(e);
+        assertEquals(-12, e.order);
+        assertEquals(new LinkedHashSet<>(Arrays.asList(String.class)), e.bindings);
+    }
+
+    private static Entry parse(String line) throws ClassNotFoundException {
+        return HttpCallRegistryLoader.parseLine(0, line, null);
+    }
+}
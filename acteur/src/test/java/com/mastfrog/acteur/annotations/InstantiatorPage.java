@@ -0,0 +1,91 @@
+package com.mastfrog.acteur.annotations;
+
+import com.google.inject.name.Named;
+import com.mastfrog.acteur.Acteur;
+import com.mastfrog.acteur.annotations.InstantiatorPage.MembersInjected;
+import com.mastfrog.acteur.annotations.InstantiatorPage.Primitive;
+import com.mastfrog.acteur.annotations.InstantiatorPage.Qualified;
+import com.mastfrog.acteur.annotations.InstantiatorPage.Respond;
+import static com.mastfrog.acteur.headers.Method.GET;
+import com.mastfrog.acteur.preconditions.Methods;
+import com.mastfrog.acteur.preconditions.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+/**
+ * Exercises the instantiators generated for the acteurs of a page - see
+ * GeneratedInstantiatorsTest.
+ *
+ * @author Tim Boudreau
+ */
+@HttpCall(order = 40000)
+@Path("/instantiated")
+@Methods(GET)
+@Precursors({Qualified.class, Primitive.class})
+@Concluders({MembersInjected.class, Respond.class})
+public class InstantiatorPage extends Acteur {
+
+    @Inject
+    InstantiatorPage(Provider<Trace> trace) {
+        trace.get().add("generator");
+        next();
+    }
+
+    public static class Qualified extends Acteur {
+
+        @Inject
+        public Qualified(@Named("greeting") String greeting, Trace trace) {
+            trace.add("qualified:" + greeting);
+            next();
+        }
+    }
+
+    static class Primitive extends Acteur {
+
+        @Inject
+        Primitive(@javax.inject.Named("count") int count, Trace trace) {
+            trace.add("primitive:" + count);
+            next();
+        }
+    }
+
+    static class MembersInjected extends Acteur {
+
+        MembersInjected() {
+            next();
+        }
+
+        @Inject
+        void init(Trace trace) {
+            trace.add("members");
+        }
+    }
+
+    static class Respond extends Acteur {
+
+        @Inject
+        Respond(Trace trace) {
+            ok(String.join(",", trace.steps()));
+        }
+    }
+
+    @Singleton
+    public static final class Trace {
+
+        private final List<String> steps = Collections.synchronizedList(new ArrayList<>());
+
+        void add(String step) {
+            steps.add(step);
+        }
+
+        List<String> steps() {
+            synchronized (steps) {
+                return new ArrayList<>(steps);
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.debug;
+
+import com.mastfrog.acteur.util.RequestID;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class LatencyProbeTest {
+
+    @Test
+    public void testBucketsCoverValuesWithinPrecision() {
+        int last = -1;
+        for (long v = 0; v < 1_000_000; v += (v < 100 ? 1 : v / 7)) {
+            int ix = LatencyHistogram.indexOf(v);
+            assertTrue(ix >= last);
+            last = ix;
+            long high = LatencyHistogram.highestValueIn(ix);
+            assertTrue(v + " in bucket up to " + high, high >= v);
+            assertTrue(v + " in bucket up to " + high, high - v <= Math.max(1, v / 16));
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.indexOf(LatencyHistogram.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram hist = new LatencyHistogram();
+        assertEquals(0, hist.valueAt(50));
+        for (int i = 1; i <= 1000; i++) {
+            hist.record(i);
+        }
+        assertEquals(1000, hist.count());
+        assertEquals(1000, hist.max());
+        assertEquals(500500, hist.sum());
+        assertWithin(500, hist.valueAt(50));
+        assertWithin(990, hist.valueAt(99));
+        assertEquals(1000, hist.valueAt(100));
+        Map<String, Object> map = hist.toMap();
+        assertEquals(1000L, map.get("count"));
+        assertEquals(500L, map.get("mean"));
+    }
+
+    private static void assertWithin(long expected, long got) {
+        assertTrue("Expected ~" + expected + " got " + got,
+                got >= expected && got <= expected + expected / 16);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testTracesAreAggregatedAndSampled() {
+        LatencyProbe probe = new LatencyProbe(2);
+        RequestID.Factory ids = new RequestID.Factory();
+        for (int i = 0; i < 10; i++) {
+            RequestID id = ids.next();
+            probe.onBeforeProcessRequest(id, null);
+            probe.onBeforeRunPage(id, null, null);
+            probe.onBeforeRunActeur(id, null, null);
+            probe.onDeferred(id, null, null);
+            probe.onResumed(id, null, null);
+            probe.onBeforeSendResponse(id, null, null, OK, false, null);
+            probe.onResponseFlushed(id, null, OK, true, true);
+        }
+        RequestID unmatched = ids.next();
+        probe.onBeforeProcessRequest(unmatched, null);
+        probe.onFallthrough(unmatched, null);
+
+        Map<String, Object> map = probe.toMap();
+        assertEquals(5L, map.get("completed"));
+        assertEquals(1L, map.get("unmatched"));
+        assertEquals(0, map.get("inFlight"));
+        Map<String, Object> pages = (Map<String, Object>) map.get("pages");
+        Map<String, Object> phases = (Map<String, Object>) pages.get("<unknown>");
+        assertNotNull(pages.toString(), phases);
+        for (String phase : new String[]{"routing", "queued", "acteurs", "write", "total"}) {
+            Map<String, Object> hist = (Map<String, Object>) phases.get(phase);
+            assertNotNull(phase + " missing in " + phases, hist);
+            assertEquals(phase, 5L, hist.get("count"));
+        }
+        assertFalse(phases.containsKey("headers"));
+
+        String prom = probe.toPrometheus();
+        assertTrue(prom, prom.contains("acteur_request_phase_microseconds_count{page=\"<unknown>\",phase=\"total\"} 5"));
+        assertTrue(prom, prom.contains("acteur_requests_unmatched_total 1"));
+    }
+}
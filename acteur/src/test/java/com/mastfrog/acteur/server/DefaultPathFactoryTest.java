@@ -23,9 +23,11 @@
  */
 package com.mastfrog.acteur.server;
 
+import com.google.common.cache.CacheStats;
 import com.mastfrog.acteur.headers.Headers;
 import com.mastfrog.settings.SettingsBuilder;
 import static com.mastfrog.url.Protocols.HTTP;
+import com.mastfrog.url.Path;
 import com.mastfrog.url.URL;
 import io.netty.handler.codec.http.DefaultHttpHeaders;
 import io.netty.handler.codec.http.DefaultHttpRequest;
@@ -34,6 +36,7 @@ import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpVersion;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 
@@ -94,4 +97,64 @@ public class DefaultPathFactoryTest {
 
     }
 
+    @Test
+    public void testPathPortion() {
+        assertEquals("", DefaultPathFactory.pathPortion("", ""));
+        assertEquals("", DefaultPathFactory.pathPortion("/", ""));
+        assertEquals("a/b", DefaultPathFactory.pathPortion("/a/b", ""));
+        assertEquals("a/b", DefaultPathFactory.pathPortion("/a/b/", ""));
+        assertEquals("a/b", DefaultPathFactory.pathPortion("/a/b?x=y", ""));
+        assertEquals("a/b", DefaultPathFactory.pathPortion("a/b/?x=y&z=/q/", ""));
+        assertEquals("", DefaultPathFactory.pathPortion("/?x=y", ""));
+        assertEquals("/baz", DefaultPathFactory.pathPortion("/foo/bar/baz?q", "foo/bar"));
+        assertEquals("", DefaultPathFactory.pathPortion("/foo/bar?q", "foo/bar"));
+        assertEquals("foo", DefaultPathFactory.pathPortion("/foo?q", "foo/bar"));
+        String plain = "a/b";
+        assertSame(plain, DefaultPathFactory.pathPortion(plain, ""));
+    }
+
+    @Test
+    public void testPathCacheIgnoresQueryAndIsBounded() {
+        DefaultPathFactory f = new DefaultPathFactory(new SettingsBuilder()
+                .add(ServerModule.SETTINGS_KEY_PATH_CACHE_SIZE, 10)
+                .build());
+        Path first = f.toPath("/api/things?id=1");
+        for (int i = 2; i < 100; i++) {
+            assertSame(first, f.toPath("/api/things?id=" + i));
+        }
+        assertEquals("api/things", first.toString());
+        CacheStats stats = f.pathCacheStats();
+        assertEquals(1, stats.missCount());
+        assertEquals(98, stats.hitCount());
+        for (int i = 0; i < 100; i++) {
+            f.toPath("/api/things/" + i);
+        }
+        assertTrue(f.pathCacheStats().evictionCount() >= 90);
+    }
+
+    @Test
+    public void testPathCacheBoundedByCharacters() {
+        DefaultPathFactory f = new DefaultPathFactory(new SettingsBuilder()
+                .add(ServerModule.SETTINGS_KEY_PATH_CACHE_SIZE, 1000)
+                .add(ServerModule.SETTINGS_KEY_PATH_CACHE_MAX_CHARS, 1000)
+                .build());
+        StringBuilder sb = new StringBuilder("/");
+        for (int i = 0; i < 200; i++) {
+            sb.append('x');
+        }
+        for (int i = 0; i < 20; i++) {
+            f.toPath(sb + "/" + i);
+        }
+        assertTrue(f.pathCacheStats().evictionCount() >= 15);
+    }
+
+    @Test
+    public void testPathCacheCanBeDisabled() {
+        DefaultPathFactory f = new DefaultPathFactory(new SettingsBuilder()
+                .add(ServerModule.SETTINGS_KEY_PATH_CACHE_SIZE, 0)
+                .build());
+        assertEquals("a/b", f.toPath("/a/b").toString());
+        assertEquals("a/b", f.toPath("/a/b").toString());
+        assertEquals(0, f.pathCacheStats().hitCount());
+    }
 }
@@ -25,6 +25,10 @@ package com.mastfrog.acteur.server;
 
 import static com.mastfrog.acteur.server.ServerModule.SETTINGS_KEY_BASE_PATH;
 import static com.mastfrog.acteur.server.ServerModule.SETTINGS_KEY_URLS_HOST_NAME;
+import com.google.common.net.MediaType;
+import com.mastfrog.acteur.headers.Headers;
+import com.mastfrog.acteur.util.CacheControl;
+import com.mastfrog.acteur.util.CacheControlTypes;
 import com.mastfrog.settings.SettingsBuilder;
 import com.mastfrog.url.Path;
 import com.mastfrog.url.URL;
@@ -35,10 +39,16 @@ import io.netty.handler.codec.http.DefaultHttpRequest;
 import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.cookie.Cookie;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import org.junit.Before;
 import org.junit.Test;
@@ -101,6 +111,39 @@ public class EventImplTest {
         assertEquals("https://x.com:7445/foo/bar/baz/quux", evt.getRequestURL(true));
     }
 
+    @Test
+    public void testTypedHeadersAreParsedOnce() {
+        EventImpl evt = newEvent(emptySettings, "http://foo.com/foo",
+                "Content-Type", "application/json; charset=UTF-8",
+                "Cookie", "a=b; c=d");
+        MediaType type = evt.header(Headers.CONTENT_TYPE);
+        assertEquals(MediaType.JSON_UTF_8, type);
+        assertSame(type, evt.header(Headers.CONTENT_TYPE));
+        assertNull(evt.header(Headers.IF_NONE_MATCH));
+        assertNull(evt.header(Headers.IF_NONE_MATCH));
+
+        Cookie[] cookies = evt.header(Headers.COOKIE_B);
+        assertEquals(2, cookies.length);
+        cookies[0] = null;
+        cookies[1].setValue("changed");
+        Cookie[] again = evt.header(Headers.COOKIE_B);
+        assertNotSame(cookies, again);
+        assertNotNull("Cached array was modified by a caller", again[0]);
+        assertEquals("Cached cookie was modified by a caller", "d", again[1].value());
+    }
+
+    @Test
+    public void testMutableTypedHeadersAreNotShared() {
+        EventImpl evt = newEvent(emptySettings, "http://foo.com/foo",
+                "Cache-Control", "no-cache");
+        CacheControl cc = evt.header(Headers.CACHE_CONTROL);
+        assertTrue(cc.contains(CacheControlTypes.no_cache));
+        cc.add(CacheControlTypes.no_store);
+        CacheControl again = evt.header(Headers.CACHE_CONTROL);
+        assertNotSame(cc, again);
+        assertFalse(again.contains(CacheControlTypes.no_store));
+    }
+
     private EventImpl newEvent(PathFactory paths, String url, String... headers) {
         return newEvent(paths, false, url, headers);
     }
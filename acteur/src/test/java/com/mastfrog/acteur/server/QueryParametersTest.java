@@ -0,0 +1,112 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.server;
+
+import java.util.Arrays;
+import java.util.Collections;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class QueryParametersTest {
+
+    @Test
+    public void testSimpleParameters() {
+        QueryParameters p = new QueryParameters("/foo/bar?a=1&b=two&c=&d");
+        assertEquals(4, p.size());
+        assertEquals("1", p.first("a"));
+        assertEquals("two", p.first("b"));
+        assertEquals("", p.first("c"));
+        assertEquals("", p.first("d"));
+        assertNull(p.first("e"));
+        assertNull(p.first("tw"));
+        assertEquals(Arrays.asList("a", "b", "c", "d"), Arrays.asList(p.asMap().keySet().toArray()));
+    }
+
+    @Test
+    public void testNoQuery() {
+        assertTrue(new QueryParameters("/foo/bar").isEmpty());
+        assertTrue(new QueryParameters("/foo/bar?").isEmpty());
+        assertTrue(new QueryParameters("/foo/bar?#frag").isEmpty());
+        assertTrue(new QueryParameters("/foo/bar?&&").isEmpty());
+        assertTrue(new QueryParameters("/foo/bar").asMap().isEmpty());
+    }
+
+    @Test
+    public void testFragmentAndSemicolonsAndEquals() {
+        QueryParameters p = new QueryParameters("/x?a=1;b=2&c=x=y#c=3");
+        assertEquals("1", p.first("a"));
+        assertEquals("2", p.first("b"));
+        assertEquals("x=y", p.first("c"));
+        assertEquals(3, p.size());
+    }
+
+    @Test
+    public void testDecoding() {
+        QueryParameters p = new QueryParameters("/x?q=hello+world&na%6De=%D0%B4%D0%BE%D0%BC");
+        assertEquals("hello world", p.first("q"));
+        assertEquals("\u0434\u043e\u043c", p.first("name"));
+    }
+
+    @Test
+    public void testRepeatedParameters() {
+        QueryParameters p = new QueryParameters("/search?tag=a&x=1&tag=b&tag=c");
+        assertEquals(Arrays.asList("a", "b", "c"), p.all("tag"));
+        assertEquals(Collections.singletonList("1"), p.all("x"));
+        assertEquals(Collections.emptyList(), p.all("y"));
+        // The map view keeps the first value, as it always has
+        assertEquals("a", p.asMap().get("tag"));
+    }
+
+    @Test
+    public void testNumbers() {
+        QueryParameters p = new QueryParameters("/n?a=42&b=-17&c=9223372036854775807&d=-9223372036854775808"
+                + "&e=9223372036854775808&f=12x&g=&h=-&i=%34%32&j=2147483648");
+        assertEquals(42, p.intValue(p.indexOf("a")));
+        assertEquals(-17, p.intValue(p.indexOf("b")));
+        assertEquals(Long.MAX_VALUE, p.longValue(p.indexOf("c")));
+        assertEquals(Long.MIN_VALUE, p.longValue(p.indexOf("d")));
+        assertEquals(42, p.intValue(p.indexOf("i")));
+        for (String bad : new String[]{"e", "f", "g", "h"}) {
+            try {
+                p.longValue(p.indexOf(bad));
+                fail("Should not parse " + bad + "=" + p.first(bad));
+            } catch (NumberFormatException ex) {
+                // ok
+            }
+        }
+        try {
+            p.intValue(p.indexOf("j"));
+            fail("Out of int range");
+        } catch (NumberFormatException ex) {
+            // ok
+        }
+    }
+}
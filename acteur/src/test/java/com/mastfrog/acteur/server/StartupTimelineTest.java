@@ -0,0 +1,63 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.server;
+
+import com.mastfrog.util.thread.QuietAutoCloseable;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class StartupTimelineTest {
+
+    @Test
+    public void testPhasesAreOrderedAndStopAtStart() {
+        StartupTimeline timeline = new StartupTimeline();
+        long now = System.nanoTime() - 10_000_000;
+        timeline.record("second", now + 1_000_000, now + 3_000_000);
+        timeline.record("first", now, now + 2_000_000);
+        try (QuietAutoCloseable ac = timeline.begin("third")) {
+            assertFalse(timeline.isStarted());
+        }
+        assertEquals(-1, timeline.totalMillis());
+        timeline.started();
+        assertTrue(timeline.isStarted());
+        assertTrue(timeline.totalMillis() >= 0);
+        timeline.record("ignored", now, now + 1);
+        List<Map<String, Object>> phases = timeline.phases();
+        assertEquals(phases.toString(), 3, phases.size());
+        assertEquals("first", phases.get(0).get("name"));
+        assertEquals("second", phases.get(1).get("name"));
+        assertEquals("third", phases.get(2).get("name"));
+        assertEquals(2D, (Double) phases.get(0).get("durationMillis"), 0.001D);
+        assertEquals(Thread.currentThread().getName(), phases.get(0).get("thread"));
+        assertTrue(timeline.toString(), timeline.toString().contains("second"));
+    }
+}
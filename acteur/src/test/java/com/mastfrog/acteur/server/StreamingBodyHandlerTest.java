@@ -0,0 +1,276 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.server;
+
+import com.mastfrog.acteur.ContentStream;
+import com.mastfrog.acteur.ContentStream.ChunkSubscriber;
+import static com.mastfrog.acteur.server.PipelineDecorator.PRE_CONTENT_PAGE_HANDLER;
+import static com.mastfrog.acteur.server.PipelineDecorator.STREAMING_BODY_HANDLER;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.ReferenceCountUtil;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class StreamingBodyHandlerTest {
+
+    @Test
+    public void testChunksAreDeliveredOnlyOnDemand() {
+        EmbeddedChannel channel = channel();
+        ContentStream stream = channel.attr(StreamingBodyHandler.STREAMING_BODY_KEY).get();
+        assertNotNull(stream);
+        assertFalse("Auto-read should be off while streaming", channel.config().isAutoRead());
+
+        Collector collector = new Collector();
+        stream.subscribe(collector);
+        HttpContent a = chunk("a");
+        HttpContent b = chunk("b");
+        channel.writeInbound(a);
+        channel.writeInbound(b);
+        assertTrue("Nothing requested yet", collector.chunks.isEmpty());
+        assertEquals(1, a.refCnt());
+
+        stream.request(1);
+        assertEquals(Arrays.asList("a"), collector.chunks);
+        assertEquals(0, a.refCnt());
+
+        stream.request(5);
+        assertEquals(Arrays.asList("a", "b"), collector.chunks);
+
+        HttpContent c = new DefaultLastHttpContent(Unpooled.copiedBuffer("c", UTF_8));
+        channel.writeInbound(c);
+        assertEquals(Arrays.asList("a", "b", "c"), collector.chunks);
+        assertTrue(collector.completed);
+        assertEquals(3, stream.bytesDelivered());
+        assertEquals(0, c.refCnt());
+
+        assertTrue("Auto-read not restored", channel.config().isAutoRead());
+        assertNull("Handler not removed", channel.pipeline().get(STREAMING_BODY_HANDLER));
+        assertNull(channel.attr(StreamingBodyHandler.STREAMING_BODY_KEY).get());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testCancelDiscardsRemainingContent() {
+        EmbeddedChannel channel = channel();
+        ContentStream stream = channel.attr(StreamingBodyHandler.STREAMING_BODY_KEY).get();
+        Collector collector = new Collector();
+        stream.subscribe(collector).request(1);
+        channel.writeInbound(chunk("a"));
+        HttpContent b = chunk("b");
+        channel.writeInbound(b);
+        stream.cancel();
+        assertEquals(0, b.refCnt());
+        HttpContent last = new DefaultLastHttpContent(Unpooled.copiedBuffer("c", UTF_8));
+        channel.writeInbound(last);
+        assertEquals(0, last.refCnt());
+        assertEquals(Arrays.asList("a"), collector.chunks);
+        assertFalse(collector.completed);
+        assertTrue(channel.config().isAutoRead());
+        assertNull(channel.pipeline().get(STREAMING_BODY_HANDLER));
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testCloseBeforeLastChunkIsAnError() {
+        EmbeddedChannel channel = channel();
+        ContentStream stream = channel.attr(StreamingBodyHandler.STREAMING_BODY_KEY).get();
+        Collector collector = new Collector();
+        stream.subscribe(collector).request(Long.MAX_VALUE);
+        channel.writeInbound(chunk("a"));
+        channel.close();
+        assertEquals(Arrays.asList("a"), collector.chunks);
+        assertNotNull(collector.error);
+        assertFalse(collector.completed);
+    }
+
+    @Test
+    public void testRespondingWithoutReadingDiscardsTheBody() {
+        List<String> requests = new ArrayList<>();
+        EmbeddedChannel channel = channel(upload(), requests);
+        ContentStream stream = channel.attr(StreamingBodyHandler.STREAMING_BODY_KEY).get();
+        Collector collector = new Collector();
+        stream.subscribe(collector);
+        HttpContent a = chunk("a");
+        channel.writeInbound(a);
+        assertFalse(channel.config().isAutoRead());
+
+        channel.writeOutbound(response(HttpResponseStatus.BAD_REQUEST));
+        assertEquals("Buffered content not released", 0, a.refCnt());
+        assertTrue(collector.error instanceof CancellationException);
+        assertTrue(collector.chunks.isEmpty());
+        assertFalse("Body not fully received yet", channel.config().isAutoRead());
+
+        HttpContent b = chunk("b");
+        HttpContent last = new DefaultLastHttpContent(Unpooled.copiedBuffer("c", UTF_8));
+        channel.writeInbound(b);
+        channel.writeInbound(last);
+        assertEquals(0, b.refCnt());
+        assertEquals(0, last.refCnt());
+        assertTrue("Auto-read not restored", channel.config().isAutoRead());
+        assertNull("Handler not removed", channel.pipeline().get(STREAMING_BODY_HANDLER));
+        assertTrue(channel.isOpen());
+
+        channel.writeInbound(new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/next"));
+        assertEquals("Second request not served", Arrays.asList("/upload", "/next"), requests);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testRespondingAfterBodyArrivedRestoresAutoRead() {
+        EmbeddedChannel channel = channel(upload(), new ArrayList<>());
+        channel.writeInbound(chunk("a"));
+        HttpContent last = new DefaultLastHttpContent(Unpooled.copiedBuffer("b", UTF_8));
+        channel.writeInbound(last);
+        channel.writeOutbound(response(HttpResponseStatus.OK));
+        assertEquals(0, last.refCnt());
+        assertTrue(channel.config().isAutoRead());
+        assertNull(channel.pipeline().get(STREAMING_BODY_HANDLER));
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testContinueIsSentOnFirstRequest() {
+        HttpRequest req = upload();
+        req.headers().set(HttpHeaderNames.EXPECT, HttpHeaderValues.CONTINUE);
+        EmbeddedChannel channel = channel(req, new ArrayList<>());
+        ContentStream stream = channel.attr(StreamingBodyHandler.STREAMING_BODY_KEY).get();
+        assertNull("Continue sent before the body was wanted", channel.readOutbound());
+        Collector collector = new Collector();
+        stream.subscribe(collector).request(1);
+        FullHttpResponse cont = channel.readOutbound();
+        assertNotNull("No 100 Continue sent", cont);
+        assertEquals(HttpResponseStatus.CONTINUE, cont.status());
+        cont.release();
+        stream.request(1);
+        assertNull("Continue sent twice", channel.readOutbound());
+
+        channel.writeInbound(new DefaultLastHttpContent(Unpooled.copiedBuffer("a", UTF_8)));
+        assertTrue(collector.completed);
+        assertTrue(channel.isOpen());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testRespondingWithoutContinueClosesTheConnection() {
+        HttpRequest req = upload();
+        req.headers().set(HttpHeaderNames.EXPECT, HttpHeaderValues.CONTINUE);
+        EmbeddedChannel channel = channel(req, new ArrayList<>());
+        channel.writeOutbound(response(HttpResponseStatus.FORBIDDEN));
+        FullHttpResponse resp = channel.readOutbound();
+        assertEquals(HttpResponseStatus.FORBIDDEN, resp.status());
+        resp.release();
+        assertFalse("Client may never send the body, so the connection "
+                + "should be closed", channel.isOpen());
+        channel.finishAndReleaseAll();
+    }
+
+    private static EmbeddedChannel channel() {
+        return channel(upload(), new ArrayList<>());
+    }
+
+    private static EmbeddedChannel channel(HttpRequest first, List<String> requests) {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.pipeline().addLast(PRE_CONTENT_PAGE_HANDLER, new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+                if (msg instanceof HttpRequest) {
+                    HttpRequest req = (HttpRequest) msg;
+                    requests.add(req.uri());
+                    if (HttpMethod.POST.equals(req.method())) {
+                        StreamingBodyHandler.install(ctx, req);
+                    }
+                    ReferenceCountUtil.release(msg);
+                } else {
+                    ctx.fireChannelRead(msg);
+                }
+            }
+        });
+        channel.writeInbound(first);
+        return channel;
+    }
+
+    private static HttpRequest upload() {
+        return new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/upload");
+    }
+
+    private static FullHttpResponse response(HttpResponseStatus status) {
+        return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status, Unpooled.EMPTY_BUFFER);
+    }
+
+    private static HttpContent chunk(String s) {
+        return new DefaultHttpContent(Unpooled.copiedBuffer(s, UTF_8));
+    }
+
+    static final class Collector implements ChunkSubscriber {
+
+        final List<String> chunks = new ArrayList<>();
+        boolean completed;
+        Throwable error;
+
+        @Override
+        public void onChunk(ByteBuf chunk) throws Exception {
+            chunks.add(chunk.toString(UTF_8));
+        }
+
+        @Override
+        public void onComplete(HttpHeaders trailingHeaders) {
+            completed = true;
+        }
+
+        @Override
+        public void onError(Throwable err) {
+            error = err;
+        }
+    }
+}
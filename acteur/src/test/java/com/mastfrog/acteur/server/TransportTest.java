@@ -0,0 +1,156 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.server;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class TransportTest {
+
+    @Test
+    public void testResolve() {
+        assertEquals(Transport.NIO, Transport.resolve(null));
+        assertEquals(Transport.NIO, Transport.resolve(""));
+        assertEquals(Transport.NIO, Transport.resolve("NIO"));
+        assertTrue(Transport.NIO.isAvailable());
+        for (Transport t : Transport.values()) {
+            Transport resolved = Transport.resolve(t.settingsName());
+            assertEquals(t.isAvailable() ? t : Transport.NIO, resolved);
+        }
+        assertEquals(Transport.IO_URING.isAvailable() ? Transport.IO_URING : Transport.NIO,
+                Transport.resolve("io-uring"));
+        assertTrue(Transport.resolve(Transport.AUTO).isAvailable());
+        try {
+            Transport.resolve("kqueue-ish");
+            fail("Bogus transport name accepted");
+        } catch (IllegalArgumentException ex) {
+            // ok
+        }
+    }
+
+    @Test
+    public void testNioHasNoNativeOptions() {
+        assertEquals(null, Transport.NIO.option("SO_REUSEPORT"));
+        if (Transport.EPOLL.isAvailable()) {
+            assertTrue(Transport.EPOLL.option("SO_REUSEPORT") != null);
+            assertTrue(Transport.EPOLL.option("TCP_FASTOPEN") != null);
+            assertTrue(Transport.EPOLL.enumConstant("EpollMode", "EDGE_TRIGGERED") != null);
+        }
+    }
+
+    /**
+     * Pushes a fixed number of bytes over loopback through each available
+     * transport and prints the throughput relative to NIO; run with
+     * -Dacteur.benchmark=true and the native transport artifacts on the test
+     * classpath.
+     */
+    @Test
+    public void benchmarkLoopbackThroughput() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("acteur.benchmark"));
+        long total = 512L * 1024 * 1024;
+        double nio = 0;
+        for (Transport t : Transport.values()) {
+            if (!t.isAvailable()) {
+                System.out.println(t + " not available - skipping");
+                continue;
+            }
+            throughput(t, total / 8); // warm up
+            double mbs = throughput(t, total);
+            if (t == Transport.NIO) {
+                nio = mbs;
+            }
+            System.out.println(String.format("%-9s %8.1f MB/s (%.2fx nio)", t, mbs,
+                    nio == 0 ? 1D : mbs / nio));
+        }
+    }
+
+    private static double throughput(Transport transport, long bytes) throws Exception {
+        EventLoopGroup boss = transport.createGroup(1, Executors.newCachedThreadPool());
+        EventLoopGroup workers = transport.createGroup(2, Executors.newCachedThreadPool());
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicLong received = new AtomicLong();
+        try {
+            Channel server = new ServerBootstrap().group(boss, workers)
+                    .channel(transport.serverChannelType())
+                    .childHandler(new ChannelInitializer<Channel>() {
+                        @Override
+                        protected void initChannel(Channel ch) {
+                            ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+                                @Override
+                                public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                                    ByteBuf buf = (ByteBuf) msg;
+                                    if (received.addAndGet(buf.readableBytes()) >= bytes) {
+                                        done.countDown();
+                                    }
+                                    buf.release();
+                                }
+                            });
+                        }
+                    }).bind(new InetSocketAddress("127.0.0.1", 0)).sync().channel();
+            Channel client = new Bootstrap().group(workers)
+                    .channel(transport.socketChannelType())
+                    .handler(new ChannelInboundHandlerAdapter())
+                    .connect(server.localAddress()).sync().channel();
+            ByteBuf chunk = Unpooled.unreleasableBuffer(Unpooled.directBuffer(65536).writeZero(65536));
+            long start = System.nanoTime();
+            for (long sent = 0; sent < bytes; sent += chunk.capacity()) {
+                if (!client.isWritable()) {
+                    client.writeAndFlush(chunk.duplicate()).sync();
+                } else {
+                    client.write(chunk.duplicate());
+                }
+            }
+            client.flush();
+            assertTrue("Timed out on " + transport, done.await(60, TimeUnit.SECONDS));
+            long elapsed = System.nanoTime() - start;
+            client.close().sync();
+            server.close().sync();
+            return (received.get() / (1024D * 1024D)) / (elapsed / 1_000_000_000D);
+        } finally {
+            boss.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+            workers.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+        }
+    }
+}
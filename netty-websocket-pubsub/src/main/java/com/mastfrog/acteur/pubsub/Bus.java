@@ -25,23 +25,29 @@ package com.mastfrog.acteur.pubsub;
 
 import com.mastfrog.giulius.ShutdownHookRegistry;
 import com.mastfrog.marshallers.netty.NettyContentMarshallers;
+import com.mastfrog.settings.Settings;
 import com.mastfrog.util.preconditions.Checks;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
-import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelPromise;
+import io.netty.channel.EventLoop;
 import io.netty.channel.embedded.EmbeddedChannel;
 import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.inject.Inject;
-import javax.inject.Named;
 import javax.inject.Singleton;
 
 /**
@@ -55,17 +61,20 @@ class Bus implements PubSubBus {
     private final ChannelRegistry<ChannelId> reg;
     private final NettyContentMarshallers marshallers;
     private final ByteBufAllocator alloc;
-    private final ExecutorService threadPool;
     private final BusListener.Registry listeners;
+    private final Outbox.Config outboxConfig;
 
     @Inject
-    Bus(ShutdownHookRegistry shutdown, NettyContentMarshallers marshallers, ByteBufAllocator alloc, @Named("bus") ExecutorService threadPool,
-            BusListener.Registry listeners) {
+    Bus(ShutdownHookRegistry shutdown, NettyContentMarshallers marshallers, ByteBufAllocator alloc,
+            BusListener.Registry listeners, Settings settings) {
         this.reg = new ChannelRegistry<>(shutdown);
         this.marshallers = marshallers;
         this.alloc = alloc;
-        this.threadPool = threadPool;
         this.listeners = listeners;
+        this.outboxConfig = new Outbox.Config(
+                settings.getInt(SETTINGS_KEY_MAX_QUEUED_MESSAGES, DEFAULT_MAX_QUEUED_MESSAGES),
+                OverflowPolicy.parse(settings.getString(SETTINGS_KEY_OVERFLOW_POLICY), OverflowPolicy.DROP_OLDEST),
+                settings.getLong(SETTINGS_KEY_BLOCK_TIMEOUT_MILLIS, DEFAULT_BLOCK_TIMEOUT_MILLIS));
     }
 
     @Override
@@ -84,25 +93,53 @@ class Bus implements PubSubBus {
     }
 
     public boolean hasSubscribers(ChannelId id) {
-        return !reg.channels(id).isEmpty();
+        return reg.snapshot(id).length > 0;
+    }
+
+    @Override
+    public int subscribedIdCount() {
+        return reg.idCount();
+    }
+
+    @Override
+    public int subscribedChannelCount() {
+        return reg.channelCount();
+    }
+
+    @Override
+    public long subscriptionCount() {
+        return reg.subscriptionCount();
+    }
+
+    @Override
+    public long droppedMessageCount() {
+        return outboxConfig.dropped.sum();
+    }
+
+    @Override
+    public long queuedMessageCount() {
+        return outboxConfig.queued.sum();
+    }
+
+    @Override
+    public long overflowDisconnectCount() {
+        return outboxConfig.disconnected.sum();
     }
 
     @Override
     public <T> ChannelPromise publish(T obj, Channel origin, Set<ChannelId> to) throws Exception {
         Checks.notEmpty("to", to);
-        ByteBuf buf = alloc.buffer();
-        marshallers.write(obj, buf);
-        final BinaryWebSocketFrame frame = new BinaryWebSocketFrame(buf);
-        Set<Channel> channels = new HashSet<>(50);
+        Channel[][] snapshots = new Channel[to.size()][];
+        int ix = 0;
         for (ChannelId id : to) {
-            channels.addAll(reg.channels(id));
+            snapshots[ix++] = reg.snapshot(id);
         }
-        channels.remove(origin);
+        Iterator<Channel> channels = new Recipients(snapshots, origin);
         ChannelPromise p = origin.newPromise();
-        if (!channels.isEmpty()) {
-            threadPool.submit(() -> {
-                new CHF(channels.iterator(), frame, p).operationComplete(null);
-            });
+        if (channels.hasNext()) {
+            ByteBuf buf = alloc.buffer();
+            marshallers.write(obj, buf);
+            fanOut(channels, new BinaryWebSocketFrame(buf), p);
         } else {
             p.setSuccess();
         }
@@ -118,61 +155,183 @@ class Bus implements PubSubBus {
     @Override
     public <T> ChannelPromise broadcast(T obj, Channel origin) throws Exception {
         ChannelPromise p = origin.newPromise();
-        Set<Channel> all = new HashSet<>(reg.allChannels());
-        all.remove(origin);
-        if (all.isEmpty()) {
+        Iterator<Channel> all = new AllRecipients(reg.allChannels().iterator(), origin);
+        if (!all.hasNext()) {
             return p.setSuccess();
         }
         ByteBuf buf = alloc.buffer();
         marshallers.write(obj, buf);
-        final BinaryWebSocketFrame frame = new BinaryWebSocketFrame(buf);
-        threadPool.submit(() -> {
-            new CHF(all.iterator(), frame, p).operationComplete(null);
-        });
+        return fanOut(all, new BinaryWebSocketFrame(buf), p);
+    }
+
+    /**
+     * Hand a frame to each recipient's outbox, with one task per event loop
+     * doing all of the writes for that loop's channels and then flushing each
+     * once, so a slow subscriber delays nobody but itself.
+     */
+    private ChannelPromise fanOut(Iterator<Channel> recipients, WebSocketFrame frame, ChannelPromise p) throws InterruptedException {
+        Map<EventLoop, List<Outbox>> byLoop = new IdentityHashMap<>();
+        try {
+            while (recipients.hasNext()) {
+                Channel ch = recipients.next();
+                if (!ch.isRegistered()) {
+                    continue;
+                }
+                Outbox outbox = Outbox.forChannel(ch, outboxConfig);
+                EventLoop loop = ch.eventLoop();
+                if (outboxConfig.policy == OverflowPolicy.BLOCK_PUBLISHER
+                        && outbox.size() >= outboxConfig.maxQueued && !loop.inEventLoop()) {
+                    outbox.awaitRoom(outboxConfig.blockMillis);
+                }
+                List<Outbox> outboxes = byLoop.get(loop);
+                if (outboxes == null) {
+                    outboxes = new ArrayList<>();
+                    byLoop.put(loop, outboxes);
+                }
+                outboxes.add(outbox);
+            }
+            if (byLoop.isEmpty()) {
+                p.trySuccess();
+                return p;
+            }
+            AtomicInteger remaining = new AtomicInteger(byLoop.size());
+            for (Map.Entry<EventLoop, List<Outbox>> e : byLoop.entrySet()) {
+                LoopFanOut task = new LoopFanOut(e.getValue(), frame.retain(), remaining, p);
+                EventLoop loop = e.getKey();
+                if (loop.inEventLoop()) {
+                    task.run();
+                } else {
+                    try {
+                        loop.execute(task);
+                    } catch (RejectedExecutionException ex) {
+                        // Loop shutting down - its channels are going away
+                        task.done();
+                    }
+                }
+            }
+        } finally {
+            frame.release();
+        }
         return p;
     }
 
-    static class CHF implements ChannelFutureListener {
+    static final class LoopFanOut implements Runnable {
 
-        private final Iterator<Channel> channels;
+        private final List<Outbox> outboxes;
         private final WebSocketFrame frame;
-        private final ChannelPromise prom;
+        private final AtomicInteger remaining;
+        private final ChannelPromise promise;
 
-        CHF(Iterator<Channel> channels, WebSocketFrame frame, ChannelPromise prom) {
-            this.channels = channels;
+        LoopFanOut(List<Outbox> outboxes, WebSocketFrame frame, AtomicInteger remaining, ChannelPromise promise) {
+            this.outboxes = outboxes;
             this.frame = frame;
-            this.prom = prom;
+            this.remaining = remaining;
+            this.promise = promise;
         }
 
         @Override
-        public void operationComplete(ChannelFuture future) {
-            if (future != null) {
-                if (!future.isSuccess()) {
-                    prom.setFailure(future.cause());
-                    return;
+        public void run() {
+            try {
+                for (Outbox outbox : outboxes) {
+                    outbox.offer(frame.retainedDuplicate());
                 }
+                for (Outbox outbox : outboxes) {
+                    outbox.flushIfNeeded();
+                }
+            } catch (Exception | Error e) {
+                promise.tryFailure(e);
+            } finally {
+                done();
             }
-            if (!channels.hasNext() && !prom.isDone()) {
-                prom.setSuccess();
-                return;
+        }
+
+        void done() {
+            frame.release();
+            if (remaining.decrementAndGet() == 0) {
+                promise.trySuccess();
             }
-            Channel ch = null;
-            while (channels.hasNext()) {
-                ch = channels.next();
-                if (ch.isWritable()) {
-                    break;
+        }
+    }
+
+    /**
+     * Iterates the registry's snapshots of the channels subscribed to each
+     * target id in place, skipping the origin. Only when publishing to more
+     * than one id is a set needed, to avoid sending twice to a channel
+     * subscribed to several of them.
+     */
+    static final class Recipients implements Iterator<Channel> {
+
+        private final Channel[][] snapshots;
+        private final Channel origin;
+        private final Set<Channel> seen;
+        private int snapshot;
+        private int index;
+        private Channel next;
+
+        Recipients(Channel[][] snapshots, Channel origin) {
+            this.snapshots = snapshots;
+            this.origin = origin;
+            this.seen = snapshots.length > 1 ? new HashSet<>() : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && snapshot < snapshots.length) {
+                Channel[] curr = snapshots[snapshot];
+                if (index >= curr.length) {
+                    snapshot++;
+                    index = 0;
+                    continue;
+                }
+                Channel ch = curr[index++];
+                if (ch != origin && (seen == null || seen.add(ch))) {
+                    next = ch;
                 }
             }
-            if (ch != null) {
-                WebSocketFrame fr = frame.retainedDuplicate();
-                future = ch.writeAndFlush(fr).addListener(this);
-                if (channels.hasNext()) {
-                    future.addListener(this);
+            return next != null;
+        }
+
+        @Override
+        public Channel next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Channel result = next;
+            next = null;
+            return result;
+        }
+    }
+
+    static final class AllRecipients implements Iterator<Channel> {
+
+        private final Iterator<Channel> all;
+        private final Channel origin;
+        private Channel next;
+
+        AllRecipients(Iterator<Channel> all, Channel origin) {
+            this.all = all;
+            this.origin = origin;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && all.hasNext()) {
+                Channel ch = all.next();
+                if (ch != origin) {
+                    next = ch;
                 }
             }
-            if (!channels.hasNext() && !prom.isDone()) {
-                prom.setSuccess();
+            return next != null;
+        }
+
+        @Override
+        public Channel next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
             }
+            Channel result = next;
+            next = null;
+            return result;
         }
     }
 }
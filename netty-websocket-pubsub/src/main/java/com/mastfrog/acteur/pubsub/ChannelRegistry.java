@@ -25,20 +25,17 @@ package com.mastfrog.acteur.pubsub;
 
 import com.mastfrog.giulius.ShutdownHookRegistry;
 import com.mastfrog.util.preconditions.Exceptions;
-import com.mastfrog.util.collections.CollectionUtils;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
@@ -46,28 +43,36 @@ import javax.inject.Singleton;
  * Bi-directionally maps sets of channels to sets of identifiers (such as a
  * subscriber or channel id). The one requirement is that the identifier objects
  * be immutable and implement equals/hashCode() correctly. Strings will do.
+ * <p>
+ * The channels subscribed to an id are kept as a copy-on-write array, so
+ * publishing iterates a snapshot without copying or locking; each mutation of
+ * either direction of the mapping is an atomic compute() on one key of a
+ * ConcurrentHashMap, so subscriptions to different ids or from different
+ * channels never contend with each other.
  *
  * @author Tim Boudreau
  */
 @Singleton
 final class ChannelRegistry<Identifier> {
 
-    private final Map<Identifier, Set<Channel>> channelsForId
-            = CollectionUtils.concurrentSupplierMap(() -> ConcurrentHashMap.newKeySet(50));
+    static final Channel[] NO_CHANNELS = new Channel[0];
+    private static final Future<Boolean> TRUE = CompletableFuture.completedFuture(true);
+    private static final Future<Boolean> FALSE = CompletableFuture.completedFuture(false);
 
-    private final Map<Channel, Set<Identifier>> idsForChannel
-            = CollectionUtils.concurrentSupplierMap(() -> ConcurrentHashMap.newKeySet(50));
+    private final ConcurrentHashMap<Identifier, Channel[]> channelsForId
+            = new ConcurrentHashMap<>(64);
 
+    private final ConcurrentHashMap<Channel, Set<Identifier>> idsForChannel
+            = new ConcurrentHashMap<>(64);
+
+    private final LongAdder subscriptions = new LongAdder();
     private final ChannelFutureListener remover = new ClosureRemover();
-    private final ExecutorService mutationThread;
+    private volatile boolean shutdown;
 
     @Inject
     ChannelRegistry(ShutdownHookRegistry reg) {
-        // Though we are using concurrent data structures, they are not atomic
-        // when used in combination as we are here.  So confine mutations to
-        // a single thread to avoid out-of-order surprises.
-        mutationThread = Executors.newFixedThreadPool(1);
         reg.add(() -> {
+            shutdown = true;
             idsForChannel.keySet().forEach((channel) -> {
                 try {
                     channel.close().sync();
@@ -79,103 +84,167 @@ final class ChannelRegistry<Identifier> {
             idsForChannel.clear();
             return null;
         });
-        reg.add(mutationThread);
     }
 
     public Future<Boolean> register(Identifier id, Channel channel) {
-        Set<Identifier> ids = idsForChannel.get(channel);
-        if (ids.contains(id)) {
-            CompletableFuture<Boolean> result = new CompletableFuture<>();
-            result.complete(true);
-            return result;
+        // Reverse mapping first, so that if the channel closes while we are
+        // here, the close listener finds the id and removes the forward one
+        boolean[] added = new boolean[2];
+        idsForChannel.compute(channel, (ch, ids) -> {
+            if (ids == null) {
+                ids = ConcurrentHashMap.newKeySet(4);
+                added[1] = true;
+            }
+            added[0] = ids.add(id);
+            return ids;
+        });
+        if (!added[0]) {
+            return TRUE;
         }
-        return mutationThread.submit(() -> {
-            Set<Channel> channels = channelsForId.get(id);
-            boolean result = channels.add(channel);
-            if (result) {
-                idsForChannel.get(channel).add(id);
-                channelsForId.get(id).add(channel);
-                channel.closeFuture().addListener(remover);
+        channelsForId.compute(id, (k, old) -> {
+            Channel[] result = with(old, channel);
+            if (result != old) {
+                subscriptions.increment();
             }
             return result;
         });
+        if (added[1]) {
+            // Called immediately if the channel is already closed
+            channel.closeFuture().addListener(remover);
+        }
+        // If the channel closed between the two computes, the close listener
+        // may have run before the forward mapping existed and missed it
+        if (!channel.isActive()) {
+            unsubscribe(id, channel);
+            return FALSE;
+        }
+        return TRUE;
+    }
+
+    /**
+     * Get the channels subscribed to an id at this moment, as an array which
+     * is never modified, so it can be iterated without copying. Callers must
+     * not modify it either.
+     *
+     * @param id An id
+     * @return An array of channels, possibly empty
+     */
+    Channel[] snapshot(Identifier id) {
+        Channel[] result = channelsForId.get(id);
+        return result == null ? NO_CHANNELS : result;
+    }
+
+    boolean isSubscribed(Channel channel, Identifier id) {
+        Set<Identifier> ids = idsForChannel.get(channel);
+        return ids != null && ids.contains(id);
     }
 
     public Set<Channel> channels(Identifier id) {
-        return new HashSet<>(channelsForId.get(id));
+        return new HashSet<>(Arrays.asList(snapshot(id)));
     }
 
     public Set<Identifier> idsForChannel(Channel channel) {
-        return new HashSet<>(idsForChannel.get(channel));
+        Set<Identifier> ids = idsForChannel.get(channel);
+        return ids == null ? Collections.emptySet() : new HashSet<>(ids);
     }
 
+    /**
+     * Get a live, weakly consistent view of all channels with at least one
+     * subscription.
+     *
+     * @return A set
+     */
     public Set<Channel> allChannels() {
-        return Collections.unmodifiableSet(new HashSet<>(idsForChannel.keySet()));
+        return Collections.unmodifiableSet(idsForChannel.keySet());
     }
 
     public Set<Identifier> allIds() {
         return Collections.unmodifiableSet(new HashSet<>(channelsForId.keySet()));
     }
 
+    int idCount() {
+        return channelsForId.size();
+    }
+
+    int channelCount() {
+        return idsForChannel.size();
+    }
+
+    long subscriptionCount() {
+        return subscriptions.sum();
+    }
+
     public Future<Boolean> unsubscribe(Identifier from, Channel channel) {
-        return mutationThread.submit(() -> {
-            Set<Channel> channelsFor = channelsForId.get(from);
-            boolean result = channelsFor.remove(channel);
-            if (channelsFor.isEmpty()) {
-                channelsForId.remove(from);
-            }
-            Set<Identifier> idsFor = idsForChannel.get(channel);
-            result |= idsFor.remove(from);
-            if (idsFor.isEmpty()) {
-                idsForChannel.remove(channel);
+        boolean[] removed = new boolean[1];
+        idsForChannel.computeIfPresent(channel, (ch, ids) -> {
+            removed[0] = ids.remove(from);
+            if (ids.isEmpty()) {
+                // While the key is locked, so a register() that recreates
+                // the set can only add its listener after this removal
+                ch.closeFuture().removeListener(remover);
+                return null;
             }
-            return result;
+            return ids;
         });
+        boolean result = removeFromId(from, channel) | removed[0];
+        return result ? TRUE : FALSE;
     }
 
+    @SuppressWarnings("unchecked")
     public void unregister(Channel channel) {
-        if (mutationThread.isShutdown()) {
+        if (shutdown) {
             return;
         }
-        mutationThread.submit(() -> {
-            Map<Identifier, Set<Channel>> alsoRemove = new HashMap<>();
-            Set<Identifier> ids = idsForChannel.get(channel);
-            if (ids != null) {
-                ids.forEach((id) -> {
-                    Set<Channel> channels = channelsForId.get(id);
-                    channels.remove(channel);
-                    if (channels.isEmpty()) {
-                        alsoRemove.put(id, channels);
-                    }
-                });
+        Set<Identifier>[] removed = new Set[1];
+        idsForChannel.computeIfPresent(channel, (ch, ids) -> {
+            ch.closeFuture().removeListener(remover);
+            removed[0] = ids;
+            return null;
+        });
+        if (removed[0] != null) {
+            for (Identifier id : removed[0]) {
+                removeFromId(id, channel);
             }
-            idsForChannel.remove(channel);
-            alsoRemove.entrySet().stream().filter((e) -> (e.getValue().isEmpty())).forEachOrdered((e) -> {
-                channelsForId.remove(e.getKey());
-            });
-            channel.closeFuture().removeListener(remover);
+        }
+    }
+
+    private boolean removeFromId(Identifier id, Channel channel) {
+        boolean[] removed = new boolean[1];
+        channelsForId.computeIfPresent(id, (k, old) -> {
+            Channel[] result = without(old, channel);
+            removed[0] = result != old;
+            return result.length == 0 ? null : result;
         });
+        if (removed[0]) {
+            subscriptions.decrement();
+        }
+        return removed[0];
     }
 
-    void gc() {
-        // Because we are using SupplierMap, we can wind up populating maps
-        // with unused lists
-        mutationThread.submit(() -> {
-            Set<Identifier> idsToRemove = new HashSet<>();
-            Set<Channel> channelsToRemove = new HashSet<>();
-            channelsForId.entrySet().stream().filter((e) -> (e.getValue().isEmpty())).forEachOrdered((e) -> {
-                idsToRemove.add(e.getKey());
-            });
-            idsForChannel.entrySet().stream().filter((e) -> (e.getValue().isEmpty())).forEachOrdered((e) -> {
-                channelsToRemove.add(e.getKey());
-            });
-            for (Identifier i : idsToRemove) {
-                channelsForId.remove(i);
+    private static Channel[] with(Channel[] old, Channel channel) {
+        if (old == null) {
+            return new Channel[]{channel};
+        }
+        for (Channel c : old) {
+            if (c == channel) {
+                return old;
             }
-            for (Channel c : channelsToRemove) {
-                idsForChannel.remove(c);
+        }
+        Channel[] result = Arrays.copyOf(old, old.length + 1);
+        result[old.length] = channel;
+        return result;
+    }
+
+    private static Channel[] without(Channel[] old, Channel channel) {
+        for (int i = 0; i < old.length; i++) {
+            if (old[i] == channel) {
+                Channel[] result = new Channel[old.length - 1];
+                System.arraycopy(old, 0, result, 0, i);
+                System.arraycopy(old, i + 1, result, i, old.length - i - 1);
+                return result;
             }
-        });
+        }
+        return old;
     }
 
     private final class ClosureRemover implements ChannelFutureListener {
@@ -0,0 +1,223 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.pubsub;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded queue of frames waiting to be written to one subscriber's channel,
+ * installed at the head of its pipeline the first time something is published
+ * to it. Frames are written straight through while the channel is writable;
+ * while it is not, they wait here, and are written when Netty reports the
+ * channel writable again. What happens when the queue is full is decided by
+ * the bus's {@link OverflowPolicy}.
+ * <p>
+ * Everything except {@link #awaitRoom(long)} and {@link #size()} is called on
+ * the channel's event loop.
+ *
+ * @author Tim Boudreau
+ */
+final class Outbox extends ChannelInboundHandlerAdapter {
+
+    static final String HANDLER_NAME = "pubsub-outbox";
+    private static final AttributeKey<Outbox> KEY = AttributeKey.valueOf(Outbox.class, "outbox");
+
+    private final ArrayDeque<WebSocketFrame> queue = new ArrayDeque<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final Channel channel;
+    private final Config config;
+    private volatile int waiters;
+    private boolean installed;
+    private boolean needsFlush;
+
+    private Outbox(Channel channel, Config config) {
+        this.channel = channel;
+        this.config = config;
+    }
+
+    static Outbox forChannel(Channel channel, Config config) {
+        Attribute<Outbox> attr = channel.attr(KEY);
+        Outbox result = attr.get();
+        if (result == null) {
+            Outbox nue = new Outbox(channel, config);
+            result = attr.setIfAbsent(nue);
+            if (result == null) {
+                result = nue;
+            }
+        }
+        return result;
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * Take ownership of a frame and write it, queue it, or apply the overflow
+     * policy.
+     *
+     * @param frame A frame, which this outbox will release if it is not
+     * written
+     */
+    void offer(WebSocketFrame frame) {
+        if (!channel.isActive()) {
+            frame.release();
+            config.dropped.increment();
+            return;
+        }
+        if (!installed) {
+            installed = true;
+            channel.pipeline().addFirst(HANDLER_NAME, this);
+        }
+        if (queue.isEmpty() && channel.isWritable()) {
+            channel.write(frame, channel.voidPromise());
+            needsFlush = true;
+            return;
+        }
+        if (queue.size() >= config.maxQueued) {
+            if (config.policy == OverflowPolicy.DISCONNECT) {
+                frame.release();
+                config.dropped.increment();
+                config.disconnected.increment();
+                discardAll();
+                channel.close();
+                return;
+            }
+            WebSocketFrame oldest = queue.poll();
+            oldest.release();
+            config.dropped.increment();
+            dequeued();
+        }
+        queue.add(frame);
+        size.incrementAndGet();
+        config.queued.increment();
+    }
+
+    /**
+     * Flush the channel if anything was written since the last flush - called
+     * once per publish, after all of it has been offered.
+     */
+    void flushIfNeeded() {
+        if (needsFlush) {
+            needsFlush = false;
+            channel.flush();
+        }
+    }
+
+    private void drain() {
+        while (!queue.isEmpty() && channel.isWritable()) {
+            channel.write(queue.poll(), channel.voidPromise());
+            needsFlush = true;
+            dequeued();
+        }
+        flushIfNeeded();
+    }
+
+    private void dequeued() {
+        size.decrementAndGet();
+        config.queued.decrement();
+        if (waiters > 0) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    private void discardAll() {
+        WebSocketFrame frame;
+        while ((frame = queue.poll()) != null) {
+            frame.release();
+            config.dropped.increment();
+            dequeued();
+        }
+    }
+
+    /**
+     * Wait, on a publishing thread, until the queue has room, the channel
+     * closes or the timeout elapses.
+     *
+     * @param millis The maximum time to wait
+     * @throws InterruptedException If interrupted
+     */
+    void awaitRoom(long millis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        synchronized (this) {
+            waiters++;
+            try {
+                while (size.get() >= config.maxQueued && channel.isActive()) {
+                    long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remaining <= 0) {
+                        return;
+                    }
+                    wait(remaining);
+                }
+            } finally {
+                waiters--;
+            }
+        }
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isWritable()) {
+            drain();
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        discardAll();
+        super.channelInactive(ctx);
+    }
+
+    /**
+     * Limits and policy shared by all of a bus's outboxes, and the counters
+     * they update.
+     */
+    static final class Config {
+
+        final int maxQueued;
+        final OverflowPolicy policy;
+        final long blockMillis;
+        final LongAdder dropped = new LongAdder();
+        final LongAdder queued = new LongAdder();
+        final LongAdder disconnected = new LongAdder();
+
+        Config(int maxQueued, OverflowPolicy policy, long blockMillis) {
+            this.maxQueued = Math.max(1, maxQueued);
+            this.policy = policy;
+            this.blockMillis = blockMillis;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.pubsub;
+
+/**
+ * What the bus does when a subscriber is not reading fast enough to keep up,
+ * and its queue of messages waiting to be written is full.
+ *
+ * @author Tim Boudreau
+ */
+public enum OverflowPolicy {
+    /**
+     * Discard the oldest queued message to make room for the new one.
+     */
+    DROP_OLDEST,
+    /**
+     * Close the subscriber's channel, discarding everything queued for it.
+     */
+    DISCONNECT,
+    /**
+     * Make the thread calling publish() or broadcast() wait for room in the
+     * queue, for up to the configured timeout, after which the oldest message
+     * is dropped. Publishers running on the subscriber's own event loop
+     * cannot wait for it, and drop the oldest message immediately.
+     */
+    BLOCK_PUBLISHER;
+
+    /**
+     * Parse a policy from a settings value such as <code>drop-oldest</code>,
+     * <code>disconnect</code> or <code>block</code>.
+     *
+     * @param value A string, possibly null
+     * @param defaultValue The value to use if the string is null
+     * @return A policy
+     * @throws IllegalArgumentException if the value is not recognized
+     */
+    public static OverflowPolicy parse(String value, OverflowPolicy defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        String v = value.trim().toUpperCase().replace('-', '_');
+        if ("BLOCK".equals(v)) {
+            return BLOCK_PUBLISHER;
+        }
+        return valueOf(v);
+    }
+}
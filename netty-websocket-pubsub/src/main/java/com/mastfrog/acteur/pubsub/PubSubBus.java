@@ -39,6 +39,27 @@ import java.util.concurrent.Future;
 @ImplementedBy(Bus.class)
 public interface PubSubBus {
 
+    /**
+     * The maximum number of messages which may wait to be written to a
+     * subscriber whose channel is not writable, after which the overflow
+     * policy applies. Defaults to 1024.
+     */
+    public static final String SETTINGS_KEY_MAX_QUEUED_MESSAGES = "pubsub.max.queued.messages";
+    public static final int DEFAULT_MAX_QUEUED_MESSAGES = 1024;
+    /**
+     * What to do when a subscriber's queue is full - one of
+     * <code>drop-oldest</code> (the default), <code>disconnect</code> or
+     * <code>block</code>; see {@link OverflowPolicy}.
+     */
+    public static final String SETTINGS_KEY_OVERFLOW_POLICY = "pubsub.overflow.policy";
+    /**
+     * With the <code>block</code> overflow policy, the longest a publisher
+     * waits for room in a subscriber's queue before dropping its oldest
+     * message. Defaults to 5000.
+     */
+    public static final String SETTINGS_KEY_BLOCK_TIMEOUT_MILLIS = "pubsub.block.timeout.millis";
+    public static final long DEFAULT_BLOCK_TIMEOUT_MILLIS = 5000;
+
     /**
      * Broadcast a message to all channels known to this bus.
      *
@@ -97,4 +118,64 @@ public interface PubSubBus {
      * @return
      */
     Future<Boolean> unsubscribe(Channel channel, ChannelId from);
+
+    /**
+     * Get the number of channel ids which currently have at least one
+     * subscriber.
+     *
+     * @return The number of ids, or -1 if this bus does not track it
+     */
+    default int subscribedIdCount() {
+        return -1;
+    }
+
+    /**
+     * Get the number of channels which are currently subscribed to at least
+     * one channel id.
+     *
+     * @return The number of channels, or -1 if this bus does not track it
+     */
+    default int subscribedChannelCount() {
+        return -1;
+    }
+
+    /**
+     * Get the total number of subscriptions of channels to channel ids.
+     *
+     * @return The number of subscriptions, or -1 if this bus does not track
+     * it
+     */
+    default long subscriptionCount() {
+        return -1;
+    }
+
+    /**
+     * Get the number of messages which have been discarded because a
+     * subscriber's queue was full or its channel had closed.
+     *
+     * @return The number of messages, or -1 if this bus does not track it
+     */
+    default long droppedMessageCount() {
+        return -1;
+    }
+
+    /**
+     * Get the number of messages currently waiting to be written to
+     * subscribers whose channels are not writable.
+     *
+     * @return The number of messages, or -1 if this bus does not track it
+     */
+    default long queuedMessageCount() {
+        return -1;
+    }
+
+    /**
+     * Get the number of subscribers which have been disconnected under the
+     * <code>disconnect</code> overflow policy.
+     *
+     * @return The number of channels, or -1 if this bus does not track it
+     */
+    default long overflowDisconnectCount() {
+        return -1;
+    }
 }
@@ -26,6 +26,7 @@ package com.mastfrog.acteur.pubsub;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mastfrog.giulius.ShutdownHookRegistry;
 import com.mastfrog.marshallers.netty.NettyContentMarshallers;
+import com.mastfrog.settings.SettingsBuilder;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelOutboundHandlerAdapter;
@@ -39,7 +40,6 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -85,7 +85,7 @@ public class BusTest {
         ChannelId first = new ChannelId("first");
         ChannelId second = new ChannelId("second");
         try (X x = new X()) {
-            Bus bus = new Bus(x, NettyContentMarshallers.getDefault(new ObjectMapper()), ByteBufAllocator.DEFAULT, Executors.newCachedThreadPool(), new BusListener.Registry());
+            Bus bus = new Bus(x, NettyContentMarshallers.getDefault(new ObjectMapper()), ByteBufAllocator.DEFAULT, new BusListener.Registry(), new SettingsBuilder().build());
             assertTrue(bus.subscribe(c0, first).get());
             bus.subscribe(c1, first).get();
             bus.subscribe(c2, first).get();
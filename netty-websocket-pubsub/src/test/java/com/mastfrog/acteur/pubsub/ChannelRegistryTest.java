@@ -0,0 +1,172 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.pubsub;
+
+import com.mastfrog.giulius.ShutdownHookRegistry;
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class ChannelRegistryTest {
+
+    @Test
+    public void testRegisterUnsubscribeAndClose() throws Throwable {
+        ChannelRegistry<String> reg = new ChannelRegistry<>(new ShutdownHookRegistry() {
+        });
+        EmbeddedChannel a = new EmbeddedChannel();
+        EmbeddedChannel b = new EmbeddedChannel();
+        assertTrue(reg.register("x", a).get());
+        assertTrue(reg.register("x", a).get());
+        assertTrue(reg.register("x", b).get());
+        assertTrue(reg.register("y", b).get());
+        assertEquals(2, reg.idCount());
+        assertEquals(2, reg.channelCount());
+        assertEquals(3L, reg.subscriptionCount());
+
+        Channel[] x = reg.snapshot("x");
+        assertEquals(2, x.length);
+        assertTrue(reg.isSubscribed(b, "y"));
+        assertFalse(reg.isSubscribed(a, "y"));
+
+        assertTrue(reg.unsubscribe("x", a).get());
+        assertFalse(reg.unsubscribe("x", a).get());
+        // Snapshots already handed out are never modified
+        assertEquals(2, x.length);
+        assertNotSame(x, reg.snapshot("x"));
+        assertEquals(Arrays.asList(b), Arrays.asList(reg.snapshot("x")));
+        assertEquals(1, reg.channelCount());
+        assertEquals(2L, reg.subscriptionCount());
+
+        b.close().sync();
+        assertEquals(0, reg.idCount());
+        assertEquals(0, reg.channelCount());
+        assertEquals(0L, reg.subscriptionCount());
+        assertSame(ChannelRegistry.NO_CHANNELS, reg.snapshot("x"));
+    }
+
+    @Test
+    public void testRegisteringAClosedChannelLeavesNothingBehind() throws Throwable {
+        ChannelRegistry<String> reg = new ChannelRegistry<>(new ShutdownHookRegistry() {
+        });
+        EmbeddedChannel a = new EmbeddedChannel();
+        a.close().sync();
+        assertFalse(reg.register("x", a).get());
+        assertEquals(0, reg.idCount());
+        assertEquals(0, reg.channelCount());
+        assertEquals(0L, reg.subscriptionCount());
+        assertSame(ChannelRegistry.NO_CHANNELS, reg.snapshot("x"));
+    }
+
+    @Test
+    public void testResubscribingAfterUnsubscribingAllStillCleansUpOnClose() throws Throwable {
+        ChannelRegistry<String> reg = new ChannelRegistry<>(new ShutdownHookRegistry() {
+        });
+        EmbeddedChannel a = new EmbeddedChannel();
+        assertTrue(reg.register("x", a).get());
+        assertTrue(reg.unsubscribe("x", a).get());
+        assertEquals(0, reg.channelCount());
+        assertTrue(reg.register("y", a).get());
+        a.close().sync();
+        assertEquals(0, reg.idCount());
+        assertEquals(0, reg.channelCount());
+        assertEquals(0L, reg.subscriptionCount());
+    }
+
+    @Test(timeout = 30000)
+    public void testConcurrentSubscriptions() throws Throwable {
+        ChannelRegistry<Integer> reg = new ChannelRegistry<>(new ShutdownHookRegistry() {
+        });
+        int threads = 8;
+        int channelsPerThread = 200;
+        int ids = 10;
+        ExecutorService svc = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(svc.submit(() -> {
+                start.await();
+                for (int i = 0; i < channelsPerThread; i++) {
+                    Channel ch = new EmbeddedChannel();
+                    for (int id = 0; id < ids; id++) {
+                        reg.register(id, ch);
+                    }
+                    // Leave every channel subscribed to the even ids only
+                    for (int id = 1; id < ids; id += 2) {
+                        reg.unsubscribe(id, ch);
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        svc.shutdown();
+        svc.awaitTermination(10, TimeUnit.SECONDS);
+        assertEquals(ids / 2, reg.idCount());
+        assertEquals(threads * channelsPerThread, reg.channelCount());
+        assertEquals((long) threads * channelsPerThread * (ids / 2), reg.subscriptionCount());
+        for (int id = 0; id < ids; id += 2) {
+            assertEquals(threads * channelsPerThread, new HashSet<>(Arrays.asList(reg.snapshot(id))).size());
+        }
+    }
+
+    @Test
+    public void testRecipientsSkipOriginAndDuplicates() {
+        Channel a = new EmbeddedChannel();
+        Channel b = new EmbeddedChannel();
+        Channel c = new EmbeddedChannel();
+        Iterator<Channel> it = new Bus.Recipients(new Channel[][]{{a, b}, {b, c}, {}}, a);
+        Set<Channel> got = new HashSet<>();
+        int count = 0;
+        while (it.hasNext()) {
+            got.add(it.next());
+            count++;
+        }
+        assertEquals(2, count);
+        assertEquals(new HashSet<>(Arrays.asList(b, c)), got);
+        assertFalse(new Bus.Recipients(new Channel[][]{{a}}, a).hasNext());
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Tim Boudreau.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.acteur.pubsub;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tim Boudreau
+ */
+public class OutboxTest {
+
+    @Test
+    public void testDropOldestWhenUnwritable() {
+        EmbeddedChannel ch = channel();
+        Outbox.Config config = new Outbox.Config(2, OverflowPolicy.DROP_OLDEST, 0);
+        Outbox box = Outbox.forChannel(ch, config);
+        List<BinaryWebSocketFrame> frames = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            BinaryWebSocketFrame frame = frame(i);
+            frames.add(frame);
+            box.offer(frame);
+            if (i == 1) {
+                // Written but not flushed - past the high water mark
+                assertFalse(ch.isWritable());
+            }
+        }
+        assertEquals(2, box.size());
+        assertEquals(2L, config.queued.sum());
+        assertEquals(1L, config.dropped.sum());
+        assertEquals(0, frames.get(1).refCnt());
+
+        box.flushIfNeeded();
+        assertEquals(Arrays.asList(1, 3, 4), written(ch));
+        assertEquals(0, box.size());
+        assertEquals(0L, config.queued.sum());
+        assertTrue(ch.isWritable());
+        ch.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testDisconnectPolicy() {
+        EmbeddedChannel ch = channel();
+        Outbox.Config config = new Outbox.Config(1, OverflowPolicy.DISCONNECT, 0);
+        Outbox box = Outbox.forChannel(ch, config);
+        BinaryWebSocketFrame queued = frame(2);
+        box.offer(frame(1));
+        box.offer(queued);
+        assertEquals(1, box.size());
+        box.offer(frame(3));
+        assertFalse(ch.isActive());
+        assertEquals(0, box.size());
+        assertEquals(0, queued.refCnt());
+        assertEquals(2L, config.dropped.sum());
+        assertEquals(1L, config.disconnected.sum());
+
+        BinaryWebSocketFrame late = frame(4);
+        box.offer(late);
+        assertEquals(0, late.refCnt());
+        assertEquals(3L, config.dropped.sum());
+        ch.finishAndReleaseAll();
+    }
+
+    @Test(timeout = 10000)
+    public void testBlockedPublisherGivesUpAfterTimeout() throws InterruptedException {
+        EmbeddedChannel ch = channel();
+        Outbox.Config config = new Outbox.Config(1, OverflowPolicy.BLOCK_PUBLISHER, 50);
+        Outbox box = Outbox.forChannel(ch, config);
+        box.offer(frame(1));
+        box.offer(frame(2));
+        long then = System.currentTimeMillis();
+        box.awaitRoom(config.blockMillis);
+        assertTrue(System.currentTimeMillis() - then >= 40);
+        assertEquals(1, box.size());
+        box.flushIfNeeded();
+        assertEquals(Arrays.asList(1, 2), written(ch));
+        // Room now, so no waiting
+        box.awaitRoom(10000);
+        ch.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testOneOutboxPerChannel() {
+        EmbeddedChannel ch = channel();
+        Outbox.Config config = new Outbox.Config(2, OverflowPolicy.DROP_OLDEST, 0);
+        assertTrue(Outbox.forChannel(ch, config) == Outbox.forChannel(ch, config));
+    }
+
+    @Test
+    public void testParsePolicy() {
+        assertEquals(OverflowPolicy.DROP_OLDEST, OverflowPolicy.parse(null, OverflowPolicy.DROP_OLDEST));
+        assertEquals(OverflowPolicy.DROP_OLDEST, OverflowPolicy.parse("drop-oldest", OverflowPolicy.DISCONNECT));
+        assertEquals(OverflowPolicy.DISCONNECT, OverflowPolicy.parse(" Disconnect", OverflowPolicy.DROP_OLDEST));
+        assertEquals(OverflowPolicy.BLOCK_PUBLISHER, OverflowPolicy.parse("block", OverflowPolicy.DROP_OLDEST));
+        assertEquals(OverflowPolicy.BLOCK_PUBLISHER, OverflowPolicy.parse("block_publisher", OverflowPolicy.DROP_OLDEST));
+    }
+
+    private static EmbeddedChannel channel() {
+        EmbeddedChannel ch = new EmbeddedChannel();
+        ch.config().setWriteBufferWaterMark(new WriteBufferWaterMark(8, 16));
+        return ch;
+    }
+
+    private static BinaryWebSocketFrame frame(int marker) {
+        byte[] bytes = new byte[32];
+        bytes[0] = (byte) marker;
+        return new BinaryWebSocketFrame(Unpooled.wrappedBuffer(bytes));
+    }
+
+    private static List<Integer> written(EmbeddedChannel ch) {
+        List<Integer> result = new ArrayList<>();
+        WebSocketFrame frame;
+        while ((frame = ch.readOutbound()) != null) {
+            result.add((int) frame.content().getByte(0));
+            frame.release();
+        }
+        return result;
+    }
+}